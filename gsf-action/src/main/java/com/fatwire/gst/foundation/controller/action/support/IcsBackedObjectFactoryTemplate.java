@@ -34,6 +34,7 @@ import com.fatwire.gst.foundation.include.DefaultIncludeService;
 import com.fatwire.gst.foundation.include.IncludeService;
 import com.fatwire.gst.foundation.mapping.IcsMappingService;
 import com.fatwire.gst.foundation.mapping.MappingService;
+import com.fatwire.gst.foundation.navigation.NavigationCache;
 import com.fatwire.gst.foundation.navigation.NavigationService;
 import com.fatwire.gst.foundation.navigation.support.SimpleNavigationHelper;
 import com.fatwire.gst.foundation.properties.AssetApiPropertyDao;
@@ -42,7 +43,6 @@ import com.fatwire.gst.foundation.url.WraPathTranslationService;
 import com.fatwire.gst.foundation.url.db.DbSimpleWRADao;
 import com.fatwire.gst.foundation.url.db.UrlRegistry2;
 import com.fatwire.gst.foundation.url.db.UrlRegistryDao;
-import com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
 import com.fatwire.gst.foundation.wra.AliasCoreFieldDao;
@@ -107,7 +107,7 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
     public WraPathTranslationService createWraPathTranslationService(final ICS ics) {
         final SimpleWRADao wraDao = new DbSimpleWRADao(ics);
         final VirtualWebrootDao vwDao = new VirtualWebrootApiBypassDao(ics);
-        final UrlRegistryDao regDao = new UrlRegistryDaoImpl(ics);
+        final UrlRegistryDao regDao = UrlRegistry2.newRegistryDao(ics);
         final UrlRegistry2 x = new UrlRegistry2(ics, wraDao, vwDao, regDao);
         return x;
     }
@@ -177,7 +177,19 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
 
             AliasCoreFieldDao aliasDao = getObject("aliasCoreFieldDao", AliasCoreFieldDao.class);
             Date date = PreviewContext.getPreviewDateFromCSVar(ics, "previewDate");
-            return new WraNavigationService(ics, taa, aliasDao, filter, date);
+            WraNavigationService wns = new WraNavigationService(ics, taa, aliasDao, filter, date);
+            // load the whole site plan at once, for sites with large menus
+            wns.setWholeTree(Boolean.parseBoolean(ics.GetProperty("com.fatwire.gst.foundation.navigation.whole-tree")));
+            if (!"false".equals(ics.GetProperty("com.fatwire.gst.foundation.navigation.cache"))) {
+                wns.setNavigationCache(NavigationCache.getInstance());
+                // the filter is configured with the preferred locales, from
+                // the request, the session or the browser. Trees built with
+                // the filter of another LocaleService are not cached.
+                if (filter != null && ls instanceof DefaultLocaleService) {
+                    wns.setDimensionFilterKey(((DefaultLocaleService) ls).getPreferredLocales().toString());
+                }
+            }
+            return wns;
         } else {
             return new SimpleNavigationHelper(ics, taa, "linktext", "path");
 
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Eviction for the node-local caches that bound their number of entries and
+ * expire their entries after a time to live.
+ *
+ * @since Oct 16, 2026
+ */
+public final class CacheEviction {
+
+    /**
+     * A cache entry that knows when it was created.
+     */
+    public interface Timed {
+
+        /**
+         * @return the time the entry was created, in milliseconds.
+         */
+        long getCreated();
+    }
+
+    private CacheEviction() {
+    }
+
+    /**
+     * Brings the cache back to three quarters of its maximum size, removing
+     * the expired entries first and then entries in no particular order.
+     *
+     * @param entries the entries of the cache
+     * @param maxSize the maximum number of entries
+     * @param ttl the time in milliseconds an entry is valid
+     * @return the number of entries left.
+     */
+    public static int evict(final ConcurrentMap<?, ? extends Timed> entries, final int maxSize, final long ttl) {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<? extends Timed> i = entries.values().iterator(); i.hasNext();) {
+            if (now - i.next().getCreated() >= ttl) {
+                i.remove();
+            }
+        }
+        final int target = maxSize * 3 / 4;
+        for (final Iterator<? extends Timed> i = entries.values().iterator(); i.hasNext() && entries.size() > target;) {
+            i.next();
+            i.remove();
+        }
+        return entries.size();
+    }
+}
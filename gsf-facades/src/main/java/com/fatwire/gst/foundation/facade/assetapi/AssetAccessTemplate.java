@@ -19,7 +19,6 @@ package com.fatwire.gst.foundation.facade.assetapi;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -52,6 +51,9 @@ import com.openmarket.xcelerate.asset.AssetIdImpl;
  * This class is inspired by springframework data access template classes like
  * org.springframework.jdbc.core.JdbcTemplate.
  * <p/>
+ * When constructed with ICS, the reads go through the
+ * {@link RequestAssetCache} of the request.
+ * <p/>
  * This class is not thread safe and should not be shared between threads.
  * 
  * @author Dolf.Dijkstra
@@ -61,6 +63,7 @@ import com.openmarket.xcelerate.asset.AssetIdImpl;
 public class AssetAccessTemplate {
 
     private final Session session;
+    private final ICS ics;
     private AssetDataManager assetDataManager;
 
     /**
@@ -72,6 +75,7 @@ public class AssetAccessTemplate {
             throw new IllegalArgumentException("session cannot be null.");
         }
         this.session = session;
+        this.ics = null;
     }
 
     /**
@@ -84,6 +88,7 @@ public class AssetAccessTemplate {
             throw new IllegalArgumentException("ics cannot be null.");
         }
         session = SessionFactory.getSession(ics);
+        this.ics = ics;
     }
 
     /**
@@ -118,12 +123,10 @@ public class AssetAccessTemplate {
      * @return the Object created by the mapper.
      */
     public <T> T readAsset(final AssetId id, final AssetMapper<T> mapper) {
-        final AssetDataManager m = getAssetDataManager();
-
         T t = null;
         try {
-            final Iterable<AssetData> assets = m.read(Arrays.asList(id));
-            for (final AssetData assetData : assets) {
+            final AssetData assetData = read(id);
+            if (assetData != null) {
                 t = mapper.map(assetData);
             }
         } catch (final AssetAccessException e) {
@@ -172,11 +175,9 @@ public class AssetAccessTemplate {
      * @return the object created by the mapper.
      */
     public <T> T readAsset(final AssetId id, final AssetMapper<T> mapper, final String... attributes) {
-        final AssetDataManager m = getAssetDataManager();
-
         T t = null;
         try {
-            final AssetData asset = m.readAttributes(id, Arrays.asList(attributes));
+            final AssetData asset = readAttributes(id, attributes);
             t = mapper.map(asset);
         } catch (final AssetAccessException e) {
             throw new RuntimeAssetAccessException(e);
@@ -194,10 +195,8 @@ public class AssetAccessTemplate {
      * 
      */
     public void readAsset(final AssetId id, final AssetClosure closure, final String... attributes) {
-        final AssetDataManager m = getAssetDataManager();
-
         try {
-            final AssetData asset = m.readAttributes(id, Arrays.asList(attributes));
+            final AssetData asset = readAttributes(id, attributes);
             if (asset != null) {
                 if (!closure.work(asset)) {
                     return;
@@ -216,15 +215,10 @@ public class AssetAccessTemplate {
      * @param closure the closure
      */
     public void readAsset(final AssetId id, final AssetClosure closure) {
-        final AssetDataManager m = getAssetDataManager();
-
         try {
-            final Iterable<AssetData> assets = m.read(Arrays.asList(id));
-            for (final AssetData assetData : assets) {
-                if (!closure.work(assetData)) {
-                    return;
-                }
-
+            final AssetData assetData = read(id);
+            if (assetData != null) {
+                closure.work(assetData);
             }
         } catch (final AssetAccessException e) {
             throw new RuntimeAssetAccessException(e);
@@ -240,10 +234,9 @@ public class AssetAccessTemplate {
      * @param closure the closure
      */
     public void readAsset(final List<AssetId> ids, final AssetClosure closure) {
-        final AssetDataManager m = getAssetDataManager();
-
         try {
-            final Iterable<AssetData> assets = m.read(ids);
+            final Iterable<AssetData> assets = ics == null ? getAssetDataManager().read(ids) : RequestAssetCache
+                    .getInstance(ics).read(ids);
             for (final AssetData assetData : assets) {
                 if (!closure.work(assetData)) {
                     return;
@@ -264,11 +257,9 @@ public class AssetAccessTemplate {
      * @param closure the closure
      */
     public void readAsset(final Iterable<AssetId> ids, final AssetClosure closure, final String... attributes) {
-        final AssetDataManager m = getAssetDataManager();
-
         try {
             for (final AssetId id : ids) {
-                final AssetData asset = m.readAttributes(id, Arrays.asList(attributes));
+                final AssetData asset = readAttributes(id, attributes);
                 if (asset != null) {
                     if (!closure.work(asset)) {
                         return;
@@ -295,32 +286,38 @@ public class AssetAccessTemplate {
      * 
      */
     public AssetData readAsset(final AssetId id, final String... attributes) {
-        final AssetDataManager m = getAssetDataManager();
-
-        Iterable<AssetData> assets;
         try {
-            assets = m.read(Arrays.asList(id));
+            return read(id);
         } catch (final AssetAccessException e) {
             throw new RuntimeAssetAccessException(e);
         }
-        if (assets == null) {
-            return null;
-        }
-        if (assets instanceof List<?>) {
-            final List<AssetData> x = (List<AssetData>) assets;
-            if (x.isEmpty()) {
-                return null;
-            } else {
-                return x.get(0);
-            }
+    }
+
+    /**
+     * Reads all the attributes of an asset, through the request cache if
+     * there is an ICS.
+     */
+    private AssetData read(final AssetId id) throws AssetAccessException {
+        if (ics != null) {
+            return RequestAssetCache.getInstance(ics).read(id);
         }
-        final Iterator<AssetData> i = assets.iterator();
-        if (i.hasNext()) {
-            return i.next();
+        for (final AssetData assetData : getAssetDataManager().read(Collections.singletonList(id))) {
+            return assetData; // first one wins
         }
         return null;
     }
 
+    /**
+     * Reads the listed attributes of an asset, through the request cache if
+     * there is an ICS.
+     */
+    private AssetData readAttributes(final AssetId id, final String... attributes) throws AssetAccessException {
+        if (ics != null) {
+            return RequestAssetCache.getInstance(ics).read(id, attributes);
+        }
+        return getAssetDataManager().readAttributes(id, Arrays.asList(attributes));
+    }
+
     /**
      * @return the manager
      */
@@ -336,31 +333,11 @@ public class AssetAccessTemplate {
      * @return the assetdata for this id
      */
     public AssetData readAsset(final AssetId id) {
-
-        final AssetDataManager m = getAssetDataManager();
-
-        Iterable<AssetData> assets;
         try {
-            assets = m.read(Collections.singletonList(id));
+            return read(id);
         } catch (final AssetAccessException e) {
             throw new RuntimeAssetAccessException(e);
         }
-        if (assets == null) {
-            return null;
-        }
-        if (assets instanceof List<?>) {
-            final List<AssetData> x = (List<AssetData>) assets;
-            if (x.isEmpty()) {
-                return null;
-            } else {
-                return x.get(0);
-            }
-        }
-        final Iterator<AssetData> i = assets.iterator();
-        if (i.hasNext()) {
-            return i.next();
-        }
-        return null;
     }
 
     /**
@@ -16,23 +16,22 @@
 
 package com.fatwire.gst.foundation.facade.assetapi;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Util.ftErrors;
 
 import com.fatwire.assetapi.common.AssetAccessException;
 import com.fatwire.assetapi.data.AssetData;
-import com.fatwire.assetapi.data.AssetDataManager;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.CSRuntimeException;
 import com.fatwire.gst.foundation.facade.ics.ICSFactory;
-import com.fatwire.system.Session;
-import com.fatwire.system.SessionFactory;
 
 /**
- * Convenient shortcuts for working with AssetData objects
+ * Convenient shortcuts for working with AssetData objects. The methods taking
+ * ICS read through the {@link RequestAssetCache} of the request.
  * 
  * @author Tony Field
  * @author Dolf Dijkstra
@@ -76,10 +75,10 @@ public final class AssetDataUtils {
      * @return asset data, never null.
      */
     public static AssetData getAssetData(ICS ics, AssetId id) {
-        AssetDataManager mgr = (AssetDataManager) getSession(ics).getManager(AssetDataManager.class.getName());
         try {
-            for (AssetData data : mgr.read(Collections.singletonList(id))) {
-                return data; // first one wins
+            AssetData data = RequestAssetCache.getInstance(ics).read(id);
+            if (data != null) {
+                return data;
             }
         } catch (AssetAccessException e) {
             throw new CSRuntimeException("Failed to read attribute data: " + e, ftErrors.exceptionerr, e);
@@ -87,6 +86,26 @@ public final class AssetDataUtils {
         throw new CSRuntimeException("Asset not found: " + id, ftErrors.badparams);
     }
 
+    /**
+     * Read all attributes for the given asset ids with one call.
+     * 
+     * @param ics ICS context
+     * @param ids the asset ids
+     * @return asset data of the assets that were found.
+     */
+    public static List<AssetData> getAssetData(ICS ics, Collection<AssetId> ids) {
+        List<AssetData> result = new ArrayList<AssetData>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+        try {
+            result.addAll(RequestAssetCache.getInstance(ics).read(ids));
+        } catch (AssetAccessException e) {
+            throw new CSRuntimeException("Failed to read attribute data: " + e, ftErrors.exceptionerr, e);
+        }
+        return result;
+    }
+
     /**
      * Return the AssetData for the specified asset
      * 
@@ -108,9 +127,8 @@ public final class AssetDataUtils {
      * @return asset data
      */
     public static AssetData getAssetData(ICS ics, AssetId id, String... attributes) {
-        AssetDataManager mgr = (AssetDataManager) getSession(ics).getManager(AssetDataManager.class.getName());
         try {
-            return mgr.readAttributes(id, Arrays.asList(attributes));
+            return RequestAssetCache.getInstance(ics).read(id, attributes);
         } catch (AssetAccessException e) {
             throw new CSRuntimeException("Failed to read attribute data: " + e, ftErrors.exceptionerr, e);
         }
@@ -125,10 +143,9 @@ public final class AssetDataUtils {
      * @return asset data
      */
     public static AssetData getCurrentAssetData(ICS ics, String... attributes) {
-        AssetDataManager mgr = (AssetDataManager) getSession(ics).getManager(AssetDataManager.class.getName());
         try {
             AssetId id = AssetIdUtils.currentId(ics);
-            return mgr.readAttributes(id, Arrays.asList(attributes));
+            return RequestAssetCache.getInstance(ics).read(id, attributes);
         } catch (AssetAccessException e) {
             throw new CSRuntimeException("Failed to read attribute data: " + e, ftErrors.exceptionerr, e);
         }
@@ -143,11 +160,11 @@ public final class AssetDataUtils {
      * @return asset data
      */
     public static AssetData getCurrentAssetData(ICS ics) {
-        AssetDataManager mgr = (AssetDataManager) getSession(ics).getManager(AssetDataManager.class.getName());
         AssetId id = AssetIdUtils.currentId(ics);
         try {
-            for (AssetData data : mgr.read(Collections.singletonList(id))) {
-                return data; // first one wins
+            AssetData data = RequestAssetCache.getInstance(ics).read(id);
+            if (data != null) {
+                return data;
             }
         } catch (AssetAccessException e) {
             throw new CSRuntimeException("Failed to read attribute data: " + e, ftErrors.exceptionerr, e);
@@ -156,8 +173,4 @@ public final class AssetDataUtils {
 
     }
 
-    private static Session getSession(ICS ics) {
-        return SessionFactory.getSession(ics);
-    }
-
 }
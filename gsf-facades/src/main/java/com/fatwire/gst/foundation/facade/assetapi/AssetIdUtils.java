@@ -16,6 +16,12 @@
 
 package com.fatwire.gst.foundation.facade.assetapi;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.assetapi.data.AssetId;
@@ -141,4 +147,41 @@ public final class AssetIdUtils {
         return new AssetIdImpl(c, cid);
     }
 
+    /**
+     * Groups asset ids by asset type, keeping the order in which the types and
+     * ids are found.
+     * 
+     * @param ids the asset ids
+     * @return the lists of asset ids by asset type
+     */
+    public static Map<String, List<AssetId>> groupByType(Collection<AssetId> ids) {
+        Map<String, List<AssetId>> map = new LinkedHashMap<String, List<AssetId>>();
+        for (AssetId id : ids) {
+            List<AssetId> l = map.get(id.getType());
+            if (l == null) {
+                l = new ArrayList<AssetId>();
+                map.put(id.getType(), l);
+            }
+            l.add(id);
+        }
+        return map;
+    }
+
+    /**
+     * Formats the numeric ids of the assets as a comma separated list, to be
+     * used in an SQL IN clause.
+     * 
+     * @param ids the asset ids
+     * @return the ids, for instance <tt>1,2,3</tt>
+     */
+    public static String toIdList(Collection<AssetId> ids) {
+        StringBuilder b = new StringBuilder();
+        for (AssetId id : ids) {
+            if (b.length() > 0) {
+                b.append(',');
+            }
+            b.append(id.getId());
+        }
+        return b.toString();
+    }
 }
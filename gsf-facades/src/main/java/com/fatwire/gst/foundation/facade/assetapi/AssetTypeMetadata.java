@@ -0,0 +1,131 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable facts about the definition of an asset type: whether it is a flex
+ * type, its attribute type and the ids of its attributes, and the columns of
+ * its table.
+ *
+ * @since Oct 16, 2026
+ * @see AssetTypeMetadataCache
+ */
+public final class AssetTypeMetadata {
+    private final String assetType;
+    private final String attributeType;
+    private final Map<String, Long> attributeIds;
+    private final Set<String> columns;
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * @param assetType the asset type
+     * @param attributeType the flex attribute type, null for a basic type
+     * @param attributeIds the ids of the flex attributes by name, must not
+     *            be modified after this call
+     * @param columns the lower case column names of the asset type table,
+     *            must not be modified after this call
+     */
+    AssetTypeMetadata(final String assetType, final String attributeType, final Map<String, Long> attributeIds,
+            final Set<String> columns) {
+        this.assetType = assetType;
+        this.attributeType = attributeType;
+        this.attributeIds = Collections.unmodifiableMap(attributeIds);
+        this.columns = Collections.unmodifiableSet(columns);
+    }
+
+    public String getAssetType() {
+        return assetType;
+    }
+
+    /**
+     * @return true if this is a flex asset or flex group type.
+     */
+    public boolean isFlex() {
+        return attributeType != null;
+    }
+
+    /**
+     * @return the flex attribute type, or null for a basic asset type.
+     */
+    public String getAttributeType() {
+        return attributeType;
+    }
+
+    /**
+     * @return the name of the _Mungo table holding the attribute values, or
+     *         null for a basic asset type.
+     */
+    public String getMungoTable() {
+        return attributeType == null ? null : assetType + "_Mungo";
+    }
+
+    /**
+     * @param name the attribute name
+     * @return the id of the flex attribute, to be matched with cs_attrid, or
+     *         null if there is no such attribute.
+     */
+    public Long getAttributeId(final String name) {
+        return attributeIds.get(name);
+    }
+
+    /**
+     * @return the ids of the flex attributes by name.
+     */
+    public Map<String, Long> getAttributeIds() {
+        return attributeIds;
+    }
+
+    /**
+     * @param name the column name, in any case
+     * @return true if the asset type table has the column.
+     */
+    public boolean hasColumn(final String name) {
+        return columns.contains(name.toLowerCase());
+    }
+
+    public boolean hasPath() {
+        return hasColumn("path");
+    }
+
+    public boolean hasTemplate() {
+        return hasColumn("template");
+    }
+
+    /**
+     * @return true if the assets can be tagged: the table has a gsttag column
+     *         or there is a gsttag flex attribute.
+     */
+    public boolean hasGstTag() {
+        return hasColumn("gsttag") || attributeIds.containsKey("gsttag");
+    }
+
+    /**
+     * @return the time these facts were read.
+     */
+    long getCreated() {
+        return created;
+    }
+
+    @Override
+    public String toString() {
+        return "AssetTypeMetadata [assetType=" + assetType + ", attributeType=" + attributeType + ", attributes="
+                + attributeIds.keySet() + ", columns=" + columns + "]";
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Interfaces.IList;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.cs.core.db.PreparedStmt;
+import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.IListUtils;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.IListIterable;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+
+/**
+ * Node-wide cache of {@link AssetTypeMetadata}. The facts of an asset type are
+ * read on first use; after that they are served from an immutable snapshot
+ * that is replaced as a whole when it changes, so reads do not lock.
+ * <p/>
+ * Asset type definitions only change during deployments. The facts of the
+ * types using an attribute type are dropped when an asset of that attribute
+ * type changes, as reported by
+ * {@link com.fatwire.gst.foundation.facade.assetapi.listener.CacheInvalidatingAssetEventListener}
+ * , and all facts are read again after a while to pick up new columns and
+ * types.
+ *
+ * @since Oct 16, 2026
+ */
+public final class AssetTypeMetadataCache {
+    private static final Log LOG = LogUtil.getLog(AssetTypeMetadataCache.class);
+
+    private static final AssetTypeMetadataCache INSTANCE = new AssetTypeMetadataCache(30 * 60 * 1000L);
+
+    private static final PreparedStmt FLEX_ATTR_TYPE = new PreparedStmt(
+            "SELECT assetattr FROM FlexAssetTypes WHERE assettype = ? UNION SELECT assetattr FROM FlexGroupTypes WHERE assettype = ?",
+            Arrays.asList("FlexAssetTypes", "FlexGroupTypes"));
+
+    static {
+        FLEX_ATTR_TYPE.setElement(0, "FlexAssetTypes", "assettype");
+        FLEX_ATTR_TYPE.setElement(1, "FlexGroupTypes", "assettype");
+    }
+
+    private final long ttl;
+    private volatile Map<String, AssetTypeMetadata> snapshot = Collections.emptyMap();
+
+    /**
+     * @return the cache for this node.
+     */
+    public static AssetTypeMetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param ttl the time in milliseconds the facts are kept
+     */
+    AssetTypeMetadataCache(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param ics Content Server context used to read the facts if they are
+     *            not cached
+     * @param assetType the asset type
+     * @return the facts of the asset type, never null.
+     */
+    public AssetTypeMetadata get(final ICS ics, final String assetType) {
+        final AssetTypeMetadata m = snapshot.get(assetType);
+        if (m != null && System.currentTimeMillis() - m.getCreated() < ttl) {
+            return m;
+        }
+        final AssetTypeMetadata loaded = load(ics, assetType);
+        synchronized (this) {
+            final Map<String, AssetTypeMetadata> next = new HashMap<String, AssetTypeMetadata>(snapshot);
+            next.put(assetType, loaded);
+            snapshot = Collections.unmodifiableMap(next);
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the facts of the asset types that use the attribute type of the
+     * asset, if the asset is a flex attribute.
+     *
+     * @param id the asset that was added, updated or deleted
+     */
+    public void assetChanged(final AssetId id) {
+        final String type = id.getType();
+        for (final AssetTypeMetadata m : snapshot.values()) {
+            if (type.equals(m.getAttributeType())) {
+                dropAttributeType(type);
+                return;
+            }
+        }
+    }
+
+    private synchronized void dropAttributeType(final String attributeType) {
+        final Map<String, AssetTypeMetadata> next = new HashMap<String, AssetTypeMetadata>(snapshot);
+        for (final AssetTypeMetadata m : snapshot.values()) {
+            if (attributeType.equals(m.getAttributeType())) {
+                next.remove(m.getAssetType());
+            }
+        }
+        snapshot = Collections.unmodifiableMap(next);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Dropped the asset type facts using attribute type " + attributeType);
+        }
+    }
+
+    /**
+     * Drops all the facts, they are read again on next use.
+     */
+    public synchronized void clear() {
+        snapshot = Collections.emptyMap();
+    }
+
+    private static AssetTypeMetadata load(final ICS ics, final String assetType) {
+        final StatementParam param = FLEX_ATTR_TYPE.newParam();
+        param.setString(0, assetType);
+        param.setString(1, assetType);
+        final Row row = SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param);
+        final String attributeType = row == null ? null : row.getString("assetattr");
+
+        final Map<String, Long> attributeIds = new HashMap<String, Long>();
+        if (attributeType != null) {
+            for (final Row r : SqlHelper.select(ics, attributeType, "SELECT id,name FROM " + attributeType
+                    + " WHERE status != 'VO'")) {
+                attributeIds.put(r.getString("name"), r.getLong("id"));
+            }
+        }
+
+        final Set<String> columns = new HashSet<String>();
+        final String listname = IListUtils.generateRandomListName();
+        final IList list = ics.CatalogDef(assetType, listname, new StringBuffer());
+        ics.RegisterList(listname, null);
+        if (list != null) {
+            for (final Row r : new IListIterable(list)) {
+                columns.add(r.getString("COLNAME").toLowerCase());
+            }
+        }
+        ics.ClearErrno();
+
+        final AssetTypeMetadata m = new AssetTypeMetadata(assetType, attributeType, attributeIds, columns);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + m);
+        }
+        return m;
+    }
+}
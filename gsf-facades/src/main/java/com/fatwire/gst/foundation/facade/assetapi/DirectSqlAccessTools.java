@@ -16,9 +16,11 @@
 
 package com.fatwire.gst.foundation.facade.assetapi;
 
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -46,46 +48,57 @@ public final class DirectSqlAccessTools {
         this.ics = ics;
     }
 
-    public boolean isFlex(AssetId id) {
-        StatementParam param = FLEX_ATTR_TYPE.newParam();
-        param.setString(0, id.getType());
-        param.setString(1, id.getType());
-        return SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param) != null;
+    /**
+     * @param assetType the asset type
+     * @return the cached facts of the asset type definition.
+     * @see AssetTypeMetadataCache
+     */
+    public AssetTypeMetadata getAssetTypeMetadata(String assetType) {
+        return AssetTypeMetadataCache.getInstance().get(ics, assetType);
     }
 
-    private static final PreparedStmt FLEX_ATTR_TYPE = new PreparedStmt(
-            "SELECT assetattr FROM FlexAssetTypes WHERE assettype = ? UNION SELECT assetattr FROM FlexGroupTypes WHERE assettype = ?",
-            Arrays.asList("FlexAssetTypes", "FlexGroupTypes"));
+    public boolean isFlex(AssetId id) {
+        return getAssetTypeMetadata(id.getType()).isFlex();
+    }
 
-    static {
-        FLEX_ATTR_TYPE.setElement(0, "FlexAssetTypes", "assettype");
-        FLEX_ATTR_TYPE.setElement(1, "FlexGroupTypes", "assettype");
+    /**
+     * Tells if the asset type is a flex asset or flex group type and returns
+     * its attribute type in the same lookup.
+     * 
+     * @param assetType the asset type
+     * @return the flex attribute type, or null if the asset type is not a
+     *         flex type.
+     */
+    public String lookupFlexAttributeType(String assetType) {
+        return getAssetTypeMetadata(assetType).getAttributeType();
     }
 
     public String getFlexAttributeType(AssetId id) {
-        StatementParam param = FLEX_ATTR_TYPE.newParam();
-        param.setString(0, id.getType());
-        param.setString(1, id.getType());
-        Row row = SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param);
-        if (row == null) {
+        String attrType = lookupFlexAttributeType(id.getType());
+        if (attrType == null) {
             throw new IllegalArgumentException("Asset " + id + " is not a flex asset!");
         }
-        return row.getString("assetattr");
+        return attrType;
     }
-  
 
+    public String getFlexAttributeType(String assetType) {
+        String attrType = lookupFlexAttributeType(assetType);
+        if (attrType == null) {
+            throw new IllegalArgumentException("Asset type " + assetType + " is not a flex asset type!");
+        }
+        return attrType;
+    }
 
     public String getFlexAttributeValue(AssetId id, String attrName) {
-        // todo: medium: fix as this is very inefficient
-        String attrType = getFlexAttributeType(id);
-        PreparedStmt flexFields = new PreparedStmt("SELECT attr.name AS name, cmungo.stringvalue AS stringvalue "
-                + "FROM " + attrType + " attr, " + id.getType() + "_Mungo cmungo " + "WHERE cmungo.cs_ownerid = ? "
-                + "AND cmungo.cs_attrid = attr.id AND attr.name = ?", Arrays.asList(attrType, id.getType() + "_Mungo"));
-        flexFields.setElement(0, id.getType() + "_Mungo", "cs_ownerid");
-        flexFields.setElement(1, attrType, "name");
+        AssetTypeMetadata m = getFlexMetadata(id);
+        Long attrId = m.getAttributeId(attrName);
+        if (attrId == null)
+            return null;
+        // the attribute id is known, no need to join on the attribute table
+        PreparedStmt flexFields = getAttributeValueStmt(m.getMungoTable(), 1);
         StatementParam param = flexFields.newParam();
         param.setLong(0, id.getId());
-        param.setString(1, attrName);
+        param.setLong(1, attrId);
         Row r = SqlHelper.selectSingle(ics, flexFields, param);
         if (r == null)
             return null;
@@ -94,37 +107,71 @@ public final class DirectSqlAccessTools {
     }
 
     public Map<String, String> getFlexAttributeValues(AssetId id, String... attrName) {
-        // todo: medium: fix as this is very inefficient
         if (attrName == null || attrName.length == 0)
             throw new IllegalArgumentException("attrName must not be null or zero-length array.");
-        String attrType = getFlexAttributeType(id);
-        StringBuilder sql = new StringBuilder("SELECT attr.name AS name, cmungo.stringvalue AS stringvalue FROM ")
-                .append(attrType).append(" attr, ").append(id.getType())
-                .append("_Mungo cmungo WHERE cmungo.cs_ownerid = ? AND cmungo.cs_attrid = attr.id AND attr.name IN (");
-
-        for (int num = 0; num < attrName.length; num++) {
-            if (num > 0)
-                sql.append(",");
-            sql.append("?");
+        AssetTypeMetadata m = getFlexMetadata(id);
+        Map<Long, String> names = new HashMap<Long, String>();
+        for (String name : attrName) {
+            Long attrId = m.getAttributeId(name);
+            if (attrId != null) {
+                names.put(attrId, name);
+            }
         }
-
-        sql.append(")");
-
-        PreparedStmt flexFields = new PreparedStmt(sql.toString(), Arrays.asList(id.getType(),attrType, id.getType() + "_Mungo"));
-        flexFields.setElement(0, id.getType() + "_Mungo", "cs_ownerid");
-        for (int num = 0; num < attrName.length; num++) {
-            flexFields.setElement(num + 1, attrType, "name");
+        Map<String, String> map = new HashMap<String, String>();
+        if (names.isEmpty()) {
+            return map;
         }
 
+        PreparedStmt flexFields = getAttributeValueStmt(m.getMungoTable(), names.size());
         StatementParam param = flexFields.newParam();
         param.setLong(0, id.getId());
-        for (int num = 0; num < attrName.length; num++) {
-            param.setString(num + 1, attrName[num]);
+        int num = 1;
+        for (Long attrId : names.keySet()) {
+            param.setLong(num++, attrId);
         }
-        Map<String, String> map = new HashMap<String, String>();
         for (Row r : SqlHelper.select(ics, flexFields, param)) {
-            map.put(r.getString("name"), r.getString("stringvalue"));
+            map.put(names.get(r.getLong("cs_attrid")), r.getString("stringvalue"));
         }
         return map;
     }
+
+    private AssetTypeMetadata getFlexMetadata(AssetId id) {
+        AssetTypeMetadata m = getAssetTypeMetadata(id.getType());
+        if (!m.isFlex()) {
+            throw new IllegalArgumentException("Asset " + id + " is not a flex asset!");
+        }
+        return m;
+    }
+
+    /**
+     * The statements only depend on the _Mungo table and the number of
+     * attributes, so they are built once for this node.
+     */
+    private static final ConcurrentMap<String, PreparedStmt> ATTR_VALUE_STMTS = new ConcurrentHashMap<String, PreparedStmt>();
+
+    private static PreparedStmt getAttributeValueStmt(String mungoTable, int attrCount) {
+        String key = mungoTable + ":" + attrCount;
+        PreparedStmt stmt = ATTR_VALUE_STMTS.get(key);
+        if (stmt == null) {
+            StringBuilder sql = new StringBuilder("SELECT cs_attrid, stringvalue FROM ").append(mungoTable).append(
+                    " WHERE cs_ownerid = ? AND cs_attrid");
+            if (attrCount == 1) {
+                sql.append(" = ?");
+            } else {
+                sql.append(" IN (");
+                for (int num = 0; num < attrCount; num++) {
+                    if (num > 0)
+                        sql.append(",");
+                    sql.append("?");
+                }
+                sql.append(")");
+            }
+            stmt = new PreparedStmt(sql.toString(), Collections.singletonList(mungoTable));
+            for (int num = 0; num <= attrCount; num++) {
+                stmt.setElement(num, mungoTable, num == 0 ? "cs_ownerid" : "cs_attrid");
+            }
+            ATTR_VALUE_STMTS.put(key, stmt);
+        }
+        return stmt;
+    }
 }
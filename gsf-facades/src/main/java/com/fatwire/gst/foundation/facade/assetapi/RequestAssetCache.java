@@ -0,0 +1,300 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.common.AssetAccessException;
+import com.fatwire.assetapi.data.AssetData;
+import com.fatwire.assetapi.data.AssetDataManager;
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.fatwire.system.SessionFactory;
+
+/**
+ * Cache of the AssetData read during one request, kept on the ICS object pool
+ * so that all the components rendering a page share it. Reads through
+ * {@link AssetAccessTemplate} and {@link AssetDataUtils} consult it.
+ * <p/>
+ * An asset that is read with a list of attributes and later again with more
+ * attributes is only read for the attributes that were not read before. The
+ * AssetData that is returned in that case holds all the attributes read so
+ * far.
+ * <p/>
+ * Assets served from the cache have their dependency logged with
+ * {@link LogDep}, as the asset api would have done when reading them, so that
+ * each pagelet records the assets it uses.
+ * <p/>
+ * This class is not thread safe, like the ICS it is attached to.
+ *
+ * @since Oct 16, 2026
+ */
+public final class RequestAssetCache {
+    private static final Log LOG = LogUtil.getLog(RequestAssetCache.class);
+
+    private static final String KEY = RequestAssetCache.class.getName();
+
+    private final ICS ics;
+    private AssetDataManager assetDataManager;
+    private final Map<AssetId, Entry> entries = new HashMap<AssetId, Entry>();
+    private int hits;
+    private int misses;
+
+    /**
+     * @param ics Content Server context
+     * @return the cache of this request, created on first use.
+     */
+    public static RequestAssetCache getInstance(final ICS ics) {
+        if (ics == null) {
+            throw new IllegalArgumentException("ics must not be null.");
+        }
+        final Object o = ics.GetObj(KEY);
+        if (o instanceof RequestAssetCache) {
+            return (RequestAssetCache) o;
+        }
+        final RequestAssetCache cache = new RequestAssetCache(ics);
+        ics.SetObj(KEY, cache);
+        return cache;
+    }
+
+    /**
+     * Removes an asset from the cache of the request, if there is one. To be
+     * called when the asset is saved or deleted during the request.
+     *
+     * @param ics Content Server context
+     * @param id the asset that changed
+     */
+    public static void assetChanged(final ICS ics, final AssetId id) {
+        final Object o = ics == null ? null : ics.GetObj(KEY);
+        if (o instanceof RequestAssetCache) {
+            ((RequestAssetCache) o).entries.remove(id);
+        }
+    }
+
+    private RequestAssetCache(final ICS ics) {
+        this.ics = ics;
+    }
+
+    /**
+     * Reads the asset with all its attributes.
+     *
+     * @param id the asset id
+     * @return the asset data, null if the asset is not found
+     * @throws AssetAccessException
+     */
+    public AssetData read(final AssetId id) throws AssetAccessException {
+        final Entry e = entries.get(id);
+        if (e != null && e.full != null) {
+            hit(id);
+            return e.full;
+        }
+        misses++;
+        AssetData data = null;
+        for (final AssetData d : getAssetDataManager().read(Collections.singletonList(id))) {
+            data = d; // first one wins
+            break;
+        }
+        if (data != null) {
+            entry(id).full = data;
+        }
+        return data;
+    }
+
+    /**
+     * Reads the asset with all its attributes, the assets that are not
+     * cached are read with one call.
+     *
+     * @param ids the asset ids
+     * @return the asset data of the assets that are found.
+     * @throws AssetAccessException
+     */
+    public List<AssetData> read(final Collection<AssetId> ids) throws AssetAccessException {
+        final List<AssetData> result = new ArrayList<AssetData>(ids.size());
+        final List<AssetId> toRead = new ArrayList<AssetId>();
+        for (final AssetId id : ids) {
+            final Entry e = entries.get(id);
+            if (e != null && e.full != null) {
+                hit(id);
+                result.add(e.full);
+            } else {
+                toRead.add(id);
+            }
+        }
+        if (!toRead.isEmpty()) {
+            misses += toRead.size();
+            for (final AssetData data : getAssetDataManager().read(toRead)) {
+                entry(data.getAssetId()).full = data;
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the listed attributes of an asset. Only the attributes that were
+     * not read before during this request are read.
+     *
+     * @param id the asset id
+     * @param attributes the attribute names
+     * @return the asset data, holding at least the listed attributes.
+     * @throws AssetAccessException
+     */
+    public AssetData read(final AssetId id, final String... attributes) throws AssetAccessException {
+        final Entry e = entries.get(id);
+        if (e != null && e.full != null) {
+            hit(id);
+            return e.full;
+        }
+        final List<String> missing = new ArrayList<String>(attributes.length);
+        for (final String name : attributes) {
+            if (e == null || !e.byAttribute.containsKey(name)) {
+                missing.add(name);
+            }
+        }
+        if (e != null && missing.isEmpty()) {
+            hit(id);
+            return e.view();
+        }
+        misses++;
+        final AssetData data = getAssetDataManager().readAttributes(id, missing);
+        if (data == null) {
+            return null;
+        }
+        final Entry entry = e == null ? entry(id) : e;
+        entry.add(data, missing);
+        return entry.view();
+    }
+
+    /**
+     * @return the number of reads served from the cache.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of reads that went to the asset api.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestAssetCache [assets=" + entries.size() + ", hits=" + hits + ", misses=" + misses + "]";
+    }
+
+    private void hit(final AssetId id) {
+        hits++;
+        LogDep.logDep(ics, id);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Read " + id + " from the request cache, " + this);
+        }
+    }
+
+    private Entry entry(final AssetId id) {
+        Entry e = entries.get(id);
+        if (e == null) {
+            e = new Entry();
+            entries.put(id, e);
+        }
+        return e;
+    }
+
+    private AssetDataManager getAssetDataManager() {
+        if (assetDataManager == null) {
+            assetDataManager = (AssetDataManager) SessionFactory.getSession(ics).getManager(
+                    AssetDataManager.class.getName());
+        }
+        return assetDataManager;
+    }
+
+    /**
+     * The reads of one asset: the read of all attributes, or the reads of
+     * lists of attributes.
+     */
+    private static final class Entry {
+        private AssetData full;
+        private final List<AssetData> reads = new ArrayList<AssetData>(2);
+        private final Map<String, AssetData> byAttribute = new HashMap<String, AssetData>();
+        private AssetData view;
+
+        void add(final AssetData data, final List<String> attributes) {
+            reads.add(data);
+            for (final String name : attributes) {
+                byAttribute.put(name, data);
+            }
+            view = null;
+        }
+
+        AssetData view() {
+            if (view == null) {
+                view = reads.size() == 1 ? reads.get(0) : merge(reads, byAttribute);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * @return an AssetData that answers for an attribute with the read that
+     *         holds the attribute and for everything else with the first read.
+     */
+    private static AssetData merge(final List<AssetData> reads, final Map<String, AssetData> byAttribute) {
+        final AssetData first = reads.get(0);
+        final Map<String, AssetData> attributes = new HashMap<String, AssetData>(byAttribute);
+        final InvocationHandler handler = new InvocationHandler() {
+
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                Object target = first;
+                if ("getAttributeData".equals(method.getName()) && args != null && args.length > 0
+                        && args[0] instanceof String && attributes.containsKey(args[0])) {
+                    target = attributes.get(args[0]);
+                } else if ("getAttributeNames".equals(method.getName()) && (args == null || args.length == 0)) {
+                    final Set<String> names = new LinkedHashSet<String>();
+                    for (final AssetData read : reads) {
+                        names.addAll(read.getAttributeNames());
+                    }
+                    return new ArrayList<String>(names);
+                } else if ("toString".equals(method.getName()) && (args == null || args.length == 0)) {
+                    return "merged " + first + " " + attributes.keySet();
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (final InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (AssetData) Proxy.newProxyInstance(AssetData.class.getClassLoader(),
+                new Class<?>[] { AssetData.class }, handler);
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -111,6 +112,18 @@ public class MappedAssetAccessTemplate<T> extends AssetAccessTemplate {
         return AssetRelationTreeUtils.getParents(ics, id, associationName);
     }
 
+    /**
+     * Read the assets that are parents of each of the assets given the specified
+     * association name or names, with one query for all of them.  Note this can
+     * result in an unknown dependency
+     * @param ids the child assets
+     * @param associationName the association name or names to be used to filter parent query.
+     * @return the parents by child; never null.
+     */
+    public Map<AssetId, Collection<AssetId>> readParentAssetIds(final Collection<AssetId> ids, final String ... associationName) {
+        return AssetRelationTreeUtils.getParents(ics, ids, associationName);
+    }
+
     /**
      * Read the assets that are parents of the current asset given the specified
      * association name or names.  Note this can result in an unknown dependency
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi.listener;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadataCache;
+import com.fatwire.gst.foundation.facade.assetapi.RequestAssetCache;
+import com.fatwire.gst.foundation.facade.install.AssetListenerInstall;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.asset.AssetRelationTreeUtils;
+import com.fatwire.gst.foundation.facade.runtag.siteplan.SitePlanIndex;
+import com.openmarket.basic.event.AbstractAssetEventListener;
+
+/**
+ * Blocking AssetEventListener that keeps the caches of the facades current.
+ * Changed flex attributes are dropped from the {@link AssetTypeMetadataCache},
+ * the changed asset is dropped from the {@link RequestAssetCache} of the
+ * request, changed pages are read again into the {@link SitePlanIndex} and
+ * the AssetRelationTree parents looked up during the request are forgotten.
+ * <p/>
+ * It is registered once in the AssetListener_reg table, so this runs once per
+ * event regardless of the number of other listeners.
+ * 
+ * @since Oct 16, 2026
+ */
+public class CacheInvalidatingAssetEventListener extends AbstractAssetEventListener {
+	private static final Log LOG = LogUtil.getLog(CacheInvalidatingAssetEventListener.class);
+
+	private ICS ics;
+
+	@Override
+	public void assetAdded(final AssetId id) {
+		assetChanged(id);
+	}
+
+	@Override
+	public void assetDeleted(final AssetId id) {
+		assetChanged(id);
+	}
+
+	@Override
+	public void assetUpdated(final AssetId id) {
+		assetChanged(id);
+	}
+
+	private void assetChanged(final AssetId id) {
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("Invalidating the caches for " + id);
+		}
+		AssetTypeMetadataCache.getInstance().assetChanged(id);
+		RequestAssetCache.assetChanged(ics, id);
+		SitePlanIndex.getInstance().assetChanged(ics, id);
+		AssetRelationTreeUtils.clearParents(ics);
+	}
+
+	/**
+	 * Install self into AssetListener_reg table
+	 */
+	public void install(final ICS ics) {
+		AssetListenerInstall.register(ics, getClass().getName(), true);
+	}
+
+	public boolean isInstalled(final ICS ics) {
+		return AssetListenerInstall.isRegistered(ics, getClass().getName());
+	}
+
+	@Override
+	public void init(final ICS ics) {
+		this.ics = ics;
+	}
+
+}
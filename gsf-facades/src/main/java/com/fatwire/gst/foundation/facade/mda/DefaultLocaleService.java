@@ -604,7 +604,7 @@ public class DefaultLocaleService implements LocaleService {
      * 
      * @return collection of asset identifiers of the preferred locales
      */
-    protected final Collection<AssetId> getPreferredLocales() {
+    public final Collection<AssetId> getPreferredLocales() {
         AssetId result = getExplicitlySpecifiedLocale();
         if (result != null)
             return Collections.singleton(result);
@@ -20,8 +20,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.FTValList;
 import COM.FutureTense.Interfaces.ICS;
@@ -33,7 +36,7 @@ import com.fatwire.gst.foundation.CSRuntimeException;
 import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
 import com.fatwire.gst.foundation.facade.sql.Row;
-import com.fatwire.gst.foundation.facade.sql.TreeHelper;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 import com.openmarket.xcelerate.asset.AssetIdImpl;
 import com.openmarket.xcelerate.publish.Render;
 
@@ -52,6 +55,11 @@ public final class AssetRelationTreeUtils {
 
     private static final Log LOG = LogFactory.getLog(AssetRelationTreeUtils.class);
 
+    /**
+     * The maximum number of children in one query.
+     */
+    public static final int IN_LIST_SIZE = 500;
+
     /**
      * Get all of the parent assets in the AssetRelationTree for the specified
      * asset. Association name is required, but expectedParentType is an
@@ -160,40 +168,90 @@ public final class AssetRelationTreeUtils {
      * @param child           asset id that will have its parents retrieved
      * @param associationName name of association to use for lookup.  May not ever be null.
      * @return list of parents, never null.
+     * @see #getParents(ICS, Collection, String[])
      */
     public static Collection<AssetId> getParents(ICS ics, AssetId child, String... associationName) {
 
         // validate input
-        if (ics == null) throw new IllegalArgumentException("ICS cannot be null");
         if (child == null) throw new IllegalArgumentException("Child asset id is required");
-        if (associationName == null) throw new IllegalArgumentException("Association name may not be null");
 
-        List<String> assocNames = Arrays.asList(associationName); // so lame...
+        return getParents(ics, Collections.singletonList(child), associationName).get(child);
+    }
+
+    /**
+     * Look up parents in Asset Relation Tree for all the specified children at once, with one query per
+     * {@link #IN_LIST_SIZE} children.  The parents are remembered for the rest of the request, so that a child is
+     * only looked up once for the same association names.  Records asset dependencies as required (either a qualified
+     * or an unqualified unknowndeps).
+     *
+     * @param ics             context
+     * @param children        asset ids that will have their parents retrieved
+     * @param associationName name of association to use for lookup.  May not ever be null.
+     * @return the parents by child, with an entry for every child; never null.
+     */
+    public static Map<AssetId, Collection<AssetId>> getParents(ICS ics, Collection<AssetId> children, String... associationName) {
 
-        Collection<AssetId> parents = new HashSet<AssetId>();
+        // validate input
+        if (ics == null) throw new IllegalArgumentException("ICS cannot be null");
+        if (children == null) throw new IllegalArgumentException("Child asset ids are required");
+        if (associationName == null) throw new IllegalArgumentException("Association name may not be null");
 
-        for (Row childInfo : TreeHelper.findNode(ics, "AssetRelationTree", child)) {
+        List<String> assocNames = Arrays.asList(associationName);
+        Map<AssetId, Collection<AssetId>> memo = ParentMemo.find(ics).get(assocNames);
 
-            // right assoc name?
-            String ncode = childInfo.getString("ncode");
-            if (!assocNames.contains(ncode)) {
-                if (LOG.isTraceEnabled())
-                    LOG.trace("Asset " + child + " with node " + childInfo.getString("nid") + " is not the child of any other asset using the association name " + assocNames + ". (This node is for the name " + ncode + ".)");
-                // nope...
-                continue;
+        Map<AssetId, Collection<AssetId>> result = new LinkedHashMap<AssetId, Collection<AssetId>>();
+        List<AssetId> toRead = new ArrayList<AssetId>();
+        for (AssetId child : children) {
+            Collection<AssetId> parents = memo.get(child);
+            if (parents == null) {
+                parents = new HashSet<AssetId>();
+                memo.put(child, parents);
+                toRead.add(child);
             }
+            result.put(child, parents);
+        }
 
-            // Yup. Find its parent.
-            for (Row parentInfo : TreeHelper.findParents(ics, "AssetRelationTree", childInfo.getString("nid"))) {
-                AssetId parent = AssetIdUtils.createAssetId(parentInfo.getString("otype"), parentInfo.getString("oid"));
-                if (LOG.isTraceEnabled())
-                    LOG.trace("Found parent " + parent + " of child " + child + " with association name " + ncode);
-                parents.add(parent);
+        if (!toRead.isEmpty() && !assocNames.isEmpty()) {
+            StringBuilder codes = new StringBuilder();
+            for (String name : assocNames) {
+                if (codes.length() > 0) codes.append(',');
+                codes.append(SqlHelper.quote(name));
+            }
+            for (int i = 0; i < toRead.size(); i += IN_LIST_SIZE) {
+                List<AssetId> chunk = toRead.subList(i, Math.min(i + IN_LIST_SIZE, toRead.size()));
+                Map<Long, List<AssetId>> byId = new HashMap<Long, List<AssetId>>();
+                for (AssetId child : chunk) {
+                    List<AssetId> l = byId.get(child.getId());
+                    if (l == null) {
+                        l = new ArrayList<AssetId>(1);
+                        byId.put(child.getId(), l);
+                    }
+                    l.add(child);
+                }
+                String sql = "SELECT c.otype AS cotype, c.oid AS coid, c.ncode AS ncode, p.otype AS potype, p.oid AS poid"
+                        + " FROM AssetRelationTree c, AssetRelationTree p WHERE c.oid IN (" + AssetIdUtils.toIdList(chunk)
+                        + ") AND c.ncode IN (" + codes + ") AND p.nid = c.nparentid";
+                for (Row row : SqlHelper.select(ics, "AssetRelationTree", sql)) {
+                    List<AssetId> l = byId.get(row.getLong("coid"));
+                    if (l == null) continue;
+                    String otype = row.getString("cotype");
+                    for (AssetId child : l) {
+                        if (child.getType().equals(otype)) {
+                            AssetId parent = new AssetIdImpl(row.getString("potype"), row.getLong("poid"));
+                            if (LOG.isTraceEnabled())
+                                LOG.trace("Found parent " + parent + " of child " + child + " with association name " + row.getString("ncode"));
+                            result.get(child).add(parent);
+                        }
+                    }
+                }
             }
         }
 
-        // log dep on child asset
-        LogDep.logDep(ics, child);
+        // log dep on child assets, and hand out copies of the remembered parents
+        for (Map.Entry<AssetId, Collection<AssetId>> e : result.entrySet()) {
+            LogDep.logDep(ics, e.getKey());
+            e.setValue(new HashSet<AssetId>(e.getValue()));
+        }
 
         // log dep on context
         // todo: inspect the specified association definitions in "associationName" and only
@@ -201,9 +259,48 @@ public final class AssetRelationTreeUtils {
         Render.UnknownDeps(ics);
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Looked up child asset " + child + " in AssetRelationTree for parents with the association names " + Arrays.asList(associationName) + " and found " + parents.size() + " results.  Details: " + (LOG.isTraceEnabled() ? parents : ""));
+            LOG.debug("Looked up " + result.size() + " child assets in AssetRelationTree for parents with the association names " + assocNames + ", " + toRead.size() + " of them with a query.  Details: " + (LOG.isTraceEnabled() ? result : ""));
+        }
+
+        return result;
+    }
+
+    /**
+     * Forgets the parents looked up during this request, to be called when assets or their associations change.
+     *
+     * @param ics context
+     */
+    public static void clearParents(ICS ics) {
+        if (ics != null) {
+            ics.SetObj(ParentMemo.KEY, null);
         }
+    }
+
+    /**
+     * The parents looked up during a request, by association names and child, kept on the ICS object pool.
+     */
+    private static final class ParentMemo {
+        private static final String KEY = ParentMemo.class.getName();
+
+        private final Map<List<String>, Map<AssetId, Collection<AssetId>>> parents = new HashMap<List<String>, Map<AssetId, Collection<AssetId>>>();
 
-        return parents;
+        static ParentMemo find(ICS ics) {
+            Object o = ics.GetObj(KEY);
+            if (o instanceof ParentMemo) {
+                return (ParentMemo) o;
+            }
+            ParentMemo memo = new ParentMemo();
+            ics.SetObj(KEY, memo);
+            return memo;
+        }
+
+        Map<AssetId, Collection<AssetId>> get(List<String> assocNames) {
+            Map<AssetId, Collection<AssetId>> m = parents.get(assocNames);
+            if (m == null) {
+                m = new HashMap<AssetId, Collection<AssetId>>();
+                parents.put(new ArrayList<String>(assocNames), m);
+            }
+            return m;
+        }
     }
 }
@@ -18,12 +18,17 @@ package com.fatwire.gst.foundation.facade.runtag.asset;
 
 import static COM.FutureTense.Interfaces.Utilities.goodString;
 
+import java.sql.Timestamp;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.DateUtils;
@@ -40,10 +45,13 @@ import com.fatwire.gst.foundation.IListUtils;
 import com.fatwire.gst.foundation.facade.assetapi.AssetDataUtils;
 import com.fatwire.gst.foundation.facade.assetapi.AssetIdIList;
 import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadata;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadataCache;
 import com.fatwire.gst.foundation.facade.assetapi.AttributeDataUtils;
 import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
 import com.fatwire.gst.foundation.facade.sql.IListIterable;
 import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 import com.openmarket.xcelerate.publish.PubConstants;
 
 /**
@@ -64,6 +72,18 @@ public final class FilterAssetsByDate {
 
     private static String[] jdbcDateFormatStrings = { "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm:ss.SSS" };
 
+    /**
+     * The maximum number of assets in one query for their dates.
+     */
+    private static final int IN_LIST_SIZE = 500;
+
+    /**
+     * The maximum number of parsed JDBC dates that are remembered.
+     */
+    private static final int MAX_PARSED_DATES = 10000;
+
+    private static final ConcurrentMap<String, Long> parsedDates = new ConcurrentHashMap<String, Long>();
+
     /**
      * Filter a single asset, checking to see if it's valid on the given date.
      * If no date is specified, then the date used is the one used by the
@@ -165,6 +185,91 @@ public final class FilterAssetsByDate {
         return olist;
     }
 
+    /**
+     * Filter a collection of assets, checking to see if they're valid on the
+     * given date, without running the asset:filterassetsbydate tag. The
+     * startdate and enddate of the assets are read with one query per asset
+     * type and per {@link #IN_LIST_SIZE} assets, and compared in Java. The
+     * same cache dependencies are recorded as by
+     * {@link #filter(ICS, Date, Collection)}.
+     * <p/>
+     * If no date is specified and site preview is set to
+     * <tt>contentmanagement</tt>, the preview date of the user session applies
+     * and this falls back to the tag.
+     * 
+     * @param ics ics context
+     * @param date override date
+     * @param list Collection of assetids.
+     * @return the Collection of asset filtered for the date, in the input
+     *         order.
+     */
+    public static Collection<AssetId> filterByDateColumns(ICS ics, Date date, Collection<AssetId> list) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            // the tag does not filter when site preview is disabled
+            return new ArrayList<AssetId>(list);
+        }
+        final boolean delivery = PreviewContext.isSitePreviewDelivery(ics);
+        if (date == null && !delivery) {
+            return filter(ics, date, list);
+        }
+        final Map<AssetId, Date[]> dates = readDateColumns(ics, list);
+        final List<AssetId> olist = new ArrayList<AssetId>(list.size());
+        for (final AssetId id : list) {
+            final Date[] d = dates.get(id);
+            if (d == null) {
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Asset " + id + " is not found.");
+                }
+                continue;
+            }
+            if (isValidOnDate(ics, id, d[0], d[1], date)) {
+                olist.add(id);
+            }
+        }
+        return olist;
+    }
+
+    /**
+     * Reads the startdate and enddate of the assets, with one query per asset
+     * type and per {@link #IN_LIST_SIZE} assets. No cache dependencies are
+     * recorded; pass the dates to
+     * {@link #isValidOnDate(ICS, AssetId, Date, Date, Date)} to check them.
+     * 
+     * @param ics ics context
+     * @param list Collection of assetids.
+     * @return the startdate and enddate by asset, for the assets that exist.
+     *         The dates are null if not set.
+     */
+    public static Map<AssetId, Date[]> readDateColumns(ICS ics, Collection<AssetId> list) {
+        final Map<AssetId, Date[]> dates = new HashMap<AssetId, Date[]>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(list).entrySet()) {
+            final String type = e.getKey();
+            final List<AssetId> ids = e.getValue();
+            final AssetTypeMetadata m = AssetTypeMetadataCache.getInstance().get(ics, type);
+            final boolean hasStart = m.hasColumn("startdate");
+            final boolean hasEnd = m.hasColumn("enddate");
+            final String fields = "id" + (hasStart ? ",startdate" : "") + (hasEnd ? ",enddate" : "");
+            for (int i = 0; i < ids.size(); i += IN_LIST_SIZE) {
+                final List<AssetId> chunk = ids.subList(i, Math.min(i + IN_LIST_SIZE, ids.size()));
+                final Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+                for (final AssetId id : chunk) {
+                    byId.put(id.getId(), id);
+                }
+                for (final Row row : SqlHelper.select(ics, type, "SELECT " + fields + " FROM " + type
+                        + " WHERE id IN (" + AssetIdUtils.toIdList(chunk) + ")")) {
+                    final AssetId id = byId.get(row.getLong("id"));
+                    if (id != null) {
+                        final String sdate = hasStart ? row.getString("startdate") : null;
+                        final String edate = hasEnd ? row.getString("enddate") : null;
+                        dates.put(id, new Date[] { goodString(sdate) ? parseJdbcDate(sdate) : null,
+                                goodString(edate) ? parseJdbcDate(edate) : null });
+                    }
+                }
+            }
+        }
+        return dates;
+    }
+
     static private void logDependancy(ICS ics, AssetId id) {
 
         if (PreviewContext.isSitePreviewDelivery(ics)) {
@@ -173,14 +278,7 @@ public final class FilterAssetsByDate {
             if (pageData != null) {
                 String sdate = AttributeDataUtils.asString(pageData.getAttributeData("startdate"));
                 String edate = AttributeDataUtils.asString(pageData.getAttributeData("enddate"));
-
-                if (StringUtils.isNotBlank(sdate) || StringUtils.isNotBlank(edate)) {
-                    CacheManager.RecordItem(ics,
-                            PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR + id.getType(), null,
-                            sdate, edate);
-                } else
-                    CacheManager.RecordItem(ics,
-                            PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR + id.getType());
+                recordDependancy(ics, id, sdate, edate);
             }
         } else {
             CacheManager
@@ -190,6 +288,71 @@ public final class FilterAssetsByDate {
 
     }
 
+    static private void recordDependancy(ICS ics, AssetId id, String sdate, String edate) {
+        if (StringUtils.isNotBlank(sdate) || StringUtils.isNotBlank(edate)) {
+            CacheManager.RecordItem(ics, PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR + id.getType(),
+                    null, sdate, edate);
+        } else
+            CacheManager.RecordItem(ics, PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR + id.getType());
+    }
+
+    /**
+     * Checks if a single asset, of which the startdate and enddate are already
+     * known, is valid on the given date, without running the
+     * asset:filterassetsbydate tag. The same cache dependencies are recorded
+     * as by {@link #isValidOnDate(ICS, AssetId, Date)}.
+     * <p/>
+     * If no date is specified and site preview is set to
+     * <tt>contentmanagement</tt>, the preview date of the user session applies
+     * and this falls back to the tag.
+     * 
+     * @param ics context
+     * @param id input asset
+     * @param startDate the startdate of the asset, or null
+     * @param endDate the enddate of the asset, or null
+     * @param date override date
+     * @return true if the asset is valid, false otherwise.
+     */
+    public static boolean isValidOnDate(ICS ics, AssetId id, Date startDate, Date endDate, Date date) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            // the tag does not filter when site preview is disabled
+            return true;
+        }
+        final boolean delivery = PreviewContext.isSitePreviewDelivery(ics);
+        if (date == null && !delivery) {
+            return isValidOnDate(ics, id, null);
+        }
+        final boolean result = isDateWithinRange(startDate, date, endDate);
+        if (result) {
+            recordDependency(ics, id, startDate, endDate);
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Asset " + id + " is " + (result ? "" : "not ") + "valid on the effective date.");
+        }
+        return result;
+    }
+
+    /**
+     * Records the cache dependency on the asset that
+     * {@link #isValidOnDate(ICS, AssetId, Date, Date, Date)} records for a
+     * valid asset: with the startdate and enddate window if site preview is
+     * set to <tt>delivery</tt>.
+     * 
+     * @param ics context
+     * @param id the asset
+     * @param startDate the startdate of the asset, or null
+     * @param endDate the enddate of the asset, or null
+     */
+    public static void recordDependency(ICS ics, AssetId id, Date startDate, Date endDate) {
+        if (PreviewContext.isSitePreviewDelivery(ics)) {
+            recordDependancy(ics, id, formatJdbcDate(startDate), formatJdbcDate(endDate));
+        } else {
+            CacheManager.RecordItem(ics, PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR
+                    + id.getType());
+        }
+        ics.ClearErrno();
+    }
+
     /**
      * Method to check to see if a date falls between two dates. The comparison
      * date is a Date object, or null, in which case the current date is used.
@@ -234,18 +397,39 @@ public final class FilterAssetsByDate {
         }
     }
 
+    private static String formatJdbcDate(Date date) {
+        return date == null ? null : com.fatwire.cs.core.db.Util.formatJdbcDate(date);
+    }
+
     /**
      * Given an input string in JDBC form, parse it and return a date object.
+     * This method is thread safe; the dates that were parsed before are
+     * remembered, as the same dates tend to be parsed over and over again.
      * 
      * @param string jdbc date string in the form yyyy-MM-dd HH:mm:ss
      * @return Date
      * @throws IllegalArgumentException on failure
      */
     public static Date parseJdbcDate(String string) {
+        final Long parsed = parsedDates.get(string);
+        if (parsed != null) {
+            return new Date(parsed);
+        }
+        Date date;
         try {
-            return DateUtils.parseDate(string, jdbcDateFormatStrings);
-        } catch (ParseException e) {
-            throw new IllegalArgumentException("Failure parsing string " + string, e);
+            // thread safe, and without the SimpleDateFormat set up
+            date = new Date(Timestamp.valueOf(string.trim()).getTime());
+        } catch (IllegalArgumentException e) {
+            try {
+                date = DateUtils.parseDate(string, jdbcDateFormatStrings);
+            } catch (ParseException pe) {
+                throw new IllegalArgumentException("Failure parsing string " + string, pe);
+            }
+        }
+        if (parsedDates.size() >= MAX_PARSED_DATES) {
+            parsedDates.clear();
         }
+        parsedDates.put(string, date.getTime());
+        return date;
     }
 }
@@ -16,6 +16,8 @@
 
 package com.fatwire.gst.foundation.facade.runtag.siteplan;
 
+import java.util.List;
+
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Interfaces.IList;
 import COM.FutureTense.Util.ftErrors;
@@ -26,6 +28,7 @@ import com.fatwire.gst.foundation.IListUtils;
 import com.fatwire.gst.foundation.facade.runtag.AbstractTagRunner;
 import com.fatwire.gst.foundation.facade.runtag.asset.AssetLoadById;
 import com.fatwire.gst.foundation.facade.runtag.asset.GetSiteNode;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
 import com.openmarket.xcelerate.asset.AssetIdImpl;
 
 /**
@@ -77,10 +80,37 @@ public class NodePath extends AbstractTagRunner {
         }
     }
 
+    /**
+     * Return the assets on the path from the parent of the specified page to
+     * the root of the site plan tree, in the same order as the nodepath IList.
+     * The path is looked up in the {@link SitePlanIndex}, so this does not
+     * query the database once per level. A dependency is logged on the page and
+     * on every ancestor, as loading them would.
+     * 
+     * @param ics context
+     * @param page page asset ID
+     * @return the ancestors, including the publication at the root, or null
+     *         if the page is not placed exactly once in the site plan tree.
+     */
+    public static List<AssetId> getPathToRoot(ICS ics, AssetId page) {
+        final List<AssetId> path = SitePlanIndex.getInstance().getPathToRoot(ics, page);
+        if (path != null) {
+            LogDep.logDep(ics, page);
+            for (AssetId ancestor : path) {
+                LogDep.logDep(ics, ancestor);
+            }
+        }
+        return path;
+    }
+
     /**
      * Get the parent page in the site plan tree of the specified page. If the
      * page cannot be located in the site plan tree, an exception is thrown. If
      * the page has no parents in the site plan tree, an exception is thrown.
+     * <p/>
+     * The parent is looked up in the {@link SitePlanIndex}, logging a
+     * dependency on the page and the parent; only if the page is not found
+     * there the site plan tree is loaded with the siteplan tags.
      * 
      * @param ics ICS context
      * @param p ID of page asset to inspect
@@ -93,6 +123,13 @@ public class NodePath extends AbstractTagRunner {
         if (ics == null) {
             throw new IllegalArgumentException("Null ICS not allowed");
         }
+        final AssetId page = new AssetIdImpl("Page", p);
+        final AssetId parent = SitePlanIndex.getInstance().getParent(ics, page);
+        if (parent != null) {
+            LogDep.logDep(ics, page);
+            LogDep.logDep(ics, parent);
+            return parent;
+        }
         final String LOADED_PAGE_NAME = "__thePage";
         final String LOADED_SITE_PLAN_NODE = "__siteplan";
         final String CURRENT_PAGE_NODE_ID = "__nodeId";
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.runtag.siteplan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.cs.core.db.PreparedStmt;
+import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Node-wide index of the parent of every SitePlanTree node, read with one scan
+ * of the table. The path to the root of a page is answered from memory, with
+ * one lookup per level, instead of one query per level.
+ * <p/>
+ * The nodes of a Page or Publication are read again when that asset changes
+ * on this node. As a page that is moved keeps its node, its descendants follow
+ * without being read again. Pages moved on another cluster member, or
+ * published to this one, are only seen when the whole table is read again:
+ * after the time to live, one minute unless set with the
+ * {@link #TTL_PROPNAME} system property, and when a path runs into a node that
+ * is not in the index. The table is always read past the resultset cache.
+ *
+ * @since Oct 16, 2026
+ */
+public final class SitePlanIndex {
+    private static final Log LOG = LogUtil.getLog(SitePlanIndex.class);
+
+    /**
+     * Name of the system property holding the time to live of the index in
+     * seconds.
+     */
+    public static final String TTL_PROPNAME = "com.fatwire.gst.foundation.siteplan.index-ttl";
+
+    private static final SitePlanIndex INSTANCE = new SitePlanIndex(Long.getLong(TTL_PROPNAME, 60L) * 1000L);
+
+    private static final String ALL_SQL = "SELECT nid,nparentid,otype,oid FROM SitePlanTree";
+
+    private static final PreparedStmt OID_STMT = new PreparedStmt(
+            "SELECT nid,nparentid,otype,oid FROM SitePlanTree WHERE oid=?", Arrays.asList("SitePlanTree"));
+
+    static {
+        OID_STMT.setElement(0, "SitePlanTree", "oid");
+    }
+
+    /**
+     * Guards against a cycle in a corrupt tree.
+     */
+    private static final int MAX_DEPTH = 256;
+
+    private final long ttl;
+    private volatile State state;
+
+    /**
+     * @return the index for this node.
+     */
+    public static SitePlanIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param ttl the time in milliseconds after which the table is read again
+     */
+    SitePlanIndex(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the assets on the path from the parent of the asset to the root
+     * of the site plan, in the order of the siteplan:nodepath tag.
+     *
+     * @param ics Content Server context, used to read the table if needed
+     * @param asset the asset, usually a Page
+     * @return the ancestors, starting with the parent and ending with the
+     *         Publication, or null if the asset is not in the site plan or is
+     *         in it more than once.
+     */
+    public List<AssetId> getPathToRoot(final ICS ics, final AssetId asset) {
+        State s = getState(ics);
+        Node node = s.findSingle(asset);
+        if (node == null) {
+            return null;
+        }
+        List<AssetId> path = s.pathToRoot(node);
+        if (path == null) {
+            // a parent is missing, the index is behind the table
+            s = reload(ics);
+            node = s.findSingle(asset);
+            path = node == null ? null : s.pathToRoot(node);
+        }
+        return path;
+    }
+
+    /**
+     * @param ics Content Server context, used to read the table if needed
+     * @param asset the asset, usually a Page
+     * @return the parent of the asset in the site plan, or null if the asset
+     *         is a root, is not in the site plan or is in it more than once.
+     */
+    public AssetId getParent(final ICS ics, final AssetId asset) {
+        final List<AssetId> path = getPathToRoot(ics, asset);
+        return path == null || path.isEmpty() ? null : path.get(0);
+    }
+
+    /**
+     * Reads the nodes of the asset again if it is a Page or a Publication.
+     *
+     * @param ics Content Server context
+     * @param id the asset that was added, updated or deleted
+     */
+    public void assetChanged(final ICS ics, final AssetId id) {
+        final State s = state;
+        if (s == null || ics == null || !("Page".equals(id.getType()) || "Publication".equals(id.getType()))) {
+            return;
+        }
+        final List<Node> read = new ArrayList<Node>(1);
+        final StatementParam param = OID_STMT.newParam();
+        param.setLong(0, id.getId());
+        for (final Row row : SqlHelper.selectUncached(ics, OID_STMT, param)) {
+            read.add(new Node(row));
+        }
+        s.replace(id, read);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + read.size() + " SitePlanTree nodes for " + id);
+        }
+    }
+
+    /**
+     * Drops the index, the table is read again on next use.
+     */
+    public void clear() {
+        state = null;
+    }
+
+    private State getState(final ICS ics) {
+        final State s = state;
+        if (s != null && System.currentTimeMillis() - s.created < ttl) {
+            return s;
+        }
+        return reload(ics);
+    }
+
+    private synchronized State reload(final ICS ics) {
+        final State s = new State();
+        for (final Row row : SqlHelper.selectUncached(ics, "SitePlanTree", ALL_SQL)) {
+            s.add(new Node(row));
+        }
+        state = s;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + s.nodes.size() + " SitePlanTree nodes");
+        }
+        return s;
+    }
+
+    /**
+     * The nodes by node id and the node ids by object id.
+     */
+    private static final class State {
+        private final ConcurrentMap<Long, Node> nodes = new ConcurrentHashMap<Long, Node>();
+        private final ConcurrentMap<Long, List<Long>> byOid = new ConcurrentHashMap<Long, List<Long>>();
+        private final long created = System.currentTimeMillis();
+
+        void add(final Node node) {
+            nodes.put(node.nid, node);
+            final List<Long> nids = byOid.get(node.oid);
+            final List<Long> next = nids == null ? new ArrayList<Long>(1) : new ArrayList<Long>(nids);
+            next.add(node.nid);
+            byOid.put(node.oid, Collections.unmodifiableList(next));
+        }
+
+        synchronized void replace(final AssetId id, final List<Node> read) {
+            final List<Long> old = byOid.remove(id.getId());
+            if (old != null) {
+                for (final Long nid : old) {
+                    nodes.remove(nid);
+                }
+            }
+            for (final Node node : read) {
+                add(node);
+            }
+        }
+
+        List<Node> find(final AssetId id) {
+            final List<Long> nids = byOid.get(id.getId());
+            if (nids == null) {
+                return Collections.emptyList();
+            }
+            final List<Node> found = new ArrayList<Node>(nids.size());
+            for (final Long nid : nids) {
+                final Node n = nodes.get(nid);
+                if (n != null && n.is(id)) {
+                    found.add(n);
+                }
+            }
+            return found;
+        }
+
+        Node findSingle(final AssetId id) {
+            final List<Node> found = find(id);
+            return found.size() == 1 ? found.get(0) : null;
+        }
+
+        /**
+         * @return the ancestors of the node, or null if a parent is missing.
+         */
+        List<AssetId> pathToRoot(final Node node) {
+            final List<AssetId> path = new ArrayList<AssetId>();
+            long parent = node.parent;
+            while (parent > 0L) {
+                final Node n = nodes.get(parent);
+                if (n == null || path.size() >= MAX_DEPTH) {
+                    return null;
+                }
+                path.add(new AssetIdImpl(n.otype, n.oid));
+                parent = n.parent;
+            }
+            return path;
+        }
+    }
+
+    private static final class Node {
+        private final long nid;
+        private final long parent;
+        private final String otype;
+        private final long oid;
+
+        Node(final Row row) {
+            this.nid = row.getLong("nid");
+            final Long p = row.getLong("nparentid");
+            this.parent = p == null ? 0L : p;
+            this.otype = row.getString("otype");
+            this.oid = row.getLong("oid");
+        }
+
+        boolean is(final AssetId id) {
+            return oid == id.getId() && otype.equals(id.getType());
+        }
+    }
+}
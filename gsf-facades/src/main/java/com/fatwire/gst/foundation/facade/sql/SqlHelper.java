@@ -26,6 +26,7 @@ import java.sql.Struct;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 
@@ -34,6 +35,7 @@ import COM.FutureTense.Interfaces.IList;
 
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.cs.core.db.Util;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -85,6 +87,26 @@ public class SqlHelper {
      * @see ICS#SQL(String, String, String, int, boolean, StringBuffer)
      */
     public static final IListIterable select(final ICS ics, final String table, final String sql, final int limit) {
+        return select(ics, table, sql, limit, true);
+    }
+
+    /**
+     * Executes an ICS.SQL operation without the resultset cache, for reads
+     * that need to see the rows as they are in the database, also when they
+     * were written by another cluster member.
+     * 
+     * @param ics
+     * @param table tablename
+     * @param sql the sql statement, needs to start with 'select'
+     * @return never null, always an IListIterable
+     * @see ICS#SQL(String, String, String, int, boolean, StringBuffer)
+     */
+    public static final IListIterable selectUncached(final ICS ics, final String table, final String sql) {
+        return select(ics, table, sql, -1, false);
+    }
+
+    private static IListIterable select(final ICS ics, final String table, final String sql, final int limit,
+            final boolean cache) {
         final StringBuffer errstr = new StringBuffer();
         ics.ClearErrno();
         if (sql == null) {
@@ -94,7 +116,7 @@ public class SqlHelper {
             throw new IllegalArgumentException("Can only do select statements:" + sql);
         }
 
-        final IList i = ics.SQL(table, sql, null, limit, true, errstr);
+        final IList i = ics.SQL(table, sql, null, limit, cache, errstr);
         if (ics.GetErrno() == -101) {
             ics.ClearErrno();
         } else if (ics.GetErrno() != 0) {
@@ -147,6 +169,47 @@ public class SqlHelper {
         }
     }
 
+    /**
+     * Executes a batch of sql statements, other then SELECT statements, against
+     * the same table.
+     * <p/>
+     * flushes the table (ics.FlushCatalog()) once after the last statement
+     * 
+     * @param ics
+     * @param table tablename
+     * @param sql the sql statements, can not start with "select"
+     * @return the number of statements that failed
+     */
+    public static final int executeBatch(final ICS ics, final String table, final Collection<String> sql) {
+        if (sql == null) {
+            throw new NullPointerException("sql can not be null");
+        }
+        int failed = 0;
+        final StringBuffer errstr = new StringBuffer();
+        for (final String s : sql) {
+            if (s.toLowerCase().trim().startsWith("select")) {
+                throw new IllegalArgumentException("Can not do select statements:" + s);
+            }
+            ics.ClearErrno();
+            errstr.setLength(0);
+            ics.SQL(table, s, null, -1, false, true, errstr);
+            // update statements do not return an IList, cs signals this via
+            // errno -502
+            if (ics.GetErrno() != 0 && ics.GetErrno() != -502) {
+                failed++;
+                LOG.warn("ics.SQL returned " + ics.GetErrno() + " and errstr: " + errstr.toString() + " for " + s);
+            }
+        }
+        ics.ClearErrno();
+        if (!sql.isEmpty()) {
+            if (!ics.FlushCatalog(table)) {
+                LOG.warn("Flushing failed for table " + table + ". (" + ics.GetErrno() + ")");
+            }
+            ics.ClearErrno();
+        }
+        return failed;
+    }
+
     /**
      * Executes a PreparedStatement
      * 
@@ -157,8 +220,27 @@ public class SqlHelper {
      */
 
     public static final IListIterable select(final ICS ics, final PreparedStmt stmt, final StatementParam param) {
+        return select(ics, stmt, param, true);
+    }
 
-        final IList i = ics.SQL(stmt, param, true);
+    /**
+     * Executes a PreparedStatement without the resultset cache, for reads that
+     * need to see the rows as they are in the database.
+     * 
+     * @param ics
+     * @param stmt the PreparedStatement
+     * @param param the parameters of the statement
+     * @return never null, always an IListIterable
+     */
+    public static final IListIterable selectUncached(final ICS ics, final PreparedStmt stmt,
+            final StatementParam param) {
+        return select(ics, stmt, param, false);
+    }
+
+    private static IListIterable select(final ICS ics, final PreparedStmt stmt, final StatementParam param,
+            final boolean cache) {
+
+        final IList i = ics.SQL(stmt, param, cache);
         if (ics.GetErrno() != -101) { // no rows if fine
             ics.ClearErrno();
         } else if (ics.GetErrno() != 0) {
@@ -327,6 +409,20 @@ public class SqlHelper {
         return "'" + s.replace("'", "''") + "'";
     }
 
+    /**
+     * Formats a date as a JDBC timestamp escape literal for use in a SQL
+     * statement.
+     * 
+     * @param date the date to format
+     * @return the timestamp literal. Null dates are returned as NULL.
+     */
+    public static final String quote(final java.util.Date date) {
+        if (date == null) {
+            return "NULL";
+        }
+        return "{ts '" + Util.formatJdbcDate(date) + "'}";
+    }
+
     public static boolean tableExists(final ICS ics, final String table) {
             ics.CatalogDef(table, null, new StringBuffer());
             return ics.GetErrno() == 0;
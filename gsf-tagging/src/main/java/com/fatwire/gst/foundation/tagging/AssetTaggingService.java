@@ -93,6 +93,20 @@ public interface AssetTaggingService {
      */
     Collection<AssetId> lookupTaggedAssets(Tag tag);
 
+    /**
+     * Return a collection of assets that are tagged with all tags of
+     * <code>all</code>, with at least one of the tags of <code>any</code> and
+     * with none of the tags of <code>none</code>. Each argument may be null or
+     * empty, but <code>all</code> and <code>any</code> may not both be.
+     * 
+     * @param all tags that the assets must all have
+     * @param any tags that the assets must have at least one of
+     * @param none tags that the assets must not have
+     * @return collection of assets matching the tags. May return an empty
+     *         list; never returns null.
+     */
+    Collection<AssetId> lookupTaggedAssets(Collection<Tag> all, Collection<Tag> any, Collection<Tag> none);
+
     /**
      * Returns true if an asset is tagged, false otherwise
      * 
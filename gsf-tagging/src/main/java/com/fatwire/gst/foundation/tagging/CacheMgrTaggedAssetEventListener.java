@@ -21,7 +21,9 @@ import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.facade.assetapi.listener.RunOnceAssetEventListener;
 
 /**
- * Cache manager to be used to deal with cache updates
+ * Cache manager to be used to deal with cache updates. The tags of the changed
+ * assets are handed to the {@link TagCacheFlushDispatcher}, which flushes them
+ * together.
  * 
  * @author Tony Field
  * @author Dolf Dijkstra
@@ -44,7 +46,7 @@ public final class CacheMgrTaggedAssetEventListener extends RunOnceAssetEventLis
         AssetTaggingService svc = getService();
         if (svc.isTagged(assetId)) {
             Collection<Tag> tags = svc.getTags(assetId);
-            svc.clearCacheForTag(tags);
+            TagCacheFlushDispatcher.getInstance().submit(tags);
         }
     }
 
@@ -56,7 +58,7 @@ public final class CacheMgrTaggedAssetEventListener extends RunOnceAssetEventLis
         AssetTaggingService svc = getService();
         if (svc.isTagged(assetId)) {
             Collection<Tag> tags = svc.getTags(assetId);
-            svc.clearCacheForTag(tags);
+            TagCacheFlushDispatcher.getInstance().submit(tags);
         }
     }
 
@@ -68,7 +70,7 @@ public final class CacheMgrTaggedAssetEventListener extends RunOnceAssetEventLis
         AssetTaggingService svc = getService();
         if (svc.isTagged(assetId)) {
             Collection<Tag> tags = svc.getTags(assetId);
-            svc.clearCacheForTag(tags);
+            TagCacheFlushDispatcher.getInstance().submit(tags);
         }
     }
 
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Cache.CacheHelper;
+import COM.FutureTense.Cache.CacheManager;
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.facade.ics.ICSFactory;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+import static com.fatwire.gst.foundation.tagging.TagUtils.convertTagToCacheDepString;
+
+/**
+ * Node-wide dispatcher that coalesces the cache flushes for tags. The cache
+ * keys of the tags are collected for a short window after the first one
+ * arrives, and are then flushed from both engines at once, with one
+ * <tt>setPagesByID</tt> and one flush per engine, instead of one flush per
+ * asset event. A publish of thousands of assets that carry the same few tags
+ * thus costs a few flushes.
+ * <p/>
+ * The flush after the window runs on a background thread with an ICS of its
+ * own. A caller that knows a batch is complete can flush the collected keys
+ * right away with {@link #flush(ICS)}. Keys of a failed flush are flushed
+ * again after the next window. The thread and its ICS are released by
+ * {@link #shutdown()}, called by {@link TagCacheFlushDispatcherListener} when
+ * the web application stops. The counters are logged at most once per
+ * {@link #REPORT_INTERVAL}.
+ *
+ * @since Oct 16, 2026
+ * @see CacheMgrTaggedAssetEventListener
+ */
+public final class TagCacheFlushDispatcher {
+    private static final Log LOG = LogUtil.getLog(TagCacheFlushDispatcher.class);
+
+    /**
+     * The minimum time in milliseconds between two info log messages with the
+     * counters.
+     */
+    public static final long REPORT_INTERVAL = 10 * 60 * 1000L;
+
+    private static final TagCacheFlushDispatcher INSTANCE = new TagCacheFlushDispatcher(2000L, 1000,
+            new EngineFlusher());
+
+    private final long window;
+    private final int maxPending;
+    private final Flusher flusher;
+
+    /** guarded by this */
+    private final Set<String> pending = new LinkedHashSet<String>();
+    /** guarded by this */
+    private boolean scheduled;
+    /** guarded by this */
+    private ScheduledExecutorService executor;
+    /** only used on the executor thread */
+    private long reported = System.currentTimeMillis();
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong keysReceived = new AtomicLong();
+    private final AtomicLong flushesIssued = new AtomicLong();
+    private final AtomicLong keysFlushed = new AtomicLong();
+
+    /**
+     * @return the dispatcher for this node.
+     */
+    public static TagCacheFlushDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param window the time in milliseconds the keys are collected before
+     *            they are flushed
+     * @param maxPending the number of distinct keys that are flushed without
+     *            waiting for the window to end
+     * @param flusher flushes the keys on the background thread
+     */
+    TagCacheFlushDispatcher(final long window, final int maxPending, final Flusher flusher) {
+        this.window = window;
+        this.maxPending = maxPending;
+        this.flusher = flusher;
+    }
+
+    /**
+     * Collects the cache keys of the tags, to be flushed when the window ends.
+     *
+     * @param tags the tags of a changed asset
+     */
+    public void submit(final Collection<Tag> tags) {
+        eventsReceived.incrementAndGet();
+        if (tags == null || tags.isEmpty()) {
+            return;
+        }
+        keysReceived.addAndGet(tags.size());
+        synchronized (this) {
+            for (final Tag tag : tags) {
+                pending.add(convertTagToCacheDepString(tag));
+            }
+            if (pending.size() >= maxPending) {
+                executor().execute(flushTask);
+                scheduled = true;
+            } else if (!scheduled) {
+                executor().schedule(flushTask, window, TimeUnit.MILLISECONDS);
+                scheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Flushes the keys collected so far right away, for instance at the end
+     * of a batch.
+     *
+     * @param ics Content Server context
+     */
+    public void flush(final ICS ics) {
+        final List<String> keys = drain();
+        if (!keys.isEmpty()) {
+            flushEngines(ics, keys);
+            flushed(keys);
+        }
+    }
+
+    /**
+     * Flushes the keys collected so far and stops the background thread,
+     * releasing its ICS. Keys submitted afterwards start a new thread.
+     */
+    public void shutdown() {
+        final ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+            executor = null;
+        }
+        if (e != null) {
+            e.execute(flushTask);
+            e.shutdown();
+            try {
+                if (!e.awaitTermination(window, TimeUnit.MILLISECONDS)) {
+                    e.shutdownNow();
+                }
+            } catch (final InterruptedException ie) {
+                e.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            flusher.close();
+            LOG.info("Stopped. " + this);
+        }
+    }
+
+    /**
+     * @return the number of events that submitted tags.
+     */
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    /**
+     * @return the number of cache keys submitted, before removing duplicates.
+     */
+    public long getKeysReceived() {
+        return keysReceived.get();
+    }
+
+    /**
+     * @return the number of flushes issued to the engines.
+     */
+    public long getFlushesIssued() {
+        return flushesIssued.get();
+    }
+
+    /**
+     * @return the number of distinct cache keys flushed.
+     */
+    public long getKeysFlushed() {
+        return keysFlushed.get();
+    }
+
+    /**
+     * @return the number of distinct cache keys waiting to be flushed.
+     */
+    public synchronized int getPendingKeys() {
+        return pending.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TagCacheFlushDispatcher[events=" + getEventsReceived() + ", keys=" + getKeysReceived()
+                + ", flushes=" + getFlushesIssued() + ", keysFlushed=" + getKeysFlushed() + ", pending="
+                + getPendingKeys() + "]";
+    }
+
+    private synchronized List<String> drain() {
+        final List<String> keys = new ArrayList<String>(pending);
+        pending.clear();
+        scheduled = false;
+        return keys;
+    }
+
+    private static void flushEngines(final ICS ics, final List<String> keys) {
+        final CacheManager cm = new CacheManager(ics);
+        cm.setPagesByID(ics, keys.toArray(new String[keys.size()]));
+        cm.flushCSEngine(ics, CacheHelper._both);
+        cm.flushSSEngines(ics);
+    }
+
+    private void flushed(final List<String> keys) {
+        flushesIssued.incrementAndGet();
+        keysFlushed.addAndGet(keys.size());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Flushed " + keys.size() + " tag cache keys. " + this);
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+
+        public void run() {
+            final List<String> keys = drain();
+            if (!keys.isEmpty()) {
+                try {
+                    flusher.flush(keys);
+                    flushed(keys);
+                } catch (final RuntimeException e) {
+                    retry(keys);
+                    LOG.error("Flushing " + keys.size() + " tag cache keys failed, they will be flushed again in "
+                            + window + "ms.", e);
+                }
+            }
+            final long now = System.currentTimeMillis();
+            if (now - reported >= REPORT_INTERVAL) {
+                reported = now;
+                LOG.info(TagCacheFlushDispatcher.this);
+            }
+        }
+    };
+
+    /**
+     * Puts the keys of a failed flush back and schedules the next flush, unless
+     * the dispatcher is shut down.
+     */
+    private synchronized void retry(final List<String> keys) {
+        pending.addAll(keys);
+        if (!scheduled && executor != null) {
+            executor.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+            scheduled = true;
+        }
+    }
+
+    private synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            final ScheduledThreadPoolExecutor e = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "GSTTagCacheFlush");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            // on shutdown the pending keys are flushed right away
+            e.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            executor = e;
+        }
+        return executor;
+    }
+
+    /**
+     * Flushes the cache keys on the background thread.
+     */
+    interface Flusher {
+
+        /**
+         * @param keys the distinct cache keys to flush
+         */
+        void flush(List<String> keys);
+
+        /**
+         * Releases the resources held for flushing.
+         */
+        void close();
+    }
+
+    /**
+     * Flushes the keys from both engines with an ICS of its own, which is
+     * created again after a failure.
+     */
+    private static final class EngineFlusher implements Flusher {
+        /** used on the executor thread, released on shutdown */
+        private volatile ICS ics;
+
+        public void flush(final List<String> keys) {
+            if (ics == null) {
+                ics = newICS();
+            }
+            try {
+                flushEngines(ics, keys);
+            } catch (final RuntimeException e) {
+                ics = null;
+                throw e;
+            }
+        }
+
+        public void close() {
+            ics = null;
+        }
+
+        @SuppressWarnings("deprecation")
+        private static ICS newICS() {
+            return ICSFactory.newICS();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * ServletContextListener that flushes the pending tag cache keys and stops
+ * the thread of the {@link TagCacheFlushDispatcher} when the web application
+ * stops.
+ * 
+ * @since Oct 16, 2026
+ */
+public class TagCacheFlushDispatcherListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(final ServletContextEvent sce) {
+        // the dispatcher starts its thread on the first tags
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent sce) {
+        TagCacheFlushDispatcher.getInstance().shutdown();
+    }
+
+}
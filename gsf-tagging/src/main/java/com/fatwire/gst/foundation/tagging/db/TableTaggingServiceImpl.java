@@ -16,11 +16,15 @@
 package com.fatwire.gst.foundation.tagging.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import COM.FutureTense.Cache.CacheHelper;
 import COM.FutureTense.Cache.CacheManager;
@@ -28,13 +32,13 @@ import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.assetapi.data.AssetData;
 import com.fatwire.assetapi.data.AssetId;
-import com.fatwire.cs.core.db.PreparedStmt;
-import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.CSRuntimeException;
 import com.fatwire.gst.foundation.facade.assetapi.AssetAccessTemplate;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.assetapi.AssetMapper;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadata;
 import com.fatwire.gst.foundation.facade.assetapi.AttributeDataUtils;
 import com.fatwire.gst.foundation.facade.assetapi.DirectSqlAccessTools;
-import com.fatwire.gst.foundation.facade.cm.AddRow;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
 import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
@@ -64,9 +68,20 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
     private static final Log LOG = LogUtil.getLog(TableTaggingServiceImpl.class);
 
     public static String TAGREGISTRY_TABLE = "GSTTagRegistry";
+    /**
+     * Holds the version of the tag registry, raised on every change, in the
+     * row with id 1. Created by {@link #install()}, or with the first change
+     * of a registry that was installed before.
+     */
+    public static String VERSION_TABLE = "GSTTagRegistryVersion";
     public static String TABLE_ACL_LIST = ""; // no ACLs because events are
     // anonymous
 
+    /**
+     * The maximum number of assets in one query.
+     */
+    private static final int IN_LIST_SIZE = 500;
+
     private final ICS ics;
     private final DirectSqlAccessTools directSqlAccessTools;
 
@@ -76,6 +91,42 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
     }
 
     public void install() {
+        if (!SqlHelper.tableExists(ics, TAGREGISTRY_TABLE)) {
+            createRegistryTable();
+        }
+        installVersionTable(ics);
+    }
+
+    /**
+     * Creates the {@link #VERSION_TABLE} if it does not exist.
+     * 
+     * @param ics Content Server context
+     * @return true if the table exists.
+     */
+    static boolean installVersionTable(ICS ics) {
+        if (SqlHelper.tableExists(ics, VERSION_TABLE)) {
+            ics.ClearErrno();
+            return true;
+        }
+        try {
+            TableDef def = new TableDef(VERSION_TABLE, TABLE_ACL_LIST, "obj");
+            def.addColumn("version", TableColumn.Type.ccbigint).setNullable(false);
+            new TableCreator(ics).createTable(def);
+            SqlHelper.execute(ics, VERSION_TABLE, "INSERT INTO " + VERSION_TABLE + " (id, version) VALUES (1, 0)");
+            LOG.info("Created " + VERSION_TABLE);
+            return true;
+        } catch (CSRuntimeException e) {
+            // created by another node meanwhile, or not allowed
+            boolean exists = SqlHelper.tableExists(ics, VERSION_TABLE);
+            ics.ClearErrno();
+            if (!exists) {
+                LOG.warn("Could not create " + VERSION_TABLE + ": " + e.getMessage());
+            }
+            return exists;
+        }
+    }
+
+    private void createRegistryTable() {
         TableDef def = new TableDef(TAGREGISTRY_TABLE, TABLE_ACL_LIST, "obj");
         // todo: low priority: define the PK properly (this will work for now)
 
@@ -108,63 +159,150 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
     }
 
     public void addAsset(AssetId id) {
-        // Only add assets that are tagged.
+        // Only add assets that are tagged; the rows of an asset that was
+        // registered before are brought up to date.
+        updateAssets(Collections.singletonList(id));
+    }
 
-        TaggedAsset asset = loadTaggedAsset(id);
-        if (isTagged(asset)) {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Adding tagged asset to tag registry: " + asset);
-            }
-            for (Tag tag : asset.getTags()) {
+    public void updateAsset(AssetId id) {
+        updateAssets(Collections.singletonList(id));
+    }
 
-                AddRow r = new AddRow(TAGREGISTRY_TABLE);
+    /**
+     * Brings the registry rows of the assets up to date, writing only the rows
+     * that changed. The stored rows are read past the resultset cache, so the
+     * difference is taken with the rows as they are in the database.
+     * 
+     * @param ids asset ids
+     */
+    private void updateAssets(Collection<AssetId> ids) {
+        Map<AssetId, TaggedAsset> assets = loadTaggedAssets(ids);
+        Map<AssetId, List<RegistryRow>> stored = readRegistryRows(ids);
+        List<String> sql = new ArrayList<String>();
+        Set<String> changed = new HashSet<String>();
+        for (AssetId id : ids) {
+            TaggedAsset asset = assets.get(id);
+            Map<String, RegistryRow> rows = new HashMap<String, RegistryRow>();
+            List<RegistryRow> storedRows = stored.get(id);
+            if (storedRows != null) {
+                for (RegistryRow row : storedRows) {
+                    if (rows.put(row.tag, row) != null) {
+                        // a tag registered twice, keep one row only
+                        changed.add(row.tag);
+                        sql.add("DELETE FROM " + TAGREGISTRY_TABLE + " WHERE id = " + row.id);
+                    }
+                }
+            }
+            if (asset != null) {
+                Set<String> seen = new HashSet<String>();
+                for (Tag tag : asset.getTags()) {
+                    if (!seen.add(tag.getTag())) {
+                        continue;
+                    }
+                    RegistryRow row = rows.remove(tag.getTag());
+                    if (row == null) {
+                        changed.add(tag.getTag());
+                        sql.add("INSERT INTO " + TAGREGISTRY_TABLE
+                                + " (id, tag, assettype, assetid, startdate, enddate) VALUES (" + ics.genID(true)
+                                + ", " + SqlHelper.quote(tag.getTag()) + ", " + SqlHelper.quote(id.getType()) + ", "
+                                + id.getId() + ", " + SqlHelper.quote(asset.getStartDate()) + ", "
+                                + SqlHelper.quote(asset.getEndDate()) + ")");
+                    } else if (!sameDate(row.startDate, asset.getStartDate())
+                            || !sameDate(row.endDate, asset.getEndDate())) {
+                        changed.add(row.tag);
+                        sql.add("UPDATE " + TAGREGISTRY_TABLE + " SET startdate = "
+                                + SqlHelper.quote(asset.getStartDate()) + ", enddate = "
+                                + SqlHelper.quote(asset.getEndDate()) + " WHERE id = " + row.id);
+                    }
+                }
+            }
+            // the tags that were removed from the asset
+            for (RegistryRow row : rows.values()) {
+                changed.add(row.tag);
+                sql.add("DELETE FROM " + TAGREGISTRY_TABLE + " WHERE id = " + row.id);
+            }
+        }
+        int failed = SqlHelper.executeBatch(ics, TAGREGISTRY_TABLE, sql);
+        if (failed > 0) {
+            LOG.warn(failed + " of " + sql.size() + " statements failed updating " + ids.size() + " assets in "
+                    + TAGREGISTRY_TABLE);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Updated " + ids.size() + " assets in the tag registry with " + sql.size() + " statements");
+        }
+        if (!sql.isEmpty()) {
+            TagIndex.getInstance().registryChanged(ics, ids, changed);
+        }
+    }
 
-                r.set("id", ics.genID(true));
-                r.set("tag", tag.getTag());
-                r.set("assettype", id.getType());
-                r.set("assetid", id.getId());
-                r.set("startdate", asset.getStartDate());
-                r.set("enddate", asset.getEndDate());
-                r.execute(ics);
+    /**
+     * Reads the registry rows of the assets, with one query per asset type and
+     * per {@link #IN_LIST_SIZE} assets.
+     * 
+     * @param ids asset ids
+     * @return the rows by asset id, for the assets that have rows
+     */
+    private Map<AssetId, List<RegistryRow>> readRegistryRows(Collection<AssetId> ids) {
+        Map<AssetId, List<RegistryRow>> result = new HashMap<AssetId, List<RegistryRow>>();
+        for (Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            List<AssetId> typeIds = e.getValue();
+            for (int i = 0; i < typeIds.size(); i += IN_LIST_SIZE) {
+                List<AssetId> chunk = typeIds.subList(i, Math.min(i + IN_LIST_SIZE, typeIds.size()));
+                String sql = "SELECT id, tag, assetid, startdate, enddate FROM " + TAGREGISTRY_TABLE
+                        + " WHERE assettype = " + SqlHelper.quote(e.getKey()) + " AND assetid IN ("
+                        + AssetIdUtils.toIdList(chunk) + ")";
+                for (Row row : SqlHelper.selectUncached(ics, TAGREGISTRY_TABLE, sql)) {
+                    AssetId id = new AssetIdImpl(e.getKey(), row.getLong("assetid"));
+                    List<RegistryRow> rows = result.get(id);
+                    if (rows == null) {
+                        rows = new ArrayList<RegistryRow>();
+                        result.put(id, rows);
+                    }
+                    rows.add(new RegistryRow(row));
+                }
             }
         }
+        return result;
     }
 
-    public void updateAsset(AssetId id) {
-        // todo: low priority: optimize
-        deleteAsset(id);
-        addAsset(id);
+    private static boolean sameDate(Date d1, Date d2) {
+        return d1 == null ? d2 == null : d2 != null && d1.getTime() == d2.getTime();
     }
 
     public void deleteAsset(AssetId id) {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Attempting to remove asset from tag registry:" + id);
         }
-        SqlHelper.execute(
-                ics,
-                TAGREGISTRY_TABLE,
-                "DELETE FROM " + TAGREGISTRY_TABLE + " WHERE assettype = '" + id.getType() + "' and assetid = "
-                        + id.getId());
+        String where = " WHERE assettype = " + SqlHelper.quote(id.getType()) + " and assetid = " + id.getId();
+        Set<String> tags = new HashSet<String>();
+        String sql = "SELECT tag FROM " + TAGREGISTRY_TABLE + where;
+        for (Row row : SqlHelper.selectUncached(ics, TAGREGISTRY_TABLE, sql)) {
+            tags.add(row.getString("tag"));
+        }
+        if (tags.isEmpty()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Asset " + id + " was never in the tag registry");
+            }
+            return;
+        }
+        SqlHelper.execute(ics, TAGREGISTRY_TABLE, "DELETE FROM " + TAGREGISTRY_TABLE + where);
+        TagIndex.getInstance().registryChanged(ics, Collections.singletonList(id), tags);
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Deleted tagged asset " + id + " from tag registry (or asset was never there in the first place)");
+            LOG.debug("Deleted tagged asset " + id + " from tag registry");
         }
     }
 
     public Collection<Tag> getTags(AssetId id) {
         // this method records all the compositional dependencies that we need
         // for this method (this is critical)
-        return loadTaggedAsset(id).getTags();
+        TaggedAsset ta = loadTaggedAsset(id);
+        return ta == null ? Collections.<Tag> emptyList() : ta.getTags();
     }
 
     public Collection<Tag> getTags(Collection<AssetId> ids) {
         HashSet<Tag> tags = new HashSet<Tag>();
-        // todo: medium priority: IMPORTANT: This should be optimized so that we
-        // don't kill the db
-        if (ids.size() > 5)
-            LOG.warn("Fetching tags serially for " + ids.size()
-                    + " assets.  TableTaggingServiceImpl isn't yet optimized to handle this very nicely");
-        for (AssetId id : ids) {
-            tags.addAll(getTags(id));
+        // the tagged assets are read in bulk, recording the same dependencies
+        for (TaggedAsset ta : loadTaggedAssets(ids).values()) {
+            tags.addAll(ta.getTags());
         }
         return tags;
     }
@@ -174,71 +312,85 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
      * compositional dependency on both the input asset AND the tags themselves.
      * 
      * @param id asset id
-     * @return tagged asset
+     * @return tagged asset, null if the asset does not exist
      */
     private TaggedAsset loadTaggedAsset(AssetId id) {
-        LogDep.logDep(ics, id);
+        return loadTaggedAssets(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * Retrieve the tags for the tagged assets, with one query per asset type
+     * and per {@link #IN_LIST_SIZE} assets. For flex assets the gsttag
+     * attribute is read in the same query, joined from the _Mungo table. This
+     * method records a compositional dependency on both the input assets AND
+     * the tags themselves.
+     * 
+     * @param ids asset ids
+     * @return tagged assets by asset id, for the assets that exist
+     */
+    private Map<AssetId, TaggedAsset> loadTaggedAssets(Collection<AssetId> ids) {
+        for (AssetId id : ids) {
+            LogDep.logDep(ics, id);
+        }
 
         // Temporarily disable usage of asset APIs in this use case due to a bug
         // in which asset listeners
         // cause a deadlock when the asset API is used.
 
-        final TaggedAsset ret;
-        final String gsttagAttrVal;
-        if (directSqlAccessTools.isFlex(id)) {
-            PreparedStmt basicFields = new PreparedStmt("SELECT id,startdate,enddate" + " FROM " + id.getType()
-                    + " WHERE id = ?", Collections.singletonList(id.getType()));
-            basicFields.setElement(0, id.getType(), "id");
-
-            StatementParam param = basicFields.newParam();
-            param.setLong(0, id.getId());
-            Row row = SqlHelper.selectSingle(ics, basicFields, param);
-
-            Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
-            Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
-            ret = new TaggedAsset(id, start, end);
-            // todo: medium: optimize as this is very inefficient for flex
-            // assets
-            gsttagAttrVal = directSqlAccessTools.getFlexAttributeValue(id, "gsttag");
-
-        } else {
-
-            PreparedStmt basicFields = new PreparedStmt("SELECT * FROM " + id.getType() + " WHERE ID = ?",
-                    Collections.singletonList(id.getType()));
-            basicFields.setElement(0, id.getType(), "id");
-
-            StatementParam param = basicFields.newParam();
-            param.setLong(0, id.getId());
-            Row row = SqlHelper.selectSingle(ics, basicFields, param);
-
-            Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
-            Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
-            ret = new TaggedAsset(id, start, end);
-            String s = "";
-            try {
-                if (row.isField("gsttag")) {
-                    s = row.getString("gsttag");
-                }
-            } catch (Exception e) {
-                LOG.trace("Could not get gsttag data from basic asset.  Maybe this is just because "
-                        + "there is no gsttag column - which is just fine.", e);
+        Map<AssetId, TaggedAsset> result = new HashMap<AssetId, TaggedAsset>();
+        for (Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            AssetTypeMetadata m = directSqlAccessTools.getAssetTypeMetadata(e.getKey());
+            Long gsttagAttrId = m.isFlex() ? m.getAttributeId("gsttag") : null;
+            String tables;
+            String select;
+            boolean hasTag;
+            if (gsttagAttrId != null) {
+                tables = m.getAssetType() + "," + m.getMungoTable();
+                select = "SELECT t.id AS id,t.startdate AS startdate,t.enddate AS enddate,cmungo.stringvalue AS gsttag FROM "
+                        + m.getAssetType() + " t LEFT OUTER JOIN " + m.getMungoTable()
+                        + " cmungo ON cmungo.cs_ownerid = t.id AND cmungo.cs_attrid = " + gsttagAttrId
+                        + " WHERE t.id IN (";
+                hasTag = true;
+            } else {
+                // basic assets may have a gsttag column, or not - which is just fine
+                hasTag = !m.isFlex() && m.hasColumn("gsttag");
+                tables = m.getAssetType();
+                select = "SELECT id,startdate,enddate" + (hasTag ? ",gsttag" : "") + " FROM " + m.getAssetType()
+                        + " WHERE id IN (";
             }
-            gsttagAttrVal = s;
-        }
-
-        if (StringUtils.isNotBlank(gsttagAttrVal)) {
-            for (String tag : gsttagAttrVal.split(",")) {
-                Tag oTag = asTag(tag);
-                recordCacheDependency(oTag);
-                ret.addTag(oTag);
+            List<AssetId> typeIds = e.getValue();
+            for (int i = 0; i < typeIds.size(); i += IN_LIST_SIZE) {
+                List<AssetId> chunk = typeIds.subList(i, Math.min(i + IN_LIST_SIZE, typeIds.size()));
+                Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+                for (AssetId id : chunk) {
+                    byId.put(id.getId(), id);
+                }
+                for (Row row : SqlHelper.select(ics, tables, select + AssetIdUtils.toIdList(chunk) + ")")) {
+                    AssetId id = byId.get(row.getLong("id"));
+                    if (id == null || result.containsKey(id)) {
+                        continue; // first value wins
+                    }
+                    Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
+                    Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
+                    TaggedAsset ret = new TaggedAsset(id, start, end);
+                    String gsttagAttrVal = hasTag ? row.getString("gsttag") : null;
+                    if (StringUtils.isNotBlank(gsttagAttrVal)) {
+                        for (String tag : gsttagAttrVal.split(",")) {
+                            Tag oTag = asTag(tag);
+                            recordCacheDependency(oTag);
+                            ret.addTag(oTag);
+                        }
+                    }
+                    result.put(id, ret);
+                    if (LOG.isTraceEnabled())
+                        LOG.trace("Loaded tagged asset " + ret);
+                }
             }
         }
 
         // End temporary deadlock workaround
 
-        if (LOG.isTraceEnabled())
-            LOG.trace("Loaded tagged asset " + ret);
-        return ret;
+        return result;
     }
 
     private AssetMapper<TaggedAsset> mapper = new AssetMapper<TaggedAsset>() {
@@ -282,17 +434,40 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
 
     public Collection<AssetId> lookupTaggedAssets(Tag tag) {
         recordCacheDependency(tag);
-        final StatementParam param = REGISTRY_SELECT.newParam();
-        param.setString(0, tag.getTag());
-        List<AssetId> ids = new ArrayList<AssetId>();
-        for (final Row asset : SqlHelper.select(ics, REGISTRY_SELECT, param)) {
-            AssetId id = new AssetIdImpl(asset.getString("assettype"), asset.getLong("assetid"));
-            LogDep.logDep(ics, id);
-            if (FilterAssetsByDate.isValidOnDate(ics, id, null)) {
-                ids.add(id);
-            } else {
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Asset " + id + " tagged with " + tag + " is not active based on startdate/enddate");
+        return filterOnDate(TagIndex.getInstance().lookup(ics, tag), tag);
+    }
+
+    public Collection<AssetId> lookupTaggedAssets(Collection<Tag> all, Collection<Tag> any, Collection<Tag> none) {
+        Set<Tag> tags = new HashSet<Tag>();
+        for (Collection<Tag> c : Arrays.asList(all, any, none)) {
+            if (c != null) {
+                tags.addAll(c);
+            }
+        }
+        for (Tag tag : tags) {
+            recordCacheDependency(tag);
+        }
+        return filterOnDate(TagIndex.getInstance().query(ics, all, any, none), tags);
+    }
+
+    /**
+     * Records a dependency on the assets found in the tag index and keeps the
+     * ones that are valid on the effective date, using the start and end dates
+     * of the index.
+     * 
+     * @param hits the assets found in the index
+     * @param tags the tags that were looked up, for logging
+     * @return the assets valid on the effective date
+     */
+    private List<AssetId> filterOnDate(List<TagIndex.Hit> hits, Object tags) {
+        List<AssetId> ids = new ArrayList<AssetId>(hits.size());
+        for (TagIndex.Hit hit : hits) {
+            LogDep.logDep(ics, hit.getId());
+            if (FilterAssetsByDate.isValidOnDate(ics, hit.getId(), hit.getStartDate(), hit.getEndDate(), null)) {
+                ids.add(hit.getId());
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Asset " + hit.getId() + " tagged with " + tags
+                        + " is not active based on startdate/enddate");
             }
         }
         return ids;
@@ -328,12 +503,21 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
         }
     }
 
-    private static final PreparedStmt REGISTRY_SELECT = new PreparedStmt(
-            "SELECT tag, assettype, assetid, startdate, enddate " + "FROM " + TAGREGISTRY_TABLE
-                    + " WHERE tag=? ORDER BY startdate,enddate", Collections.singletonList(TAGREGISTRY_TABLE));
+    /**
+     * A row of the tag registry.
+     */
+    private static class RegistryRow {
+        final long id;
+        final String tag;
+        final Date startDate;
+        final Date endDate;
 
-    static {
-        REGISTRY_SELECT.setElement(0, TAGREGISTRY_TABLE, "tag");
+        RegistryRow(Row row) {
+            this.id = row.getLong("id");
+            this.tag = row.getString("tag");
+            this.startDate = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
+            this.endDate = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
+        }
     }
 
     private static class TaggedAsset {
@@ -0,0 +1,835 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.cs.core.db.PreparedStmt;
+import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.tagging.Tag;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Node-wide inverted index of the tag registry: for every tag, the tagged
+ * asset ids per asset type, sorted and delta encoded, with the start and end
+ * dates of the assets. The index is read from the registry with one query,
+ * after which single tag lookups and queries combining tags are answered from
+ * memory by merging the sorted lists.
+ * <p/>
+ * Every change of the registry raises the version in the
+ * {@link TableTaggingServiceImpl#VERSION_TABLE} table, which is created with
+ * the first change if it does not exist yet. The version is read at most once
+ * per check interval, and the index is read again when it was read at another
+ * version, so changes made on other nodes are seen within the interval.
+ * Changes made on this node are read into the index right away, for the
+ * changed assets and tags only. Without the version table the tags of a
+ * lookup are read from the registry, with a cached query per tag.
+ *
+ * @since Oct 16, 2026
+ */
+public final class TagIndex {
+    private static final Log LOG = LogUtil.getLog(TagIndex.class);
+
+    private static final TagIndex INSTANCE = new TagIndex(10 * 1000L);
+
+    /** marks a start or end date that is not set */
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /** the version of a registry without version table */
+    private static final long NO_VERSION = -1L;
+
+    /**
+     * The maximum number of assets in one query.
+     */
+    private static final int IN_LIST_SIZE = 500;
+
+    private static final String TABLE = TableTaggingServiceImpl.TAGREGISTRY_TABLE;
+    private static final String VERSION_TABLE = TableTaggingServiceImpl.VERSION_TABLE;
+
+    private static final PreparedStmt TAG_SELECT = new PreparedStmt("SELECT tag, assettype, assetid, startdate, "
+            + "enddate FROM " + TABLE + " WHERE tag=?", Collections.singletonList(TABLE));
+
+    static {
+        TAG_SELECT.setElement(0, TABLE, "tag");
+    }
+
+    private final long checkInterval;
+    private volatile State state;
+    private volatile boolean versioned;
+    private volatile long versionCheckedAt;
+    private volatile long version = NO_VERSION;
+    private volatile long versionReadAt;
+
+    /**
+     * @return the index for this node.
+     */
+    public static TagIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param checkInterval the time in milliseconds the version of the
+     *            registry is used before it is read again
+     */
+    TagIndex(final long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Looks up the assets tagged with the tag.
+     *
+     * @param ics Content Server context, used to read the registry if needed
+     * @param tag the tag
+     * @return the tagged assets, in start date and end date order, never null
+     */
+    public List<Hit> lookup(final ICS ics, final Tag tag) {
+        final List<Hit> hits = query(ics, Collections.singleton(tag), null, null);
+        Collections.sort(hits, DATE_ORDER);
+        return hits;
+    }
+
+    /**
+     * Looks up the assets that are tagged with all tags of <tt>all</tt>, with
+     * at least one of the tags of <tt>any</tt> and with none of the tags of
+     * <tt>none</tt>. Each argument may be null or empty, but <tt>all</tt> and
+     * <tt>any</tt> may not both be.
+     *
+     * @param ics Content Server context, used to read the registry if needed
+     * @param all the tags the assets must all have
+     * @param any the tags the assets must have at least one of
+     * @param none the tags the assets must not have
+     * @return the tagged assets, by asset type and id, never null
+     */
+    public List<Hit> query(final ICS ics, final Collection<Tag> all, final Collection<Tag> any,
+            final Collection<Tag> none) {
+        final boolean hasAll = all != null && !all.isEmpty();
+        final boolean hasAny = any != null && !any.isEmpty();
+        if (!hasAll && !hasAny) {
+            throw new IllegalArgumentException("At least one tag must be required.");
+        }
+        final State s = getState(ics, all, any, none);
+
+        // the candidate types are those of the tags that are required
+        final Set<String> types = new TreeSet<String>();
+        for (final Tag tag : hasAll ? all : any) {
+            types.addAll(s.get(tag).keySet());
+        }
+
+        final List<Hit> hits = new ArrayList<Hit>();
+        for (final String type : types) {
+            Postings result = null;
+            if (hasAll) {
+                for (final Tag tag : all) {
+                    final Postings p = s.get(tag, type);
+                    result = result == null ? p : result.and(p);
+                }
+            }
+            if (hasAny) {
+                Postings union = Postings.EMPTY;
+                for (final Tag tag : any) {
+                    union = union.or(s.get(tag, type));
+                }
+                result = result == null ? union : result.and(union);
+            }
+            if (none != null) {
+                for (final Tag tag : none) {
+                    result = result.not(s.get(tag, type));
+                }
+            }
+            result.addHits(type, hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Records that registry rows were written: raises the version of the
+     * registry, so that the other nodes read it again, and reads the rows of
+     * the assets for the tags into the index of this node if no other change
+     * was made since it was read.
+     *
+     * @param ics Content Server context
+     * @param ids the assets of which registry rows were written
+     * @param tags the tags of the rows that were inserted, updated or deleted
+     */
+    public void registryChanged(final ICS ics, final Collection<AssetId> ids, final Collection<String> tags) {
+        if (!isVersioned(ics)) {
+            if (!TableTaggingServiceImpl.installVersionTable(ics)) {
+                return;
+            }
+            versioned = true;
+        }
+        if (SqlHelper.executeBatch(ics, VERSION_TABLE, Collections.singletonList("UPDATE " + VERSION_TABLE
+                + " SET version = version + 1 WHERE id = 1")) > 0) {
+            LOG.warn("Could not raise the version of the tag registry, the tag index of the other nodes is out of "
+                    + "date until the next change.");
+            clear();
+            return;
+        }
+        update(ics, ids, tags);
+    }
+
+    /**
+     * Drops the index, the registry is read again on next use.
+     */
+    public void clear() {
+        state = null;
+    }
+
+    /**
+     * @return the index if the registry has a version, or else a partial index
+     *         of the tags read from the registry.
+     */
+    private State getState(final ICS ics, final Collection<Tag> all, final Collection<Tag> any,
+            final Collection<Tag> none) {
+        final long v = currentVersion(ics);
+        if (v != NO_VERSION) {
+            final State s = state;
+            return s != null && s.version >= v ? s : reload(ics, v);
+        }
+        final Set<String> tags = new TreeSet<String>();
+        for (final Collection<Tag> c : Arrays.asList(all, any, none)) {
+            if (c != null) {
+                for (final Tag tag : c) {
+                    tags.add(tag.getTag());
+                }
+            }
+        }
+        return read(ics, tags);
+    }
+
+    /**
+     * @return true if the registry has a version table, checked again after
+     *         the check interval if it had none.
+     */
+    private boolean isVersioned(final ICS ics) {
+        final long now = System.currentTimeMillis();
+        if (!versioned && now - versionCheckedAt >= checkInterval) {
+            versioned = SqlHelper.tableExists(ics, VERSION_TABLE);
+            ics.ClearErrno();
+            if (!versioned && versionCheckedAt == 0L) {
+                LOG.info("The table " + VERSION_TABLE + " does not exist yet, tag lookups are read from " + TABLE
+                        + " until the first change of the tag registry creates it.");
+            }
+            versionCheckedAt = now;
+        }
+        return versioned;
+    }
+
+    /**
+     * @return the version of the registry as read at most one check interval
+     *         ago, {@link #NO_VERSION} if it has no version table.
+     */
+    private long currentVersion(final ICS ics) {
+        if (!isVersioned(ics)) {
+            return NO_VERSION;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - versionReadAt >= checkInterval) {
+            version = readVersion(ics);
+            versionReadAt = now;
+        }
+        return version;
+    }
+
+    private static long readVersion(final ICS ics) {
+        for (final Row row : SqlHelper.selectUncached(ics, VERSION_TABLE, "SELECT version FROM " + VERSION_TABLE
+                + " WHERE id = 1")) {
+            return row.getLong("version");
+        }
+        return NO_VERSION;
+    }
+
+    /**
+     * Reads the whole registry, unless another thread did so for this version
+     * or a later one. The version is read before the rows, so the index may
+     * hold changes of a later version but never misses those of its own.
+     */
+    private synchronized State reload(final ICS ics, final long v) {
+        final State current = state;
+        if (current != null && current.version >= v) {
+            return current; // read by another thread
+        }
+        final State s = build(SqlHelper.selectUncached(ics, TABLE, "SELECT tag, assettype, assetid, startdate, enddate"
+                + " FROM " + TABLE), v);
+        state = s;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + s.byTag.size() + " tags at version " + v + " into the tag index.");
+        }
+        return s;
+    }
+
+    /**
+     * Reads the registry rows of the assets for the tags into the index, if
+     * the version was raised once since the index was read, by the caller.
+     * Runs under the same lock as {@link #reload(ICS, long)}, so that the rows
+     * are not overwritten by an index that was read before they were written.
+     */
+    private synchronized void update(final ICS ics, final Collection<AssetId> ids, final Collection<String> tags) {
+        final long v = readVersion(ics);
+        version = v;
+        versionReadAt = System.currentTimeMillis();
+        final State s = state;
+        if (s == null) {
+            return;
+        }
+        if (v != s.version + 1) {
+            // changed on another node as well, read again on next use
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("The tag registry is at version " + v + ", the tag index at " + s.version + ".");
+            }
+            return;
+        }
+        final Map<AssetId, Map<String, long[]>> rows = readAssets(ics, ids);
+        for (final String tag : tags) {
+            s.replace(tag, ids, rows);
+        }
+        s.version = v;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + tags.size() + " tags of " + ids.size() + " assets into the tag index at version " + v
+                    + ".");
+        }
+    }
+
+    /**
+     * Reads the registry rows of the assets, with one query per asset type and
+     * per {@link #IN_LIST_SIZE} assets.
+     *
+     * @return the start and end dates by tag by asset, for the assets that
+     *         have rows
+     */
+    private static Map<AssetId, Map<String, long[]>> readAssets(final ICS ics, final Collection<AssetId> ids) {
+        final Map<AssetId, Map<String, long[]>> result = new HashMap<AssetId, Map<String, long[]>>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            final List<AssetId> typeIds = e.getValue();
+            for (int i = 0; i < typeIds.size(); i += IN_LIST_SIZE) {
+                final List<AssetId> chunk = typeIds.subList(i, Math.min(i + IN_LIST_SIZE, typeIds.size()));
+                for (final Row row : SqlHelper.selectUncached(ics, TABLE, "SELECT tag, assetid, startdate, enddate"
+                        + " FROM " + TABLE + " WHERE assettype = " + SqlHelper.quote(e.getKey())
+                        + " AND assetid IN (" + AssetIdUtils.toIdList(chunk) + ")")) {
+                    final AssetId id = new AssetIdImpl(e.getKey(), row.getLong("assetid"));
+                    Map<String, long[]> tags = result.get(id);
+                    if (tags == null) {
+                        tags = new HashMap<String, long[]>();
+                        result.put(id, tags);
+                    }
+                    tags.put(row.getString("tag"), new long[] { toLong(row, "startdate"), toLong(row, "enddate") });
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the registry rows of the tags, with a cached query per tag, as the
+     * registry was read before there was an index.
+     *
+     * @return a partial index of the tags, without version
+     */
+    private static State read(final ICS ics, final Collection<String> tags) {
+        final List<Row> rows = new ArrayList<Row>();
+        for (final String tag : tags) {
+            final StatementParam param = TAG_SELECT.newParam();
+            param.setString(0, tag);
+            for (final Row row : SqlHelper.select(ics, TAG_SELECT, param)) {
+                rows.add(row);
+            }
+        }
+        return build(rows, NO_VERSION);
+    }
+
+    private static State build(final Iterable<Row> rows, final long version) {
+        // tag -> type -> id -> dates, sorted on id
+        final Map<String, Map<String, TreeMap<Long, long[]>>> read = new HashMap<String, Map<String, TreeMap<Long, long[]>>>();
+        for (final Row row : rows) {
+            final String tag = row.getString("tag");
+            final String type = row.getString("assettype");
+            Map<String, TreeMap<Long, long[]>> byType = read.get(tag);
+            if (byType == null) {
+                byType = new HashMap<String, TreeMap<Long, long[]>>();
+                read.put(tag, byType);
+            }
+            TreeMap<Long, long[]> ids = byType.get(type);
+            if (ids == null) {
+                ids = new TreeMap<Long, long[]>();
+                byType.put(type, ids);
+            }
+            ids.put(row.getLong("assetid"), new long[] { toLong(row, "startdate"), toLong(row, "enddate") });
+        }
+        final State s = new State(version);
+        for (final Map.Entry<String, Map<String, TreeMap<Long, long[]>>> e : read.entrySet()) {
+            final Map<String, Postings> byType = new HashMap<String, Postings>();
+            for (final Map.Entry<String, TreeMap<Long, long[]>> t : e.getValue().entrySet()) {
+                byType.put(t.getKey(), Postings.of(t.getValue()));
+            }
+            s.byTag.put(e.getKey(), Collections.unmodifiableMap(byType));
+        }
+        return s;
+    }
+
+    private static long toLong(final Row row, final String column) {
+        final String date = row.getString(column);
+        return StringUtils.isBlank(date) ? NO_DATE : FilterAssetsByDate.parseJdbcDate(date).getTime();
+    }
+
+    /**
+     * An asset found in the index, with its start and end date.
+     */
+    public static final class Hit {
+        private final AssetId id;
+        private final long startDate;
+        private final long endDate;
+
+        Hit(final AssetId id, final long startDate, final long endDate) {
+            this.id = id;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        public AssetId getId() {
+            return id;
+        }
+
+        /**
+         * @return the start date, or null if not set.
+         */
+        public Date getStartDate() {
+            return startDate == NO_DATE ? null : new Date(startDate);
+        }
+
+        /**
+         * @return the end date, or null if not set.
+         */
+        public Date getEndDate() {
+            return endDate == NO_DATE ? null : new Date(endDate);
+        }
+
+        @Override
+        public String toString() {
+            return id + "|startdate:" + getStartDate() + "|enddate:" + getEndDate();
+        }
+    }
+
+    /**
+     * Orders on start date and then on end date, with dates that are not set
+     * last, as Oracle orders null values.
+     */
+    static final Comparator<Hit> DATE_ORDER = new Comparator<Hit>() {
+
+        public int compare(final Hit o1, final Hit o2) {
+            final int c = compare(o1.startDate, o2.startDate);
+            return c != 0 ? c : compare(o1.endDate, o2.endDate);
+        }
+
+        private int compare(final long d1, final long d2) {
+            if (d1 == d2) {
+                return 0;
+            }
+            if (d1 == NO_DATE) {
+                return 1;
+            }
+            if (d2 == NO_DATE) {
+                return -1;
+            }
+            return d1 < d2 ? -1 : 1;
+        }
+    };
+
+    /**
+     * The postings by tag and asset type.
+     */
+    private static final class State {
+        private final ConcurrentMap<String, Map<String, Postings>> byTag = new ConcurrentHashMap<String, Map<String, Postings>>();
+        /** the version of the registry the index holds the rows of */
+        private volatile long version;
+
+        State(final long version) {
+            this.version = version;
+        }
+
+        Map<String, Postings> get(final Tag tag) {
+            final Map<String, Postings> m = byTag.get(tag.getTag());
+            return m == null ? Collections.<String, Postings> emptyMap() : m;
+        }
+
+        Postings get(final Tag tag, final String type) {
+            final Postings p = get(tag).get(type);
+            return p == null ? Postings.EMPTY : p;
+        }
+
+        /**
+         * Replaces the postings of the assets for the tag by the rows read.
+         *
+         * @param tag the tag
+         * @param ids the assets
+         * @param rows the dates by tag by asset, the assets without a row for
+         *            the tag are removed from its postings
+         */
+        synchronized void replace(final String tag, final Collection<AssetId> ids,
+                final Map<AssetId, Map<String, long[]>> rows) {
+            final Map<String, Postings> byType = new HashMap<String, Postings>();
+            final Map<String, Postings> current = byTag.get(tag);
+            if (current != null) {
+                byType.putAll(current);
+            }
+            for (final AssetId id : ids) {
+                final Map<String, long[]> tags = rows.get(id);
+                final Postings p = byType.get(id.getType());
+                final Postings next = (p == null ? Postings.EMPTY : p).with(id.getId(),
+                        tags == null ? null : tags.get(tag));
+                if (next.size == 0) {
+                    byType.remove(id.getType());
+                } else {
+                    byType.put(id.getType(), next);
+                }
+            }
+            if (byType.isEmpty()) {
+                byTag.remove(tag);
+            } else {
+                byTag.put(tag, Collections.unmodifiableMap(byType));
+            }
+        }
+    }
+
+    /**
+     * Immutable, sorted list of asset ids of one type, stored as variable
+     * length encoded differences between consecutive ids, with the start and
+     * end dates of the assets if any of them has a date.
+     */
+    static final class Postings {
+        static final Postings EMPTY = new Postings(new long[0], null, null);
+
+        private final int size;
+        private final byte[] data;
+        private final long[] startDates;
+        private final long[] endDates;
+
+        /**
+         * @param ids the sorted, distinct ids
+         * @param startDates the start dates, or null if no dates are set
+         * @param endDates the end dates, or null if no dates are set
+         */
+        private Postings(final long[] ids, final long[] startDates, final long[] endDates) {
+            this(ids.length, encode(ids), startDates, endDates);
+        }
+
+        private Postings(final int size, final byte[] data, final long[] startDates, final long[] endDates) {
+            this.size = size;
+            this.data = data;
+            this.startDates = startDates;
+            this.endDates = endDates;
+        }
+
+        /**
+         * @param ids the dates by id, in id order
+         */
+        static Postings of(final TreeMap<Long, long[]> ids) {
+            final long[] l = new long[ids.size()];
+            final long[] starts = new long[l.length];
+            final long[] ends = new long[l.length];
+            int i = 0;
+            for (final Map.Entry<Long, long[]> e : ids.entrySet()) {
+                l[i] = e.getKey();
+                starts[i] = e.getValue()[0];
+                ends[i] = e.getValue()[1];
+                i++;
+            }
+            return of(l, starts, ends);
+        }
+
+        private static Postings of(final long[] ids, final long[] starts, final long[] ends) {
+            if (ids.length == 0) {
+                return EMPTY;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (starts[i] != NO_DATE || ends[i] != NO_DATE) {
+                    return new Postings(ids, Arrays.copyOf(starts, ids.length), Arrays.copyOf(ends, ids.length));
+                }
+            }
+            return new Postings(ids, null, null);
+        }
+
+        long[] ids() {
+            final long[] ids = new long[size];
+            long id = 0;
+            int pos = 0;
+            for (int i = 0; i < size; i++) {
+                id += readDelta(data, pos);
+                pos = skipDelta(data, pos);
+                ids[i] = id;
+            }
+            return ids;
+        }
+
+        private static byte[] encode(final long[] ids) {
+            final byte[] buf = new byte[ids.length * 10];
+            int pos = 0;
+            long previous = 0;
+            for (final long id : ids) {
+                pos = writeDelta(buf, pos, id - previous);
+                previous = id;
+            }
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private static long readDelta(final byte[] buf, final int pos) {
+            long delta = 0;
+            int shift = 0;
+            int p = pos;
+            byte b;
+            do {
+                b = buf[p++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return delta;
+        }
+
+        /**
+         * @return the position after the delta at the position.
+         */
+        private static int skipDelta(final byte[] buf, final int pos) {
+            int p = pos;
+            while (buf[p++] < 0) {
+                // continuation byte
+            }
+            return p;
+        }
+
+        /**
+         * @return the position after the written delta.
+         */
+        private static int writeDelta(final byte[] buf, final int pos, final long delta) {
+            int p = pos;
+            long d = delta;
+            while ((d & ~0x7FL) != 0) {
+                buf[p++] = (byte) ((d & 0x7F) | 0x80);
+                d >>>= 7;
+            }
+            buf[p++] = (byte) d;
+            return p;
+        }
+
+        private long start(final int i) {
+            return startDates == null ? NO_DATE : startDates[i];
+        }
+
+        private long end(final int i) {
+            return endDates == null ? NO_DATE : endDates[i];
+        }
+
+        /**
+         * @return the ids in both lists.
+         */
+        Postings and(final Postings other) {
+            return merge(other, true, false, false);
+        }
+
+        /**
+         * @return the ids in either list.
+         */
+        Postings or(final Postings other) {
+            return merge(other, true, true, true);
+        }
+
+        /**
+         * @return the ids in this list and not in the other.
+         */
+        Postings not(final Postings other) {
+            return merge(other, false, true, false);
+        }
+
+        /**
+         * Walks both sorted lists at once and keeps the ids that are in both,
+         * only in this list or only in the other list as requested.
+         */
+        private Postings merge(final Postings other, final boolean both, final boolean onlyThis,
+                final boolean onlyOther) {
+            final long[] a = ids();
+            final long[] b = other.ids();
+            final long[] ids = new long[a.length + b.length];
+            final long[] starts = new long[ids.length];
+            final long[] ends = new long[ids.length];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length || j < b.length) {
+                if (j == b.length || (i < a.length && a[i] < b[j])) {
+                    if (onlyThis) {
+                        ids[n] = a[i];
+                        starts[n] = start(i);
+                        ends[n++] = end(i);
+                    }
+                    i++;
+                } else if (i == a.length || b[j] < a[i]) {
+                    if (onlyOther) {
+                        ids[n] = b[j];
+                        starts[n] = other.start(j);
+                        ends[n++] = other.end(j);
+                    }
+                    j++;
+                } else {
+                    if (both) {
+                        ids[n] = a[i];
+                        starts[n] = start(i);
+                        ends[n++] = end(i);
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            return of(Arrays.copyOf(ids, n), starts, ends);
+        }
+
+        /**
+         * Adds, updates or removes one id. The deltas are walked up to the id
+         * and only the deltas around it are written again; the rest of the
+         * list is copied as is.
+         *
+         * @param id the id to add or remove
+         * @param dates the start and end date of the id, null to remove it
+         * @return a copy with the id added, updated or removed
+         */
+        Postings with(final long id, final long[] dates) {
+            int i = 0;
+            int pos = 0;
+            long previous = 0;
+            long current = 0;
+            for (; i < size; i++) {
+                current = previous + readDelta(data, pos);
+                if (current >= id) {
+                    break;
+                }
+                previous = current;
+                pos = skipDelta(data, pos);
+            }
+            final boolean found = i < size && current == id;
+            final byte[] buf = new byte[20];
+            if (dates == null) {
+                if (!found) {
+                    return this;
+                }
+                if (size == 1) {
+                    return EMPTY;
+                }
+                // the next id follows the previous one
+                final int next = skipDelta(data, pos);
+                int end = next;
+                int n = 0;
+                if (i + 1 < size) {
+                    end = skipDelta(data, next);
+                    n = writeDelta(buf, 0, current + readDelta(data, next) - previous);
+                }
+                return new Postings(size - 1, splice(pos, end, buf, n), remove(startDates, i), remove(endDates, i));
+            }
+            if (found) {
+                if (start(i) == dates[0] && end(i) == dates[1]) {
+                    return this;
+                }
+                return new Postings(size, data, set(startDates, i, dates[0]), set(endDates, i, dates[1]));
+            }
+            // the id goes before the one at i, if any
+            int n = writeDelta(buf, 0, id - previous);
+            int end = pos;
+            if (i < size) {
+                end = skipDelta(data, pos);
+                n = writeDelta(buf, n, current - id);
+            }
+            return new Postings(size + 1, splice(pos, end, buf, n), insert(startDates, i, dates[0]), insert(endDates,
+                    i, dates[1]));
+        }
+
+        /**
+         * @return the data with the bytes from start to end replaced by the
+         *         first n bytes of the buffer.
+         */
+        private byte[] splice(final int start, final int end, final byte[] buf, final int n) {
+            final byte[] d = new byte[data.length - (end - start) + n];
+            System.arraycopy(data, 0, d, 0, start);
+            System.arraycopy(buf, 0, d, start, n);
+            System.arraycopy(data, end, d, start + n, data.length - end);
+            return d;
+        }
+
+        private long[] set(final long[] dates, final int i, final long date) {
+            if (dates == null && date == NO_DATE) {
+                return null;
+            }
+            final long[] d = dates == null ? noDates(size) : dates.clone();
+            d[i] = date;
+            return d;
+        }
+
+        private long[] insert(final long[] dates, final int i, final long date) {
+            if (dates == null && date == NO_DATE) {
+                return null;
+            }
+            final long[] d = new long[size + 1];
+            if (dates == null) {
+                Arrays.fill(d, NO_DATE);
+            } else {
+                System.arraycopy(dates, 0, d, 0, i);
+                System.arraycopy(dates, i, d, i + 1, size - i);
+            }
+            d[i] = date;
+            return d;
+        }
+
+        private long[] remove(final long[] dates, final int i) {
+            if (dates == null) {
+                return null;
+            }
+            final long[] d = new long[size - 1];
+            System.arraycopy(dates, 0, d, 0, i);
+            System.arraycopy(dates, i + 1, d, i, size - i - 1);
+            return d;
+        }
+
+        private static long[] noDates(final int size) {
+            final long[] d = new long[size];
+            Arrays.fill(d, NO_DATE);
+            return d;
+        }
+
+        void addHits(final String type, final List<Hit> hits) {
+            final long[] ids = ids();
+            for (int i = 0; i < ids.length; i++) {
+                hits.add(new Hit(new AssetIdImpl(type, ids[i]), start(i), end(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import static com.fatwire.gst.foundation.tagging.TagUtils.asTag;
+
+/**
+ * Window, coalescing and retry of the dispatcher, with the engines replaced by
+ * a flusher that records the keys.
+ *
+ * @since Oct 16, 2026
+ */
+public class TagCacheFlushDispatcherTest extends TestCase {
+
+    private static final long WINDOW = 200L;
+
+    private final BlockingQueue<List<String>> flushes = new LinkedBlockingQueue<List<String>>();
+    private volatile int failures;
+    private volatile boolean closed;
+    private TagCacheFlushDispatcher dispatcher;
+
+    private final TagCacheFlushDispatcher.Flusher flusher = new TagCacheFlushDispatcher.Flusher() {
+
+        public void flush(List<String> keys) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("engine down");
+            }
+            flushes.add(new ArrayList<String>(keys));
+        }
+
+        public void close() {
+            closed = true;
+        }
+    };
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        super.tearDown();
+    }
+
+    private static List<Tag> tags(String... tags) {
+        final List<Tag> l = new ArrayList<Tag>();
+        for (String tag : tags) {
+            l.add(asTag(tag));
+        }
+        return l;
+    }
+
+    private List<String> nextFlush() throws InterruptedException {
+        return flushes.poll(10 * WINDOW, TimeUnit.MILLISECONDS);
+    }
+
+    public void testCoalescesTheKeysOfTheWindow() throws InterruptedException {
+        dispatcher = new TagCacheFlushDispatcher(WINDOW, 1000, flusher);
+        final long start = System.currentTimeMillis();
+        dispatcher.submit(tags("a", "b"));
+        dispatcher.submit(tags("b", "c"));
+        dispatcher.submit(tags("a"));
+        dispatcher.submit(tags());
+        assertEquals(3, dispatcher.getPendingKeys());
+
+        assertEquals(Arrays.asList("gsf-tag-a", "gsf-tag-b", "gsf-tag-c"), nextFlush());
+        assertTrue(System.currentTimeMillis() - start >= WINDOW);
+        assertNull(flushes.poll(2 * WINDOW, TimeUnit.MILLISECONDS));
+
+        // a new window starts with the next tags
+        dispatcher.submit(tags("a"));
+        assertEquals(Arrays.asList("gsf-tag-a"), nextFlush());
+
+        dispatcher.shutdown();
+        assertEquals(5, dispatcher.getEventsReceived());
+        assertEquals(6, dispatcher.getKeysReceived());
+        assertEquals(2, dispatcher.getFlushesIssued());
+        assertEquals(4, dispatcher.getKeysFlushed());
+    }
+
+    public void testFlushesWithoutWaitingWhenTooManyKeysArePending() throws InterruptedException {
+        dispatcher = new TagCacheFlushDispatcher(60 * 1000L, 3, flusher);
+        dispatcher.submit(tags("a", "b"));
+        assertNull(flushes.poll(WINDOW, TimeUnit.MILLISECONDS));
+        dispatcher.submit(tags("a", "c"));
+        assertEquals(Arrays.asList("gsf-tag-a", "gsf-tag-b", "gsf-tag-c"), nextFlush());
+        assertEquals(0, dispatcher.getPendingKeys());
+    }
+
+    public void testRetriesAFailedFlushAfterTheWindow() throws InterruptedException {
+        failures = 2;
+        dispatcher = new TagCacheFlushDispatcher(WINDOW, 1000, flusher);
+        dispatcher.submit(tags("a", "b"));
+        // flushed on the third attempt, without any new tags
+        assertEquals(Arrays.asList("gsf-tag-a", "gsf-tag-b"), nextFlush());
+        assertEquals(0, failures);
+        assertEquals(0, dispatcher.getPendingKeys());
+        dispatcher.shutdown();
+        assertEquals(1, dispatcher.getFlushesIssued());
+    }
+
+    public void testShutdownFlushesThePendingKeys() throws InterruptedException {
+        dispatcher = new TagCacheFlushDispatcher(60 * 1000L, 1000, flusher);
+        dispatcher.submit(tags("a"));
+        dispatcher.shutdown();
+        assertEquals(Arrays.asList("gsf-tag-a"), flushes.poll());
+        assertTrue(closed);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import com.fatwire.gst.foundation.tagging.db.TagIndex.Hit;
+import com.fatwire.gst.foundation.tagging.db.TagIndex.Postings;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Merges, removals and additions on the encoded postings of the tag index.
+ *
+ * @since Oct 16, 2026
+ */
+public class TagIndexTest extends TestCase {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static Postings postings(long... ids) {
+        final TreeMap<Long, long[]> m = new TreeMap<Long, long[]>();
+        for (long id : ids) {
+            m.put(id, new long[] { NO_DATE, NO_DATE });
+        }
+        return Postings.of(m);
+    }
+
+    private static void assertIds(Postings p, long... expected) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(p.ids()));
+    }
+
+    private static List<Hit> hits(Postings p) {
+        final List<Hit> hits = new ArrayList<Hit>();
+        p.addHits("Page", hits);
+        return hits;
+    }
+
+    public void testEncodesLargeIdsAndDeltas() {
+        final long[] ids = { 1L, 127L, 128L, 300L, 16384L, 1112223334445L, Long.MAX_VALUE - 1 };
+        assertIds(postings(ids), ids);
+        assertIds(Postings.EMPTY);
+    }
+
+    public void testAnd() {
+        final Postings p = postings(1, 5, 200, 1000, 70000);
+        assertIds(p.and(postings(5, 6, 1000, 70001)), 5, 1000);
+        assertIds(p.and(p), 1, 5, 200, 1000, 70000);
+        assertIds(p.and(Postings.EMPTY));
+        assertIds(Postings.EMPTY.and(p));
+    }
+
+    public void testOr() {
+        final Postings p = postings(1, 5, 200);
+        assertIds(p.or(postings(2, 5, 300)), 1, 2, 5, 200, 300);
+        assertIds(p.or(Postings.EMPTY), 1, 5, 200);
+        assertIds(Postings.EMPTY.or(p), 1, 5, 200);
+    }
+
+    public void testNot() {
+        final Postings p = postings(1, 5, 200, 1000);
+        assertIds(p.not(postings(0, 5, 1000, 2000)), 1, 200);
+        assertIds(p.not(Postings.EMPTY), 1, 5, 200, 1000);
+        assertIds(Postings.EMPTY.not(p));
+        assertIds(p.not(p));
+    }
+
+    public void testRemoveAndAddAgain() {
+        final Postings p = postings(3, 130, 100000);
+        final Postings removed = p.with(130, null);
+        assertIds(removed, 3, 100000);
+        assertIds(removed.with(130, null), 3, 100000);
+        assertIds(p.with(3, null).with(100000, null).with(130, null));
+
+        final Postings added = removed.with(130, new long[] { 10L, 20L });
+        assertIds(added, 3, 130, 100000);
+        final List<Hit> hits = hits(added);
+        assertNull(hits.get(0).getStartDate());
+        assertEquals(new Date(10L), hits.get(1).getStartDate());
+        assertEquals(new Date(20L), hits.get(1).getEndDate());
+        assertNull(hits.get(2).getEndDate());
+
+        // added again with other dates, the id is listed once
+        final Postings moved = added.with(130, new long[] { 30L, NO_DATE });
+        assertIds(moved, 3, 130, 100000);
+        assertEquals(new Date(30L), hits(moved).get(1).getStartDate());
+        assertNull(hits(moved).get(1).getEndDate());
+    }
+
+    public void testWithSplicesAtEveryPosition() {
+        final long big = 1L << 40;
+        final Postings p = postings(5, 200, 70000, big);
+        assertIds(p.with(5, null), 200, 70000, big);
+        assertIds(p.with(200, null), 5, 70000, big);
+        assertIds(p.with(big, null), 5, 200, 70000);
+        assertIds(p.with(6, null), 5, 200, 70000, big);
+        assertSame(p, p.with(6, null));
+
+        final long[] noDates = { NO_DATE, NO_DATE };
+        assertIds(p.with(1, noDates), 1, 5, 200, 70000, big);
+        assertIds(p.with(300, noDates), 5, 200, 300, 70000, big);
+        assertIds(p.with(big + 1, noDates), 5, 200, 70000, big, big + 1);
+        assertSame(p, p.with(200, noDates));
+        assertIds(Postings.EMPTY.with(big, noDates), big);
+        assertSame(Postings.EMPTY, postings(7).with(7, null));
+    }
+
+    public void testWithKeepsTheDatesInLine() {
+        Postings p = postings(10, 20, 30);
+        p = p.with(20, new long[] { 2L, NO_DATE });
+        p = p.with(15, new long[] { NO_DATE, 15L });
+        p = p.with(10, null);
+        p = p.with(40, new long[] { 4L, 40L });
+        assertIds(p, 15, 20, 30, 40);
+        final List<Hit> hits = hits(p);
+        assertNull(hits.get(0).getStartDate());
+        assertEquals(new Date(15L), hits.get(0).getEndDate());
+        assertEquals(new Date(2L), hits.get(1).getStartDate());
+        assertNull(hits.get(1).getEndDate());
+        assertNull(hits.get(2).getStartDate());
+        assertEquals(new Date(40L), hits.get(3).getEndDate());
+        // merges read the spliced deltas
+        assertIds(p.and(postings(20, 40, 50)), 20, 40);
+    }
+
+    public void testMergesKeepTheDates() {
+        final TreeMap<Long, long[]> m = new TreeMap<Long, long[]>();
+        m.put(1L, new long[] { 100L, NO_DATE });
+        m.put(2L, new long[] { NO_DATE, 200L });
+        m.put(3L, new long[] { NO_DATE, NO_DATE });
+        final Postings dated = Postings.of(m);
+
+        final List<Hit> and = hits(dated.and(postings(2, 3)));
+        assertEquals(2, and.size());
+        assertEquals(new Date(200L), and.get(0).getEndDate());
+        assertNull(and.get(1).getStartDate());
+
+        final List<Hit> or = hits(postings(0, 4).or(dated));
+        assertEquals(5, or.size());
+        assertEquals(new Date(100L), or.get(1).getStartDate());
+        assertNull(or.get(0).getStartDate());
+
+        final List<Hit> not = hits(dated.not(postings(2)));
+        assertEquals(2, not.size());
+        assertEquals(new Date(100L), not.get(0).getStartDate());
+    }
+
+    public void testDateOrderPutsUnsetDatesLast() {
+        final Hit unset = new Hit(new AssetIdImpl("Page", 1L), NO_DATE, NO_DATE);
+        final Hit early = new Hit(new AssetIdImpl("Page", 2L), 10L, NO_DATE);
+        final Hit earlyEnd = new Hit(new AssetIdImpl("Page", 3L), 10L, 50L);
+        final Hit late = new Hit(new AssetIdImpl("Page", 4L), 20L, 30L);
+        final List<Hit> hits = new ArrayList<Hit>(Arrays.asList(unset, late, early, earlyEnd));
+        Collections.sort(hits, TagIndex.DATE_ORDER);
+        assertEquals(Arrays.asList(earlyEnd, early, late, unset), hits);
+    }
+}
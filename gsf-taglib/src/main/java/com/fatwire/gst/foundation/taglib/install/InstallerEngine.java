@@ -39,6 +39,7 @@ import com.fatwire.assetapi.common.SiteAccessException;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.assetapi.site.User;
 import com.fatwire.assetapi.site.UserManager;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CacheInvalidatingAssetEventListener;
 import com.fatwire.gst.foundation.facade.logging.Log;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.runtag.asset.AssetList;
@@ -70,8 +71,9 @@ public final class InstallerEngine {
 
     /* Order of the components is important */
     private final GSFComponent[] components = new GSFComponent[] { new PublicationComponent(),
-            new TagRegistryComponent(), new UrlRegistryComponent(), new AssemblerComponent(), new PageRefComponent(),
-            new GSTDispatcherComponent(), new FlexFamilyComponent(), new FlexAttributesComponent(),
+            new CacheListenerComponent(), new TagRegistryComponent(), new UrlRegistryComponent(),
+            new AssemblerComponent(), new PageRefComponent(), new GSTDispatcherComponent(),
+            new FlexFamilyComponent(), new FlexAttributesComponent(),
             new AttributesInFamilyComponent(), new DefinitionsComponent(), new UserInSiteComponent(),
             new TreetabsInSiteComponent(), new CSElementSiteEntryInSiteComponent(), };
 
@@ -176,6 +178,28 @@ public final class InstallerEngine {
 
     }
 
+    class CacheListenerComponent implements GSFComponent {
+        @Override
+        public String getDescription() {
+            return "Cache invalidation listener";
+        }
+
+        public String getName() { return getClass().getSimpleName(); }
+
+        @Override
+        public boolean isInstalled() {
+            return new CacheInvalidatingAssetEventListener().isInstalled(ics);
+        }
+
+        public boolean install() {
+            LOG.info("Installing cache invalidation listener...");
+            new CacheInvalidatingAssetEventListener().install(ics);
+            LOG.info("...cache invalidation listener install complete");
+            return true;
+        }
+
+    }
+
     class TagRegistryComponent implements GSFComponent {
         @Override
         public String getDescription() {
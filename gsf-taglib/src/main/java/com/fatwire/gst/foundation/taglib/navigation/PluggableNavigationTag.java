@@ -25,9 +25,12 @@ import org.apache.commons.lang.StringUtils;
 
 import COM.FutureTense.Interfaces.ICS;
 
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.navigation.NavigationNode;
 import com.fatwire.gst.foundation.navigation.NavigationService;
 import com.fatwire.gst.foundation.taglib.GsfSimpleTag;
+import com.fatwire.gst.foundation.wra.navigation.WraNavigationService;
 
 /**
  * 
@@ -42,6 +45,7 @@ public class PluggableNavigationTag extends GsfSimpleTag {
     private String name;
     private int depth = 1;
     private String pagename;
+    private String expand;
 
     /**
      * @param name the name to set
@@ -64,6 +68,19 @@ public class PluggableNavigationTag extends GsfSimpleTag {
         this.pagename = pagename;
     }
 
+    /**
+     * Sets how much of the tree is read up front: <tt>all</tt> (the default)
+     * reads all nodes up to the depth, <tt>lazy</tt> reads the children of a
+     * node when they are accessed and <tt>active</tt> reads the path to the
+     * current page and the siblings along it, and the rest when accessed. The
+     * lazy strategies need a WraNavigationService.
+     * 
+     * @param expand the expansion strategy
+     */
+    public void setExpand(final String expand) {
+        this.expand = expand;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -80,17 +97,36 @@ public class PluggableNavigationTag extends GsfSimpleTag {
         String site = ics.GetVar("site");
         if (StringUtils.isBlank(site))
             throw new IllegalStateException("site is not a valid 'ics' variable.");
-        if (StringUtils.isBlank(pagename)) {
-
-            Collection<NavigationNode> nav = nh.getRootNodesForSite(site, depth);
-            getJspContext().setAttribute(name, nav);
-        } else {
-            NavigationNode nav = nh.getNodeByName(site, pagename, depth);
-            getJspContext().setAttribute(name, nav);
-
+        final boolean lazy = "lazy".equals(expand) || "active".equals(expand);
+        if (lazy && !(nh instanceof WraNavigationService))
+            throw new IllegalStateException("The NavigationService does not support expand='" + expand + "'.");
+        final WraNavigationService wns = lazy ? (WraNavigationService) nh : null;
+        final boolean wasLazy = lazy && wns.isLazy();
+        final AssetId wasActive = lazy ? wns.getActivePage() : null;
+        try {
+            if (lazy) {
+                wns.setLazy(true);
+                wns.setActivePage("active".equals(expand) && StringUtils.isNotBlank(ics.GetVar("p")) ? AssetIdUtils
+                        .currentPageId(ics) : null);
+            }
+            if (StringUtils.isBlank(pagename)) {
+
+                Collection<NavigationNode> nav = nh.getRootNodesForSite(site, depth);
+                getJspContext().setAttribute(name, nav);
+            } else {
+                NavigationNode nav = nh.getNodeByName(site, pagename, depth);
+                getJspContext().setAttribute(name, nav);
+
+            }
+        } finally {
+            if (lazy) {
+                wns.setLazy(wasLazy);
+                wns.setActivePage(wasActive);
+            }
         }
         depth = 1;
         pagename = null;
+        expand = null;
 
     }
 }
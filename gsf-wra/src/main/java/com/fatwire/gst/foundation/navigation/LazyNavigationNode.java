@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NavigationNode whose children are read on first access. The nodes of one
+ * level that were read together form a {@link Batch}; when the children of
+ * one of them are needed, the children of all of them are read at once, so a
+ * level costs one read whatever the number of nodes on it.
+ * <p/>
+ * The children are read with the Content Server context of the request that
+ * built the node, so they must be accessed during that request.
+ *
+ * @since Oct 16, 2026
+ */
+public class LazyNavigationNode extends NavigationNode {
+
+    /**
+     * Reads the children of a list of nodes.
+     */
+    public interface Loader {
+        /**
+         * Reads the children of the nodes and adds them with
+         * {@link NavigationNode#addChild(NavigationNode)}.
+         *
+         * @param parents the nodes to read the children for
+         */
+        void loadChildren(List<LazyNavigationNode> parents);
+    }
+
+    /**
+     * The nodes whose children are read together.
+     */
+    public static final class Batch {
+        private final Loader loader;
+        private final List<LazyNavigationNode> members = new ArrayList<LazyNavigationNode>();
+
+        public Batch(final Loader loader) {
+            if (loader == null) {
+                throw new IllegalArgumentException("loader cannot be null");
+            }
+            this.loader = loader;
+        }
+
+        private void load() {
+            final List<LazyNavigationNode> parents = new ArrayList<LazyNavigationNode>(members.size());
+            for (final LazyNavigationNode member : members) {
+                if (!member.loaded) {
+                    member.loaded = true;
+                    parents.add(member);
+                }
+            }
+            if (!parents.isEmpty()) {
+                loader.loadChildren(parents);
+            }
+        }
+    }
+
+    private final long nid;
+    private final Batch batch;
+    private boolean loaded;
+
+    /**
+     * @param nid the SitePlanTree node id
+     * @param batch the batch to read the children with
+     */
+    public LazyNavigationNode(final long nid, final Batch batch) {
+        this.nid = nid;
+        this.batch = batch;
+        batch.members.add(this);
+    }
+
+    /**
+     * @return the SitePlanTree node id.
+     */
+    public long getNid() {
+        return nid;
+    }
+
+    /**
+     * @return true if the children have been read.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the children of this node and of the other nodes in its batch, if
+     * this was not done before.
+     *
+     * @return the children
+     */
+    @Override
+    public List<NavigationNode> getChildren() {
+        if (!loaded) {
+            batch.load();
+        }
+        return super.getChildren();
+    }
+}
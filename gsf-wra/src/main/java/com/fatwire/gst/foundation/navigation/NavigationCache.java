@@ -0,0 +1,406 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.CacheEviction;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+
+/**
+ * Node-local cache of navigation trees, so that a navigation bar that was
+ * built before, in any request, does not need to be read again from the
+ * SitePlanTree and the assets.
+ * <p/>
+ * The trees are kept as immutable snapshots; every {@link #get(ICS, Key)}
+ * returns a fresh copy of {@link NavigationNode}s that the caller may change.
+ * The dependencies that building a tree recorded on the pagelet, the logged
+ * assets as well as the start and end date windows of the date-filtered
+ * assets, are recorded again on every hit, so the page cache behaves the same
+ * with or without this cache.
+ * <p/>
+ * A tree is dropped when an asset it was built from changes, and all trees are
+ * dropped when a Page changes, as that may be a change of the site plan.
+ * Trees are also dropped ten minutes after they were built, which bounds how
+ * long a page published to another cluster member can be missing from the
+ * navigation of this node; at most 1,000 trees are kept.
+ *
+ * @since Oct 16, 2026
+ */
+public final class NavigationCache {
+    private static final Log LOG = LogUtil.getLog(NavigationCache.class);
+
+    private static final NavigationCache INSTANCE = new NavigationCache(1000, 10 * 60 * 1000L);
+
+    /**
+     * Trees built for a date are valid for this many milliseconds of that
+     * date.
+     */
+    private static final long DATE_BUCKET = 60 * 1000L;
+
+    private final int maxSize;
+    private final long ttl;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    /**
+     * @return the cache for this node.
+     */
+    public static NavigationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxSize the maximum number of trees
+     * @param ttl the time in milliseconds a tree is valid
+     */
+    NavigationCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Looks up a tree and logs its dependencies.
+     *
+     * @param ics Content Server context to log the dependencies on
+     * @param key the key of the tree
+     * @return a copy of the cached tree, or null if it is not cached.
+     */
+    public List<NavigationNode> get(final ICS ics, final Key key) {
+        final Entry e = entries.get(key);
+        if (e == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - e.created >= ttl) {
+            entries.remove(key, e);
+            return null;
+        }
+        for (final Dependency d : e.dependencies) {
+            d.record(ics);
+        }
+        final List<NavigationNode> nodes = new ArrayList<NavigationNode>(e.nodes.size());
+        for (final Node node : e.nodes) {
+            nodes.add(node.toNavigationNode());
+        }
+        return nodes;
+    }
+
+    /**
+     * Caches a copy of the tree.
+     *
+     * @param key the key of the tree
+     * @param nodes the nodes of the tree
+     * @param dependencies the dependencies recorded while building the tree,
+     *            in the order they were recorded
+     * @param watched the assets that the tree depends on, including those that
+     *            were found not to be valid on the date
+     */
+    public void put(final Key key, final Collection<NavigationNode> nodes, final Collection<Dependency> dependencies,
+            final Collection<AssetId> watched) {
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        final List<Node> copy = new ArrayList<Node>(nodes.size());
+        for (final NavigationNode node : nodes) {
+            if (node != null) {
+                copy.add(new Node(node));
+            }
+        }
+        final Set<AssetId> w = new HashSet<AssetId>(watched);
+        for (final Dependency d : dependencies) {
+            w.add(d.id);
+        }
+        entries.put(key, new Entry(copy, new ArrayList<Dependency>(dependencies), w));
+    }
+
+    /**
+     * Drops the trees built from the asset, or all trees if the asset is a
+     * Page.
+     *
+     * @param id the asset that was added, updated or deleted
+     */
+    public void assetChanged(final AssetId id) {
+        if ("Page".equals(id.getType())) {
+            clear();
+            return;
+        }
+        for (final Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().watched.contains(id)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the trees.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param date the date the assets are filtered on, null for now
+     * @return the date rounded down to the period for which a tree is kept.
+     */
+    public static long toDateBucket(final Date date) {
+        final long t = date == null ? System.currentTimeMillis() : date.getTime();
+        return t - t % DATE_BUCKET;
+    }
+
+    private void evict() {
+        final int left = CacheEviction.evict(entries, maxSize, ttl);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Evicted navigation cache entries, " + left + " left.");
+        }
+    }
+
+    /**
+     * The arguments a navigation tree is built from.
+     */
+    public static final class Key {
+        private final String site;
+        private final String root;
+        private final int depth;
+        private final String linkAttribute;
+        private final String dimensionFilter;
+        private final String context;
+        private final long dateBucket;
+
+        /**
+         * @param site the site name
+         * @param root the name of the root page, or null for the root nodes
+         *            of the site
+         * @param depth the maximum depth
+         * @param linkAttribute the attribute for the link text
+         * @param dimensionFilter a key for the dimension filter, null if
+         *            there is none
+         * @param context anything else the urls depend on, like the render
+         *            mode
+         * @param dateBucket the date bucket, from {@link #toDateBucket(Date)}
+         *            , or 0 if the assets are not filtered on date
+         */
+        public Key(final String site, final String root, final int depth, final String linkAttribute,
+                final String dimensionFilter, final String context, final long dateBucket) {
+            this.site = site;
+            this.root = root;
+            this.depth = depth;
+            this.linkAttribute = linkAttribute;
+            this.dimensionFilter = dimensionFilter;
+            this.context = context;
+            this.dateBucket = dateBucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + (site == null ? 0 : site.hashCode());
+            result = 31 * result + (root == null ? 0 : root.hashCode());
+            result = 31 * result + depth;
+            result = 31 * result + (linkAttribute == null ? 0 : linkAttribute.hashCode());
+            result = 31 * result + (dimensionFilter == null ? 0 : dimensionFilter.hashCode());
+            result = 31 * result + (context == null ? 0 : context.hashCode());
+            return 31 * result + (int) (dateBucket ^ (dateBucket >>> 32));
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return depth == other.depth && dateBucket == other.dateBucket && equal(site, other.site)
+                    && equal(root, other.root) && equal(linkAttribute, other.linkAttribute)
+                    && equal(dimensionFilter, other.dimensionFilter) && equal(context, other.context);
+        }
+
+        private static boolean equal(final String a, final String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [site=" + site + ", root=" + root + ", depth=" + depth + ", linkAttribute=" + linkAttribute
+                    + ", dimensionFilter=" + dimensionFilter + ", context=" + context + ", dateBucket=" + dateBucket
+                    + "]";
+        }
+    }
+
+    /**
+     * A dependency recorded on the pagelet while building a tree: either an
+     * asset that was logged, or an asset that was checked against the date,
+     * with its startdate and enddate.
+     */
+    public static final class Dependency {
+        private final AssetId id;
+        private final boolean dated;
+        private final Date startDate;
+        private final Date endDate;
+
+        private Dependency(final AssetId id, final boolean dated, final Date startDate, final Date endDate) {
+            this.id = id;
+            this.dated = dated;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        /**
+         * @param id the asset
+         * @return the dependency recorded by {@link LogDep}.
+         */
+        public static Dependency logDep(final AssetId id) {
+            return new Dependency(id, false, null, null);
+        }
+
+        /**
+         * @param id the asset
+         * @param startDate the startdate of the asset, or null
+         * @param endDate the enddate of the asset, or null
+         * @return the dependency recorded by
+         *         {@link FilterAssetsByDate#recordDependency(ICS, AssetId, Date, Date)}
+         *         .
+         */
+        public static Dependency dated(final AssetId id, final Date startDate, final Date endDate) {
+            return new Dependency(id, true, startDate, endDate);
+        }
+
+        /**
+         * Records the dependency on the pagelet being rendered.
+         *
+         * @param ics Content Server context
+         */
+        public void record(final ICS ics) {
+            if (dated) {
+                FilterAssetsByDate.recordDependency(ics, id, startDate, endDate);
+            } else {
+                LogDep.logDep(ics, id);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 31 + id.hashCode();
+            result = 31 * result + (dated ? 1 : 0);
+            result = 31 * result + (startDate == null ? 0 : startDate.hashCode());
+            return 31 * result + (endDate == null ? 0 : endDate.hashCode());
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Dependency)) {
+                return false;
+            }
+            final Dependency other = (Dependency) obj;
+            return dated == other.dated && id.equals(other.id)
+                    && (startDate == null ? other.startDate == null : startDate.equals(other.startDate))
+                    && (endDate == null ? other.endDate == null : endDate.equals(other.endDate));
+        }
+
+        @Override
+        public String toString() {
+            return dated ? "Dependency [id=" + id + ", startDate=" + startDate + ", endDate=" + endDate + "]"
+                    : "Dependency [id=" + id + "]";
+        }
+    }
+
+    private static final class Entry implements CacheEviction.Timed {
+        private final List<Node> nodes;
+        private final List<Dependency> dependencies;
+        private final Set<AssetId> watched;
+        private final long created = System.currentTimeMillis();
+
+        Entry(final List<Node> nodes, final List<Dependency> dependencies, final Set<AssetId> watched) {
+            this.nodes = nodes;
+            this.dependencies = dependencies;
+            this.watched = watched;
+        }
+
+        @Override
+        public long getCreated() {
+            return created;
+        }
+    }
+
+    /**
+     * Immutable copy of a NavigationNode.
+     */
+    private static final class Node {
+        private final AssetId page;
+        private final int level;
+        private final String pagesubtype;
+        private final String pagename;
+        private final AssetId id;
+        private final String url;
+        private final String linktext;
+        private final boolean active;
+        private final List<Node> children;
+
+        Node(final NavigationNode node) {
+            this.page = node.getPage();
+            this.level = node.getLevel();
+            this.pagesubtype = node.getPagesubtype();
+            this.pagename = node.getPagename();
+            this.id = node.getId();
+            this.url = node.getUrl();
+            this.linktext = node.getLinktext();
+            this.active = node.isActive();
+            final List<Node> l = new ArrayList<Node>(node.getChildren().size());
+            for (final NavigationNode child : node.getChildren()) {
+                l.add(new Node(child));
+            }
+            this.children = Collections.unmodifiableList(l);
+        }
+
+        NavigationNode toNavigationNode() {
+            final NavigationNode node = new NavigationNode();
+            node.setPage(page);
+            node.setLevel(level);
+            node.setPagesubtype(pagesubtype);
+            node.setPagename(pagename);
+            node.setId(id);
+            node.setUrl(url);
+            node.setLinktext(linktext);
+            node.setActive(active);
+            for (final Node child : children) {
+                node.addChild(child.toNavigationNode());
+            }
+            return node;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import org.apache.commons.logging.LogFactory;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.text.Normalizer;
 import java.util.*;
 
 /**
@@ -40,9 +41,6 @@ public abstract class LightweightAbstractAssembler implements Assembler {
      */
     protected static final Log LOG = LogFactory.getLog(LightweightAbstractAssembler.class.getName());
 
-    private static final String CHARSET_lower = "_charset_";
-    private static final String CHARSET_upper = "_CHARSET_";
-
     private final String encoding;
 
     private final Map<String, String> properties = new HashMap<String, String>();
@@ -210,19 +208,16 @@ public abstract class LightweightAbstractAssembler implements Assembler {
             bf.append("//").append(authority); // nothing legal to quote until
                                                // I18N URLs work
         }
-        // Path needs quoting though, so let the URI object do it for us.
-        // Use the toASCIIString() method because we need the quoted values.
-        // (toString() is really just for readability and debugging, not
-        // programmatic use)
+        // Path and fragment need quoting, the same way the multi-arg URI
+        // constructors would, but without creating URI objects for them.
         if (path != null) {
-            bf.append(new URI(null, null, path, null, null).getRawPath());
+            appendQuotedPath(bf, path);
         }
         if (quotedQueryString != null) {
             bf.append('?').append(quotedQueryString); // already quoted
         }
-        // needs quoting
         if (fragment != null) {
-            bf.append(new URI(null, null, null, null, fragment).toASCIIString());
+            appendQuotedFragment(bf, fragment);
         }
         URI uri = new URI(bf.toString());
 
@@ -236,6 +231,113 @@ public abstract class LightweightAbstractAssembler implements Assembler {
         return uri;
     }
 
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * ASCII characters that are legal in a path: unreserved, punct, '/' and
+     * '@'.
+     */
+    private static final boolean[] PATH_CHARS = charSet("-_.!~*'()" + ":@&=+$," + ";/");
+
+    /**
+     * ASCII characters that are legal in a fragment: unreserved and reserved.
+     */
+    private static final boolean[] FRAGMENT_CHARS = charSet("-_.!~*'()" + ";/?:@&=+$,[]");
+
+    private static boolean[] charSet(final String punct) {
+        final boolean[] set = new boolean[128];
+        for (char c = '0'; c <= '9'; c++) {
+            set[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            set[c] = true;
+            set[Character.toUpperCase(c)] = true;
+        }
+        for (int i = 0; i < punct.length(); i++) {
+            set[punct.charAt(i)] = true;
+        }
+        return set;
+    }
+
+    /**
+     * Appends the path, quoted like <code>new URI(null, null, path, null,
+     * null).getRawPath()</code> does: illegal ASCII characters, including '%',
+     * and non-ASCII space and control characters are percent-encoded, other
+     * non-ASCII characters are appended as they are.
+     * 
+     * @param bf the builder to append to
+     * @param path the unquoted path
+     */
+    protected static final void appendQuotedPath(final StringBuilder bf, final String path) {
+        appendQuoted(bf, path, PATH_CHARS);
+    }
+
+    /**
+     * Appends '#' and the fragment, quoted like <code>new URI(null, null, null,
+     * null, fragment).toASCIIString()</code> does: illegal ASCII characters,
+     * including '%', are percent-encoded and the non-ASCII characters are
+     * percent-encoded as UTF-8 after NFC normalization.
+     * 
+     * @param bf the builder to append to
+     * @param fragment the unquoted fragment
+     */
+    protected static final void appendQuotedFragment(final StringBuilder bf, final String fragment) {
+        bf.append('#');
+        final int start = bf.length();
+        if (!appendQuoted(bf, fragment, FRAGMENT_CHARS)) {
+            return;
+        }
+        final String quoted = Normalizer.normalize(bf.substring(start), Normalizer.Form.NFC);
+        bf.setLength(start);
+        for (final byte b : utf8(quoted)) {
+            if (b >= 0) {
+                bf.append((char) b);
+            } else {
+                appendEscaped(bf, b);
+            }
+        }
+    }
+
+    /**
+     * Quotes the illegal ASCII characters and the non-ASCII space and control
+     * characters, leaving the other non-ASCII characters as they are.
+     * 
+     * @return true if non-ASCII characters were left.
+     */
+    private static boolean appendQuoted(final StringBuilder bf, final String s, final boolean[] legal) {
+        boolean other = false;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c < 128) {
+                if (legal[c]) {
+                    bf.append(c);
+                } else {
+                    appendEscaped(bf, c);
+                }
+            } else if (Character.isSpaceChar(c) || Character.isISOControl(c)) {
+                for (final byte b : utf8(String.valueOf(c))) {
+                    appendEscaped(bf, b);
+                }
+            } else {
+                bf.append(c);
+                other = true;
+            }
+        }
+        return other;
+    }
+
+    private static void appendEscaped(final StringBuilder bf, final int b) {
+        bf.append('%').append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+    }
+
+    private static byte[] utf8(final String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
     /**
      * Parse a query string and put the parameters into a map. Input parameters
      * will be URLDecoded prior to their addition into the resultant map.
@@ -253,111 +355,39 @@ public abstract class LightweightAbstractAssembler implements Assembler {
      *             make it impossible to parse.
      */
     protected final Map<String, String[]> parseQueryString(String qry) {
-        Map<String, String[]> rawPairs = new HashMap<String, String[]>();
-        if (qry == null) {
-            return rawPairs;
-        }
-        int inlen = qry.length();
-        if (inlen == 0) {
-            return rawPairs;
-        }
-
+        QueryString qs = parseQuery(qry);
+        Map<String, String[]> res = qs.toMap();
         if (LOG.isTraceEnabled()) {
-            LOG.trace("Parsing query string: " + qry);
-        }
-
-        int iequal;
-        int iamper;
-        int startAt = 0;
-        boolean bDone = false;
-
-        while (!bDone) {
-            String n;
-            String v;
-            if ((iequal = qry.indexOf("=", startAt)) != -1) {
-                // End of current name=value is '&' or EOL
-                iamper = qry.indexOf("&", iequal);
-                n = qry.substring(startAt, iequal);
-                n = n.trim(); // deal with accidental odd chars in the URL
-                iequal++;
-                if (iequal >= inlen) {
-                    break;
-                }
-
-                if (iamper == -1) {
-                    v = qry.substring(iequal);
-                } else {
-                    v = qry.substring(iequal, iamper);
-                }
-
-                if (iamper != -1) {
-                    startAt = iamper + 1;
-                } else {
-                    bDone = true;
-                }
-
-                v = v.trim(); // deal with stupid value
-
-                // add the value to the result.
-                String[] av = rawPairs.get(n);
-                if (av == null) {
-                    av = new String[1];
-                    av[0] = v;
-                    rawPairs.put(n, av);
-                } else {
-                    // param specified twice in the url.
-                    String[] newVal = new String[av.length + 1];
-                    System.arraycopy(av, 0, newVal, 0, av.length);
-                    newVal[av.length] = v;
-                    rawPairs.put(n, newVal);
-                }
-            } else {
-                break; // no more pairs
-            }
-        }
-
-        // Figure out which encoding to use to decode the params
-        String[] _charset_ = rawPairs.get(CHARSET_lower) == null ? rawPairs.get(CHARSET_upper) : rawPairs
-                .get(CHARSET_lower);
-        final String encoding;
-        if (_charset_ == null) {
-            encoding = null; // try to follow the spec
-        } else {
-            switch (_charset_.length) {
-                case 0:
-                    throw new IllegalStateException(
-                            "Somehow an empty _charst_ param made it into our map. Impossible...");
-                case 1:
-                    encoding = _charset_[0]; // url contains an override for the
-                                             // spec
-                    break;
-                default:
-                    throw new IllegalStateException("Too many values of _charset_ found in the URL");
+            for (int i = 0; i < qs.size(); i++) {
+                StringBuilder bf = new StringBuilder("Parsing query string.  Found raw pair [name]=[value]: ");
+                bf.append('[').append(qs.getRawName(i)).append(']').append('=').append('[')
+                        .append(qs.getRawValue(i)).append(']');
+                bf.append(" decoded to: ");
+                bf.append('[').append(qs.getName(i)).append(']').append('=').append('[').append(qs.getValue(i))
+                        .append(']');
+                LOG.trace(bf);
             }
         }
+        return res;
+    }
 
-        // Decode the raw pairs using the proper encoding and set them into the
-        // result map
-        Map<String, String[]> res = new HashMap<String, String[]>(rawPairs.size());
-        for (String rawKey : rawPairs.keySet()) {
-            String key = decode(rawKey, encoding);
-            String[] val = rawPairs.get(rawKey);
-            for (int i = 0; i < val.length; i++) {
-                String rawVal = val[i];
-                val[i] = decode(rawVal, encoding);
-
-                if (LOG.isTraceEnabled()) {
-                    StringBuilder bf = new StringBuilder("Parsing query string.  Found raw pair [name]=[value]: ");
-                    bf.append('[').append(rawKey).append(']').append('=').append('[').append(rawVal).append(']');
-                    bf.append(" decoded to: ");
-                    bf.append('[').append(key).append(']').append('=').append('[').append(val[i]).append(']');
-                    LOG.trace(bf);
-                }
-            }
-            res.put(key, val);
+    /**
+     * Parse a query string in a single pass without decoding it. Names and
+     * values are decoded when they are asked for, using the
+     * <code>_charset_</code> URL parameter if there is one and the encoding
+     * specified by this class otherwise.
+     * 
+     * @param qry the raw query string, may be null
+     * @return the parsed query string.
+     * @throws IllegalStateException if <code>_charset_</code> is specified more
+     *             than once.
+     * @see #parseQueryString(String)
+     */
+    protected final QueryString parseQuery(String qry) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Parsing query string: " + qry);
         }
-
-        return res;
+        return QueryString.parse(qry, encoding);
     }
 
     /**
@@ -430,19 +460,12 @@ public abstract class LightweightAbstractAssembler implements Assembler {
         String[] newPackedargsStrings = new String[origPackedargsStrings.length];
 
         for (int i = 0; i < origPackedargsStrings.length; i++) {
-            Map<String, String[]> oldPacked = parseQueryString(origPackedargsStrings[i]);
-            Map<String, String[]> newPacked = new HashMap<String, String[]>();
-            for (String opK : oldPacked.keySet()) {
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("checking to see if a param should be excluded from packedargs: " + opK);
-                }
-                if (!toExclude.contains(opK)) {
-                    newPacked.put(opK, oldPacked.get(opK));
-                }
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("removing " + toExclude + " from packedargs: " + origPackedargsStrings[i]);
             }
-
-            newPackedargsStrings[i] = constructQueryString(newPacked);
-
+            // the pairs that are kept are copied without decoding them when
+            // possible
+            newPackedargsStrings[i] = parseQuery(origPackedargsStrings[i]).toString(toExclude);
         }
 
         return newPackedargsStrings;
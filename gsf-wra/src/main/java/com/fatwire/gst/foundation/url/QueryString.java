@@ -0,0 +1,366 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fatwire.cs.core.uri.Util;
+
+/**
+ * Query string parsed in a single pass into the offsets of its name=value
+ * pairs. Names and values are only cut out of the query string and URLDecoded
+ * when they are asked for, and the pairs can be written out again with some
+ * names left out without building any maps.
+ * <p/>
+ * The pairs are found the same way
+ * {@link LightweightAbstractAssembler#parseQueryString(String)} always did:
+ * a name runs up to the next '=', a value up to the next '&amp;', both are
+ * trimmed and a trailing name without a value is dropped. The
+ * <code>_charset_</code> parameter is picked up during the scan and used to
+ * decode all the other pairs.
+ *
+ * @since Oct 16, 2026
+ */
+public final class QueryString {
+    private static final String CHARSET_lower = "_charset_";
+    private static final String CHARSET_upper = "_CHARSET_";
+
+    private final String qry;
+    private final String encoding;
+    private final String defaultEncoding;
+
+    /** nameStart, nameEnd, valueStart, valueEnd per pair */
+    private final int[] offsets;
+    private final int size;
+
+    private String[] names;
+    private String[] values;
+
+    /**
+     * Parses the query string.
+     *
+     * @param qry the raw query string, may be null
+     * @param defaultEncoding the encoding to decode with if the query string
+     *            has no <code>_charset_</code> parameter, null for the
+     *            platform's default
+     * @return the parsed query string
+     * @throws IllegalStateException if <code>_charset_</code> is given more
+     *             than once
+     */
+    public static QueryString parse(final String qry, final String defaultEncoding) {
+        return new QueryString(qry == null ? "" : qry, defaultEncoding);
+    }
+
+    private QueryString(final String qry, final String defaultEncoding) {
+        this.qry = qry;
+        this.defaultEncoding = defaultEncoding;
+        final int len = qry.length();
+        int[] o = new int[16];
+        int n = 0;
+        int lower = -1;
+        int lowerCount = 0;
+        int upper = -1;
+        int upperCount = 0;
+        int start = 0;
+        while (start < len) {
+            int eq = qry.indexOf('=', start);
+            if (eq == -1 || eq + 1 >= len) {
+                break; // no more pairs
+            }
+            int amp = qry.indexOf('&', eq);
+            int end = amp == -1 ? len : amp;
+            if (o.length < (n + 1) * 4) {
+                int[] grown = new int[o.length * 2];
+                System.arraycopy(o, 0, grown, 0, o.length);
+                o = grown;
+            }
+            // deal with accidental odd chars in the URL
+            int i = n * 4;
+            o[i] = trimStart(qry, start, eq);
+            o[i + 1] = trimEnd(qry, o[i], eq);
+            o[i + 2] = trimStart(qry, eq + 1, end);
+            o[i + 3] = trimEnd(qry, o[i + 2], end);
+            if (regionEquals(qry, o[i], o[i + 1], CHARSET_lower)) {
+                lower = n;
+                lowerCount++;
+            } else if (regionEquals(qry, o[i], o[i + 1], CHARSET_upper)) {
+                upper = n;
+                upperCount++;
+            }
+            n++;
+            if (amp == -1) {
+                break;
+            }
+            start = amp + 1;
+        }
+        this.offsets = o;
+        this.size = n;
+
+        // Figure out which encoding to use to decode the params
+        int charset = lowerCount > 0 ? lower : upper;
+        if ((lowerCount > 0 ? lowerCount : upperCount) > 1) {
+            throw new IllegalStateException("Too many values of _charset_ found in the URL");
+        }
+        // the url may contain an override for the spec
+        this.encoding = charset == -1 ? defaultEncoding : getRawValue(charset);
+    }
+
+    /**
+     * @return the number of name=value pairs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the encoding the pairs are decoded with, taken from the
+     *         <code>_charset_</code> parameter if there is one.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public String getRawName(final int i) {
+        return qry.substring(offsets[i * 4], offsets[i * 4 + 1]);
+    }
+
+    public String getRawValue(final int i) {
+        return qry.substring(offsets[i * 4 + 2], offsets[i * 4 + 3]);
+    }
+
+    /**
+     * @param i the index of the pair
+     * @return the decoded name of the pair.
+     */
+    public String getName(final int i) {
+        if (names == null) {
+            names = new String[size];
+        }
+        if (names[i] == null) {
+            names[i] = decode(offsets[i * 4], offsets[i * 4 + 1]);
+        }
+        return names[i];
+    }
+
+    /**
+     * @param i the index of the pair
+     * @return the decoded value of the pair.
+     */
+    public String getValue(final int i) {
+        if (values == null) {
+            values = new String[size];
+        }
+        if (values[i] == null) {
+            values[i] = decode(offsets[i * 4 + 2], offsets[i * 4 + 3]);
+        }
+        return values[i];
+    }
+
+    /**
+     * Tells if the decoded name of the pair equals the given name, without
+     * decoding it if it holds no escaped characters.
+     *
+     * @param i the index of the pair
+     * @param name the decoded name to compare with
+     * @return true if the names are equal
+     */
+    public boolean nameEquals(final int i, final String name) {
+        if (names != null && names[i] != null) {
+            return names[i].equals(name);
+        }
+        final int start = offsets[i * 4];
+        final int end = offsets[i * 4 + 1];
+        if (isPlain(start, end)) {
+            return regionEquals(qry, start, end, name);
+        }
+        return getName(i).equals(name);
+    }
+
+    /**
+     * @param name the decoded name
+     * @return the decoded values of all the pairs with this name, or null if
+     *         there are none.
+     */
+    public String[] getValues(final String name) {
+        List<String> found = null;
+        for (int i = 0; i < size; i++) {
+            if (nameEquals(i, name)) {
+                if (found == null) {
+                    found = new ArrayList<String>(1);
+                }
+                found.add(getValue(i));
+            }
+        }
+        return found == null ? null : found.toArray(new String[found.size()]);
+    }
+
+    /**
+     * Decodes all the pairs into a map. Values of names that are given more
+     * than once are kept in the order of the query string.
+     *
+     * @return map containing <code>String</code>/<code>String[]</code> pairs.
+     */
+    public Map<String, String[]> toMap() {
+        final Map<String, String[]> res = new HashMap<String, String[]>(Math.max(16, size * 2));
+        for (int i = 0; i < size; i++) {
+            final String key = getName(i);
+            final String[] av = res.get(key);
+            if (av == null) {
+                res.put(key, new String[] { getValue(i) });
+            } else {
+                // param specified twice in the url.
+                final String[] newVal = new String[av.length + 1];
+                System.arraycopy(av, 0, newVal, 0, av.length);
+                newVal[av.length] = getValue(i);
+                res.put(key, newVal);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Writes the pairs out again as a query string encoded with the default
+     * encoding, leaving out the pairs with an empty value and those with one
+     * of the given names. Pairs that would encode to what they already are
+     * are copied as they are, the others are decoded and encoded again.
+     *
+     * @param bf the builder to append to
+     * @param toExclude the decoded names to leave out
+     * @return true if any pair was appended.
+     */
+    public boolean appendTo(final StringBuilder bf, final Collection<String> toExclude) {
+        final boolean reencode = !sameEncoding();
+        boolean first = true;
+        for (int i = 0; i < size; i++) {
+            final int o = i * 4;
+            if (offsets[o + 2] == offsets[o + 3] || isExcluded(i, toExclude)) {
+                continue;
+            }
+            if (!first) {
+                bf.append('&');
+            }
+            first = false;
+            appendEncoded(bf, offsets[o], offsets[o + 1], reencode);
+            bf.append('=');
+            appendEncoded(bf, offsets[o + 2], offsets[o + 3], reencode);
+        }
+        return !first;
+    }
+
+    /**
+     * @param toExclude the decoded names to leave out
+     * @return the query string written by
+     *         {@link #appendTo(StringBuilder, Collection)}, or null if no pair
+     *         is left.
+     */
+    public String toString(final Collection<String> toExclude) {
+        final StringBuilder bf = new StringBuilder(qry.length());
+        return appendTo(bf, toExclude) ? bf.toString() : null;
+    }
+
+    @Override
+    public String toString() {
+        return qry;
+    }
+
+    private boolean isExcluded(final int i, final Collection<String> toExclude) {
+        if (toExclude.isEmpty()) {
+            return false;
+        }
+        if (toExclude.size() > 8 || !isPlain(offsets[i * 4], offsets[i * 4 + 1])) {
+            return toExclude.contains(getName(i));
+        }
+        for (final String name : toExclude) {
+            if (nameEquals(i, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendEncoded(final StringBuilder bf, final int start, final int end, final boolean reencode) {
+        if (!reencode && isPlain(start, end)) {
+            bf.append(qry, start, end);
+            return;
+        }
+        try {
+            bf.append(Util.encode(decode(start, end), defaultEncoding));
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("Unexpected failure encoding string '" + qry.substring(start, end)
+                    + "' using encoding '" + defaultEncoding + "'.  (" + ex + ")");
+        }
+    }
+
+    private boolean sameEncoding() {
+        return encoding == null ? defaultEncoding == null : encoding.equalsIgnoreCase(defaultEncoding);
+    }
+
+    /**
+     * @return true if the region only holds characters that URLEncoding leaves
+     *         as they are, so that decoding and encoding it again gives the
+     *         same string in any ASCII compatible encoding.
+     */
+    private boolean isPlain(final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = qry.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.'
+                    || c == '-' || c == '*' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(final int start, final int end) {
+        final String string = qry.substring(start, end);
+        if (isPlain(start, end)) {
+            return string;
+        }
+        try {
+            return Util.decode(string, encoding);
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Failure decoding string '" + string + "' using encoding '"
+                    + encoding + "'.  (" + iae.getMessage() + ")");
+        } catch (UnsupportedEncodingException ex) {
+            // This is not expected to ever occur.
+            throw new IllegalStateException("Unexpected failure decoding string '" + string + "'using encoding '"
+                    + encoding + "'.  (" + ex + ")");
+        }
+    }
+
+    private static boolean regionEquals(final String s, final int start, final int end, final String other) {
+        return other != null && end - start == other.length() && s.regionMatches(start, other, 0, other.length());
+    }
+
+    private static int trimStart(final String s, int start, final int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(final String s, final int start, int end) {
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.CacheEviction;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * Node-local cache of the vanity url calculated by {@link WraPageReference}
+ * for an asset, so that generating a link to an asset that was linked to
+ * before, in any request, costs a map lookup instead of reading the asset and
+ * looking up its virtual webroot.
+ * <p/>
+ * Both outcomes are cached: the virtual-webroot and url-path of an asset with
+ * a vanity url, and the fact that an asset has none. The caller logs the
+ * asset as a dependency on every hit, as reading the asset would have done.
+ * Entries are removed by the WraAssetEventListener when the asset changes,
+ * and all of them when a virtual webroot changes. A path that was changed
+ * through another cluster member is still served from here until the entry
+ * expires, after five minutes; at most 20,000 assets are kept.
+ *
+ * @since Oct 16, 2026
+ */
+public final class VanityUrlCache {
+    private static final Log LOG = LogUtil.getLog(VanityUrlCache.class);
+
+    private static final VanityUrlCache INSTANCE = new VanityUrlCache(20000, 5 * 60 * 1000L);
+
+    private final int maxSize;
+    private final long ttl;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * @return the cache for this node.
+     */
+    public static VanityUrlCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param ttl the time in milliseconds an entry is valid
+     */
+    VanityUrlCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param env the virtual webroot environment name
+     * @param requireWra true if the asset must be a WRA to have a vanity url,
+     *            false if a vanity asset is enough
+     * @param id the asset
+     * @return the cached entry, or null if there is none for the environment
+     *         and requireWra flag.
+     */
+    public Entry get(final String env, final boolean requireWra, final AssetId id) {
+        final String key = toKey(id);
+        final Entry e = entries.get(key);
+        if (e == null || e.requireWra != requireWra || !e.env.equals(env)) {
+            return null;
+        }
+        if (System.currentTimeMillis() - e.created >= ttl) {
+            entries.remove(key, e);
+            return null;
+        }
+        return e;
+    }
+
+    /**
+     * Caches the vanity url of an asset.
+     *
+     * @param env the virtual webroot environment name
+     * @param requireWra true if the asset must be a WRA to have a vanity url
+     * @param id the asset
+     * @param virtualWebroot the environment virtual webroot
+     * @param urlPath the url path relative to the virtual webroot
+     * @return the cached entry
+     */
+    public Entry put(final String env, final boolean requireWra, final AssetId id, final String virtualWebroot,
+            final String urlPath) {
+        return put(toKey(id), new Entry(env, requireWra, virtualWebroot, urlPath));
+    }
+
+    /**
+     * Caches that an asset has no vanity url.
+     *
+     * @param env the virtual webroot environment name
+     * @param requireWra true if the asset must be a WRA to have a vanity url
+     * @param id the asset
+     * @return the cached entry
+     */
+    public Entry putNone(final String env, final boolean requireWra, final AssetId id) {
+        return put(toKey(id), new Entry(env, requireWra, null, null));
+    }
+
+    /**
+     * Removes the entry of an asset.
+     *
+     * @param id the asset
+     */
+    public void invalidate(final AssetId id) {
+        entries.remove(toKey(id));
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry put(final String key, final Entry e) {
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.put(key, e);
+        return e;
+    }
+
+    private void evict() {
+        final int left = CacheEviction.evict(entries, maxSize, ttl);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Evicted vanity url cache entries, " + left + " left.");
+        }
+    }
+
+    private static String toKey(final AssetId id) {
+        return id.getType() + ':' + id.getId();
+    }
+
+    /**
+     * The vanity url of an asset, or the absence of one.
+     */
+    public static final class Entry implements CacheEviction.Timed {
+        private final String env;
+        private final boolean requireWra;
+        private final String virtualWebroot;
+        private final String urlPath;
+        private final long created = System.currentTimeMillis();
+
+        Entry(final String env, final boolean requireWra, final String virtualWebroot, final String urlPath) {
+            this.env = env;
+            this.requireWra = requireWra;
+            this.virtualWebroot = virtualWebroot;
+            this.urlPath = urlPath;
+        }
+
+        /**
+         * @return true if the asset has a vanity url.
+         */
+        public boolean isVanity() {
+            return virtualWebroot != null;
+        }
+
+        public String getVirtualWebroot() {
+            return virtualWebroot;
+        }
+
+        public String getUrlPath() {
+            return urlPath;
+        }
+
+        @Override
+        public long getCreated() {
+            return created;
+        }
+    }
+}
@@ -17,7 +17,9 @@ package com.fatwire.gst.foundation.url;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.facade.assetapi.listener.RunOnceAssetEventListener;
+import com.fatwire.gst.foundation.navigation.NavigationCache;
 import com.fatwire.gst.foundation.url.db.UrlRegistry2;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
 
 /**
  * Asset event for ensuring that a WRA is properly prepared for rendering.
@@ -30,11 +32,16 @@ import com.fatwire.gst.foundation.url.db.UrlRegistry2;
  */
 public class WraAssetEventListener extends RunOnceAssetEventListener {
 
+    private static final String GST_VIRTUAL_WEBROOT = "GSTVirtualWebroot";
+
     @Override
     protected void doAssetAdded(final AssetId assetId) {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Heard assetAdded event for " + assetId);
         }
+        refreshVirtualWebroots(assetId);
+        VanityUrlCache.getInstance().invalidate(assetId);
+        NavigationCache.getInstance().assetChanged(assetId);
         getService().addAsset(assetId);
     }
 
@@ -43,6 +50,9 @@ public class WraAssetEventListener extends RunOnceAssetEventListener {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Heard assetUpdated event for " + assetId);
         }
+        refreshVirtualWebroots(assetId);
+        VanityUrlCache.getInstance().invalidate(assetId);
+        NavigationCache.getInstance().assetChanged(assetId);
         getService().updateAsset(assetId);
     }
 
@@ -51,9 +61,34 @@ public class WraAssetEventListener extends RunOnceAssetEventListener {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Heard assetDeleted event for " + assetId);
         }
+        refreshVirtualWebroots(assetId);
+        VanityUrlCache.getInstance().invalidate(assetId);
+        NavigationCache.getInstance().assetChanged(assetId);
         getService().deleteAsset(assetId);
     }
 
+    /**
+     * Replaces the virtual webroot lookup tries of this node and clears its
+     * cached vanity urls and navigation trees when a virtual webroot has
+     * changed.
+     * 
+     * @param assetId the asset of the event
+     */
+    protected void refreshVirtualWebroots(final AssetId assetId) {
+        if (!GST_VIRTUAL_WEBROOT.equals(assetId.getType())) {
+            return;
+        }
+        VanityUrlCache.getInstance().clear();
+        NavigationCache.getInstance().clear();
+        try {
+            new VirtualWebrootApiBypassDao(getICS()).reload();
+        } catch (final RuntimeException e) {
+            LOG.warn("Could not reload the virtual webroots after an event for " + assetId
+                    + ", they will be reloaded on next use. " + e.getMessage());
+            VirtualWebrootApiBypassDao.invalidate();
+        }
+    }
+
     protected WraPathTranslationService getService() {
         return UrlRegistry2.lookup(getICS());
     }
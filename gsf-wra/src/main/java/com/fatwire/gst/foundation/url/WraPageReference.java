@@ -25,6 +25,7 @@ import COM.FutureTense.Util.ftMessage;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.cs.core.uri.Definition;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
 import com.fatwire.gst.foundation.vwebroot.AssetApiVirtualWebrootDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
 import com.fatwire.gst.foundation.wra.AssetApiWraCoreFieldDao;
@@ -99,13 +100,10 @@ public class WraPageReference extends PageRef {
     @Override
     public void setParameters(Map args, ICS ics) throws ReferenceException {
 
-        if (doVanityUrl(args, ics)) {
-            VanityUrlCalculationContext ctx = getVanityUrlCalculationContext(args, ics, requireWraForVanityUrls());
-
-            VirtualWebroot vw = ctx.getVirtualWebrootForAsset(args, ics);
-
-            args.put("virtual-webroot", vw.getEnvironmentVirtualWebroot());
-            args.put("url-path", ctx.getVanityAsset(args, ics).getPath().substring(vw.getMasterVirtualWebroot().length()));
+        VanityUrlCache.Entry vanityUrl = getVanityUrl(args, ics);
+        if (vanityUrl != null) {
+            args.put("virtual-webroot", vanityUrl.getVirtualWebroot());
+            args.put("url-path", vanityUrl.getUrlPath());
 
             // has pagename been set? if not, use default.
             String pagename = ics.GetProperty(WraPathAssembler.DISPATCHER_PROPNAME, "ServletRequest.properties", true);
@@ -133,9 +131,14 @@ public class WraPageReference extends PageRef {
     }
 
     /**
-     * Determine if we should look up the virtual webroot and url path or not
+     * Determine if we should look up the virtual webroot and url path or not,
+     * and look them up. The outcome is kept in the {@link VanityUrlCache} of
+     * this node, so that the asset and its virtual webroot are only looked up
+     * again after the asset changed.
+     * 
+     * @return the vanity url, or null if no vanity url should be created
      */
-    private boolean doVanityUrl(Map args, ICS ics) {
+    private VanityUrlCache.Entry getVanityUrl(Map args, ICS ics) {
 
         if (log.isDebugEnabled()) {
             log.debug("checking to see if the URL for this asset should be a vanity url.  asset: "+args.get("c")+":"+args.get("cid"));
@@ -143,37 +146,54 @@ public class WraPageReference extends PageRef {
 
         if (getSatelliteContext() != SatelliteContext.SATELLITE_SERVER) {
             log.debug("not applying vanity URL because satellite context is not satellite");
-            return false;
+            return null;
         }
 
         if (!VanityUrlCalculationContext.isGetTemplateUrl(args, ics)) {
             log.debug("not applying vanity URL because API usage was not found to be the gettemplateurl tag");
-            return false;
+            return null;
         }
 
-        VanityUrlCalculationContext ctx = getVanityUrlCalculationContext(args, ics, requireWraForVanityUrls());
+        boolean requireWra = requireWraForVanityUrls();
+        VanityUrlCalculationContext ctx = getVanityUrlCalculationContext(args, ics, requireWra);
 
         if (!ctx.isGsfEnvironmentSet(args, ics)) {
             log.debug("not applying vanity URL because virtual webroot environment is not set");
-            return false;
+            return null;
+        }
+
+        VanityUrlCache cache = VanityUrlCache.getInstance();
+        String env = ctx.getCurrentEnvironment(args, ics);
+        VanityUrlCache.Entry cached = cache.get(env, requireWra, ctx.assetId);
+        if (cached != null) {
+            // the asset is not read, log the dependency the asset api would
+            // have logged
+            LogDep.logDep(ics, ctx.assetId);
+            log.debug(cached.isVanity() ? "Asset passed tests before and a vanity URL will be created"
+                    : "not applying vanity URL because asset failed the tests before");
+            return cached.isVanity() ? cached : null;
         }
 
         if (!ctx.isVanityAsset(args, ics)) {
-            if (requireWraForVanityUrls())
+            if (requireWra)
                 log.debug("not applying vanityURL because asset is not a WRA");
             else
                 log.debug("not applying vanityURL because asset is not a Vanity Asset");
-            return false;
+            cache.putNone(env, requireWra, ctx.assetId);
+            return null;
         }
 
         if (!ctx.hasVirtualWebroot(args, ics)) {
             log.debug("not applying vanity URL because we could not find a valid virtual webroot in the asset's path field");
-            return false;
+            cache.putNone(env, requireWra, ctx.assetId);
+            return null;
         }
 
         log.debug("Asset passed tests and a vanity URL will be created");
 
-        return true;
+        VirtualWebroot vw = ctx.getVirtualWebrootForAsset(args, ics);
+        return cache.put(env, requireWra, ctx.assetId, vw.getEnvironmentVirtualWebroot(), ctx.getVanityAsset(args, ics)
+                .getPath().substring(vw.getMasterVirtualWebroot().length()));
     }
 
     /**
@@ -19,10 +19,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import com.fatwire.cs.core.uri.Assembler;
 import com.fatwire.cs.core.uri.Definition;
@@ -78,6 +79,8 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
      */
     private static List<String> EMBEDDED_PARAMS = Arrays.asList(PubConstants.PAGENAME, PubConstants.CHILDPAGENAME,
             VIRTUAL_WEBROOT, URL_PATH, PubConstants.c, PubConstants.cid);
+
+    private static final Set<String> EMBEDDED_PARAM_SET = new HashSet<String>(EMBEDDED_PARAMS);
     /**
      * Configuration property for overriding the default dispatcher pagename.
      * The default is GST/Dispatcher.
@@ -136,20 +139,21 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
      */
     public URI assemble(Definition definition) throws URISyntaxException {
 
-        // get packedargs just in case we need them
-        Map<String, String[]> packedargs = getPackedargs(definition);
-
         String virtualWebroot = definition.getParameter(VIRTUAL_WEBROOT);
-        if (!goodString(virtualWebroot) && packedargs.containsKey(VIRTUAL_WEBROOT)) {
-            String[] s = packedargs.get(VIRTUAL_WEBROOT);
-            if (s != null && s.length > 0)
-                virtualWebroot = s[0];
-        }
         String urlPath = definition.getParameter(URL_PATH);
-        if (!goodString(urlPath) && packedargs.containsKey(URL_PATH)) {
-            String[] s = packedargs.get(URL_PATH);
-            if (s != null && s.length > 0)
-                urlPath = s[0];
+        if (!goodString(virtualWebroot) || !goodString(urlPath)) {
+            // only unpack packedargs when they are needed
+            Map<String, String[]> packedargs = getPackedargs(definition);
+            if (!goodString(virtualWebroot) && packedargs.containsKey(VIRTUAL_WEBROOT)) {
+                String[] s = packedargs.get(VIRTUAL_WEBROOT);
+                if (s != null && s.length > 0)
+                    virtualWebroot = s[0];
+            }
+            if (!goodString(urlPath) && packedargs.containsKey(URL_PATH)) {
+                String[] s = packedargs.get(URL_PATH);
+                if (s != null && s.length > 0)
+                    urlPath = s[0];
+            }
         }
         if (!goodString(virtualWebroot) || !goodString(urlPath)) {
             if (LOG.isDebugEnabled()) {
@@ -162,28 +166,43 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
         if (LOG.isDebugEnabled()) {
             LOG.debug("WRAPathAssembler is assembling definition: " + definition);
         }
-        String quotedQueryString = _getQuotedQueryString(definition);
-        return constructURI(virtualWebroot, urlPath, quotedQueryString, definition.getFragment());
+        return constructURI(virtualWebroot, urlPath, definition);
     }
 
-    private String _getQuotedQueryString(Definition definition) {
-        Map<String, String[]> newQryParams = new HashMap<String, String[]>();
-
-        // build the query string if there is one
+    /**
+     * Appends the query string, excluding the embedded params, directly to
+     * the builder.
+     * 
+     * @return true if any parameter was appended.
+     */
+    private boolean appendQuotedQueryString(StringBuilder bf, Definition definition) {
+        boolean first = true;
         for (Object o : definition.getParameterNames()) {
             // Get the parameter name
             String key = (String) o;
 
             // Don't add embedded params to the query string
-            if (!EMBEDDED_PARAMS.contains(key)) {
+            if (!EMBEDDED_PARAM_SET.contains(key)) {
                 String[] vals = definition.getParameters(key);
-                if (key.equals(PACKEDARGS)) {
+                if (key.equals(PACKEDARGS) && vals != null) {
                     vals = excludeFromPackedargs(vals, EMBEDDED_PARAMS);
                 }
-                newQryParams.put(key, vals);
+                if (vals == null) {
+                    continue;
+                }
+                String encodedKey = null;
+                for (String val : vals) {
+                    if (val != null && val.length() > 0) {
+                        if (encodedKey == null) {
+                            encodedKey = encode(key);
+                        }
+                        bf.append(first ? '?' : '&').append(encodedKey).append('=').append(encode(val));
+                        first = false;
+                    }
+                }
             }
         }
-        return constructQueryString(newQryParams);
+        return !first;
     }
 
     @SuppressWarnings("unchecked")
@@ -196,32 +215,28 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
     }
 
     /**
-     * Construct a query string using the required input for this assembler.
+     * Construct the URI using the required input for this assembler. The path,
+     * query string and fragment are quoted directly into one builder; only the
+     * result is parsed into a URI.
      * 
      * @param virtualWebroot as defined in the GST Site Foundation spec
      * @param uriPath as defined in the GST Site Foundation spec
-     * @param quotedQueryString query string excluding embedded params, quoted
-     * @param fragment fragment from definition
+     * @param definition the definition holding the query string parameters
+     *            and fragment
      * @return valid URL
      * @throws URISyntaxException on bad input data
      * @see LightweightAbstractAssembler#constructURI for inspiration if edits
      *      are required
      */
-    private static final URI constructURI(final String virtualWebroot, String uriPath, String quotedQueryString,
-            String fragment) throws URISyntaxException {
-        StringBuilder bf = new StringBuilder();
+    private URI constructURI(final String virtualWebroot, String uriPath, Definition definition)
+            throws URISyntaxException {
+        StringBuilder bf = new StringBuilder(virtualWebroot.length() + uriPath.length() + 64);
         bf.append(virtualWebroot);
-        // Path needs quoting though, so let the URI object do it for us.
-        // Use the toASCIIString() method because we need the quoted values.
-        // (toString() is really just for readability and debugging, not
-        // programmatic use)
-        bf.append(new URI(null, null, uriPath, null, null).getRawPath());
-        if (goodString(quotedQueryString)) {
-            bf.append('?').append(quotedQueryString); // already quoted
-        }
-        // needs quoting
+        appendQuotedPath(bf, uriPath);
+        appendQuotedQueryString(bf, definition);
+        String fragment = definition.getFragment();
         if (goodString(fragment)) {
-            bf.append(new URI(null, null, null, null, fragment).toASCIIString());
+            appendQuotedFragment(bf, fragment);
         }
         URI uri = new URI(bf.toString());
 
@@ -229,8 +244,7 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
             StringBuilder msg = new StringBuilder();
             if (LOG.isTraceEnabled()) {
                 msg.append("Constructing new URI using the following components: \n\tvirtual-webroot=")
-                        .append(virtualWebroot).append("\n\turi-path=").append(uriPath)
-                        .append("\n\tquotedQueryString=").append(quotedQueryString).append("\n\tfragment=")
+                        .append(virtualWebroot).append("\n\turi-path=").append(uriPath).append("\n\tfragment=")
                         .append(fragment);
                 msg.append("\n");
             }
@@ -244,10 +258,11 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
     }
 
     public Definition disassemble(URI uri, Definition.ContainerType containerType) throws URISyntaxException {
-        Map<String, String[]> params = parseQueryString(uri.getRawQuery());
+        // only decode what is needed to tell if this is a WRA url
+        QueryString qs = parseQuery(uri.getRawQuery());
 
-        String[] virtualWebrootArr = params.get(VIRTUAL_WEBROOT);
-        String[] uriPathArr = params.get(URL_PATH);
+        String[] virtualWebrootArr = qs.getValues(VIRTUAL_WEBROOT);
+        String[] uriPathArr = qs.getValues(URL_PATH);
         if (virtualWebrootArr == null || virtualWebrootArr.length != 1) {
             if (LOG.isTraceEnabled())
                 LOG.trace("WRAPathAssembler cannot disassemble URI '" + uri + "' because the " + VIRTUAL_WEBROOT
@@ -265,6 +280,7 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
             LOG.debug("Disassembling URI: " + uri);
         }
 
+        Map<String, String[]> params = qs.toMap();
         Simple result;
         try {
             String[] request_pagename = params.get(PubConstants.PAGENAME);
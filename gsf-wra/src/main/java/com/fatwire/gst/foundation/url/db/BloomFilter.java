@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over strings. A negative answer from
+ * {@link #mightContain(String)} is definite, a positive answer is wrong with
+ * about the false positive probability the filter was sized for, as long as
+ * no more than the expected number of strings is added.
+ * <p/>
+ * Adding and testing are thread-safe and do not lock.
+ *
+ * @since Oct 16, 2026
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int numBits;
+    private final int numHashes;
+    private final int capacity;
+
+    /**
+     * @param expected the expected number of strings
+     * @param fpp the desired false positive probability, for instance 0.01
+     */
+    public BloomFilter(final int expected, final double fpp) {
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be between 0 and 1: " + fpp);
+        }
+        this.capacity = Math.max(1, expected);
+        final long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+        this.bits = new AtomicLongArray((numBits + 63) / 64);
+    }
+
+    public void add(final String s) {
+        final long h = hash(s);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            set(index(h1, h2, i));
+        }
+    }
+
+    public boolean mightContain(final String s) {
+        final long h = hash(s);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            if (!get(index(h1, h2, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of strings this filter was sized for.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the size of the bit set in bytes.
+     */
+    public long getSizeInBytes() {
+        return bits.length() * 8L;
+    }
+
+    /**
+     * @param count the number of strings added
+     * @return the expected false positive probability after adding count
+     *         strings.
+     */
+    public double expectedFpp(final long count) {
+        return Math.pow(1 - Math.exp(-(double) numHashes * count / numBits), numHashes);
+    }
+
+    private int index(final int h1, final int h2, final int i) {
+        int combined = h1 + i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % numBits;
+    }
+
+    private void set(final int index) {
+        final int word = index >>> 6;
+        final long mask = 1L << index;
+        long current;
+        do {
+            current = bits.get(word);
+            if ((current & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, current, current | mask));
+    }
+
+    private boolean get(final int index) {
+        return (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * 64 bit FNV-1a hash over the characters, finished with the MurmurHash3
+     * mixer so both halves are usable as independent hashes.
+     */
+    private static long hash(final String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -15,13 +15,18 @@
  */
 package com.fatwire.gst.foundation.url.db;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
@@ -39,6 +44,11 @@ public class DbSimpleWRADao implements SimpleWRADao {
 
     private static final Log LOG = LogUtil.getLog(DbSimpleWRADao.class);
 
+    /**
+     * The maximum number of ids in one IN list.
+     */
+    private static final int IN_LIST_SIZE = 500;
+
     private final ICS ics;
 
     public DbSimpleWRADao(final ICS ics) {
@@ -63,6 +73,36 @@ public class DbSimpleWRADao implements SimpleWRADao {
 
     }
 
+    @Override
+    public Map<AssetId, SimpleWra> getWras(final Collection<AssetId> ids) {
+        final Map<AssetId, SimpleWra> map = new HashMap<AssetId, SimpleWra>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            final String type = e.getKey();
+            final List<AssetId> l = e.getValue();
+            for (int i = 0; i < l.size(); i += IN_LIST_SIZE) {
+                final List<AssetId> chunk = l.subList(i, Math.min(l.size(), i + IN_LIST_SIZE));
+                final Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+                for (final AssetId id : chunk) {
+                    byId.put(id.getId(), id);
+                }
+                final String sql = "SELECT id, path, template, startdate, enddate FROM " + type + " WHERE id IN ("
+                        + AssetIdUtils.toIdList(chunk) + ") AND status !='VO'";
+                for (final Row row : SqlHelper.select(ics, type, sql)) {
+                    // the rows are reused by the iterator, copy the fields
+                    final AssetId id = byId.get(row.getLong("id"));
+                    if (id != null) {
+                        map.put(id, new SimpleWra(id, row.getString("path"), row.getString("template"),
+                                row.getDate("startdate"), row.getDate("enddate")));
+                    }
+                }
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + map.size() + " of " + ids.size() + " wras.");
+        }
+        return map;
+    }
+
     private static final String ASSETPUBLICATION_QRY = "SELECT p.name from Publication p, AssetPublication ap "
             + "WHERE ap.assettype = ? " + "AND ap.assetid = ? " + "AND ap.pubid=p.id";
     static final PreparedStmt AP_STMT = new PreparedStmt(ASSETPUBLICATION_QRY,
@@ -96,4 +136,39 @@ public class DbSimpleWRADao implements SimpleWRADao {
         return result;
     }
 
+    @Override
+    public Map<AssetId, String> resolveSites(final Collection<AssetId> ids) {
+        final Map<AssetId, String> map = new HashMap<AssetId, String>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            final List<AssetId> l = e.getValue();
+            for (int i = 0; i < l.size(); i += IN_LIST_SIZE) {
+                final List<AssetId> chunk = l.subList(i, Math.min(l.size(), i + IN_LIST_SIZE));
+                final Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+                for (final AssetId id : chunk) {
+                    byId.put(id.getId(), id);
+                }
+                final String sql = "SELECT ap.assetid AS assetid, p.name AS name"
+                        + " FROM Publication p, AssetPublication ap WHERE ap.assettype = "
+                        + SqlHelper.quote(e.getKey()) + " AND ap.assetid IN ("
+                        + AssetIdUtils.toIdList(chunk) + ") AND ap.pubid=p.id";
+                for (final Row row : SqlHelper.select(ics, "AssetPublication", sql)) {
+                    final AssetId id = byId.get(row.getLong("assetid"));
+                    if (id == null) {
+                        continue;
+                    }
+                    final String current = map.get(id);
+                    if (current == null) {
+                        map.put(id, row.getString("name"));
+                    } else {
+                        LOG.warn("Found asset "
+                                + id
+                                + " in more than one publication. It should not be shared; aliases are to be used for cross-site sharing.  Controller will use first site found: "
+                                + current);
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
 }
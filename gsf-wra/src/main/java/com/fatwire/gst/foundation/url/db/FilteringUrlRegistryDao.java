@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.wra.SimpleWra;
+
+/**
+ * UrlRegistryDao that answers lookups for url-paths that are not registered
+ * from the node-local {@link VanityPathFilter}, and only queries the backing
+ * dao for paths that might exist. All other operations are delegated, keeping
+ * the filter in step with every write.
+ * <p/>
+ * Unlike {@link IndexedUrlRegistryDao} this does not hold the registry rows in
+ * memory, only a few bits per url-path.
+ *
+ * @since Oct 16, 2026
+ */
+public class FilteringUrlRegistryDao implements UrlRegistryDao {
+    private static final Log LOG = LogUtil.getLog(FilteringUrlRegistryDao.class);
+
+    private final UrlRegistryDao delegate;
+    private final VanityPathFilter filter;
+
+    public FilteringUrlRegistryDao(final UrlRegistryDao delegate) {
+        this(delegate, VanityPathFilter.getInstance());
+    }
+
+    public FilteringUrlRegistryDao(final UrlRegistryDao delegate, final VanityPathFilter filter) {
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    public List<VanityUrl> resolveAsset(final String virtual_webroot, final String url_path) {
+        filter.load(delegate);
+        if (filter.isDefinitelyAbsent(virtual_webroot, url_path)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Filtered out unknown virtual-webroot:" + virtual_webroot + " and url-path:" + url_path);
+            }
+            return Collections.emptyList();
+        }
+        final List<VanityUrl> l = delegate.resolveAsset(virtual_webroot, url_path);
+        filter.recordLookup(virtual_webroot, url_path, !l.isEmpty());
+        return l;
+    }
+
+    @Override
+    public List<VanityUrl> listAll() {
+        return delegate.listAll();
+    }
+
+    @Override
+    public void add(final SimpleWra wra, final VirtualWebroot vw, final String site) {
+        delegate.add(wra, vw, site);
+        if (vw != null) {
+            final VanityUrl url = UrlRegistryDaoImpl.toVanityUrl(wra, vw, site);
+            filter.add(url.getOpt_vwebroot(), url.getOpt_url_path());
+        }
+    }
+
+    @Override
+    public void update(final VanityUrl url) {
+        delegate.update(url);
+        filter.add(url.getOpt_vwebroot(), url.getOpt_url_path());
+    }
+
+    @Override
+    public VanityUrl read(final AssetId id) {
+        return delegate.read(id);
+    }
+
+    @Override
+    public void delete(final AssetId id) {
+        // the path stays in the filter until it is rebuilt
+        delegate.delete(id);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        filter.invalidate();
+    }
+
+    @Override
+    public Map<String, List<VanityUrl>> resolveAll(final String virtual_webroot, final Collection<String> url_paths) {
+        filter.load(delegate);
+        final List<String> candidates = new ArrayList<String>(url_paths.size());
+        for (final String url_path : url_paths) {
+            if (!filter.isDefinitelyAbsent(virtual_webroot, url_path)) {
+                candidates.add(url_path);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, List<VanityUrl>> map = delegate.resolveAll(virtual_webroot, candidates);
+        for (final String url_path : candidates) {
+            filter.recordLookup(virtual_webroot, url_path, map.containsKey(url_path));
+        }
+        return map;
+    }
+
+    @Override
+    public Map<AssetId, VanityUrl> readAll(final Collection<AssetId> ids) {
+        return delegate.readAll(ids);
+    }
+
+    @Override
+    public void addAll(final Collection<VanityUrl> urls) {
+        delegate.addAll(urls);
+        for (final VanityUrl url : urls) {
+            filter.add(url.getOpt_vwebroot(), url.getOpt_url_path());
+        }
+    }
+
+    @Override
+    public void deleteAll(final Collection<AssetId> ids) {
+        delegate.deleteAll(ids);
+    }
+
+}
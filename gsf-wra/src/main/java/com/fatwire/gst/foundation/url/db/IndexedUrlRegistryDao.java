@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.wra.SimpleWra;
+
+/**
+ * UrlRegistryDao that resolves assets from the node-local
+ * {@link VanityUrlIndex} and delegates all other operations to the backing
+ * dao, keeping the index in step with every write.
+ * <p/>
+ * The index only sees the writes made on this node, so on a cluster the other
+ * nodes do not resolve newly published urls until their index is reloaded.
+ * It is therefore only used when selected with
+ * {@link UrlRegistry2#REGISTRY_CACHE_PROPNAME}.
+ *
+ * @since Oct 16, 2026
+ */
+public class IndexedUrlRegistryDao implements UrlRegistryDao {
+    private static final Log LOG = LogUtil.getLog(IndexedUrlRegistryDao.class);
+
+    private final UrlRegistryDao delegate;
+    private final VanityUrlIndex index;
+
+    public IndexedUrlRegistryDao(final UrlRegistryDao delegate) {
+        this(delegate, VanityUrlIndex.getInstance());
+    }
+
+    public IndexedUrlRegistryDao(final UrlRegistryDao delegate, final VanityUrlIndex index) {
+        this.delegate = delegate;
+        this.index = index;
+    }
+
+    @Override
+    public List<VanityUrl> resolveAsset(final String virtual_webroot, final String url_path) {
+        index.load(delegate);
+        final List<VanityUrl> l = index.lookup(virtual_webroot, url_path);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Resolved " + l.size() + " candidates from the index for virtual-webroot:" + virtual_webroot
+                    + " and url-path:" + url_path);
+        }
+        return l;
+    }
+
+    @Override
+    public List<VanityUrl> listAll() {
+        return delegate.listAll();
+    }
+
+    @Override
+    public void add(final SimpleWra wra, final VirtualWebroot vw, final String site) {
+        delegate.add(wra, vw, site);
+        if (vw != null) {
+            // lookups do not need the generated id, so the row is not read back
+            index.put(UrlRegistryDaoImpl.toVanityUrl(wra, vw, site));
+        }
+    }
+
+    @Override
+    public void update(final VanityUrl url) {
+        delegate.update(url);
+        index.put(url);
+    }
+
+    @Override
+    public VanityUrl read(final AssetId id) {
+        return delegate.read(id);
+    }
+
+    @Override
+    public void delete(final AssetId id) {
+        delegate.delete(id);
+        index.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        index.invalidate();
+    }
+
+    @Override
+    public Map<String, List<VanityUrl>> resolveAll(final String virtual_webroot, final Collection<String> url_paths) {
+        index.load(delegate);
+        final Map<String, List<VanityUrl>> map = new HashMap<String, List<VanityUrl>>();
+        for (final String url_path : url_paths) {
+            final List<VanityUrl> l = index.lookup(virtual_webroot, url_path);
+            if (!l.isEmpty()) {
+                map.put(url_path, l);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Map<AssetId, VanityUrl> readAll(final Collection<AssetId> ids) {
+        return delegate.readAll(ids);
+    }
+
+    @Override
+    public void addAll(final Collection<VanityUrl> urls) {
+        delegate.addAll(urls);
+        for (final VanityUrl url : urls) {
+            index.put(url);
+        }
+    }
+
+    @Override
+    public void deleteAll(final Collection<AssetId> ids) {
+        delegate.deleteAll(ids);
+        for (final AssetId id : ids) {
+            index.remove(id);
+        }
+    }
+
+}
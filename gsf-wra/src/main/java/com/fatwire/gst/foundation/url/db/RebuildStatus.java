@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a URL registry rebuild. The counters are updated by the rebuild
+ * workers and can be read at any time from any thread.
+ *
+ * @since Oct 16, 2026
+ * @see UrlRegistryRebuilder#getStatus()
+ */
+public final class RebuildStatus {
+
+    public enum State {
+        IDLE, RUNNING, COMPLETED, FAILED
+    }
+
+    private volatile State state;
+    private volatile long started;
+    private volatile long finished;
+    private volatile String error;
+    private final boolean resumed;
+    private final AtomicLong assetsTotal = new AtomicLong();
+    private final AtomicLong assetsProcessed = new AtomicLong();
+    private final AtomicLong rowsAdded = new AtomicLong();
+    private final AtomicInteger typesTotal = new AtomicInteger();
+    private final AtomicInteger typesDone = new AtomicInteger();
+
+    RebuildStatus(final State state, final boolean resumed) {
+        this.state = state;
+        this.resumed = resumed;
+    }
+
+    void start() {
+        started = System.currentTimeMillis();
+        state = State.RUNNING;
+    }
+
+    void complete() {
+        finished = System.currentTimeMillis();
+        state = State.COMPLETED;
+    }
+
+    void fail(final Throwable t) {
+        finished = System.currentTimeMillis();
+        error = String.valueOf(t);
+        state = State.FAILED;
+    }
+
+    void addTypes(final int types, final long assets) {
+        typesTotal.addAndGet(types);
+        assetsTotal.addAndGet(assets);
+    }
+
+    void typeDone() {
+        typesDone.incrementAndGet();
+    }
+
+    void processed(final long assets, final long rows) {
+        assetsProcessed.addAndGet(assets);
+        rowsAdded.addAndGet(rows);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if this rebuild continued from the checkpoint of an
+     *         interrupted rebuild.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public Date getStarted() {
+        return started == 0 ? null : new Date(started);
+    }
+
+    public Date getFinished() {
+        return finished == 0 ? null : new Date(finished);
+    }
+
+    /**
+     * @return the message of the exception that made the rebuild fail, or
+     *         null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the estimated number of assets to process.
+     */
+    public long getAssetsTotal() {
+        return assetsTotal.get();
+    }
+
+    public long getAssetsProcessed() {
+        return assetsProcessed.get();
+    }
+
+    public long getRowsAdded() {
+        return rowsAdded.get();
+    }
+
+    public int getTypesTotal() {
+        return typesTotal.get();
+    }
+
+    public int getTypesDone() {
+        return typesDone.get();
+    }
+
+    /**
+     * @return the time spent so far in milliseconds.
+     */
+    public long getElapsed() {
+        if (started == 0) {
+            return 0;
+        }
+        return (finished == 0 ? System.currentTimeMillis() : finished) - started;
+    }
+
+    /**
+     * @return the number of assets processed per second.
+     */
+    public double getThroughput() {
+        final long elapsed = getElapsed();
+        return elapsed == 0 ? 0 : getAssetsProcessed() * 1000d / elapsed;
+    }
+
+    /**
+     * @return the estimated remaining time in milliseconds, or -1 if this
+     *         cannot be estimated yet.
+     */
+    public long getEta() {
+        if (state != State.RUNNING) {
+            return state == State.COMPLETED ? 0 : -1;
+        }
+        final double throughput = getThroughput();
+        if (throughput == 0) {
+            return -1;
+        }
+        final long remaining = Math.max(0, getAssetsTotal() - getAssetsProcessed());
+        return (long) (remaining * 1000d / throughput);
+    }
+
+    @Override
+    public String toString() {
+        return "RebuildStatus [state=" + state + ", types=" + getTypesDone() + "/" + getTypesTotal() + ", assets="
+                + getAssetsProcessed() + "/" + getAssetsTotal() + ", rows=" + getRowsAdded() + ", throughput="
+                + Math.round(getThroughput()) + "/s, eta=" + getEta() / 1000 + "s]";
+    }
+
+}
@@ -15,20 +15,25 @@
  */
 package com.fatwire.gst.foundation.url.db;
 
-import java.util.Arrays;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
 import COM.FutureTense.Interfaces.ICS;
-import COM.FutureTense.Util.ftErrors;
 
 import com.fatwire.assetapi.data.AssetId;
-import com.fatwire.gst.foundation.CSRuntimeException;
 import com.fatwire.gst.foundation.controller.AssetIdWithSite;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
@@ -52,10 +57,13 @@ import com.openmarket.xcelerate.asset.AssetIdImpl;
 public class UrlRegistry2 implements WraPathTranslationService {
     private static final Log LOG = LogUtil.getLog(UrlRegistry2.class);
 
+    private static final Object REPLAY_LOCK = new Object();
+
     private final ICS ics;
     private final SimpleWRADao wraDao;
     private final VirtualWebrootDao vwDao;
     private final UrlRegistryDao regDao;
+    private final boolean tagDateFilter;
 
     public UrlRegistry2(final ICS ics, final SimpleWRADao wraDao, final VirtualWebrootDao vwDao,
             final UrlRegistryDao regDao) {
@@ -63,15 +71,47 @@ public class UrlRegistry2 implements WraPathTranslationService {
         this.wraDao = wraDao;
         this.vwDao = vwDao;
         this.regDao = regDao;
+        this.tagDateFilter = "tag".equalsIgnoreCase(getProperty(ics, DATE_FILTER_PROPNAME));
     }
 
     @Override
     public AssetIdWithSite resolveAsset(final String virtual_webroot, final String url_path) {
-        for (final VanityUrl asset : regDao.resolveAsset(virtual_webroot, url_path)) {
+        if (VanityUrlIndex.getInstance().isReplayPending()) {
+            replaySnapshot();
+        }
+        return resolve(virtual_webroot, url_path, regDao.resolveAsset(virtual_webroot, url_path));
+    }
+
+    /**
+     * Resolves many url paths of one virtual webroot with a query per few
+     * hundred paths.
+     * 
+     * @param virtual_webroot
+     * @param url_paths
+     * @return the asset per url path that is valid on the effective date. Url
+     *         paths that do not resolve are not in the map.
+     */
+    public Map<String, AssetIdWithSite> resolveAssets(final String virtual_webroot, final Collection<String> url_paths) {
+        if (VanityUrlIndex.getInstance().isReplayPending()) {
+            replaySnapshot();
+        }
+        final Map<String, AssetIdWithSite> map = new HashMap<String, AssetIdWithSite>();
+        for (final Map.Entry<String, List<VanityUrl>> e : regDao.resolveAll(virtual_webroot, url_paths).entrySet()) {
+            final AssetIdWithSite id = resolve(virtual_webroot, e.getKey(), e.getValue());
+            if (id != null) {
+                map.put(e.getKey(), id);
+            }
+        }
+        return map;
+    }
+
+    private AssetIdWithSite resolve(final String virtual_webroot, final String url_path,
+            final List<VanityUrl> candidates) {
+        for (final VanityUrl asset : candidates) {
             final String assettype = asset.getAssettype();
             final long assetid = asset.getAssetid();
             final AssetIdWithSite id = new AssetIdWithSite(assettype, assetid, asset.getOpt_site());
-            if (FilterAssetsByDate.isValidOnDate(ics, id, null)) {
+            if (isValidOnDate(asset, id)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Resolved and validated effective date for asset " + id + " from virtual-webroot:"
                             + virtual_webroot + " and url-path:" + url_path);
@@ -94,7 +134,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
         if (LOG.isTraceEnabled()) {
             LOG.trace("addAsset(AssetId) called for asset " + id);
         }
-        updateAsset_(id);
+        updateAssets(Collections.singletonList(id));
     }
 
     @Override
@@ -103,7 +143,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
             LOG.trace("updateAsset(AssetId) called for asset " + id);
         }
 
-        updateAsset_(id);
+        updateAssets(Collections.singletonList(id));
     }
 
     @Override
@@ -111,27 +151,24 @@ public class UrlRegistry2 implements WraPathTranslationService {
         if (LOG.isTraceEnabled()) {
             LOG.trace("deleteAsset(AssetId) called for asset " + id);
         }
+        UrlRegistryChangeLog.record(ics, Collections.singletonList(id));
         regDao.delete(id);
     }
 
-    private void addAsset_(final SimpleWra wra) {
-        final AssetId asset = wra.getId();
-
-        final VirtualWebroot vw = vwDao.lookupVirtualWebrootForUri(wra.getPath());
-
-        if (vw != null) {
-            final String site = wraDao.resolveSite(asset);
-            regDao.add(wra, vw, site);
-
-        } else {
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Did not add WRA " + asset + " to url registry because no valid virtual webroot was found");
-            }
+    /**
+     * Deletes the registry entries of many assets, with a single catalog
+     * flush.
+     * 
+     * @param ids
+     */
+    public void deleteAssets(final Collection<AssetId> ids) {
+        if (!ids.isEmpty()) {
+            UrlRegistryChangeLog.record(ics, ids);
+            regDao.deleteAll(ids);
         }
-
     }
 
-    private boolean compare(final Date d1, final Date d2) {
+    private static boolean compare(final Date d1, final Date d2) {
         if (d1 == null && d2 == null) {
             return true;
         }
@@ -143,7 +180,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
 
     }
 
-    private boolean compare(final VanityUrl url, final SimpleWra wra) {
+    static boolean compare(final VanityUrl url, final SimpleWra wra) {
         // path, startdate && enddate all the same?
         if (url == null) {
             return false;
@@ -168,26 +205,64 @@ public class UrlRegistry2 implements WraPathTranslationService {
     }
 
     public void updateAsset_(final AssetId id) {
-        /*
-         * here is the optimization question, what is faster, the select on the
-         * urlregtable or on the assettable? Probably it depends on number rows
-         * in table. If urlregtable is smaller than individual assettype table
-         * the lookup for registry table first is probably preferred. Otherwise,
-         * change to logic below to first lookup the wraDao.getWra().
-         */
-        final SimpleWra wra = wraDao.getWra(id);
-        if (isWra(wra)) {
-            final VanityUrl row = regDao.read(id);
-            if (!compare(row, wra)) {
-                regDao.delete(id);
-                addAsset_(wra);
-            } else if (row == null) {
-                addAsset_(wra);
+        updateAssets(Collections.singletonList(id));
+    }
+
+    /**
+     * Brings the registry entries of many assets up to date. The current
+     * entries are read in bulk, and the obsolete entries are deleted and the
+     * new entries added with a catalog flush each. The assets are recorded in
+     * the {@link UrlRegistryChangeLog} first, so that a running rebuild does
+     * not overwrite the entries.
+     * 
+     * @param ids
+     */
+    public void updateAssets(final Collection<AssetId> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        final Map<AssetId, VanityUrl> current = regDao.readAll(ids);
+        final Map<AssetId, SimpleWra> wras = wraDao.getWras(ids);
+        final List<AssetId> obsolete = new ArrayList<AssetId>();
+        final Map<AssetId, VirtualWebroot> changed = new LinkedHashMap<AssetId, VirtualWebroot>();
+        for (final AssetId id : ids) {
+            final VanityUrl row = current.get(id);
+            final SimpleWra wra = wras.get(id);
+            if (isWra(wra)) {
+                if (!compare(row, wra)) {
+                    if (row != null) {
+                        obsolete.add(id);
+                    }
+                    final VirtualWebroot vw = vwDao.lookupVirtualWebrootForUri(wra.getPath());
+                    if (vw != null) {
+                        changed.put(id, vw);
+                    } else if (LOG.isTraceEnabled()) {
+                        LOG.trace("Did not add WRA " + id
+                                + " to url registry because no valid virtual webroot was found");
+                    }
+                }
+            } else if (row != null) {
+                obsolete.add(id);
             }
-        } else {
-            regDao.delete(id);
         }
-
+        final List<VanityUrl> added = new ArrayList<VanityUrl>(changed.size());
+        if (!changed.isEmpty()) {
+            final Map<AssetId, String> sites = wraDao.resolveSites(changed.keySet());
+            for (final Map.Entry<AssetId, VirtualWebroot> e : changed.entrySet()) {
+                added.add(UrlRegistryDaoImpl.toVanityUrl(wras.get(e.getKey()), e.getValue(), sites.get(e.getKey())));
+            }
+        }
+        if (!obsolete.isEmpty() || !added.isEmpty()) {
+            final Set<AssetId> written = new LinkedHashSet<AssetId>(obsolete);
+            written.addAll(changed.keySet());
+            UrlRegistryChangeLog.record(ics, written);
+        }
+        if (!obsolete.isEmpty()) {
+            regDao.deleteAll(obsolete);
+        }
+        if (!added.isEmpty()) {
+            regDao.addAll(added);
+        }
     }
 
     private boolean isWra(final SimpleWra wra) {
@@ -195,60 +270,181 @@ public class UrlRegistry2 implements WraPathTranslationService {
     }
 
     /**
-     * Rebuild all entries in the GST URL Registry table. Uses brute force
-     * method and can take a very long time.
+     * Rebuild all entries in the GST URL Registry table. The entries are built
+     * aside in a shadow table and swapped in when complete, see
+     * {@link UrlRegistryRebuilder}.
      * 
-     * @param stream stream a message back to the browser to prevent timeouts
+     * @param stream stream a summary back to the browser when completed
      */
     public void rebuild(boolean stream) {
-        if (!ics.UserIsMember("xceladmin")) {
-            throw new CSRuntimeException("xceladmin user required to rebuild URL Registry", ftErrors.noprivs);
-        }
-        regDao.clear();
+        RebuildStatus status = new UrlRegistryRebuilder(ics, 1, UrlRegistryRebuilder.DEFAULT_CHUNK_SIZE)
+                .rebuild(false);
         if (stream)
-            ics.StreamText("Re-creating url registry entries for ");
-        for (String type : _lookupWraAssetTypes()) {
-            LOG.debug("Re-creating all registry entries for asset type " + type);
-            if (stream)
-                ics.StreamText("Asset type: " + type);
-            for (Row r : SqlHelper.select(ics, type, "SELECT id,template,path,startdate,enddate FROM " + type
-                    + " WHERE status!='VO' AND path IS NOT NULL and template IS NOT NULL")) {
-                long id = r.getLong("id");
-                AssetId aid = new AssetIdImpl(type, id);
-                SimpleWra wra = new SimpleWra(r, aid);
-                if (isWra(wra)) {
-                    LOG.debug("Attempting to rebuild registry entry for " + aid);
-                    // stream to prevent timeouts...???? :-(
-                    if (stream)
-                        ics.StreamText(" " + id); // stream immediately (don't
-                                                  // use StreamEvalBytes)
-                    addAsset_(wra);
+            ics.StreamText("Re-created " + status.getRowsAdded() + " url registry entries for "
+                    + status.getAssetsProcessed() + " assets in " + status.getElapsed() / 1000 + " seconds.");
+        LOG.debug("Rebuild completed");
+    }
+
+    /**
+     * Reconcile the GST URL Registry table with the web referenceable assets,
+     * only writing the rows that differ. Unlike {@link #rebuild(boolean)} the
+     * table is never cleared.
+     * 
+     * @param dryRun when true the differences are only counted
+     * @return the counts of inserted, updated and deleted rows
+     */
+    public UrlRegistryReconciler.Result reconcile(boolean dryRun) {
+        return new UrlRegistryReconciler(ics, vwDao, UrlRegistryRebuilder.DEFAULT_CHUNK_SIZE).reconcile(dryRun);
+    }
+
+    /**
+     * Writes a snapshot of the registry table and the virtual webroots, to be
+     * loaded by new nodes with {@link UrlRegistrySnapshotLoader}. The table is
+     * read directly, not through the cache of this node.
+     * 
+     * @param file the file to write
+     * @return the number of registry entries written
+     * @throws IOException
+     */
+    public int writeSnapshot(final File file) throws IOException {
+        final long highWaterMark = System.currentTimeMillis();
+        final List<VanityUrl> urls = new UrlRegistryDaoImpl(ics).listAll();
+        UrlRegistrySnapshot.write(file, urls, vwDao.getAllVirtualWebroots(), highWaterMark);
+        LOG.info("Wrote snapshot of " + urls.size() + " url registry entries to " + file);
+        return urls.size();
+    }
+
+    /**
+     * Brings the {@link VanityUrlIndex} up to date after it was restored from
+     * a snapshot: the registry entries of all assets that were written to the
+     * registry after the high-water mark of the snapshot, as recorded in the
+     * {@link UrlRegistryChangeLog} by the node that handled the event, are
+     * read again. The updateddate of the assets cannot be used as published
+     * assets keep the date of the source system. The virtual webroots are
+     * reloaded. When the changes cannot be determined, because the snapshot is
+     * older than the log or the log is missing, the index is reloaded in full.
+     */
+    public void replaySnapshot() {
+        final VanityUrlIndex index = VanityUrlIndex.getInstance();
+        synchronized (REPLAY_LOCK) {
+            final long since = index.getReplaySince();
+            if (since == 0) {
+                return;
+            }
+            try {
+                if (System.currentTimeMillis() - since > UrlRegistryChangeLog.RETENTION
+                        || !SqlHelper.tableExists(ics, UrlRegistryChangeLog.LOG_TABLE)) {
+                    ics.ClearErrno();
+                    throw new IllegalStateException("the changes after " + new Date(since) + " are not logged");
                 }
+                final Set<AssetId> ids = new LinkedHashSet<AssetId>();
+                for (final Row r : SqlHelper.selectUncached(ics, UrlRegistryChangeLog.LOG_TABLE,
+                        "SELECT assettype, assetid FROM " + UrlRegistryChangeLog.LOG_TABLE + " WHERE changed >= "
+                                + SqlHelper.quote(new Date(since - UrlRegistryChangeLog.CLOCK_MARGIN)))) {
+                    final String type = r.getString("assettype");
+                    if (UrlRegistryChangeLog.ALL.equals(type)) {
+                        throw new IllegalStateException("the registry was rebuilt after " + new Date(since));
+                    }
+                    ids.add(new AssetIdImpl(type, r.getLong("assetid")));
+                }
+                final Map<AssetId, VanityUrl> rows = ids.isEmpty() ? Collections.<AssetId, VanityUrl> emptyMap()
+                        : regDao.readAll(ids);
+                for (final AssetId id : ids) {
+                    index.remove(id);
+                    final VanityUrl url = rows.get(id);
+                    if (url != null) {
+                        index.put(url);
+                    }
+                }
+                VirtualWebrootApiBypassDao.invalidate();
+                LOG.info("Replayed " + ids.size() + " asset changes after the url registry snapshot of "
+                        + new Date(since));
+            } catch (final RuntimeException e) {
+                LOG.warn("Could not replay the changes after the url registry snapshot, the registry will be "
+                        + "reloaded. " + e.getMessage());
+                index.invalidate();
             }
+            index.replayed(since);
         }
-        if (stream)
-            ics.StreamText("...completed");
-        LOG.debug("Rebuild completed");
     }
 
-    private final Collection<String> SYSTEM_TYPES = Arrays.asList("Template", "CSElement", "SiteEntry", "Collection",
-            "Page", "Query", "Link", "Dimension", "DimensionSet", "AttrTypes", "AdvCols", "Segments", "Promotions",
-            "ScalarVals", "HistoryVals", "HFields", "GSTFilter", "GSTAttribute", "GSTPDefinition", "GSTDefinition",
-            "GSTVirtualWebroot", "GSTProperty", "FW_View", "FW_Application");
-
-    private Collection<String> _lookupWraAssetTypes() {
-        Set<String> x = new HashSet<String>();
-        for (Row r : SqlHelper.select(ics, "AssetType", "select assettype from AssetType")) {
-            String type = r.getString("assettype");
-            if (!SYSTEM_TYPES.contains(type)) {
-                x.add(type); // TODO: be much smarter. Exclude flex definitions,
-                             // parent devs, filters. Get fancy and exclude
-                             // non-compliant definitions.
-            }
-            
+    /**
+     * Checks the effective date of a resolved asset against the start and end
+     * dates in the registry, unless the asset:filterassetsbydate tag is
+     * configured with {@link #DATE_FILTER_PROPNAME}.
+     */
+    private boolean isValidOnDate(final VanityUrl asset, final AssetId id) {
+        if (tagDateFilter) {
+            return FilterAssetsByDate.isValidOnDate(ics, id, null);
         }
-        x.add("Page"); // yes, I know it's listed as a system asset type, but it's both system and WRA in 11g.
-        return x;
+        return FilterAssetsByDate.isValidOnDate(ics, id, asset.getStartdate(), asset.getEnddate(), null);
+    }
+
+    /**
+     * Name of the property that selects how the effective date of resolved
+     * assets is checked: <tt>java</tt> (the default) compares the start and
+     * end dates from the registry with the preview date, only running the
+     * asset:filterassetsbydate tag when the preview date of the user session
+     * applies, <tt>tag</tt> always runs the tag. It is read from the system
+     * properties first, then from the ContentServer properties.
+     */
+    public static final String DATE_FILTER_PROPNAME = "com.fatwire.gst.foundation.url.date-filter";
+
+    /**
+     * Name of the property that selects how url lookups are cached on this
+     * node: <tt>none</tt> (the default) queries the table for every lookup,
+     * <tt>index</tt> holds all registry entries in memory, <tt>filter</tt>
+     * only keeps a Bloom filter of the registered url-paths to answer lookups
+     * for unknown urls. The index and the filter only see the changes made on
+     * this node, so <tt>index</tt> is meant for single node delivery or for
+     * clusters that reload the index on publish. It is read from the system
+     * properties first, then from the ContentServer properties.
+     */
+    public static final String REGISTRY_CACHE_PROPNAME = "com.fatwire.gst.foundation.url.registry-cache";
+
+    /**
+     * Creates the UrlRegistryDao, decorated as configured by
+     * {@link #REGISTRY_CACHE_PROPNAME}.
+     * 
+     * @param ics
+     * @return the UrlRegistryDao
+     */
+    public static UrlRegistryDao newRegistryDao(final ICS ics) {
+        final String mode = getRegistryCacheMode(ics);
+        UrlRegistrySnapshot.restorePending(mode);
+        final UrlRegistryDao dao = new UrlRegistryDaoImpl(ics);
+        if ("index".equals(mode)) {
+            return new IndexedUrlRegistryDao(dao);
+        } else if ("filter".equals(mode)) {
+            return new FilteringUrlRegistryDao(dao);
+        }
+        return dao;
+    }
+
+    /**
+     * @param ics
+     * @return the configured {@link #REGISTRY_CACHE_PROPNAME} in lower case,
+     *         <tt>none</tt> if not set or unknown.
+     */
+    static String getRegistryCacheMode(final ICS ics) {
+        final String mode = getProperty(ics, REGISTRY_CACHE_PROPNAME);
+        if (mode == null) {
+            return "none";
+        }
+        final String m = mode.toLowerCase();
+        if ("index".equals(m) || "filter".equals(m) || "none".equals(m)) {
+            return m;
+        }
+        LOG.warn("Unknown value '" + mode + "' for " + REGISTRY_CACHE_PROPNAME + ", using 'none'.");
+        return "none";
+    }
+
+    private static String getProperty(final ICS ics, final String name) {
+        String value = System.getProperty(name);
+        if (StringUtils.isBlank(value)) {
+            value = ics.GetProperty(name);
+        }
+        return StringUtils.isBlank(value) ? null : value.trim();
     }
 
     @Deprecated
@@ -259,7 +455,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
         }
 
         final UrlRegistry2 x = new UrlRegistry2(ics, new DbSimpleWRADao(ics), new VirtualWebrootApiBypassDao(ics),
-                new UrlRegistryDaoImpl(ics));
+                newRegistryDao(ics));
 
         ics.SetObj(UrlRegistry2.class.getName(), x);
         return x;
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Util.ftMessage;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.CSRuntimeException;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.facade.sql.table.TableColumn.Type;
+import com.fatwire.gst.foundation.facade.sql.table.TableCreator;
+import com.fatwire.gst.foundation.facade.sql.table.TableDef;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Log of the assets whose url registry rows were written, with the time of
+ * the write on the node that wrote them. A rebuild leaves the rows of the
+ * assets that were logged while it ran alone, and a node that restored a
+ * snapshot reads the rows of the assets that were logged after it again.
+ * <p/>
+ * The times come from the clocks of the different nodes, readers allow for
+ * {@link #CLOCK_MARGIN}. Entries older than {@link #RETENTION} are removed,
+ * at most once per hour per node.
+ *
+ * @since Oct 16, 2026
+ */
+final class UrlRegistryChangeLog {
+    private static final Log LOG = LogUtil.getLog(UrlRegistryChangeLog.class);
+
+    static final String LOG_TABLE = "GSTUrlRegistryLog";
+
+    /**
+     * The asset type of the entries that stand for a change to all the rows.
+     */
+    static final String ALL = "*";
+
+    /**
+     * Allowance for clock differences between the nodes.
+     */
+    static final long CLOCK_MARGIN = 60 * 1000L;
+
+    /**
+     * How long entries are kept.
+     */
+    static final long RETENTION = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final long PRUNE_INTERVAL = 60 * 60 * 1000L;
+
+    private static volatile boolean installed;
+
+    private static volatile long prunedAt;
+
+    private UrlRegistryChangeLog() {
+    }
+
+    /**
+     * Logs the assets, to be called before their registry rows are written so
+     * that a rebuild that swaps at the same time already sees them.
+     *
+     * @param ics the Content Server context
+     * @param ids the assets
+     */
+    static void record(final ICS ics, final Collection<AssetId> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!install(ics)) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final String changed = SqlHelper.quote(new Date(now));
+        final List<String> sql = new ArrayList<String>(ids.size() + 1);
+        for (final AssetId id : ids) {
+            sql.add("INSERT INTO " + LOG_TABLE + " (id,assettype,assetid,changed) VALUES (" + ics.genID(true) + ","
+                    + SqlHelper.quote(id.getType()) + "," + id.getId() + "," + changed + ")");
+        }
+        if (now - prunedAt > PRUNE_INTERVAL) {
+            prunedAt = now;
+            sql.add("DELETE FROM " + LOG_TABLE + " WHERE changed < " + SqlHelper.quote(new Date(now - RETENTION)));
+        }
+        final int failed = SqlHelper.executeBatch(ics, LOG_TABLE, sql);
+        if (failed > 0) {
+            LOG.warn(failed + " statements on " + LOG_TABLE + " failed, a rebuild that runs now may overwrite the"
+                    + " registry rows of " + ids);
+        }
+    }
+
+    /**
+     * Logs that all the rows may have changed, for instance by a rebuild.
+     *
+     * @param ics the Content Server context
+     */
+    static void recordAll(final ICS ics) {
+        record(ics, Collections.<AssetId> singletonList(new AssetIdImpl(ALL, 0L)));
+    }
+
+    /**
+     * @param alias the alias of the registry table in the statement
+     * @param since the time in milliseconds
+     * @return a SQL condition that holds when the asset of the registry row
+     *         with the alias was logged after the time, allowing for
+     *         {@link #CLOCK_MARGIN}.
+     */
+    static String loggedSince(final String alias, final long since) {
+        return "EXISTS (SELECT 1 FROM " + LOG_TABLE + " l WHERE l.assettype=" + alias + ".assettype AND l.assetid="
+                + alias + ".assetid AND l.changed >= " + SqlHelper.quote(new Date(since - CLOCK_MARGIN)) + ")";
+    }
+
+    /**
+     * Creates the log table if it does not exist yet.
+     *
+     * @param ics the Content Server context
+     * @return true if the table exists.
+     */
+    static boolean install(final ICS ics) {
+        if (installed) {
+            return true;
+        }
+        if (SqlHelper.tableExists(ics, LOG_TABLE)) {
+            installed = true;
+            return true;
+        }
+        ics.ClearErrno();
+        try {
+            final TableDef def = new TableDef(LOG_TABLE, UrlRegistryDaoImpl.TABLE_ACL_LIST, ftMessage.objecttbl);
+            def.addColumn("id", Type.ccbigint, true).setNullable(false);
+            def.addColumn("assettype", Type.ccvarchar).setLength(255).setNullable(false);
+            def.addColumn("assetid", Type.ccbigint).setNullable(false);
+            def.addColumn("changed", Type.ccdatetime).setNullable(false);
+            new TableCreator(ics).createTable(def);
+            LOG.info("Created " + LOG_TABLE);
+            installed = true;
+        } catch (final CSRuntimeException e) {
+            // created by another node meanwhile, or not allowed
+            installed = SqlHelper.tableExists(ics, LOG_TABLE);
+            ics.ClearErrno();
+            if (!installed) {
+                LOG.warn("Could not create " + LOG_TABLE + ": " + e.getMessage());
+            }
+        }
+        return installed;
+    }
+}
@@ -15,7 +15,9 @@
  */
 package com.fatwire.gst.foundation.url.db;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
@@ -30,6 +32,14 @@ public interface UrlRegistryDao {
 
     public List<VanityUrl> resolveAsset(final String virtual_webroot, final String url_path);
 
+    /**
+     * Reads all the entries of the registry that can be resolved, that is all
+     * rows with a virtual webroot and url path, in one statement.
+     * 
+     * @return all the resolvable entries, ordered by startdate and enddate.
+     */
+    public List<VanityUrl> listAll();
+
     public void add(SimpleWra wra, VirtualWebroot vw, String site);
 
     public void update(VanityUrl url);
@@ -40,4 +50,39 @@ public interface UrlRegistryDao {
 
     public void clear();
 
+    /**
+     * Resolves many url paths of one virtual webroot at once.
+     * 
+     * @param virtual_webroot
+     * @param url_paths
+     * @return the entries per url path, ordered by startdate and enddate. Url
+     *         paths without entries are not in the map.
+     */
+    public Map<String, List<VanityUrl>> resolveAll(String virtual_webroot, Collection<String> url_paths);
+
+    /**
+     * Reads the entries of many assets at once.
+     * 
+     * @param ids
+     * @return the entry per asset, keyed by the given ids. Assets without an
+     *         entry are not in the map.
+     */
+    public Map<AssetId, VanityUrl> readAll(Collection<AssetId> ids);
+
+    /**
+     * Adds many entries at once, with a single catalog flush. The generated
+     * ids are set on the entries.
+     * 
+     * @param urls the entries to add, created by
+     *            {@link UrlRegistryDaoImpl#toVanityUrl(SimpleWra, VirtualWebroot, String)}
+     */
+    public void addAll(Collection<VanityUrl> urls);
+
+    /**
+     * Deletes the entries of many assets at once, with a single catalog flush.
+     * 
+     * @param ids
+     */
+    public void deleteAll(Collection<AssetId> ids);
+
 }
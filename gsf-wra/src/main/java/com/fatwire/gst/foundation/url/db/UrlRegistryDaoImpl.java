@@ -15,9 +15,13 @@
  */
 package com.fatwire.gst.foundation.url.db;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Util.ftMessage;
@@ -25,6 +29,7 @@ import COM.FutureTense.Util.ftMessage;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.cm.AddRow;
 import com.fatwire.gst.foundation.facade.cm.ReplaceRow;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
@@ -67,10 +72,21 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
 
     private static final String ID = "id";
 
+    /**
+     * All the columns of the registry table, in table definition order.
+     */
+    static final String COLUMNS = ID + "," + PATH + "," + ASSETTYPE + "," + ASSETID + "," + STARTDATE + ","
+            + ENDDATE + "," + OPT_VWEBROOT + "," + OPT_URL_PATH + "," + OPT_DEPTH + "," + OPT_SITE;
+
+    /**
+     * The maximum number of values in an IN list of the bulk operations.
+     */
+    static final int IN_LIST_SIZE = 500;
+
     private static final Log LOG = LogUtil.getLog(UrlRegistryDaoImpl.class);
 
     private final ICS ics;
-    private static final String URLREG_TABLE = "GSTUrlRegistry";
+    static final String URLREG_TABLE = "GSTUrlRegistry";
     public static String TABLE_ACL_LIST = ""; // no ACLs because events are
                                               // anonymous
 
@@ -79,7 +95,15 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
     }
 
     public void install() {
-        final TableDef def = new TableDef(URLREG_TABLE, TABLE_ACL_LIST, ftMessage.objecttbl);
+        new TableCreator(ics).createTable(tableDef(URLREG_TABLE));
+    }
+
+    /**
+     * @param table the name of the table
+     * @return the definition of a registry table with the given name.
+     */
+    static TableDef tableDef(final String table) {
+        final TableDef def = new TableDef(table, TABLE_ACL_LIST, ftMessage.objecttbl);
 
         def.addColumn(ID, Type.ccbigint, true).setNullable(false);
         def.addColumn(PATH, Type.ccvarchar).setLength(4000).setNullable(false);
@@ -91,8 +115,72 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         def.addColumn(OPT_URL_PATH, Type.ccvarchar).setLength(4000).setNullable(true);
         def.addColumn(OPT_DEPTH, Type.ccinteger).setNullable(true);
         def.addColumn(OPT_SITE, Type.ccvarchar).setLength(255).setNullable(true);
+        return def;
+    }
 
-        new TableCreator(ics).createTable(def);
+    /**
+     * Builds the INSERT statement for a registry row, to be executed in a
+     * batch.
+     * 
+     * @param table the registry table to insert into
+     * @param id the id of the new row
+     * @param wra the web referenceable asset
+     * @param vw the virtual webroot of the asset
+     * @param site the site of the asset
+     * @return the INSERT statement.
+     */
+    static String toInsertSql(final String table, final long id, final SimpleWra wra, final VirtualWebroot vw,
+            final String site) {
+        final VanityUrl url = toVanityUrl(wra, vw, site);
+        url.setId(id);
+        return toInsertSql(table, url);
+    }
+
+    /**
+     * Builds the INSERT statement for a registry row, to be executed in a
+     * batch.
+     * 
+     * @param table the registry table to insert into
+     * @param url the row, including its id
+     * @return the INSERT statement.
+     */
+    static String toInsertSql(final String table, final VanityUrl url) {
+        final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(COLUMNS)
+                .append(") VALUES (");
+        sql.append(url.getId()).append(',');
+        sql.append(SqlHelper.quote(url.getPath())).append(',');
+        sql.append(SqlHelper.quote(url.getAssettype())).append(',');
+        sql.append(url.getAssetid()).append(',');
+        sql.append(SqlHelper.quote(url.getStartdate())).append(',');
+        sql.append(SqlHelper.quote(url.getEnddate())).append(',');
+        sql.append(SqlHelper.quote(url.getOpt_vwebroot())).append(',');
+        sql.append(SqlHelper.quote(url.getOpt_url_path())).append(',');
+        sql.append(url.getOpt_depth()).append(',');
+        sql.append(url.getOpt_site() == null ? "NULL" : SqlHelper.quote(url.getOpt_site()));
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Creates the registry row for a web referenceable asset, without an id.
+     * 
+     * @param wra the web referenceable asset
+     * @param vw the virtual webroot of the asset
+     * @param site the site of the asset
+     * @return the row
+     */
+    static VanityUrl toVanityUrl(final SimpleWra wra, final VirtualWebroot vw, final String site) {
+        final String urlpath = wra.getPath().substring(vw.getMasterVirtualWebroot().length());
+        final VanityUrl url = new VanityUrl();
+        url.setPath(wra.getPath());
+        url.setAssettype(wra.getId().getType());
+        url.setAssetid(wra.getId().getId());
+        url.setStartdate(wra.getStartDate());
+        url.setEnddate(wra.getEndDate());
+        url.setOpt_vwebroot(vw.getEnvironmentVirtualWebroot());
+        url.setOpt_url_path(urlpath);
+        url.setOpt_depth(StringUtils.countMatches(urlpath, "/"));
+        url.setOpt_site(site);
+        return url;
     }
 
     public boolean isInstalled() {
@@ -113,6 +201,61 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
 
     }
 
+    /**
+     * Builds the UPDATE statement that sets all the fields of a registry row
+     * from the web referenceable asset, to be executed in a batch.
+     * 
+     * @param id the id of the row to update
+     * @param wra the web referenceable asset
+     * @param vw the virtual webroot of the asset
+     * @param site the site of the asset
+     * @return the UPDATE statement.
+     */
+    static String toUpdateSql(final long id, final SimpleWra wra, final VirtualWebroot vw, final String site) {
+        final String urlpath = wra.getPath().substring(vw.getMasterVirtualWebroot().length());
+        final int depth = StringUtils.countMatches(urlpath, "/");
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(URLREG_TABLE).append(" SET ");
+        sql.append(PATH).append('=').append(SqlHelper.quote(wra.getPath())).append(',');
+        sql.append(STARTDATE).append('=').append(SqlHelper.quote(wra.getStartDate())).append(',');
+        sql.append(ENDDATE).append('=').append(SqlHelper.quote(wra.getEndDate())).append(',');
+        sql.append(OPT_VWEBROOT).append('=').append(SqlHelper.quote(vw.getEnvironmentVirtualWebroot())).append(',');
+        sql.append(OPT_URL_PATH).append('=').append(SqlHelper.quote(urlpath)).append(',');
+        sql.append(OPT_DEPTH).append('=').append(depth).append(',');
+        sql.append(OPT_SITE).append('=').append(site == null ? "NULL" : SqlHelper.quote(site));
+        return sql.append(" WHERE ").append(ID).append('=').append(id).toString();
+    }
+
+    /**
+     * Builds the DELETE statement for a single registry row, to be executed in
+     * a batch.
+     * 
+     * @param id the id of the row
+     * @return the DELETE statement.
+     */
+    static String toDeleteSql(final long id) {
+        return "DELETE FROM " + URLREG_TABLE + " WHERE " + ID + "=" + id;
+    }
+
+    /**
+     * Reads the registry rows of one asset type in a range of asset ids,
+     * ordered by asset id. The table is read past the resultset cache.
+     * 
+     * @param ics the Content Server context
+     * @param assettype the asset type
+     * @param from the asset id after which to start
+     * @param to the last asset id to include
+     * @return the rows
+     */
+    static List<VanityUrl> readByType(final ICS ics, final String assettype, final long from, final long to) {
+        final List<VanityUrl> l = new ArrayList<VanityUrl>();
+        for (final Row row : SqlHelper.selectUncached(ics, URLREG_TABLE, "SELECT * FROM " + URLREG_TABLE
+                + " WHERE assettype=" + SqlHelper.quote(assettype) + " AND assetid > " + from
+                + (to == Long.MAX_VALUE ? "" : " AND assetid <= " + to) + " ORDER BY assetid, id")) {
+            l.add(toVanityUrl(row));
+        }
+        return l;
+    }
+
     @Override
     public List<VanityUrl> resolveAsset(final String virtual_webroot, final String url_path) {
         final StatementParam param = REGISTRY_SELECT.newParam();
@@ -120,23 +263,135 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         param.setString(1, url_path);
         final List<VanityUrl> l = new LinkedList<VanityUrl>();
         for (final Row row : SqlHelper.select(ics, REGISTRY_SELECT, param)) {
-            final VanityUrl url = new VanityUrl();
-            url.setId(row.getLong(ID));
-            url.setAssetid(row.getLong(ASSETID));
-            url.setAssettype(row.getString(ASSETTYPE));
-            url.setPath(row.getString(PATH));
-            url.setStartdate(row.getDate(STARTDATE));
-            url.setEnddate(row.getDate(ENDDATE));
-            url.setOpt_depth(Integer.parseInt(row.getString(OPT_DEPTH)));
-            url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
-            url.setOpt_url_path(row.getString(OPT_URL_PATH));
-            url.setOpt_site(row.getString(OPT_SITE));
-            l.add(url);
+            l.add(toVanityUrl(row));
         }
 
         return l;
     }
 
+    @Override
+    public List<VanityUrl> listAll() {
+        final List<VanityUrl> l = new ArrayList<VanityUrl>();
+        for (final Row row : SqlHelper.select(ics, URLREG_TABLE, "SELECT * FROM " + URLREG_TABLE
+                + " WHERE opt_vwebroot IS NOT NULL AND opt_url_path IS NOT NULL ORDER BY startdate,enddate")) {
+            l.add(toVanityUrl(row));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Read " + l.size() + " rows from " + URLREG_TABLE);
+        }
+        return l;
+    }
+
+    @Override
+    public Map<String, List<VanityUrl>> resolveAll(final String virtual_webroot, final Collection<String> url_paths) {
+        final Map<String, List<VanityUrl>> map = new HashMap<String, List<VanityUrl>>();
+        final List<String> paths = new ArrayList<String>(url_paths);
+        for (int i = 0; i < paths.size(); i += IN_LIST_SIZE) {
+            final StringBuilder sql = new StringBuilder("SELECT * FROM ").append(URLREG_TABLE).append(" WHERE ")
+                    .append(OPT_VWEBROOT).append('=').append(SqlHelper.quote(virtual_webroot)).append(" AND ")
+                    .append(OPT_URL_PATH).append(" IN (");
+            final List<String> chunk = paths.subList(i, Math.min(paths.size(), i + IN_LIST_SIZE));
+            for (int j = 0; j < chunk.size(); j++) {
+                sql.append(j == 0 ? "" : ",").append(SqlHelper.quote(chunk.get(j)));
+            }
+            sql.append(") ORDER BY startdate,enddate");
+            for (final Row row : SqlHelper.select(ics, URLREG_TABLE, sql.toString())) {
+                final VanityUrl url = toVanityUrl(row);
+                List<VanityUrl> l = map.get(url.getOpt_url_path());
+                if (l == null) {
+                    l = new LinkedList<VanityUrl>();
+                    map.put(url.getOpt_url_path(), l);
+                }
+                l.add(url);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public Map<AssetId, VanityUrl> readAll(final Collection<AssetId> ids) {
+        final Map<AssetId, VanityUrl> map = new HashMap<AssetId, VanityUrl>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            final List<AssetId> l = e.getValue();
+            for (int i = 0; i < l.size(); i += IN_LIST_SIZE) {
+                final List<AssetId> chunk = l.subList(i, Math.min(l.size(), i + IN_LIST_SIZE));
+                final Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+                for (final AssetId id : chunk) {
+                    byId.put(id.getId(), id);
+                }
+                final String sql = "SELECT * FROM " + URLREG_TABLE + " WHERE " + toWhereClause(e.getKey(), chunk)
+                        + " ORDER BY " + ID;
+                for (final Row row : SqlHelper.select(ics, URLREG_TABLE, sql)) {
+                    final AssetId id = byId.get(row.getLong(ASSETID));
+                    // like read(AssetId), one row per asset
+                    if (id != null && !map.containsKey(id)) {
+                        map.put(id, toVanityUrl(row));
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void addAll(final Collection<VanityUrl> urls) {
+        final List<String> sql = new ArrayList<String>(urls.size());
+        for (final VanityUrl url : urls) {
+            url.setId(ics.genID(true));
+            sql.add(toInsertSql(URLREG_TABLE, url));
+        }
+        final int failed = SqlHelper.executeBatch(ics, URLREG_TABLE, sql);
+        if (failed > 0) {
+            LOG.warn(failed + " of " + sql.size() + " rows could not be added to " + URLREG_TABLE);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Added " + sql.size() + " rows to " + URLREG_TABLE);
+        }
+    }
+
+    @Override
+    public void deleteAll(final Collection<AssetId> ids) {
+        final List<String> sql = new ArrayList<String>();
+        for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils.groupByType(ids).entrySet()) {
+            final List<AssetId> l = e.getValue();
+            for (int i = 0; i < l.size(); i += IN_LIST_SIZE) {
+                sql.add("DELETE FROM " + URLREG_TABLE + " WHERE "
+                        + toWhereClause(e.getKey(), l.subList(i, Math.min(l.size(), i + IN_LIST_SIZE))));
+            }
+        }
+        final int failed = SqlHelper.executeBatch(ics, URLREG_TABLE, sql);
+        if (failed > 0) {
+            LOG.warn(failed + " of " + sql.size() + " statements failed deleting " + ids.size() + " assets from "
+                    + URLREG_TABLE);
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Assets " + ids + " are now removed from " + URLREG_TABLE);
+        }
+    }
+
+    private static String toWhereClause(final String assettype, final List<AssetId> ids) {
+        final StringBuilder sql = new StringBuilder(ASSETTYPE).append('=').append(SqlHelper.quote(assettype))
+                .append(" AND ").append(ASSETID).append(" IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "" : ",").append(ids.get(i).getId());
+        }
+        return sql.append(')').toString();
+    }
+
+    private static VanityUrl toVanityUrl(final Row row) {
+        final VanityUrl url = new VanityUrl();
+        url.setId(row.getLong(ID));
+        url.setAssetid(row.getLong(ASSETID));
+        url.setAssettype(row.getString(ASSETTYPE));
+        url.setPath(row.getString(PATH));
+        url.setStartdate(row.getDate(STARTDATE));
+        url.setEnddate(row.getDate(ENDDATE));
+        final Integer depth = row.getInt(OPT_DEPTH);
+        url.setOpt_depth(depth == null ? 0 : depth);
+        url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
+        url.setOpt_url_path(row.getString(OPT_URL_PATH));
+        url.setOpt_site(row.getString(OPT_SITE));
+        return url;
+    }
+
     @Override
     public void add(final SimpleWra wra, final VirtualWebroot vw, final String site) {
         if (LOG.isTraceEnabled()) {
@@ -200,41 +455,18 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         if (row == null) {
             return null;
         }
-        final VanityUrl url = new VanityUrl();
-        url.setId(row.getLong(ID));
-        url.setAssetid(row.getLong(ASSETID));
-        url.setAssettype(row.getString(ASSETTYPE));
-        url.setPath(row.getString(PATH));
-        url.setStartdate(row.getDate(STARTDATE));
-        url.setEnddate(row.getDate(ENDDATE));
-        url.setOpt_depth(Integer.parseInt(row.getString(OPT_DEPTH)));
-        url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
-        url.setOpt_url_path(row.getString(OPT_URL_PATH));
-        url.setOpt_site(row.getString(OPT_SITE));
-        return url;
+        return toVanityUrl(row);
 
     }
 
     @Override
     public void delete(final AssetId id) {
-        final StatementParam param = REGISTRY_SELECT_ID.newParam();
-        param.setString(0, id.getType());
-        param.setLong(1, id.getId());
-        final Row row = SqlHelper.selectSingle(ics, REGISTRY_SELECT_ID, param);
-        if (row != null) {
-            //only delete if a record is found to prevent trashing.
-            deleteAsset_(id);
-        }
-    }
-
-    private void deleteAsset_(final AssetId id) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Attempting to delete asset " + id + " from " + URLREG_TABLE);
-        }
-        SqlHelper.execute(ics, URLREG_TABLE, "DELETE FROM " + URLREG_TABLE + " WHERE assettype = '" + id.getType()
-                + "' AND assetid = " + id.getId());
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Asset " + id + " is now removed from " + URLREG_TABLE);
+        if (read(id) != null) {
+            // only delete if a record is found to prevent trashing.
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Attempting to delete asset " + id + " from " + URLREG_TABLE);
+            }
+            deleteAll(Collections.singletonList(id));
         }
     }
 
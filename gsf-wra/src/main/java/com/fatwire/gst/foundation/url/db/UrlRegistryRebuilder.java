@@ -0,0 +1,550 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Util.ftErrors;
+import COM.FutureTense.Util.ftMessage;
+
+import com.fatwire.gst.foundation.CSRuntimeException;
+import com.fatwire.gst.foundation.facade.ics.ICSFactory;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.facade.sql.table.TableColumn.Type;
+import com.fatwire.gst.foundation.facade.sql.table.TableCreator;
+import com.fatwire.gst.foundation.facade.sql.table.TableDef;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
+import com.fatwire.gst.foundation.wra.SimpleWra;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Rebuilds the GSTUrlRegistry table.
+ * <p/>
+ * The rows are built into a shadow table, so the registry keeps serving urls
+ * while the rebuild runs. When all asset types are done the new rows are
+ * copied into the registry table first and the old rows are deleted after, so
+ * the registry is never empty; in between a url can resolve to both its old
+ * and its new row. Asset types are processed in parallel, in chunks of assets
+ * ordered by id. Each chunk is inserted as one batch with a single catalog
+ * flush, and the sites of the assets are resolved up front with one
+ * AssetPublication join per asset type.
+ * <p/>
+ * The last asset id of every chunk that was inserted completely is recorded
+ * per asset type in a progress table. An interrupted rebuild can be resumed:
+ * the rows of incomplete chunks are removed from the shadow table and every
+ * asset type continues after its recorded asset id.
+ * <p/>
+ * Asset events keep writing to the registry table while the rebuild runs.
+ * They record the assets in the {@link UrlRegistryChangeLog} first, and the
+ * swap leaves the registry rows of all assets that were recorded after the
+ * start of the rebuild alone: their shadow rows may already be stale.
+ * <p/>
+ * Progress is reported through {@link #getStatus()}. Only one rebuild can run
+ * per node at a time. A rebuild that was started in the background is
+ * interrupted by {@link #shutdown()}, it can be resumed later.
+ *
+ * @since Oct 16, 2026
+ */
+public class UrlRegistryRebuilder {
+    private static final Log LOG = LogUtil.getLog(UrlRegistryRebuilder.class);
+
+    static final String SHADOW_TABLE = "GSTUrlRegistryShadow";
+
+    static final String PROGRESS_TABLE = "GSTUrlRegistryProgress";
+
+    /**
+     * The row of the progress table that holds the start time of the rebuild
+     * instead of the progress of an asset type.
+     */
+    private static final String STARTED = "*";
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Collection<String> SYSTEM_TYPES = Arrays.asList("Template", "CSElement", "SiteEntry",
+            "Collection", "Page", "Query", "Link", "Dimension", "DimensionSet", "AttrTypes", "AdvCols", "Segments",
+            "Promotions", "ScalarVals", "HistoryVals", "HFields", "GSTFilter", "GSTAttribute", "GSTPDefinition",
+            "GSTDefinition", "GSTVirtualWebroot", "GSTProperty", "FW_View", "FW_Application");
+
+    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+    private static final AtomicReference<RebuildStatus> STATUS = new AtomicReference<RebuildStatus>(
+            new RebuildStatus(RebuildStatus.State.IDLE, false));
+
+    private static ExecutorService background;
+
+    private final ICS ics;
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * @param ics the Content Server context, the user must be a member of
+     *            xceladmin.
+     * @param threads the number of asset types to process in parallel. Each
+     *            additional thread works with its own, newly created, ICS
+     *            object.
+     * @param chunkSize the number of assets to read and insert per batch.
+     */
+    public UrlRegistryRebuilder(final ICS ics, final int threads, final int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1.");
+        }
+        this.ics = ics;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the status of the running or last rebuild on this node.
+     */
+    public static RebuildStatus getStatus() {
+        return STATUS.get();
+    }
+
+    /**
+     * @return true if a rebuild is running on this node.
+     */
+    public static boolean isRunning() {
+        return RUNNING.get();
+    }
+
+    /**
+     * Rebuilds the registry in the calling thread.
+     *
+     * @param resume true to continue from the checkpoint of an interrupted
+     *            rebuild, false to start from scratch
+     * @return the status of the completed rebuild
+     */
+    public RebuildStatus rebuild(final boolean resume) {
+        checkAccess(ics);
+        if (!RUNNING.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rebuild of the URL Registry is already running: " + getStatus());
+        }
+        try {
+            final RebuildStatus status = new RebuildStatus(RebuildStatus.State.RUNNING, resume);
+            STATUS.set(status);
+            run(ics, status, resume);
+            return status;
+        } finally {
+            RUNNING.set(false);
+        }
+    }
+
+    /**
+     * Starts a rebuild in a background thread and returns immediately. The
+     * progress can be followed through {@link #getStatus()}. The thread works
+     * with its own ICS object, which is released when the rebuild ends.
+     *
+     * @param resume true to continue from the checkpoint of an interrupted
+     *            rebuild, false to start from scratch
+     */
+    public void start(final boolean resume) {
+        checkAccess(ics);
+        if (!RUNNING.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rebuild of the URL Registry is already running: " + getStatus());
+        }
+        final RebuildStatus status = new RebuildStatus(RebuildStatus.State.RUNNING, resume);
+        STATUS.set(status);
+        final Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    UrlRegistryRebuilder.this.run(newICS(), status, resume);
+                } catch (final RuntimeException e) {
+                    if (status.getState() == RebuildStatus.State.RUNNING) {
+                        // failed before the rebuild itself started
+                        status.fail(e);
+                        LOG.error("Rebuild of the url registry failed to start.", e);
+                    }
+                } finally {
+                    RUNNING.set(false);
+                }
+            }
+        };
+        try {
+            background().execute(task);
+        } catch (final RuntimeException e) {
+            RUNNING.set(false);
+            status.fail(e);
+            throw e;
+        }
+    }
+
+    private static synchronized ExecutorService background() {
+        if (background == null) {
+            background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "GSTUrlRegistry-rebuild");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return background;
+    }
+
+    /**
+     * Interrupts a rebuild that was started with {@link #start(boolean)} and
+     * stops its thread, waiting a few seconds for the current chunk to
+     * complete. To be called when the web application stops, see
+     * {@link UrlRegistryRebuilderListener}.
+     */
+    public static void shutdown() {
+        final ExecutorService executor;
+        synchronized (UrlRegistryRebuilder.class) {
+            executor = background;
+            background = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOG.warn("The url registry rebuild did not stop within 10 seconds.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(final ICS coordinator, final RebuildStatus status, final boolean resume) {
+        status.start();
+        try {
+            prepareTables(coordinator, resume);
+            final Map<String, Long> checkpoint = resume ? readCheckpoint(coordinator) : new HashMap<String, Long>();
+            Long started = checkpoint.remove(STARTED);
+            if (started == null) {
+                started = System.currentTimeMillis();
+                recordProgress(coordinator, STARTED, started, false);
+            }
+            final Collection<String> types = lookupWraAssetTypes(coordinator);
+            if (resume) {
+                removeIncompleteChunks(coordinator, types, checkpoint);
+            }
+            long total = 0;
+            for (final String type : types) {
+                total += count(coordinator, type, checkpoint.get(type));
+            }
+            status.addTypes(types.size(), total);
+            LOG.info("Rebuilding url registry for " + types.size() + " asset types and about " + total
+                    + " assets with " + threads + " threads" + (resume ? ", resuming from " + checkpoint : "."));
+
+            if (threads == 1) {
+                for (final String type : types) {
+                    rebuildType(coordinator, type, checkpoint.get(type), status);
+                }
+            } else {
+                runParallel(types, checkpoint, status);
+            }
+            swap(coordinator, started);
+            status.complete();
+            LOG.info("Rebuild completed: " + status);
+        } catch (final RuntimeException e) {
+            status.fail(e);
+            LOG.error("Rebuild of the url registry failed, it can be resumed. " + status, e);
+            throw e;
+        }
+    }
+
+    private void runParallel(final Collection<String> types, final Map<String, Long> checkpoint,
+            final RebuildStatus status) {
+        // one ICS object per worker thread, handed back after each asset type
+        final BlockingQueue<ICS> idle = new LinkedBlockingQueue<ICS>();
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger n = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "GSTUrlRegistry-rebuild-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final String type : types) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() {
+                        ICS worker = idle.poll();
+                        if (worker == null) {
+                            worker = newICS();
+                            created.incrementAndGet();
+                        }
+                        try {
+                            rebuildType(worker, type, checkpoint.get(type), status);
+                        } finally {
+                            idle.offer(worker);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CSRuntimeException("Rebuild of the url registry was interrupted", ftErrors.exceptionerr, e);
+        } catch (final ExecutionException e) {
+            throw new CSRuntimeException("Rebuild of the url registry failed: " + e.getCause(),
+                    ftErrors.exceptionerr, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            // ICS has no close method, the worker objects are released by
+            // dropping all references to them
+            idle.clear();
+            LOG.debug("Released " + created.get() + " worker ICS objects.");
+        }
+    }
+
+    private void rebuildType(final ICS ics, final String type, final Long checkpoint, final RebuildStatus status) {
+        LOG.debug("Re-creating registry entries for asset type " + type
+                + (checkpoint == null ? "" : " after asset id " + checkpoint));
+        final VirtualWebrootDao vwDao = new VirtualWebrootApiBypassDao(ics);
+        final Map<Long, String> sites = resolveSites(ics, type);
+        long lastId = checkpoint == null ? 0 : checkpoint.longValue();
+        boolean recorded = checkpoint != null;
+        int read;
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CSRuntimeException("Rebuild of the url registry was interrupted at asset type " + type
+                        + " after asset id " + lastId, ftErrors.exceptionerr);
+            }
+            read = 0;
+            final List<String> inserts = new ArrayList<String>(chunkSize);
+            for (final Row r : SqlHelper.select(ics, type, "SELECT id,template,path,startdate,enddate FROM " + type
+                    + " WHERE status!='VO' AND path IS NOT NULL AND template IS NOT NULL AND id > " + lastId
+                    + " ORDER BY id", chunkSize)) {
+                read++;
+                lastId = r.getLong("id");
+                final SimpleWra wra = new SimpleWra(r, new AssetIdImpl(type, lastId));
+                if (isWra(wra)) {
+                    final VirtualWebroot vw = vwDao.lookupVirtualWebrootForUri(wra.getPath());
+                    if (vw != null) {
+                        inserts.add(UrlRegistryDaoImpl.toInsertSql(SHADOW_TABLE, ics.genID(true), wra, vw,
+                                sites.get(lastId)));
+                    } else if (LOG.isTraceEnabled()) {
+                        LOG.trace("Did not add WRA " + wra.getId()
+                                + " to url registry because no valid virtual webroot was found");
+                    }
+                }
+            }
+            final int failed = SqlHelper.executeBatch(ics, SHADOW_TABLE, inserts);
+            if (failed > 0) {
+                throw new CSRuntimeException(failed + " inserts into " + SHADOW_TABLE + " failed for asset type "
+                        + type + " before asset id " + lastId, ftErrors.dberror);
+            }
+            if (read > 0) {
+                recordProgress(ics, type, lastId, recorded);
+                recorded = true;
+            }
+            status.processed(read, inserts.size());
+        } while (read == chunkSize);
+        status.typeDone();
+        LOG.debug("Re-created registry entries for asset type " + type);
+    }
+
+    static Map<Long, String> resolveSites(final ICS ics, final String type) {
+        final Map<Long, String> sites = new HashMap<Long, String>();
+        for (final Row r : SqlHelper.select(ics, "AssetPublication",
+                "SELECT ap.assetid AS assetid, p.name AS name FROM Publication p, AssetPublication ap WHERE ap.assettype = "
+                        + SqlHelper.quote(type) + " AND ap.pubid=p.id")) {
+            final Long id = r.getLong("assetid");
+            final String current = sites.get(id);
+            if (current == null) {
+                sites.put(id, r.getString("name"));
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Found asset " + type + ":" + id + " in more than one publication, using " + current);
+            }
+        }
+        return sites;
+    }
+
+    private long count(final ICS ics, final String type, final Long checkpoint) {
+        final Row r = SqlHelper.selectSingle(ics, type, "SELECT COUNT(id) AS num FROM " + type
+                + " WHERE status!='VO' AND path IS NOT NULL AND template IS NOT NULL"
+                + (checkpoint == null ? "" : " AND id > " + checkpoint));
+        return r == null || r.getLong("num") == null ? 0 : r.getLong("num");
+    }
+
+    private void prepareTables(final ICS ics, final boolean resume) {
+        if (!SqlHelper.tableExists(ics, SHADOW_TABLE)) {
+            ics.ClearErrno();
+            new TableCreator(ics).createTable(UrlRegistryDaoImpl.tableDef(SHADOW_TABLE));
+        } else if (!resume) {
+            SqlHelper.execute(ics, SHADOW_TABLE, "DELETE FROM " + SHADOW_TABLE);
+        }
+        if (!SqlHelper.tableExists(ics, PROGRESS_TABLE)) {
+            ics.ClearErrno();
+            final TableDef def = new TableDef(PROGRESS_TABLE, UrlRegistryDaoImpl.TABLE_ACL_LIST, ftMessage.objecttbl);
+            def.addColumn("id", Type.ccbigint, true).setNullable(false);
+            def.addColumn("assettype", Type.ccvarchar).setLength(255).setNullable(false).setUnique(true);
+            def.addColumn("lastid", Type.ccbigint).setNullable(false);
+            new TableCreator(ics).createTable(def);
+        } else if (!resume) {
+            SqlHelper.execute(ics, PROGRESS_TABLE, "DELETE FROM " + PROGRESS_TABLE);
+        }
+        UrlRegistryChangeLog.install(ics);
+    }
+
+    private Map<String, Long> readCheckpoint(final ICS ics) {
+        final Map<String, Long> checkpoint = new HashMap<String, Long>();
+        for (final Row r : SqlHelper.select(ics, PROGRESS_TABLE, "SELECT assettype, lastid FROM " + PROGRESS_TABLE)) {
+            checkpoint.put(r.getString("assettype"), r.getLong("lastid"));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Deletes the shadow rows that were inserted after the recorded progress
+     * of their asset type, they belong to a chunk that did not complete.
+     */
+    private void removeIncompleteChunks(final ICS ics, final Collection<String> types,
+            final Map<String, Long> checkpoint) {
+        final List<String> sql = new ArrayList<String>();
+        for (final String type : types) {
+            final Long lastId = checkpoint.get(type);
+            sql.add("DELETE FROM " + SHADOW_TABLE + " WHERE assettype=" + SqlHelper.quote(type)
+                    + (lastId == null ? "" : " AND assetid > " + lastId));
+        }
+        if (SqlHelper.executeBatch(ics, SHADOW_TABLE, sql) > 0) {
+            throw new CSRuntimeException("Removing the incomplete chunks from " + SHADOW_TABLE + " failed",
+                    ftErrors.dberror);
+        }
+    }
+
+    /**
+     * Records that all assets of the type up to and including the asset id are
+     * in the shadow table, or the start time of the rebuild for
+     * {@link #STARTED}.
+     */
+    private void recordProgress(final ICS ics, final String type, final long lastId, final boolean recorded) {
+        final String sql;
+        if (recorded) {
+            sql = "UPDATE " + PROGRESS_TABLE + " SET lastid=" + lastId + " WHERE assettype=" + SqlHelper.quote(type);
+        } else {
+            sql = "INSERT INTO " + PROGRESS_TABLE + " (id,assettype,lastid) VALUES (" + ics.genID(true) + ","
+                    + SqlHelper.quote(type) + "," + lastId + ")";
+        }
+        if (SqlHelper.executeBatch(ics, PROGRESS_TABLE, Collections.singletonList(sql)) > 0) {
+            throw new CSRuntimeException("Recording the progress of asset type " + type + " at asset id " + lastId
+                    + " failed", ftErrors.dberror);
+        }
+    }
+
+    /**
+     * Replaces the contents of the registry table with the shadow table. The
+     * new rows are inserted before the old rows are deleted, each as a
+     * separate statement, so that a failure leaves the registry filled. Both
+     * steps can be repeated by resuming the rebuild. The rows of the assets
+     * that were written by events since the start of the rebuild are neither
+     * inserted nor deleted.
+     *
+     * @param started the start time of the rebuild
+     */
+    private void swap(final ICS ics, final long started) {
+        final String table = UrlRegistryDaoImpl.URLREG_TABLE;
+        final String insert = "INSERT INTO " + table + " (" + UrlRegistryDaoImpl.COLUMNS + ") SELECT "
+                + UrlRegistryDaoImpl.COLUMNS + " FROM " + SHADOW_TABLE + " s WHERE s.id NOT IN (SELECT id FROM "
+                + table + ") AND NOT " + UrlRegistryChangeLog.loggedSince("s", started);
+        if (SqlHelper.executeBatch(ics, table, Collections.singletonList(insert)) > 0) {
+            throw new CSRuntimeException("Copying " + SHADOW_TABLE + " into " + table
+                    + " failed, the registry is unchanged", ftErrors.dberror);
+        }
+        final String delete = "DELETE FROM " + table + " WHERE id NOT IN (SELECT id FROM " + SHADOW_TABLE
+                + ") AND NOT " + UrlRegistryChangeLog.loggedSince(table, started);
+        if (SqlHelper.executeBatch(ics, table, Collections.singletonList(delete)) > 0) {
+            throw new CSRuntimeException("Deleting the old rows from " + table
+                    + " failed, the registry holds both the old and the new rows", ftErrors.dberror);
+        }
+        UrlRegistryChangeLog.recordAll(ics);
+        SqlHelper.execute(ics, SHADOW_TABLE, "DELETE FROM " + SHADOW_TABLE);
+        SqlHelper.execute(ics, PROGRESS_TABLE, "DELETE FROM " + PROGRESS_TABLE);
+        VanityUrlIndex.getInstance().invalidate();
+        VanityPathFilter.getInstance().invalidate();
+    }
+
+    static boolean isWra(final SimpleWra wra) {
+        return wra != null && StringUtils.isNotBlank(wra.getPath()) && StringUtils.isNotBlank(wra.getTemplate());
+    }
+
+    /**
+     * @param ics
+     * @return the asset types that can hold web referenceable assets.
+     */
+    static Collection<String> lookupWraAssetTypes(final ICS ics) {
+        final Set<String> x = new HashSet<String>();
+        for (final Row r : SqlHelper.select(ics, "AssetType", "select assettype from AssetType")) {
+            final String type = r.getString("assettype");
+            if (!SYSTEM_TYPES.contains(type)) {
+                x.add(type); // TODO: be much smarter. Exclude flex definitions,
+                             // parent devs, filters. Get fancy and exclude
+                             // non-compliant definitions.
+            }
+
+        }
+        x.add("Page"); // yes, I know it's listed as a system asset type, but
+                       // it's both system and WRA in 11g.
+        return x;
+    }
+
+    private static void checkAccess(final ICS ics) {
+        if (!ics.UserIsMember("xceladmin")) {
+            throw new CSRuntimeException("xceladmin user required to rebuild URL Registry", ftErrors.noprivs);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ICS newICS() {
+        return ICSFactory.newICS();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * ServletContextListener that interrupts a background rebuild of the url
+ * registry and stops its thread when the web application stops. The rebuild
+ * can be resumed after the restart.
+ * 
+ * @since Oct 16, 2026
+ */
+public class UrlRegistryRebuilderListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(final ServletContextEvent sce) {
+        // the thread is started with the first background rebuild
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent sce) {
+        UrlRegistryRebuilder.shutdown();
+    }
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Util.ftErrors;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.CSRuntimeException;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
+import com.fatwire.gst.foundation.wra.SimpleWra;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Brings the GSTUrlRegistry table in line with the web referenceable assets
+ * without truncating it.
+ * <p/>
+ * Per asset type the assets are read in chunks ordered by id, and each chunk
+ * is merged with the registry rows in its range of asset ids, read past the
+ * resultset cache and ordered by asset id. Only the rows that differ are
+ * touched: missing rows are inserted, rows that fail
+ * {@link UrlRegistry2#compare(VanityUrl, SimpleWra)} are updated in place and
+ * rows without a valid WRA are deleted. The changes are applied per chunk of
+ * assets as one batch with a single catalog flush, so this can run on a live
+ * system without a window in which urls do not resolve.
+ *
+ * @since Oct 16, 2026
+ */
+public class UrlRegistryReconciler {
+    private static final Log LOG = LogUtil.getLog(UrlRegistryReconciler.class);
+
+    private final ICS ics;
+    private final VirtualWebrootDao vwDao;
+    private final int chunkSize;
+
+    public UrlRegistryReconciler(final ICS ics, final VirtualWebrootDao vwDao, final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1.");
+        }
+        this.ics = ics;
+        this.vwDao = vwDao;
+        this.chunkSize = chunkSize;
+    }
+
+    public UrlRegistryReconciler(final ICS ics) {
+        this(ics, new VirtualWebrootApiBypassDao(ics), UrlRegistryRebuilder.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Reconciles the registry table with all the web referenceable assets.
+     *
+     * @param dryRun when true the differences are counted but not applied
+     * @return the counts of the differences found
+     */
+    public Result reconcile(final boolean dryRun) {
+        if (!ics.UserIsMember("xceladmin")) {
+            throw new CSRuntimeException("xceladmin user required to reconcile URL Registry", ftErrors.noprivs);
+        }
+        final Result result = new Result();
+        final Collection<String> wraTypes = UrlRegistryRebuilder.lookupWraAssetTypes(ics);
+        final Set<String> types = new TreeSet<String>(wraTypes);
+        for (final Row r : SqlHelper.select(ics, UrlRegistryDaoImpl.URLREG_TABLE, "SELECT DISTINCT assettype FROM "
+                + UrlRegistryDaoImpl.URLREG_TABLE)) {
+            types.add(r.getString("assettype"));
+        }
+        for (final String type : types) {
+            reconcile(type, wraTypes.contains(type), dryRun, result);
+        }
+        if (!dryRun && result.getChanges() > 0) {
+            VanityUrlIndex.getInstance().invalidate();
+            VanityPathFilter.getInstance().invalidate();
+        }
+        LOG.info((dryRun ? "Dry run of reconciliation" : "Reconciliation") + " of the url registry completed: "
+                + result);
+        return result;
+    }
+
+    private void reconcile(final String type, final boolean isWraType, final boolean dryRun, final Result result) {
+        final Batch batch = new Batch(type, dryRun, result);
+        if (isWraType) {
+            long lastId = 0;
+            int read;
+            do {
+                final long from = lastId;
+                final List<SimpleWra> wras = new ArrayList<SimpleWra>(chunkSize);
+                for (final Row r : SqlHelper.select(ics, type, "SELECT id,template,path,startdate,enddate FROM "
+                        + type + " WHERE status!='VO' AND path IS NOT NULL AND template IS NOT NULL AND id > "
+                        + lastId + " ORDER BY id", chunkSize)) {
+                    lastId = r.getLong("id");
+                    wras.add(new SimpleWra(new AssetIdImpl(type, lastId), r.getString("path"),
+                            r.getString("template"), r.getDate("startdate"), r.getDate("enddate")));
+                }
+                read = wras.size();
+                // the last chunk also takes the rows after its last asset
+                final long to = read == chunkSize ? lastId : Long.MAX_VALUE;
+                reconcileChunk(wras, UrlRegistryDaoImpl.readByType(ics, type, from, to), batch);
+                batch.flush();
+            } while (read == chunkSize);
+        } else {
+            for (final VanityUrl url : UrlRegistryDaoImpl.readByType(ics, type, 0, Long.MAX_VALUE)) {
+                batch.delete(url);
+            }
+            batch.flush();
+        }
+    }
+
+    /**
+     * Merges a chunk of assets with the registry rows in the asset id range of
+     * the chunk, both ordered by asset id.
+     */
+    private void reconcileChunk(final List<SimpleWra> wras, final List<VanityUrl> rows, final Batch batch) {
+        int next = 0;
+        for (final SimpleWra wra : wras) {
+            final long id = wra.getId().getId();
+            batch.result.checked++;
+            // registry rows for assets that are no longer WRAs
+            while (next < rows.size() && rows.get(next).getAssetid() < id) {
+                batch.delete(rows.get(next++));
+            }
+            final List<VanityUrl> current = new ArrayList<VanityUrl>(1);
+            while (next < rows.size() && rows.get(next).getAssetid() == id) {
+                current.add(rows.get(next++));
+            }
+            merge(wra, current, batch);
+        }
+        while (next < rows.size()) {
+            batch.delete(rows.get(next++));
+        }
+    }
+
+    private void merge(final SimpleWra wra, final List<VanityUrl> current, final Batch batch) {
+        final VirtualWebroot vw = UrlRegistryRebuilder.isWra(wra) ? vwDao.lookupVirtualWebrootForUri(wra.getPath())
+                : null;
+        if (vw == null) {
+            for (final VanityUrl url : current) {
+                batch.delete(url);
+            }
+            return;
+        }
+        if (current.isEmpty()) {
+            batch.insert(wra, vw);
+            return;
+        }
+        // keep the first row, duplicates are removed
+        for (int i = 1; i < current.size(); i++) {
+            batch.delete(current.get(i));
+        }
+        final VanityUrl url = current.get(0);
+        if (!UrlRegistry2.compare(url, wra)) {
+            batch.update(url, wra, vw);
+        }
+    }
+
+    /**
+     * Collects the statements for one chunk of one asset type.
+     */
+    private class Batch {
+        private final String type;
+        private final boolean dryRun;
+        private final Result result;
+        private final List<String> sql = new ArrayList<String>();
+        private final Set<AssetId> assets = new LinkedHashSet<AssetId>();
+        private Map<Long, String> sites;
+
+        Batch(final String type, final boolean dryRun, final Result result) {
+            this.type = type;
+            this.dryRun = dryRun;
+            this.result = result;
+        }
+
+        void insert(final SimpleWra wra, final VirtualWebroot vw) {
+            result.inserted++;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Registry entry for " + wra.getId() + " is missing.");
+            }
+            if (!dryRun) {
+                sql.add(UrlRegistryDaoImpl.toInsertSql(UrlRegistryDaoImpl.URLREG_TABLE, ics.genID(true), wra, vw,
+                        site(wra)));
+                assets.add(wra.getId());
+            }
+        }
+
+        void update(final VanityUrl url, final SimpleWra wra, final VirtualWebroot vw) {
+            result.updated++;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Registry entry " + url + " is out of date.");
+            }
+            if (!dryRun) {
+                sql.add(UrlRegistryDaoImpl.toUpdateSql(url.getId(), wra, vw, site(wra)));
+                assets.add(wra.getId());
+            }
+        }
+
+        void delete(final VanityUrl url) {
+            result.deleted++;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Registry entry " + url + " is obsolete.");
+            }
+            if (!dryRun) {
+                sql.add(UrlRegistryDaoImpl.toDeleteSql(url.getId()));
+                assets.add(new AssetIdImpl(url.getAssettype(), url.getAssetid()));
+            }
+        }
+
+        private String site(final SimpleWra wra) {
+            if (sites == null) {
+                sites = UrlRegistryRebuilder.resolveSites(ics, type);
+            }
+            return sites.get(wra.getId().getId());
+        }
+
+        void flush() {
+            if (sql.isEmpty()) {
+                return;
+            }
+            UrlRegistryChangeLog.record(ics, assets);
+            assets.clear();
+            final int failed = SqlHelper.executeBatch(ics, UrlRegistryDaoImpl.URLREG_TABLE, sql);
+            if (failed > 0) {
+                LOG.warn(failed + " of " + sql.size() + " statements failed while reconciling asset type " + type);
+            }
+            sql.clear();
+        }
+    }
+
+    /**
+     * Counts of a reconciliation.
+     */
+    public static final class Result {
+        private long checked;
+        private long inserted;
+        private long updated;
+        private long deleted;
+
+        /**
+         * @return the number of assets compared to the registry.
+         */
+        public long getChecked() {
+            return checked;
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getDeleted() {
+            return deleted;
+        }
+
+        public long getChanges() {
+            return inserted + updated + deleted;
+        }
+
+        @Override
+        public String toString() {
+            return "Result [checked=" + checked + ", inserted=" + inserted + ", updated=" + updated + ", deleted="
+                    + deleted + "]";
+        }
+    }
+}
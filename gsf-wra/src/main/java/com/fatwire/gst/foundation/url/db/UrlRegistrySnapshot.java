@@ -0,0 +1,396 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Binary snapshot of the GSTUrlRegistry table and the virtual webroots, used
+ * to warm up the caches of a new node without reading the tables.
+ * <p/>
+ * The file holds a header, a table of all distinct strings in sorted order
+ * with an offset per string, and fixed width records that refer to the
+ * strings by their index. The registry records are sorted by virtual webroot
+ * and url path. The file is read in one pass and decoded in full, as all its
+ * entries go into the {@link VanityUrlIndex} on the heap anyway.
+ * <p/>
+ * The high-water mark is the time just before the tables were read; changes to
+ * assets after that time are not in the snapshot and have to be replayed.
+ *
+ * @since Oct 16, 2026
+ * @see UrlRegistry2#writeSnapshot(File)
+ */
+public final class UrlRegistrySnapshot {
+    private static final Log LOG = LogUtil.getLog(UrlRegistrySnapshot.class);
+
+    private static final int MAGIC = 0x47534655; // GSFU
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+    private static final int WEBROOT_SIZE = 8 + 4 * 4;
+    private static final int URL_SIZE = 8 * 4 + 4 * 6;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final AtomicReference<UrlRegistrySnapshot> PENDING = new AtomicReference<UrlRegistrySnapshot>();
+
+    private final long created;
+    private final long highWaterMark;
+    private final List<VanityUrl> urls;
+    private final List<VirtualWebroot> webroots;
+
+    private UrlRegistrySnapshot(final long created, final long highWaterMark, final List<VanityUrl> urls,
+            final List<VirtualWebroot> webroots) {
+        this.created = created;
+        this.highWaterMark = highWaterMark;
+        this.urls = urls;
+        this.webroots = webroots;
+    }
+
+    public Date getCreated() {
+        return new Date(created);
+    }
+
+    /**
+     * @return the time in milliseconds after which changes are not in this
+     *         snapshot.
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public int getUrlCount() {
+        return urls.size();
+    }
+
+    public int getWebrootCount() {
+        return webroots.size();
+    }
+
+    List<VanityUrl> getUrls() {
+        return urls;
+    }
+
+    List<VirtualWebroot> getVirtualWebroots() {
+        return webroots;
+    }
+
+    /**
+     * Holds this snapshot until the registry cache mode is known, see
+     * {@link #restorePending(String)}.
+     */
+    public void setPending() {
+        PENDING.set(this);
+    }
+
+    /**
+     * Restores the pending snapshot, if any, when the registry cache mode is
+     * <tt>index</tt>. In the other modes the {@link VanityUrlIndex} is not
+     * used and the changes after the snapshot would never be replayed, so the
+     * snapshot is discarded.
+     *
+     * @param mode the registry cache mode, see
+     *            {@link UrlRegistry2#REGISTRY_CACHE_PROPNAME}
+     */
+    static void restorePending(final String mode) {
+        final UrlRegistrySnapshot snapshot = PENDING.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        if ("index".equals(mode)) {
+            snapshot.restore();
+        } else {
+            LOG.info("Discarded " + snapshot + " as the url registry cache mode is '" + mode + "'.");
+        }
+    }
+
+    /**
+     * Loads the contents of this snapshot into the {@link VanityUrlIndex} and
+     * the virtual webroot lookup of this node. The index is marked to replay
+     * the changes after the high-water mark.
+     */
+    public void restore() {
+        VanityUrlIndex.getInstance().restore(urls, highWaterMark);
+        if (!webroots.isEmpty()) {
+            VirtualWebrootApiBypassDao.restore(webroots);
+        }
+    }
+
+    /**
+     * Writes a snapshot. The file is written aside and renamed when complete.
+     *
+     * @param file the file to write
+     * @param urls the registry rows
+     * @param webroots the virtual webroots
+     * @param highWaterMark the time just before the rows were read
+     * @throws IOException
+     */
+    static void write(final File file, final Collection<VanityUrl> urls, final Collection<VirtualWebroot> webroots,
+            final long highWaterMark) throws IOException {
+        final TreeSet<String> strings = new TreeSet<String>();
+        for (final VanityUrl url : urls) {
+            add(strings, url.getAssettype(), url.getPath(), url.getOpt_vwebroot(), url.getOpt_url_path(),
+                    url.getOpt_site());
+        }
+        for (final VirtualWebroot vw : webroots) {
+            add(strings, vw.getId().getType(), vw.getMasterVirtualWebroot(), vw.getEnvironmentVirtualWebroot(),
+                    vw.getEnvironmentName());
+        }
+        final Map<String, Integer> index = new HashMap<String, Integer>();
+        final List<byte[]> bytes = new ArrayList<byte[]>(strings.size());
+        for (final String s : strings) {
+            index.put(s, bytes.size());
+            bytes.add(s.getBytes(UTF8));
+        }
+
+        // the string indexes follow the string order
+        final VanityUrl[] sorted = urls.toArray(new VanityUrl[urls.size()]);
+        Arrays.sort(sorted, new Comparator<VanityUrl>() {
+            @Override
+            public int compare(final VanityUrl o1, final VanityUrl o2) {
+                int i = compareNullFirst(o1.getOpt_vwebroot(), o2.getOpt_vwebroot());
+                if (i == 0) {
+                    i = compareNullFirst(o1.getOpt_url_path(), o2.getOpt_url_path());
+                }
+                return i != 0 ? i : o1.getId() < o2.getId() ? -1 : o1.getId() == o2.getId() ? 0 : 1;
+            }
+        });
+
+        final File tmp = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(highWaterMark);
+            out.writeInt(bytes.size());
+            out.writeInt(webroots.size());
+            out.writeInt(sorted.length);
+            int offset = 0;
+            for (final byte[] b : bytes) {
+                out.writeInt(offset);
+                offset += b.length;
+            }
+            out.writeInt(offset);
+            for (final byte[] b : bytes) {
+                out.write(b);
+            }
+            for (final VirtualWebroot vw : webroots) {
+                out.writeLong(vw.getId().getId());
+                out.writeInt(indexOf(index, vw.getId().getType()));
+                out.writeInt(indexOf(index, vw.getMasterVirtualWebroot()));
+                out.writeInt(indexOf(index, vw.getEnvironmentVirtualWebroot()));
+                out.writeInt(indexOf(index, vw.getEnvironmentName()));
+            }
+            for (final VanityUrl url : sorted) {
+                out.writeLong(url.getId());
+                out.writeLong(url.getAssetid());
+                out.writeLong(url.getStartdate() == null ? NULL_DATE : url.getStartdate().getTime());
+                out.writeLong(url.getEnddate() == null ? NULL_DATE : url.getEnddate().getTime());
+                out.writeInt(indexOf(index, url.getAssettype()));
+                out.writeInt(indexOf(index, url.getPath()));
+                out.writeInt(indexOf(index, url.getOpt_vwebroot()));
+                out.writeInt(indexOf(index, url.getOpt_url_path()));
+                out.writeInt(url.getOpt_depth());
+                out.writeInt(indexOf(index, url.getOpt_site()));
+            }
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace snapshot " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException when the file cannot be read or is not a valid
+     *             snapshot
+     */
+    public static UrlRegistrySnapshot read(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buf = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // read the whole file
+            }
+            buf.flip();
+            return read(buf, file);
+        } catch (final RuntimeException e) {
+            // BufferUnderflowException, IndexOutOfBoundsException
+            throw new IOException("Snapshot " + file + " is truncated or corrupt: " + e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static UrlRegistrySnapshot read(final ByteBuffer buf, final File file) throws IOException {
+        if (buf.limit() < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException(file + " is not a url registry snapshot.");
+        }
+        final int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot " + file + " has unsupported version " + version);
+        }
+        final long created = buf.getLong();
+        final long highWaterMark = buf.getLong();
+        final int stringCount = buf.getInt();
+        final int webrootCount = buf.getInt();
+        final int urlCount = buf.getInt();
+
+        final int offsets = buf.position();
+        final int blob = offsets + (stringCount + 1) * 4;
+        final int blobSize = buf.getInt(offsets + stringCount * 4);
+        final int expected = blob + blobSize + webrootCount * WEBROOT_SIZE + urlCount * URL_SIZE;
+        if (buf.limit() != expected) {
+            throw new IOException("Snapshot " + file + " has " + buf.limit() + " bytes, expected " + expected);
+        }
+        final String[] strings = new String[stringCount];
+        final byte[] b = new byte[blobSize];
+        buf.position(blob);
+        buf.get(b);
+        for (int i = 0; i < stringCount; i++) {
+            final int start = buf.getInt(offsets + i * 4);
+            final int end = buf.getInt(offsets + i * 4 + 4);
+            strings[i] = new String(b, start, end - start, UTF8);
+        }
+
+        final List<VirtualWebroot> webroots = new ArrayList<VirtualWebroot>(webrootCount);
+        for (int i = 0; i < webrootCount; i++) {
+            final long id = buf.getLong();
+            final String type = string(strings, buf.getInt());
+            webroots.add(new SnapshotWebroot(new AssetIdImpl(type, id), string(strings, buf.getInt()), string(
+                    strings, buf.getInt()), string(strings, buf.getInt())));
+        }
+        final List<VanityUrl> urls = new ArrayList<VanityUrl>(urlCount);
+        for (int i = 0; i < urlCount; i++) {
+            final VanityUrl url = new VanityUrl();
+            url.setId(buf.getLong());
+            url.setAssetid(buf.getLong());
+            url.setStartdate(toDate(buf.getLong()));
+            url.setEnddate(toDate(buf.getLong()));
+            url.setAssettype(string(strings, buf.getInt()));
+            url.setPath(string(strings, buf.getInt()));
+            url.setOpt_vwebroot(string(strings, buf.getInt()));
+            url.setOpt_url_path(string(strings, buf.getInt()));
+            url.setOpt_depth(buf.getInt());
+            url.setOpt_site(string(strings, buf.getInt()));
+            urls.add(url);
+        }
+        return new UrlRegistrySnapshot(created, highWaterMark, Collections.unmodifiableList(urls),
+                Collections.unmodifiableList(webroots));
+    }
+
+    private static void add(final Collection<String> strings, final String... values) {
+        for (final String s : values) {
+            if (s != null) {
+                strings.add(s);
+            }
+        }
+    }
+
+    private static int indexOf(final Map<String, Integer> index, final String s) {
+        return s == null ? -1 : index.get(s);
+    }
+
+    private static String string(final String[] strings, final int i) {
+        return i < 0 ? null : strings[i];
+    }
+
+    private static Date toDate(final long time) {
+        return time == NULL_DATE ? null : new Date(time);
+    }
+
+    private static int compareNullFirst(final String s1, final String s2) {
+        if (s1 == null) {
+            return s2 == null ? 0 : -1;
+        }
+        return s2 == null ? 1 : s1.compareTo(s2);
+    }
+
+    private static final class SnapshotWebroot implements VirtualWebroot {
+        private final AssetId id;
+        private final String master;
+        private final String environment;
+        private final String name;
+
+        SnapshotWebroot(final AssetId id, final String master, final String environment, final String name) {
+            this.id = id;
+            this.master = master;
+            this.environment = environment;
+            this.name = name;
+        }
+
+        @Override
+        public AssetId getId() {
+            return id;
+        }
+
+        @Override
+        public String getMasterVirtualWebroot() {
+            return master;
+        }
+
+        @Override
+        public String getEnvironmentVirtualWebroot() {
+            return environment;
+        }
+
+        @Override
+        public String getEnvironmentName() {
+            return name;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UrlRegistrySnapshot [created=" + getCreated() + ", highWaterMark=" + new Date(highWaterMark)
+                + ", urls=" + urls.size() + ", webroots=" + webroots.size() + "]";
+    }
+}
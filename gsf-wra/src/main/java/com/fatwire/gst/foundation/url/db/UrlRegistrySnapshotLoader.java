@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * ServletContextListener that warms up the url registry cache of this node
+ * from a snapshot file when the web application starts, so a new node does
+ * not have to read the registry table on its first requests.
+ * <p/>
+ * The file is configured with the {@link #SNAPSHOT_PROPNAME} context parameter
+ * or system property, see {@link #getSnapshotFile(ServletContext)}. The
+ * snapshot is read here and restored when the first registry dao is created,
+ * only if the registry cache mode is <tt>index</tt>. The changes made after
+ * the snapshot was written are replayed on the first url lookup, see
+ * {@link UrlRegistry2#replaySnapshot()}. A missing or invalid snapshot is
+ * logged and ignored; the cache is then loaded from the table as usual.
+ * 
+ * @since Oct 16, 2026
+ */
+public class UrlRegistrySnapshotLoader implements ServletContextListener {
+    private static final Log LOG = LogUtil.getLog(UrlRegistrySnapshotLoader.class);
+
+    /**
+     * Name of the context parameter or system property holding the path of
+     * the snapshot file.
+     */
+    public static final String SNAPSHOT_PROPNAME = "com.fatwire.gst.foundation.url.registry-snapshot";
+
+    @Override
+    public void contextInitialized(final ServletContextEvent sce) {
+        final File file = getSnapshotFile(sce.getServletContext());
+        if (file == null) {
+            LOG.debug("No url registry snapshot is configured.");
+            return;
+        }
+        if (!file.isFile()) {
+            LOG.info("Url registry snapshot " + file + " does not exist.");
+            return;
+        }
+        try {
+            final long start = System.currentTimeMillis();
+            final UrlRegistrySnapshot snapshot = UrlRegistrySnapshot.read(file);
+            snapshot.setPending();
+            LOG.info("Read " + snapshot + " in " + (System.currentTimeMillis() - start) + "ms.");
+        } catch (final IOException e) {
+            LOG.warn("Could not load url registry snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up the snapshot file in the context parameters and then in the
+     * system properties. Both the loader and the page that writes snapshots
+     * use this lookup.
+     * 
+     * @param context the servlet context of the web application
+     * @return the configured snapshot file, null if none is configured.
+     */
+    public static File getSnapshotFile(final ServletContext context) {
+        String path = context == null ? null : context.getInitParameter(SNAPSHOT_PROPNAME);
+        if (StringUtils.isBlank(path)) {
+            path = System.getProperty(SNAPSHOT_PROPNAME);
+        }
+        return StringUtils.isBlank(path) ? null : new File(path.trim());
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent sce) {
+        // nothing to release
+    }
+
+}
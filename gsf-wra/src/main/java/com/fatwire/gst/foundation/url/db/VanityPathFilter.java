@@ -0,0 +1,433 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * Node-local filter that tells if a url-path is definitely not registered for
+ * a virtual-webroot, so that requests for unknown urls can be answered without
+ * a query on the GSTUrlRegistry table.
+ * <p/>
+ * It holds a {@link BloomFilter} per virtual-webroot over all registered
+ * url-paths, built in bulk from the registry and added to on WRA events, and a
+ * bounded LRU of the url-paths that recently passed the Bloom filter but were
+ * not found in the registry. Urls added on another cluster node are not seen
+ * by this node, so both the misses and the Bloom filters are only trusted for
+ * a limited time: an expired filter is rebuilt by the next lookup, and until
+ * the new filter is in place lookups go to the registry.
+ * <p/>
+ * Paths that are removed from the registry stay in the Bloom filter until it
+ * is rebuilt, which only affects the false positive rate.
+ *
+ * @since Oct 16, 2026
+ */
+public final class VanityPathFilter {
+    private static final Log LOG = LogUtil.getLog(VanityPathFilter.class);
+
+    private static final VanityPathFilter INSTANCE = new VanityPathFilter(0.01, 10000, 5 * 60 * 1000L);
+
+    private static final int MIN_CAPACITY = 1024;
+
+    private final double fpp;
+    private final int maxMisses;
+    private final long ttl;
+
+    private volatile ConcurrentMap<String, Filter> filters = new ConcurrentHashMap<String, Filter>();
+    private volatile boolean loaded = false;
+    private volatile long loadedAt = 0;
+    private final AtomicBoolean loading = new AtomicBoolean(false);
+    /**
+     * The paths added while the filters are being built, null when no build is
+     * in progress. Guarded by this.
+     */
+    private List<String[]> queued;
+    private final Map<String, Long> misses;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong filterNegatives = new AtomicLong();
+    private final AtomicLong missCacheHits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong truePositives = new AtomicLong();
+
+    /**
+     * @return the filter for this node.
+     */
+    public static VanityPathFilter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param fpp the false positive probability the Bloom filters are sized
+     *            for
+     * @param maxMisses the maximum number of recent misses to remember
+     * @param ttl the time in milliseconds to remember a miss and to use the
+     *            Bloom filters before they are rebuilt
+     */
+    VanityPathFilter(final double fpp, final int maxMisses, final long ttl) {
+        this.fpp = fpp;
+        this.maxMisses = maxMisses;
+        this.ttl = ttl;
+        this.misses = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > VanityPathFilter.this.maxMisses;
+            }
+        };
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Builds the Bloom filters from all the registry rows if they are not
+     * loaded yet or have expired. Only one thread builds the filters, the
+     * other threads do not wait for it.
+     *
+     * @param dao the dao to read the registry rows from
+     */
+    public void load(final UrlRegistryDao dao) {
+        if (isCurrent()) {
+            return;
+        }
+        if (!loading.compareAndSet(false, true)) {
+            // another thread is building, lookups go to the registry meanwhile
+            return;
+        }
+        try {
+            final long start = System.currentTimeMillis();
+            synchronized (this) {
+                queued = new ArrayList<String[]>();
+            }
+            final List<VanityUrl> urls = dao.listAll();
+            final Map<String, Integer> counts = new HashMap<String, Integer>();
+            for (final VanityUrl url : urls) {
+                final Integer i = counts.get(url.getOpt_vwebroot());
+                counts.put(url.getOpt_vwebroot(), i == null ? 1 : i + 1);
+            }
+            final ConcurrentMap<String, Filter> next = new ConcurrentHashMap<String, Filter>();
+            for (final Map.Entry<String, Integer> e : counts.entrySet()) {
+                // leave room to grow before a rebuild is needed
+                next.put(e.getKey(), new Filter(new BloomFilter(Math.max(MIN_CAPACITY, e.getValue() * 2), fpp)));
+            }
+            for (final VanityUrl url : urls) {
+                next.get(url.getOpt_vwebroot()).add(url.getOpt_url_path());
+            }
+            synchronized (this) {
+                // paths added while the registry was read
+                for (final String[] path : queued) {
+                    add(next, path[0], path[1]);
+                }
+                queued = null;
+                filters = next;
+                loadedAt = start;
+                loaded = true;
+            }
+            clearMisses();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Built vanity path filters for " + counts + " using " + getStats().getMemoryUsed()
+                        + " bytes.");
+            }
+        } finally {
+            synchronized (this) {
+                queued = null;
+            }
+            loading.set(false);
+        }
+    }
+
+    private boolean isCurrent() {
+        return loaded && System.currentTimeMillis() - loadedAt < ttl;
+    }
+
+    /**
+     * Marks the filters as unloaded, they will be rebuilt on next use.
+     */
+    public void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * @param virtual_webroot
+     * @param url_path
+     * @return true if the url-path is certainly not registered for the
+     *         virtual-webroot, false if it might be.
+     */
+    public boolean isDefinitelyAbsent(final String virtual_webroot, final String url_path) {
+        if (!isCurrent() || virtual_webroot == null || url_path == null) {
+            return false;
+        }
+        lookups.incrementAndGet();
+        final Filter f = filters.get(virtual_webroot);
+        if (f == null || !f.bloom.mightContain(url_path)) {
+            filterNegatives.incrementAndGet();
+            return true;
+        }
+        final String key = toKey(virtual_webroot, url_path);
+        synchronized (misses) {
+            final Long time = misses.get(key);
+            if (time != null) {
+                if (System.currentTimeMillis() - time < ttl) {
+                    missCacheHits.incrementAndGet();
+                    return true;
+                }
+                misses.remove(key);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the outcome of a registry query for a url-path that passed the
+     * filter.
+     *
+     * @param virtual_webroot
+     * @param url_path
+     * @param found true if the registry had rows for the url-path
+     */
+    public void recordLookup(final String virtual_webroot, final String url_path, final boolean found) {
+        if (!loaded) {
+            return;
+        }
+        if (found) {
+            truePositives.incrementAndGet();
+        } else {
+            falsePositives.incrementAndGet();
+            synchronized (misses) {
+                misses.put(toKey(virtual_webroot, url_path), System.currentTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Adds a registered url-path.
+     *
+     * @param virtual_webroot
+     * @param url_path
+     */
+    public void add(final String virtual_webroot, final String url_path) {
+        if (virtual_webroot == null || url_path == null) {
+            return;
+        }
+        synchronized (misses) {
+            misses.remove(toKey(virtual_webroot, url_path));
+        }
+        synchronized (this) {
+            if (queued != null) {
+                queued.add(new String[] { virtual_webroot, url_path });
+            }
+        }
+        if (loaded) {
+            add(filters, virtual_webroot, url_path);
+        }
+    }
+
+    private void add(final ConcurrentMap<String, Filter> target, final String virtual_webroot,
+            final String url_path) {
+        Filter f = target.get(virtual_webroot);
+        if (f == null) {
+            final Filter created = new Filter(new BloomFilter(MIN_CAPACITY, fpp));
+            f = target.putIfAbsent(virtual_webroot, created);
+            if (f == null) {
+                f = created;
+            }
+        }
+        if (f.add(url_path) > f.bloom.getCapacity()) {
+            LOG.debug("Vanity path filter for " + virtual_webroot + " is full, it will be rebuilt.");
+            invalidate();
+        }
+    }
+
+    /**
+     * Forgets all the recent misses.
+     */
+    public void clearMisses() {
+        synchronized (misses) {
+            misses.clear();
+        }
+    }
+
+    /**
+     * @return the statistics of this filter.
+     */
+    public Stats getStats() {
+        long memory = 0;
+        long paths = 0;
+        double expected = 0;
+        for (final Filter f : filters.values()) {
+            memory += f.bloom.getSizeInBytes();
+            final int n = f.count.get();
+            paths += n;
+            expected = Math.max(expected, f.bloom.expectedFpp(n));
+        }
+        int missCount;
+        long missMemory = 0;
+        synchronized (misses) {
+            missCount = misses.size();
+            for (final String key : misses.keySet()) {
+                // characters plus rough entry, key and value overhead
+                missMemory += key.length() * 2 + 96;
+            }
+        }
+        return new Stats(filters.size(), paths, missCount, memory + missMemory, expected, lookups.get(),
+                filterNegatives.get(), missCacheHits.get(), falsePositives.get(), truePositives.get());
+    }
+
+    private static String toKey(final String virtual_webroot, final String url_path) {
+        return virtual_webroot + '\u0000' + url_path;
+    }
+
+    private static final class Filter {
+        private final BloomFilter bloom;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Filter(final BloomFilter bloom) {
+            this.bloom = bloom;
+        }
+
+        int add(final String path) {
+            bloom.add(path);
+            return count.incrementAndGet();
+        }
+    }
+
+    /**
+     * Point in time statistics of the filter.
+     */
+    public static final class Stats {
+        private final int webroots;
+        private final long paths;
+        private final int misses;
+        private final long memoryUsed;
+        private final double expectedFpp;
+        private final long lookups;
+        private final long filterNegatives;
+        private final long missCacheHits;
+        private final long falsePositives;
+        private final long truePositives;
+
+        Stats(final int webroots, final long paths, final int misses, final long memoryUsed,
+                final double expectedFpp, final long lookups, final long filterNegatives, final long missCacheHits,
+                final long falsePositives, final long truePositives) {
+            this.webroots = webroots;
+            this.paths = paths;
+            this.misses = misses;
+            this.memoryUsed = memoryUsed;
+            this.expectedFpp = expectedFpp;
+            this.lookups = lookups;
+            this.filterNegatives = filterNegatives;
+            this.missCacheHits = missCacheHits;
+            this.falsePositives = falsePositives;
+            this.truePositives = truePositives;
+        }
+
+        /**
+         * @return the number of virtual webroots with a Bloom filter.
+         */
+        public int getWebroots() {
+            return webroots;
+        }
+
+        /**
+         * @return the number of url-paths added to the Bloom filters.
+         */
+        public long getPaths() {
+            return paths;
+        }
+
+        /**
+         * @return the number of remembered misses.
+         */
+        public int getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the approximate memory used by the Bloom filters and the
+         *         misses, in bytes.
+         */
+        public long getMemoryUsed() {
+            return memoryUsed;
+        }
+
+        /**
+         * @return the highest false positive probability of the Bloom filters
+         *         given the number of paths they hold.
+         */
+        public double getExpectedFalsePositiveRate() {
+            return expectedFpp;
+        }
+
+        /**
+         * @return the share of the lookups for absent paths that the Bloom
+         *         filters let through to the registry.
+         */
+        public double getFalsePositiveRate() {
+            final long absent = filterNegatives + falsePositives;
+            return absent == 0 ? 0 : (double) falsePositives / absent;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        /**
+         * @return the number of lookups answered by the Bloom filters.
+         */
+        public long getFilterNegatives() {
+            return filterNegatives;
+        }
+
+        /**
+         * @return the number of lookups answered by the remembered misses.
+         */
+        public long getMissCacheHits() {
+            return missCacheHits;
+        }
+
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        public long getTruePositives() {
+            return truePositives;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [webroots=" + webroots + ", paths=" + paths + ", misses=" + misses + ", memoryUsed="
+                    + memoryUsed + ", lookups=" + lookups + ", filterNegatives=" + filterNegatives
+                    + ", missCacheHits=" + missCacheHits + ", falsePositives=" + falsePositives
+                    + ", falsePositiveRate=" + getFalsePositiveRate() + "]";
+        }
+    }
+}
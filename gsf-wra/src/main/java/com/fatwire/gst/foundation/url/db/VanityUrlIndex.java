@@ -0,0 +1,369 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * Node-local, in-memory index over the GSTUrlRegistry table, keyed by
+ * virtual-webroot and url-path. The candidate rows for a key are held as an
+ * immutable array that is replaced on every change, so lookups do not lock
+ * and do not touch the database.
+ * <p/>
+ * The index is loaded in bulk on first use and is kept current by the
+ * add/update/delete calls that flow through {@link IndexedUrlRegistryDao},
+ * which in turn are driven by the WraAssetEventListener. Changes made while
+ * the index is loading are queued and applied on top of the loaded rows.
+ * The index has no expiry: rows written by other cluster members are only
+ * picked up after {@link #invalidate()}, which is why the <tt>index</tt>
+ * registry cache mode is meant for single node delivery. After a restore from
+ * a snapshot the registry changes logged since the snapshot are replayed.
+ *
+ * @since Oct 16, 2026
+ */
+public final class VanityUrlIndex {
+    private static final Log LOG = LogUtil.getLog(VanityUrlIndex.class);
+
+    private static final VanityUrlIndex INSTANCE = new VanityUrlIndex();
+
+    private static final VanityUrl[] EMPTY = new VanityUrl[0];
+
+    /**
+     * Orders the candidates the same way as the registry SELECT: by startdate
+     * and then enddate, with open dates first.
+     */
+    private static final Comparator<VanityUrl> DATE_ORDER = new Comparator<VanityUrl>() {
+
+        @Override
+        public int compare(final VanityUrl o1, final VanityUrl o2) {
+            final int i = compare(o1.getStartdate(), o2.getStartdate());
+            return i != 0 ? i : compare(o1.getEnddate(), o2.getEnddate());
+        }
+
+        private int compare(final Date d1, final Date d2) {
+            if (d1 == null) {
+                return d2 == null ? 0 : -1;
+            }
+            return d2 == null ? 1 : d1.compareTo(d2);
+        }
+    };
+
+    private volatile ConcurrentMap<Key, VanityUrl[]> byPath = new ConcurrentHashMap<Key, VanityUrl[]>();
+    private volatile ConcurrentMap<String, Key> byAsset = new ConcurrentHashMap<String, Key>();
+    private volatile boolean loaded = false;
+    private volatile long replaySince = 0;
+
+    private final Object loadLock = new Object();
+    /**
+     * The changes made while a load is reading the registry, null when no load
+     * is in progress. Guarded by this.
+     */
+    private List<Change> queued;
+
+    /**
+     * @return the index for this node.
+     */
+    public static VanityUrlIndex getInstance() {
+        return INSTANCE;
+    }
+
+    private VanityUrlIndex() {
+    }
+
+    /**
+     * @return true if the index holds the contents of the registry table.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads all the registry rows in one bulk read if the index is not loaded
+     * yet.
+     *
+     * @param dao the dao to read the registry rows from
+     */
+    public void load(final UrlRegistryDao dao) {
+        if (loaded) {
+            return;
+        }
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+            final long start = System.nanoTime();
+            synchronized (this) {
+                queued = new ArrayList<Change>();
+            }
+            // read without holding the index lock, so writes are queued
+            // instead of waiting for the read
+            final List<VanityUrl> urls;
+            try {
+                urls = dao.listAll();
+            } catch (final RuntimeException e) {
+                synchronized (this) {
+                    queued = null;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                final List<Change> changes = queued;
+                queued = null;
+                replaceAll(urls);
+                for (final Change change : changes) {
+                    change.apply(byPath, byAsset);
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Loaded " + byAsset.size() + " vanity urls for " + byPath.size() + " paths and applied "
+                            + changes.size() + " concurrent changes in " + (System.nanoTime() - start) / 1000000L
+                            + "ms.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with the given rows and marks the
+     * index as loaded. The new contents are built aside and swapped in, so
+     * concurrent lookups see either the old or the new contents.
+     *
+     * @param urls all the rows of the registry
+     */
+    public synchronized void replaceAll(final Collection<VanityUrl> urls) {
+        final ConcurrentMap<Key, VanityUrl[]> newPath = new ConcurrentHashMap<Key, VanityUrl[]>();
+        final ConcurrentMap<String, Key> newAsset = new ConcurrentHashMap<String, Key>();
+        for (final VanityUrl url : urls) {
+            put(url, newPath, newAsset);
+        }
+        byPath = newPath;
+        byAsset = newAsset;
+        loaded = true;
+        replaySince = 0;
+    }
+
+    /**
+     * Replaces the contents of the index with the rows of a snapshot. The
+     * changes made after the high-water mark of the snapshot are not in the
+     * index until they are replayed, see {@link UrlRegistry2#replaySnapshot()}.
+     *
+     * @param urls the rows of the snapshot
+     * @param highWaterMark the time after which changes are not in the rows
+     */
+    public synchronized void restore(final Collection<VanityUrl> urls, final long highWaterMark) {
+        replaceAll(urls);
+        replaySince = highWaterMark;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Restored " + byAsset.size() + " vanity urls from a snapshot of " + new Date(highWaterMark));
+        }
+    }
+
+    /**
+     * @return true if the index was restored from a snapshot and the changes
+     *         after it are not replayed yet.
+     */
+    public boolean isReplayPending() {
+        return replaySince != 0;
+    }
+
+    /**
+     * @return the high-water mark of the snapshot to replay the changes after,
+     *         or 0 if there is nothing to replay.
+     */
+    long getReplaySince() {
+        return replaySince;
+    }
+
+    synchronized void replayed(final long highWaterMark) {
+        // a reload or newer snapshot may have happened meanwhile
+        if (replaySince == highWaterMark) {
+            replaySince = 0;
+        }
+    }
+
+    /**
+     * Marks the index as unloaded, the next lookup through
+     * {@link IndexedUrlRegistryDao} will reload it. Until then the current
+     * contents are still served.
+     */
+    public void invalidate() {
+        loaded = false;
+        replaySince = 0;
+        LOG.debug("Vanity url index is invalidated.");
+    }
+
+    /**
+     * Returns the candidates for the virtual-webroot and url-path, ordered by
+     * startdate and enddate.
+     *
+     * @param virtual_webroot
+     * @param url_path
+     * @return the candidates, never null.
+     */
+    public List<VanityUrl> lookup(final String virtual_webroot, final String url_path) {
+        if (virtual_webroot == null || url_path == null) {
+            return Collections.emptyList();
+        }
+        final VanityUrl[] urls = byPath.get(new Key(virtual_webroot, url_path));
+        if (urls == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(urls));
+    }
+
+    /**
+     * Adds or replaces the entry for the asset of the url.
+     *
+     * @param url the registry row
+     */
+    public synchronized void put(final VanityUrl url) {
+        put(url, byPath, byAsset);
+        if (queued != null) {
+            queued.add(new Change(url, null));
+        }
+    }
+
+    private static void put(final VanityUrl url, final ConcurrentMap<Key, VanityUrl[]> byPath,
+            final ConcurrentMap<String, Key> byAsset) {
+        if (url == null || url.getOpt_vwebroot() == null || url.getOpt_url_path() == null) {
+            return;
+        }
+        final String asset = toAssetKey(url.getAssettype(), url.getAssetid());
+        removeFromPath(asset, byPath, byAsset);
+        final Key key = new Key(url.getOpt_vwebroot(), url.getOpt_url_path());
+        final VanityUrl[] current = byPath.get(key);
+        final VanityUrl[] next;
+        if (current == null) {
+            next = new VanityUrl[] { url };
+        } else {
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = url;
+            Arrays.sort(next, DATE_ORDER);
+        }
+        byPath.put(key, next);
+        byAsset.put(asset, key);
+    }
+
+    /**
+     * Removes the entry for the asset.
+     *
+     * @param id the asset
+     */
+    public synchronized void remove(final AssetId id) {
+        final String asset = toAssetKey(id.getType(), id.getId());
+        removeFromPath(asset, byPath, byAsset);
+        if (queued != null) {
+            queued.add(new Change(null, asset));
+        }
+    }
+
+    /**
+     * @return the number of assets in the index.
+     */
+    public int size() {
+        return byAsset.size();
+    }
+
+    private static void removeFromPath(final String asset, final ConcurrentMap<Key, VanityUrl[]> byPath,
+            final ConcurrentMap<String, Key> byAsset) {
+        final Key key = byAsset.remove(asset);
+        if (key == null) {
+            return;
+        }
+        final VanityUrl[] current = byPath.get(key);
+        if (current == null) {
+            return;
+        }
+        final List<VanityUrl> next = new ArrayList<VanityUrl>(current.length);
+        for (final VanityUrl url : current) {
+            if (!asset.equals(toAssetKey(url.getAssettype(), url.getAssetid()))) {
+                next.add(url);
+            }
+        }
+        if (next.isEmpty()) {
+            byPath.remove(key);
+        } else {
+            byPath.put(key, next.toArray(EMPTY));
+        }
+    }
+
+    private static String toAssetKey(final String type, final long id) {
+        return type + ":" + id;
+    }
+
+    /**
+     * A put or remove that happened while the index was loading.
+     */
+    private static final class Change {
+        private final VanityUrl url;
+        private final String asset;
+
+        Change(final VanityUrl url, final String asset) {
+            this.url = url;
+            this.asset = asset;
+        }
+
+        void apply(final ConcurrentMap<Key, VanityUrl[]> byPath, final ConcurrentMap<String, Key> byAsset) {
+            if (url != null) {
+                put(url, byPath, byAsset);
+            } else {
+                removeFromPath(asset, byPath, byAsset);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String vwebroot;
+        private final String path;
+        private final int hash;
+
+        Key(final String vwebroot, final String path) {
+            this.vwebroot = vwebroot;
+            this.path = path;
+            this.hash = 31 * vwebroot.hashCode() + path.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash && path.equals(other.path) && vwebroot.equals(other.vwebroot);
+        }
+    }
+
+}
@@ -15,14 +15,18 @@
  */
 package com.fatwire.gst.foundation.vwebroot;
 
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadata;
 import com.fatwire.gst.foundation.facade.assetapi.DirectSqlAccessTools;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
@@ -42,6 +46,22 @@ import org.apache.commons.logging.LogFactory;
 public class VirtualWebrootApiBypassDao implements VirtualWebrootDao {
     private static final Log LOG = LogFactory.getLog(VirtualWebrootApiBypassDao.class.getName());
 
+    /**
+     * Name of the system property holding the time in seconds after which the
+     * lookup tries are built again, to pick up virtual webroots that were
+     * changed on other cluster members or published to this one.
+     */
+    public static final String TTL_PROPNAME = "com.fatwire.gst.foundation.vwebroot.lookup-ttl";
+
+    private static final long TTL = Long.getLong(TTL_PROPNAME, 60L) * 1000L;
+
+    /**
+     * Node-wide lookup tries per environment name, replaced as a whole when a
+     * virtual webroot changes on this node or the time to live has passed, so
+     * lookups never lock.
+     */
+    private static final AtomicReference<Tries> TRIES = new AtomicReference<Tries>();
+
     private final ICS ics;
     private final DirectSqlAccessTools directSqlAccessTools;
 
@@ -59,27 +79,118 @@ public class VirtualWebrootApiBypassDao implements VirtualWebrootDao {
         return new VWebrootBeanImpl(cid, m.get("master_vwebroot"), m.get("env_vwebroot"), m.get("env_name"));
     }
 
-    // private static final PreparedStmt ALL_VW = new
-    // PreparedStmt("SELECT id from GSTVirtualWebroot WHERE status != 'VO'",
-    // Collections.singletonList("GSTVirtualWebroot"));
-
     /**
      * Get all of the virtual webroots, sorted by URL length.
+     * <p/>
+     * All webroots are read with one statement, outer joined to the
+     * GSTVirtualWebroot_Mungo table so that webroots without attribute values
+     * are listed too, with null values, as before.
      * 
      * @return list of virtual webroots
      */
     public SortedSet<VirtualWebroot> getAllVirtualWebroots() {
 
         SortedSet<VirtualWebroot> result = new TreeSet<VirtualWebroot>(new UrlInfoComparator());
-        for (Row r : SqlHelper
-                .select(ics, "GSTVirtualWebroot", "SELECT id from GSTVirtualWebroot WHERE status != 'VO'")) {
-            result.add(getVirtualWebroot(r.getLong("id")));
+        AssetTypeMetadata type = directSqlAccessTools.getAssetTypeMetadata(VWebrootBeanImpl.GST_VIRTUAL_WEBROOT);
+        if (!type.isFlex()) {
+            throw new IllegalArgumentException("Asset type " + VWebrootBeanImpl.GST_VIRTUAL_WEBROOT
+                    + " is not a flex asset type!");
+        }
+        // the attribute ids are known, no need to join on the attribute table
+        Map<Long, String> names = new HashMap<Long, String>();
+        for (String name : new String[] { "master_vwebroot", "env_vwebroot", "env_name" }) {
+            Long attrId = type.getAttributeId(name);
+            if (attrId != null) {
+                names.put(attrId, name);
+            }
+        }
+        StringBuilder in = new StringBuilder();
+        for (Long attrId : names.keySet()) {
+            in.append(in.length() == 0 ? "" : ",").append(attrId);
+        }
+        String sql = "SELECT vw.id AS id, cmungo.cs_attrid AS cs_attrid, cmungo.stringvalue AS stringvalue"
+                + " FROM GSTVirtualWebroot vw LEFT OUTER JOIN GSTVirtualWebroot_Mungo cmungo"
+                + " ON cmungo.cs_ownerid = vw.id"
+                + (names.isEmpty() ? " AND 1=0" : " AND cmungo.cs_attrid IN (" + in + ")")
+                + " WHERE vw.status != 'VO'";
+        Map<Long, Map<String, String>> values = new HashMap<Long, Map<String, String>>();
+        for (Row r : SqlHelper.selectUncached(ics, VWebrootBeanImpl.GST_VIRTUAL_WEBROOT, sql)) {
+            Long id = r.getLong("id");
+            Map<String, String> m = values.get(id);
+            if (m == null) {
+                m = new HashMap<String, String>();
+                values.put(id, m);
+            }
+            Long attrId = r.getLong("cs_attrid");
+            if (attrId != null) {
+                m.put(names.get(attrId), r.getString("stringvalue"));
+            }
+        }
+        for (Map.Entry<Long, Map<String, String>> e : values.entrySet()) {
+            Map<String, String> m = e.getValue();
+            result.add(new VWebrootBeanImpl(e.getKey(), m.get("master_vwebroot"), m.get("env_vwebroot"), m
+                    .get("env_name")));
         }
         if (result.size() == 0)
             throw new IllegalStateException("No GSTVirtualWebroots are registered");
         return result;
     }
 
+    /**
+     * Reloads all the virtual webroots and atomically replaces the lookup tries
+     * of this node. To be called when a GSTVirtualWebroot asset has changed.
+     */
+    public void reload() {
+        Tries tries = new Tries(VirtualWebrootTrie.build(getAllVirtualWebroots()));
+        TRIES.set(tries);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Loaded virtual webroot lookup tries for environments " + tries.byEnv.keySet());
+    }
+
+    /**
+     * Replaces the lookup tries of this node with tries built from the given
+     * virtual webroots, for instance from a snapshot.
+     * 
+     * @param webroots all the virtual webroots
+     */
+    public static void restore(Collection<VirtualWebroot> webroots) {
+        TRIES.set(new Tries(VirtualWebrootTrie.build(webroots)));
+    }
+
+    /**
+     * Clears the lookup tries of this node, they will be reloaded on next use.
+     */
+    public static void invalidate() {
+        TRIES.set(null);
+    }
+
+    private Map<String, VirtualWebrootTrie> getTries() {
+        Tries tries = TRIES.get();
+        if (tries == null || System.currentTimeMillis() - tries.loaded >= TTL) {
+            Tries loaded = new Tries(VirtualWebrootTrie.build(getAllVirtualWebroots()));
+            // don't replace a newer set of tries loaded by another thread
+            if (TRIES.compareAndSet(tries, loaded)) {
+                tries = loaded;
+            } else {
+                Tries current = TRIES.get();
+                tries = current != null ? current : loaded;
+            }
+        }
+        return tries.byEnv;
+    }
+
+    /**
+     * The lookup tries with the time they were built.
+     */
+    private static final class Tries {
+        final Map<String, VirtualWebrootTrie> byEnv;
+        final long loaded = System.currentTimeMillis();
+
+        Tries(Map<String, VirtualWebrootTrie> byEnv) {
+            this.byEnv = byEnv;
+        }
+    }
+
     /**
      * Get the current virtual webroot environment as defined by the
      * configuration properties. Null indicates that none is configured.
@@ -134,17 +245,14 @@ public class VirtualWebrootApiBypassDao implements VirtualWebrootDao {
         String env = getVirtualWebrootEnvironment();
         if (env == null)
             return null;
-        for (VirtualWebroot vw : getAllVirtualWebroots()) {
-            // find longest first one that is found in the prefix of path. that
-            // is virtual-webroot
-            // the path in the asset must start with the MASTER virtual webroot
-            // for this to work. This could
-            // be loosened up but there is no real reason to right now.
-            if (env.equals(vw.getEnvironmentName()) && wraPath.startsWith(vw.getMasterVirtualWebroot())) {
-                return vw;
-            }
-        }
-        return null; // no match
+        // find longest master virtual-webroot that is a prefix of path.
+        // the path in the asset must start with the MASTER virtual webroot
+        // for this to work. This could
+        // be loosened up but there is no real reason to right now.
+        VirtualWebrootTrie trie = getTries().get(env);
+        if (trie == null)
+            return null; // no webroots for this environment
+        return trie.lookup(wraPath);
     }
 
     /**
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.vwebroot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable prefix trie over the master virtual webroots of one environment.
+ * A lookup walks the uri once and returns the virtual webroot with the longest
+ * master virtual webroot that is a prefix of the uri, which is the same one
+ * that a scan in {@link VirtualWebrootApiBypassDao.UrlInfoComparator} order
+ * would find first.
+ *
+ * @since Oct 16, 2026
+ */
+public final class VirtualWebrootTrie {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root;
+    private final int size;
+
+    private VirtualWebrootTrie(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Builds one trie per environment name.
+     *
+     * @param webroots all the virtual webroots
+     * @return map of environment name to trie, never null.
+     */
+    public static Map<String, VirtualWebrootTrie> build(final Collection<VirtualWebroot> webroots) {
+        final Map<String, List<VirtualWebroot>> byEnv = new HashMap<String, List<VirtualWebroot>>();
+        for (final VirtualWebroot vw : webroots) {
+            List<VirtualWebroot> l = byEnv.get(vw.getEnvironmentName());
+            if (l == null) {
+                l = new ArrayList<VirtualWebroot>();
+                byEnv.put(vw.getEnvironmentName(), l);
+            }
+            l.add(vw);
+        }
+        final Map<String, VirtualWebrootTrie> result = new HashMap<String, VirtualWebrootTrie>();
+        for (final Map.Entry<String, List<VirtualWebroot>> e : byEnv.entrySet()) {
+            result.put(e.getKey(), newTrie(e.getValue()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Builds a trie over the master virtual webroots, irrespective of the
+     * environment. When two webroots share the same master virtual webroot,
+     * the one that sorts first by
+     * {@link VirtualWebrootApiBypassDao.UrlInfoComparator} is kept.
+     *
+     * @param webroots the virtual webroots
+     * @return the trie
+     */
+    public static VirtualWebrootTrie newTrie(final Collection<VirtualWebroot> webroots) {
+        final List<VirtualWebroot> sorted = new ArrayList<VirtualWebroot>(webroots);
+        Collections.sort(sorted, new VirtualWebrootApiBypassDao.UrlInfoComparator());
+        final MutableNode root = new MutableNode();
+        int size = 0;
+        for (final VirtualWebroot vw : sorted) {
+            final String key = vw.getMasterVirtualWebroot();
+            MutableNode n = root;
+            for (int i = 0; i < key.length(); i++) {
+                n = n.child(key.charAt(i));
+            }
+            if (n.value == null) {
+                n.value = vw;
+                size++;
+            }
+        }
+        return new VirtualWebrootTrie(root.freeze(), size);
+    }
+
+    /**
+     * Finds the virtual webroot whose master virtual webroot is the longest
+     * prefix of the uri.
+     *
+     * @param uri
+     * @return the virtual webroot or null if none matches.
+     */
+    public VirtualWebroot lookup(final String uri) {
+        if (uri == null) {
+            return null;
+        }
+        Node n = root;
+        VirtualWebroot match = n.value;
+        for (int i = 0; i < uri.length(); i++) {
+            n = n.child(uri.charAt(i));
+            if (n == null) {
+                break;
+            }
+            if (n.value != null) {
+                match = n.value;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @return the number of virtual webroots in this trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final VirtualWebroot value;
+
+        Node(final char[] keys, final Node[] children, final VirtualWebroot value) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        Node child(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class MutableNode {
+        private final Map<Character, MutableNode> children = new HashMap<Character, MutableNode>();
+        private VirtualWebroot value;
+
+        MutableNode child(final char c) {
+            MutableNode n = children.get(c);
+            if (n == null) {
+                n = new MutableNode();
+                children.put(c, n);
+            }
+            return n;
+        }
+
+        Node freeze() {
+            if (children.isEmpty()) {
+                return new Node(NO_KEYS, NO_CHILDREN, value);
+            }
+            final char[] keys = new char[children.size()];
+            int i = 0;
+            for (final Character c : children.keySet()) {
+                keys[i++] = c;
+            }
+            Arrays.sort(keys);
+            final Node[] frozen = new Node[keys.length];
+            for (i = 0; i < keys.length; i++) {
+                frozen[i] = children.get(keys[i]).freeze();
+            }
+            return new Node(keys, frozen, value);
+        }
+    }
+}
@@ -15,6 +15,9 @@
  */
 package com.fatwire.gst.foundation.wra;
 
+import java.util.Collection;
+import java.util.Map;
+
 import com.fatwire.assetapi.data.AssetId;
 
 /**
@@ -46,4 +49,14 @@ public interface AliasCoreFieldDao {
      */
     public Alias getAlias(AssetId id);
 
+    /**
+     * Return the alias asset beans for many assets at once. Assets that are
+     * not found or are not valid aliases are left out of the map.
+     * 
+     * @param ids asset ids
+     * @return Aliases by asset id, never null
+     * @see #getAlias(AssetId)
+     */
+    public Map<AssetId, Alias> getAliases(Collection<AssetId> ids);
+
 }
@@ -15,8 +15,15 @@
  */
 package com.fatwire.gst.foundation.wra;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -110,6 +117,76 @@ public class AssetApiAliasCoreFieldDao implements AliasCoreFieldDao {
         TemplateAsset alias = new TemplateAsset(getAsAssetData(id));
         AssetId target = Children.getOptionalSingleAssociation(ics, id.getType(), Long.toString(id.getId()),
                 TARGET_ASSOCIATION_NAME);
+        if (target == null) {
+            return toAlias(id, alias, null, null);
+        }
+        if (!wraCoreFieldDao.isWebReferenceable(target)) {
+            throw new IllegalStateException(
+                    "Asset is not a valid alias because it refers to a target asset that is not web-referenceable. Alias:"
+                            + id + ", target:" + target);
+        }
+        return toAlias(id, alias, target, wraCoreFieldDao.getWra(target));
+    }
+
+    /**
+     * Return the alias asset beans for many assets. The aliases are read with
+     * one call to the asset api, and their targets with one call to
+     * {@link WraCoreFieldDao#getWras(Collection)}. Assets that are not aliases,
+     * or that are not valid aliases, are left out.
+     * 
+     * @param ids asset ids
+     * @return Aliases by asset id, never null
+     */
+    public Map<AssetId, Alias> getAliases(Collection<AssetId> ids) {
+        List<AssetId> aliasIds = new ArrayList<AssetId>(ids.size());
+        for (AssetId id : ids) {
+            if (Alias.ALIAS_ASSET_TYPE_NAME.equals(id.getType())) {
+                aliasIds.add(id);
+            }
+        }
+        Map<AssetId, TemplateAsset> aliases = new LinkedHashMap<AssetId, TemplateAsset>();
+        Map<AssetId, AssetId> targets = new HashMap<AssetId, AssetId>();
+        for (AssetData data : AssetDataUtils.getAssetData(ics, aliasIds)) {
+            TemplateAsset alias = new TemplateAsset(data);
+            aliases.put(data.getAssetId(), alias);
+            // the association is read with the asset data
+            AssetId target = alias.getAssociatedAsset(TARGET_ASSOCIATION_NAME);
+            if (target != null) {
+                targets.put(data.getAssetId(), target);
+            }
+        }
+        Map<AssetId, WebReferenceableAsset> wras = targets.isEmpty() ? Collections
+                .<AssetId, WebReferenceableAsset> emptyMap() : wraCoreFieldDao.getWras(new HashSet<AssetId>(targets
+                .values()));
+
+        Map<AssetId, Alias> map = new HashMap<AssetId, Alias>();
+        for (Map.Entry<AssetId, TemplateAsset> e : aliases.entrySet()) {
+            AssetId id = e.getKey();
+            AssetId target = targets.get(id);
+            WebReferenceableAsset wra = target == null ? null : wras.get(target);
+            if (target != null && (wra == null || !wraCoreFieldDao.isWebReferenceable(wra))) {
+                LOG.trace("Alias " + id + " refers to a target asset that is not web-referenceable: " + target);
+                continue;
+            }
+            try {
+                map.put(id, toAlias(id, e.getValue(), target, wra));
+            } catch (RuntimeException ex) {
+                LOG.warn("Asset " + id + " is not a valid alias: " + ex);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @param id the alias asset id
+     * @param alias the alias asset
+     * @param target the target asset, null if the alias refers to an external
+     *            url
+     * @param wra the web-referenceable target asset, null if there is no
+     *            target
+     * @return the alias bean
+     */
+    private Alias toAlias(AssetId id, TemplateAsset alias, AssetId target, WebReferenceableAsset wra) {
         if (target == null) {
             String targetUrl = alias.asString("target_url");
             if (targetUrl != null && targetUrl.length() == 0)
@@ -151,12 +228,6 @@ public class AssetApiAliasCoreFieldDao implements AliasCoreFieldDao {
             return o;
 
         } else {
-            if (!wraCoreFieldDao.isWebReferenceable(target)) {
-                throw new IllegalStateException(
-                        "Asset is not a valid alias because it refers to a target asset that is not web-referenceable. Alias:"
-                                + id + ", target:" + target);
-            }
-            WebReferenceableAsset wra = wraCoreFieldDao.getWra(target);
             LOG.trace("Alias " + id + " refers to another wra asset: " + target);
 
             AliasBeanImpl o = new AliasBeanImpl();
@@ -16,7 +16,10 @@
 package com.fatwire.gst.foundation.wra;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -131,6 +134,21 @@ public class AssetApiWraCoreFieldDao implements WraCoreFieldDao {
         return mapper.map(data);
     }
 
+    /**
+     * Return the web referenceable asset beans for many assets, read with one
+     * call to the asset api.
+     * 
+     * @param ids asset ids
+     * @return WebReferenceableAssets by asset id, never null
+     */
+    public Map<AssetId, WebReferenceableAsset> getWras(Collection<AssetId> ids) {
+        Map<AssetId, WebReferenceableAsset> map = new HashMap<AssetId, WebReferenceableAsset>();
+        for (AssetData data : AssetDataUtils.getAssetData(ics, ids)) {
+            map.put(data.getAssetId(), mapper.map(data));
+        }
+        return map;
+    }
+
     private AssetMapper<WebReferenceableAsset> mapper = new AssetMapper<WebReferenceableAsset>() {
 
         public WebReferenceableAsset map(AssetData data) {
@@ -15,6 +15,9 @@
  */
 package com.fatwire.gst.foundation.wra;
 
+import java.util.Collection;
+import java.util.Map;
+
 import com.fatwire.assetapi.data.AssetId;
 
 /**
@@ -25,6 +28,20 @@ public interface SimpleWRADao {
 
     SimpleWra getWra(AssetId asset);
 
+    /**
+     * @param ids asset ids, may be of different asset types
+     * @return the SimpleWras by asset id, assets that are not found or voided
+     *         are left out.
+     */
+    Map<AssetId, SimpleWra> getWras(Collection<AssetId> ids);
+
     String resolveSite(AssetId id);
+
+    /**
+     * @param ids asset ids, may be of different asset types
+     * @return the name of the site per asset, assets that are not in a site
+     *         are left out.
+     */
+    Map<AssetId, String> resolveSites(Collection<AssetId> ids);
    
 }
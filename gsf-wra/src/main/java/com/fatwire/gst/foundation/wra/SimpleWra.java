@@ -27,10 +27,38 @@ import com.fatwire.gst.foundation.facade.sql.Row;
 public class SimpleWra {
     private final Row row;
     private final AssetId id;
+    private final String path;
+    private final String template;
+    private final Date startDate;
+    private final Date endDate;
 
     public SimpleWra(final Row row, final AssetId id) {
         this.row = row;
         this.id = id;
+        this.path = null;
+        this.template = null;
+        this.startDate = null;
+        this.endDate = null;
+    }
+
+    /**
+     * Constructor for a SimpleWra that does not hold on to a row, for
+     * instance when many are read with one query.
+     * 
+     * @param id the asset id
+     * @param path the path
+     * @param template the template
+     * @param startDate the start date
+     * @param endDate the end date
+     */
+    public SimpleWra(final AssetId id, final String path, final String template, final Date startDate,
+            final Date endDate) {
+        this.row = null;
+        this.id = id;
+        this.path = path;
+        this.template = template;
+        this.startDate = startDate;
+        this.endDate = endDate;
     }
 
     public AssetId getId() {
@@ -38,19 +66,19 @@ public class SimpleWra {
     }
 
     public String getPath() {
-        return row.getString("path");
+        return row == null ? path : row.getString("path");
     }
 
     public Date getStartDate() {
-        return row.getDate("startdate");
+        return row == null ? startDate : row.getDate("startdate");
     }
 
     public Date getEndDate() {
-        return row.getDate("enddate");
+        return row == null ? endDate : row.getDate("enddate");
     }
 
     public String getTemplate() {
-        return row.getString("template");
+        return row == null ? template : row.getString("template");
     }
 
     @Override
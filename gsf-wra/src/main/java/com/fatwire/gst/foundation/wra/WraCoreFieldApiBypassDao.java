@@ -16,22 +16,26 @@
 package com.fatwire.gst.foundation.wra;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import COM.FutureTense.Interfaces.ICS;
-import COM.FutureTense.Interfaces.IList;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
-import com.fatwire.gst.foundation.IListUtils;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
+import com.fatwire.gst.foundation.facade.assetapi.AssetTypeMetadata;
 import com.fatwire.gst.foundation.facade.assetapi.DirectSqlAccessTools;
-import com.fatwire.gst.foundation.facade.sql.IListIterable;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 
@@ -74,6 +78,11 @@ public class WraCoreFieldApiBypassDao extends AssetApiWraCoreFieldDao {
 	private static final Log LOG = LogFactory
 			.getLog(WraCoreFieldApiBypassDao.class);
 
+	/**
+	 * The maximum number of ids in one IN list.
+	 */
+	private static final int IN_LIST_SIZE = 500;
+
 	/**
 	 * Method to test whether or not an asset is web-referenceable. todo: low
 	 * priority: optimize as this will be called at runtime (assest api incache
@@ -132,103 +141,255 @@ public class WraCoreFieldApiBypassDao extends AssetApiWraCoreFieldDao {
 	 */
 	@Override
 	public WebReferenceableAsset getWra(final AssetId id) {
-		if (directSqlAccessTools.isFlex(id)) {
-			// todo: medium: optimize as this is very inefficient for flex
-			// assets
-			final PreparedStmt basicFields = new PreparedStmt(
-					"SELECT id,name,description,subtype,status,path,template,startdate,enddate"
-							+ " FROM " + id.getType() + " WHERE id = ?",
-					Collections.singletonList(id.getType()));
-			basicFields.setElement(0, id.getType(), "id");
-
-			final StatementParam param = basicFields.newParam();
+		final AssetTypeMetadata type = directSqlAccessTools
+				.getAssetTypeMetadata(id.getType());
+		if (type.isFlex()) {
+			// basic fields and the wra attributes in one round trip, one row
+			// per attribute value found
+			final Map<Long, String> names = new HashMap<Long, String>();
+			for (final String name : FLEX_WRA_ATTRIBUTES) {
+				final Long attrId = type.getAttributeId(name);
+				if (attrId != null) {
+					names.put(attrId, name);
+				}
+			}
+			final PreparedStmt stmt = getFlexWraStmt(type, names.keySet());
+			final StatementParam param = stmt.newParam();
 			param.setLong(0, id.getId());
-			final Row row = SqlHelper.selectSingle(ics, basicFields, param);
 
-			final WraBeanImpl wra = new WraBeanImpl();
-			wra.setId(id);
-			wra.setName(row.getString("name"));
-			wra.setDescription(row.getString("description"));
-			wra.setSubtype(row.getString("subtype"));
-			wra.setPath(row.getString("path"));
-			wra.setTemplate(row.getString("template"));
-			if (StringUtils.isNotBlank(row.getString("startdate"))) {
-				wra.setStartDate(row.getDate("startdate"));
+			WraBeanImpl wra = null;
+			for (final Row row : SqlHelper.select(ics, stmt, param)) {
+				if (wra == null) {
+					wra = toWra(id, row);
+				}
+				if (names.isEmpty()
+						|| StringUtils.isBlank(row.getString("cs_attrid"))) {
+					continue;
+				}
+				setFlexWraAttribute(wra, names.get(row.getLong("cs_attrid")),
+						row.getString("stringvalue"));
 			}
-			if (StringUtils.isNotBlank(row.getString("enddate"))) {
-				wra.setEndDate(row.getDate("enddate"));
+			if (wra == null) {
+				throw new RuntimeException("Asset " + id + " is not found.");
 			}
-
-			wra.setMetaTitle(directSqlAccessTools.getFlexAttributeValue(id,
-					"metatitle"));
-			wra.setMetaDescription(directSqlAccessTools.getFlexAttributeValue(
-					id, "metadescription"));
-			wra.setMetaKeyword(directSqlAccessTools.getFlexAttributeValue(id,
-					"metakeywords"));
-			wra.setH1Title(directSqlAccessTools.getFlexAttributeValue(id,
-					"h1title"));
-			wra.setLinkText(directSqlAccessTools.getFlexAttributeValue(id,
-					"linktext"));
-
 			return wra;
 		} else {
-
-			final PreparedStmt basicFields = new PreparedStmt(
-					"SELECT id,name,description,subtype,status,path,template,startdate,enddate,"
-							+ "metatitle,metadescription,metakeyword,h1title,linktext FROM "
-							+ id.getType() + " WHERE id = ?",
-					Collections.singletonList(id.getType()));
-			basicFields.setElement(0, id.getType(), "id");
-
-			final StatementParam param = basicFields.newParam();
+			final PreparedStmt stmt = getBasicWraStmt(id.getType());
+			final StatementParam param = stmt.newParam();
 			param.setLong(0, id.getId());
-			final Row row = SqlHelper.selectSingle(ics, basicFields, param);
+			final Row row = SqlHelper.selectSingle(ics, stmt, param);
 
-			final WraBeanImpl wra = new WraBeanImpl();
-			wra.setId(id);
-			wra.setName(row.getString("name"));
-			wra.setDescription(row.getString("description"));
-			wra.setSubtype(row.getString("subtype"));
+			final WraBeanImpl wra = toWra(id, row);
 			wra.setMetaTitle(row.getString("metatitle"));
 			wra.setMetaDescription(row.getString("metadescription"));
-			wra.setMetaKeyword(row.getString("metakeywords"));
+			wra.setMetaKeyword(row.getString("metakeyword"));
 			wra.setH1Title(row.getString("h1title"));
 			wra.setLinkText(row.getString("linktext"));
-			wra.setPath(row.getString("path"));
-			wra.setTemplate(row.getString("template"));
-			if (StringUtils.isNotBlank(row.getString("startdate"))) {
-				wra.setStartDate(row.getDate("startdate"));
+			return wra;
+		}
+	}
+
+	/**
+	 * Reads the wras per asset type, with one query on the asset type table
+	 * and, for flex types, one on the _Mungo table for each
+	 * {@link #IN_LIST_SIZE} assets. Voided assets and assets of basic types
+	 * without the wra columns are left out.
+	 * 
+	 * @param ids
+	 *            asset ids
+	 * @return WebReferenceableAssets by asset id, never null
+	 */
+	@Override
+	public Map<AssetId, WebReferenceableAsset> getWras(
+			final Collection<AssetId> ids) {
+		final Map<AssetId, WebReferenceableAsset> map = new HashMap<AssetId, WebReferenceableAsset>();
+		for (final Map.Entry<String, List<AssetId>> e : AssetIdUtils
+				.groupByType(ids).entrySet()) {
+			final AssetTypeMetadata type = directSqlAccessTools
+					.getAssetTypeMetadata(e.getKey());
+			final List<AssetId> l = e.getValue();
+			for (int i = 0; i < l.size(); i += IN_LIST_SIZE) {
+				readWras(type, l.subList(i, Math.min(l.size(), i + IN_LIST_SIZE)),
+						map);
 			}
-			if (StringUtils.isNotBlank(row.getString("enddate"))) {
-				wra.setEndDate(row.getDate("enddate"));
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Read " + map.size() + " of " + ids.size() + " wras.");
+		}
+		return map;
+	}
+
+	private void readWras(final AssetTypeMetadata type,
+			final List<AssetId> chunk,
+			final Map<AssetId, WebReferenceableAsset> map) {
+		final String table = type.getAssetType();
+		if (!type.isFlex() && !isWraEnabledBasicAssetType(type)) {
+			// the table has no wra columns, none of these assets is a wra
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Skipped " + chunk.size() + " assets of type "
+						+ table + " as it is not a web-referenceable type.");
 			}
-			return wra;
+			return;
+		}
+		final String idList = AssetIdUtils.toIdList(chunk);
+		final Map<Long, AssetId> byId = new HashMap<Long, AssetId>();
+		for (final AssetId id : chunk) {
+			byId.put(id.getId(), id);
+		}
+		final Map<Long, WraBeanImpl> found = new HashMap<Long, WraBeanImpl>();
+		final String fields = type.isFlex() ? "id,name,description,subtype,status,path,template,startdate,enddate"
+				: "id,name,description,subtype,status,path,template,startdate,enddate,"
+						+ "metatitle,metadescription,metakeyword,h1title,linktext";
+		for (final Row row : SqlHelper.select(ics, table, "SELECT " + fields
+				+ " FROM " + table + " WHERE id IN (" + idList
+				+ ") AND status != 'VO'")) {
+			final AssetId id = byId.get(row.getLong("id"));
+			if (id == null) {
+				continue;
+			}
+			final WraBeanImpl wra = toWra(id, row);
+			if (!type.isFlex()) {
+				wra.setMetaTitle(row.getString("metatitle"));
+				wra.setMetaDescription(row.getString("metadescription"));
+				wra.setMetaKeyword(row.getString("metakeyword"));
+				wra.setH1Title(row.getString("h1title"));
+				wra.setLinkText(row.getString("linktext"));
+			}
+			found.put(id.getId(), wra);
+			map.put(id, wra);
+		}
+		if (!type.isFlex() || found.isEmpty()) {
+			return;
+		}
+		final Map<Long, String> names = new HashMap<Long, String>();
+		for (final String name : FLEX_WRA_ATTRIBUTES) {
+			final Long attrId = type.getAttributeId(name);
+			if (attrId != null) {
+				names.put(attrId, name);
+			}
+		}
+		if (names.isEmpty()) {
+			return;
+		}
+		final StringBuilder attrIds = new StringBuilder();
+		for (final Long attrId : names.keySet()) {
+			attrIds.append(attrIds.length() > 0 ? "," : "").append(attrId);
+		}
+		final String mungo = type.getMungoTable();
+		for (final Row row : SqlHelper.select(ics, mungo,
+				"SELECT cs_ownerid,cs_attrid,stringvalue FROM " + mungo
+						+ " WHERE cs_ownerid IN (" + idList
+						+ ") AND cs_attrid IN (" + attrIds + ")")) {
+			final WraBeanImpl wra = found.get(row.getLong("cs_ownerid"));
+			if (wra != null) {
+				setFlexWraAttribute(wra, names.get(row.getLong("cs_attrid")),
+						row.getString("stringvalue"));
+			}
+		}
+	}
+
+	private static void setFlexWraAttribute(final WraBeanImpl wra,
+			final String name, final String value) {
+		if ("metatitle".equals(name)) {
+			wra.setMetaTitle(value);
+		} else if ("metadescription".equals(name)) {
+			wra.setMetaDescription(value);
+		} else if ("metakeyword".equals(name)) {
+			wra.setMetaKeyword(value);
+		} else if ("h1title".equals(name)) {
+			wra.setH1Title(value);
+		} else if ("linktext".equals(name)) {
+			wra.setLinkText(value);
 		}
 	}
 
+	private static WraBeanImpl toWra(final AssetId id, final Row row) {
+		final WraBeanImpl wra = new WraBeanImpl();
+		wra.setId(id);
+		wra.setName(row.getString("name"));
+		wra.setDescription(row.getString("description"));
+		wra.setSubtype(row.getString("subtype"));
+		wra.setPath(row.getString("path"));
+		wra.setTemplate(row.getString("template"));
+		if (StringUtils.isNotBlank(row.getString("startdate"))) {
+			wra.setStartDate(row.getDate("startdate"));
+		}
+		if (StringUtils.isNotBlank(row.getString("enddate"))) {
+			wra.setEndDate(row.getDate("enddate"));
+		}
+		return wra;
+	}
+
+	/**
+	 * The statements only depend on the asset type, so they are built once
+	 * per asset type for this node.
+	 */
+	private static final ConcurrentMap<String, PreparedStmt> WRA_STMTS = new ConcurrentHashMap<String, PreparedStmt>();
+
+	private static final String[] FLEX_WRA_ATTRIBUTES = { "metatitle",
+			"metadescription", "metakeyword", "h1title", "linktext" };
+
+	private static PreparedStmt getBasicWraStmt(final String type) {
+		PreparedStmt stmt = WRA_STMTS.get(type);
+		if (stmt == null) {
+			stmt = new PreparedStmt(
+					"SELECT id,name,description,subtype,status,path,template,startdate,enddate,"
+							+ "metatitle,metadescription,metakeyword,h1title,linktext FROM "
+							+ type + " WHERE id = ?",
+					Collections.singletonList(type));
+			stmt.setElement(0, type, "id");
+			WRA_STMTS.put(type, stmt);
+		}
+		return stmt;
+	}
+
+	/**
+	 * The attribute ids are known from the asset type metadata, so the
+	 * attribute table is not joined. The statement is cached by its sql, as
+	 * the ids only change when attributes are added or removed.
+	 */
+	private static PreparedStmt getFlexWraStmt(final AssetTypeMetadata type,
+			final Collection<Long> attrIds) {
+		final String mungo = type.getMungoTable();
+		final StringBuilder sql = new StringBuilder(
+				"SELECT t.id AS id,t.name AS name,t.description AS description,t.subtype AS subtype,")
+				.append("t.status AS status,t.path AS path,t.template AS template,")
+				.append("t.startdate AS startdate,t.enddate AS enddate");
+		if (attrIds.isEmpty()) {
+			sql.append(" FROM ").append(type.getAssetType()).append(" t");
+		} else {
+			sql.append(",cmungo.cs_attrid AS cs_attrid,cmungo.stringvalue AS stringvalue FROM ")
+					.append(type.getAssetType()).append(" t LEFT OUTER JOIN ")
+					.append(mungo)
+					.append(" cmungo ON cmungo.cs_ownerid = t.id AND cmungo.cs_attrid IN (");
+			boolean first = true;
+			for (final Long attrId : attrIds) {
+				sql.append(first ? "" : ",").append(attrId);
+				first = false;
+			}
+			sql.append(")");
+		}
+		sql.append(" WHERE t.id = ?");
+		final String key = sql.toString();
+		PreparedStmt stmt = WRA_STMTS.get(key);
+		if (stmt == null) {
+			stmt = new PreparedStmt(key, attrIds.isEmpty() ? Collections
+					.singletonList(type.getAssetType()) : Arrays.asList(
+					type.getAssetType(), mungo));
+			stmt.setElement(0, type.getAssetType(), "id");
+			WRA_STMTS.put(key, stmt);
+		}
+		return stmt;
+	}
+
 	/**
 	 * Checks if the table definition for a basic asset has all the wra fields.
 	 * 
 	 * @param id
 	 */
 	private boolean isWraEnabledBasicAssetType(final AssetId id) {
-		boolean wraTable;
-		final String listname = IListUtils.generateRandomListName();
-		final IList list = ics.CatalogDef(id.getType(), listname,
-				new StringBuffer());
-		ics.RegisterList(listname, null);
-		final List<String> attr = Arrays.asList(WRA_ATTRIBUTE_NAMES);
-		int count = 0;
-		for (final Row row : new IListIterable(list)) {
-			/*
-			 * "COLNAME" "COLTYPE" "COLSIZE" "KEY"
-			 */
-			if (attr.contains(row.getString("COLNAME").toLowerCase())) {
-				count++;
-			}
-		}
-		wraTable = count == attr.size();// all wra attributes are found in the
-		// table def.
+		final boolean wraTable = isWraEnabledBasicAssetType(directSqlAccessTools
+				.getAssetTypeMetadata(id.getType()));
 		if (LOG.isTraceEnabled()) {
 			LOG.trace("Asset "
 					+ id
@@ -239,6 +400,17 @@ public class WraCoreFieldApiBypassDao extends AssetApiWraCoreFieldDao {
 		return wraTable;
 	}
 
+	private static boolean isWraEnabledBasicAssetType(
+			final AssetTypeMetadata type) {
+		for (final String attr : WRA_ATTRIBUTE_NAMES) {
+			if (!type.hasColumn(attr)) {
+				return false;
+			}
+		}
+		// all wra attributes are found in the table def.
+		return true;
+	}
+
 	@Override
 	public boolean isVanityAsset(AssetId id) {
 		try {
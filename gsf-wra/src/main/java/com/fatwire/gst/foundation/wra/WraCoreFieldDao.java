@@ -15,6 +15,9 @@
  */
 package com.fatwire.gst.foundation.wra;
 
+import java.util.Collection;
+import java.util.Map;
+
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.controller.AssetIdWithSite;
 import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAsset;
@@ -79,6 +82,16 @@ public interface WraCoreFieldDao {
      */
     public WebReferenceableAsset getWra(AssetId id);
 
+    /**
+     * Return the web referenceable asset beans for many assets at once. Assets
+     * that are not found are left out of the map.
+     * 
+     * @param ids asset ids, may be of different asset types
+     * @return WebReferenceableAssets by asset id, never null
+     * @see #getWra(AssetId)
+     */
+    public Map<AssetId, WebReferenceableAsset> getWras(Collection<AssetId> ids);
+
     /**
      * Locate the page that contains the specified Web-Referenceable Asset.
      * <p/>
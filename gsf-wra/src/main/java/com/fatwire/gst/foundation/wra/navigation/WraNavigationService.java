@@ -16,13 +16,18 @@
 
 package com.fatwire.gst.foundation.wra.navigation;
 
-import static com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate.isValidOnDate;
-
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
@@ -32,16 +37,25 @@ import org.apache.commons.logging.LogFactory;
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Interfaces.Utilities;
 
+import com.fatwire.assetapi.data.AssetData;
 import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.assetapi.query.Query;
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.assetapi.AssetDataUtils;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
+import com.fatwire.gst.foundation.facade.assetapi.AttributeDataUtils;
 import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAsset;
+import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
 import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAssetAccess;
+import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
 import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
-import com.fatwire.gst.foundation.facade.sql.IListIterable;
+import com.fatwire.gst.foundation.facade.runtag.siteplan.NodePath;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 import com.fatwire.gst.foundation.facade.uri.TemplateUriBuilder;
+import com.fatwire.gst.foundation.navigation.LazyNavigationNode;
+import com.fatwire.gst.foundation.navigation.NavigationCache;
 import com.fatwire.gst.foundation.navigation.NavigationNode;
 import com.fatwire.gst.foundation.navigation.NavigationService;
 import com.fatwire.gst.foundation.navigation.support.AbstractNavigationService;
@@ -77,9 +91,18 @@ public class WraNavigationService extends AbstractNavigationService implements N
     private static final String CHILD_SQL = "SELECT otype,oid,nrank,nid from SitePlanTree where nparentid=? and ncode='Placed' order by nrank";
     private static final PreparedStmt CHILD_STMT = new PreparedStmt(CHILD_SQL, Arrays.asList("SitePlanTree"));
 
+    private static final String SITE_PLAN_SQL = "SELECT s.nid,s.nparentid,s.otype,s.oid,s.nrank FROM SitePlanTree s, AssetPublication ap, Publication p "
+            + "WHERE s.ncode='Placed' AND ap.assettype=s.otype AND ap.assetid=s.oid AND ap.pubid=p.id AND p.name=? ORDER BY s.nparentid,s.nrank";
+    private static final PreparedStmt SITE_PLAN_STMT = new PreparedStmt(SITE_PLAN_SQL, Arrays.asList("SitePlanTree",
+            "AssetPublication", "Publication"));
+
+    /** the maximum number of parents in one query for the children */
+    private static final int IN_LIST_SIZE = 500;
+
     static {
 
         CHILD_STMT.setElement(0, "SitePlanTree", "nparentid");
+        SITE_PLAN_STMT.setElement(0, "Publication", "name");
 
     }
 
@@ -91,6 +114,30 @@ public class WraNavigationService extends AbstractNavigationService implements N
     protected final DimensionFilterInstance dimensionFilter;
     private final Date date;
 
+    private boolean wholeTree;
+    private SitePlan sitePlan;
+    /**
+     * the startdate and enddate of the assets that were read in bulk, null for
+     * assets that were not found
+     */
+    private final Map<AssetId, Date[]> dates = new HashMap<AssetId, Date[]>();
+    private final Map<AssetId, Alias> aliases = new HashMap<AssetId, Alias>();
+
+    private NavigationCache navigationCache;
+    private String dimensionFilterKey;
+    /**
+     * the dependencies recorded and the assets looked at while building a
+     * tree for the cache
+     */
+    private Set<NavigationCache.Dependency> dependencies;
+    private Set<AssetId> watched;
+
+    private boolean lazy;
+    private AssetId activePage;
+    private ActivePath activePath;
+    /** the loader of the level of lazy nodes being built */
+    private ChildLoader loading;
+
     public WraNavigationService(ICS ics, TemplateAssetAccess assetTemplate, AliasCoreFieldDao aliasDao,
             final DimensionFilterInstance dimensionFilter, Date previewDate) {
         super(ics, assetTemplate, "linktext", "path");
@@ -100,26 +147,247 @@ public class WraNavigationService extends AbstractNavigationService implements N
 
     }
 
+    /**
+     * Switches the whole-tree mode on or off. In whole-tree mode the placed
+     * pages of a site are read from the SitePlanTree with one query and the
+     * hierarchy is built in memory. The pages of a subtree are then
+     * date-filtered in one pass and read level by level in bulk, instead of
+     * running these queries per node.
+     * 
+     * @param wholeTree true to load the whole site plan
+     */
+    public void setWholeTree(boolean wholeTree) {
+        this.wholeTree = wholeTree;
+    }
+
+    /**
+     * @return true if the whole site plan is loaded at once.
+     */
+    public boolean isWholeTree() {
+        return wholeTree;
+    }
+
+    /**
+     * Switches lazy mode on or off. In lazy mode the nodes are
+     * {@link LazyNavigationNode}s: the children of a node are only read when
+     * they are accessed, together with those of the other nodes on its level.
+     * A menu that renders only part of the tree then only reads that part.
+     * Trees built in lazy mode are not cached.
+     * <p/>
+     * The mode and the active page are taken when a tree is built; the
+     * children read later are built the same way, whatever the settings of
+     * the service are at that time.
+     * 
+     * @param lazy true to read the children on first access
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * @return true if the children are read on first access.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets the page that is being rendered. The nodes of this page and its
+     * ancestors are marked active and, in lazy mode, their children are read
+     * up front, so that the active path plus the siblings along it is
+     * available without further reads.
+     * 
+     * @param activePage the current page, null for none
+     */
+    public void setActivePage(AssetId activePage) {
+        this.activePage = activePage;
+        this.activePath = activePage == null ? null : new ActivePath(activePage);
+    }
+
+    /**
+     * @return the page that is being rendered, null if not set.
+     */
+    public AssetId getActivePage() {
+        return activePage;
+    }
+
+    /**
+     * Sets the cache for the trees built by
+     * {@link #getRootNodesForSite(String, int, String)} and
+     * {@link #getNodeByName(String, String, int, String)}.
+     * 
+     * @param navigationCache the cache, null to not cache
+     */
+    public void setNavigationCache(NavigationCache navigationCache) {
+        this.navigationCache = navigationCache;
+    }
+
+    /**
+     * Sets a key that identifies the dimension filter of this service, for
+     * instance the preferred locale. Trees are only cached if there is no
+     * dimension filter, or if it has a key.
+     * 
+     * @param dimensionFilterKey the key
+     */
+    public void setDimensionFilterKey(String dimensionFilterKey) {
+        this.dimensionFilterKey = dimensionFilterKey;
+    }
+
+    @Override
+    public Collection<NavigationNode> getRootNodesForSite(String site, int depth, String linkAttribute) {
+        final NavigationCache.Key key = toCacheKey(site, null, depth, linkAttribute);
+        if (key != null) {
+            final List<NavigationNode> cached = navigationCache.get(ics, key);
+            if (cached != null) {
+                return cached;
+            }
+            dependencies = new LinkedHashSet<NavigationCache.Dependency>();
+            watched = new HashSet<AssetId>();
+        }
+        try {
+            loadSitePlan(site);
+            final Collection<NavigationNode> nodes = super.getRootNodesForSite(site, depth, linkAttribute);
+            if (key != null) {
+                navigationCache.put(key, nodes, dependencies, watched);
+            }
+            return nodes;
+        } finally {
+            dependencies = null;
+            watched = null;
+        }
+    }
+
+    @Override
+    public NavigationNode getNodeByName(String site, String pagename, int depth, String linkAttribute) {
+        final NavigationCache.Key key = toCacheKey(site, pagename, depth, linkAttribute);
+        if (key != null) {
+            final List<NavigationNode> cached = navigationCache.get(ics, key);
+            if (cached != null && !cached.isEmpty()) {
+                return cached.get(0);
+            }
+            dependencies = new LinkedHashSet<NavigationCache.Dependency>();
+            watched = new HashSet<AssetId>();
+        }
+        try {
+            loadSitePlan(site);
+            final NavigationNode node = super.getNodeByName(site, pagename, depth, linkAttribute);
+            if (key != null && node != null) {
+                navigationCache.put(key, Collections.singletonList(node), dependencies, watched);
+            }
+            return node;
+        } finally {
+            dependencies = null;
+            watched = null;
+        }
+    }
+
+    /**
+     * @return the key of the tree in the navigation cache, or null if it is
+     *         not to be cached.
+     */
+    private NavigationCache.Key toCacheKey(String site, String root, int depth, String linkAttribute) {
+        if (navigationCache == null || lazy || activePage != null || StringUtils.isBlank(site)
+                || StringUtils.isBlank(linkAttribute)
+                || (dimensionFilter != null && dimensionFilterKey == null)) {
+            return null;
+        }
+        final boolean preview = PreviewContext.isSitePreviewEnabled(ics);
+        if (preview && date == null && !PreviewContext.isSitePreviewDelivery(ics)) {
+            // the tag filters on the preview date of the session
+            return null;
+        }
+        // without site preview the assets are not filtered on date
+        final long dateBucket = preview ? NavigationCache.toDateBucket(date) : 0;
+        return new NavigationCache.Key(site, root, depth, linkAttribute, dimensionFilter == null ? null
+                : dimensionFilterKey, ics.GetVar("rendermode"), dateBucket);
+    }
+
+    /**
+     * Remembers the asset for the cache.
+     * 
+     * @param id the asset
+     * @param read true if the asset was read, and its dependency logged by the
+     *            asset api
+     */
+    private void track(AssetId id, boolean read) {
+        if (watched != null) {
+            watched.add(id);
+            if (read) {
+                dependencies.add(NavigationCache.Dependency.logDep(id));
+            }
+        }
+    }
+
+    @Override
+    public NavigationNode getNodeByQuery(Query query, int depth, String linkAttribute) {
+        loadSitePlan(ics.GetVar("site"));
+        return super.getNodeByQuery(query, depth, linkAttribute);
+    }
+
     @Override
     protected NavigationNode getNode(Row row, int level, int depth, String linkAttribute) {
-        long nid = row.getLong("nid");
-        long pageId = row.getLong("oid");
+        return getNode(row.getLong("nid"), assetTemplate.createAssetId(row.getString("otype"), row.getLong("oid")),
+                level, depth, linkAttribute);
+    }
 
-        AssetId pid = assetTemplate.createAssetId(row.getString("otype"), pageId);
-        if (!isValidOnDate(ics, pid, date)) {
+    /**
+     * @param nid the SitePlanTree node id
+     * @param pid the page asset placed at the node
+     * @param level the current level
+     * @param depth the maximum depth
+     * @param linkAttribute the attribute for the link text.
+     * @return the NavigationNode, null if the page is not valid on the date
+     */
+    protected NavigationNode getNode(long nid, AssetId pid, int level, int depth, String linkAttribute) {
+        track(pid, false);
+        if (!isValid(pid)) {
             // the input object is not valid. Abort
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Input asset " + pid + " is not effective.");
             }
             return null;
         }
-        LogDep.logDep(ics, pid); // probably redundant call
-        TemplateAsset asset = assetTemplate.read(pid, "name", "subtype", "template", pathAttribute, linkAttribute);
-
-        final NavigationNode node = new NavigationNode();
+        final boolean active = isOnActivePath(pid);
+        final NavigationNode node = newNode(nid, level, depth, linkAttribute, active);
 
         node.setPage(pid);
+        if (active) {
+            node.setActive(true);
+        }
         node.setLevel(level);
+        readPage(node, pid, linkAttribute);
+
+        if (node instanceof LazyNavigationNode) {
+            if (active) {
+                // expand the active path now, the other nodes on demand
+                node.getChildren();
+            }
+        } else if (depth < 0 || depth > level) {
+            // get the children in the Site Plan, note recursing here
+            Collection<NavigationNode> children = getNodeChildren(nid, level + 1, depth, linkAttribute);
+            for (final NavigationNode kid : children) {
+                if (kid != null && kid.getPage() != null) {
+                    node.addChild(kid);
+                }
+            }
+        }
+        return node;
+
+    }
+
+    /**
+     * Reads the page, and the asset it links to if it is a GSTNavLink page,
+     * and sets the name, subtype, id, url and link text of the node.
+     * 
+     * @param node the node of the page
+     * @param pid the page asset
+     * @param linkAttribute the attribute for the link text.
+     */
+    protected void readPage(NavigationNode node, AssetId pid, String linkAttribute) {
+        LogDep.logDep(ics, pid); // probably redundant call
+        track(pid, true);
+        TemplateAsset asset = assetTemplate.read(pid, "name", "subtype", "template", pathAttribute, linkAttribute);
+
         node.setPagesubtype(asset.getSubtype());
         node.setPagename(asset.asString("name"));
         final boolean isNavigationPlaceholder = NAVBAR_NAME.equals(asset.asString("subtype"));
@@ -133,10 +401,16 @@ public class WraNavigationService extends AbstractNavigationService implements N
             if (dimensionFilter != null)
                 assocs = dimensionFilter.filterAssets(assocs);
             for (AssetId assoc : assocs) {
-                if (isValidOnDate(ics, assoc, date)) {
+                track(assoc, false);
+                if (isValid(assoc)) {
+                    track(assoc, true);
                     if (isGstAlias(assoc)) {
-                        final Alias alias = aliasDao.getAlias(assoc);
+                        final Alias alias = aliases.containsKey(assoc) ? aliases.get(assoc) : aliasDao
+                                .getAlias(assoc);
                         node.setId(alias.getId());
+                        if (alias.getTarget() != null) {
+                            track(alias.getTarget(), true);
+                        }
 
                         final String url = alias.getTargetUrl() != null ? alias.getTargetUrl() : getUrl(alias
                                 .getTarget());
@@ -169,8 +443,8 @@ public class WraNavigationService extends AbstractNavigationService implements N
             }
 
         } else {
-            // TODO Add support for locale (date checking is already done at
-            // start of this function).
+            // TODO Add support for locale (date checking is already done in
+            // getNode).
 
             // other subtype
             final String url = getUrl(asset);
@@ -188,18 +462,43 @@ public class WraNavigationService extends AbstractNavigationService implements N
             }
 
         }
+    }
 
-        if (depth < 0 || depth > level) {
-            // get the children in the Site Plan, note recursing here
-            Collection<NavigationNode> children = getNodeChildren(nid, level + 1, depth, linkAttribute);
-            for (final NavigationNode kid : children) {
-                if (kid != null && kid.getPage() != null) {
-                    node.addChild(kid);
-                }
-            }
+    /**
+     * @return a LazyNavigationNode in lazy mode if the node may have children,
+     *         a NavigationNode otherwise.
+     */
+    private NavigationNode newNode(long nid, int level, int depth, String linkAttribute, boolean active) {
+        if ((loading == null && !lazy) || !(depth < 0 || depth > level)) {
+            return new NavigationNode();
         }
-        return node;
+        // an active node is read on its own, not with its siblings
+        final LazyNavigationNode.Batch b = loading == null || active ? new LazyNavigationNode.Batch(new ChildLoader(
+                depth, linkAttribute, currentActivePath())) : loading.batch;
+        return new LazyNavigationNode(nid, b);
+    }
+
+    /**
+     * @return the active path of the tree being built: the one of the lazy
+     *         nodes being loaded, or else the one of this service.
+     */
+    private ActivePath currentActivePath() {
+        return loading == null ? activePath : loading.activePath;
+    }
+
+    private boolean isOnActivePath(AssetId pid) {
+        final ActivePath path = currentActivePath();
+        return path != null && path.contains(pid);
+    }
 
+    /**
+     * Reads the pages from the active page up to the root of the site plan.
+     * 
+     * @param page the active page
+     * @return the ancestors of the page, null if the page is not placed
+     */
+    protected List<AssetId> getPathToRoot(AssetId page) {
+        return NodePath.getPathToRoot(ics, page);
     }
 
     private String getUrl(AssetId assoc) {
@@ -210,13 +509,40 @@ public class WraNavigationService extends AbstractNavigationService implements N
     @Override
     protected Collection<NavigationNode> getNodeChildren(final long nodeId, final int level, final int depth,
             String linkAttribute) {
+        if (loading != null || lazy) {
+            final List<NavigationNode> collection = new ChildLoader(depth, linkAttribute, currentActivePath()).load(
+                    Collections.singletonList(nodeId), level).get(nodeId);
+            return collection == null ? Collections.<NavigationNode> emptyList() : collection;
+        }
+        if (sitePlan != null && sitePlan.contains(nodeId)) {
+            if (!sitePlan.isPrefetched(nodeId)) {
+                prefetch(nodeId, level, depth, linkAttribute);
+            }
+            List<NavigationNode> collection = new LinkedList<NavigationNode>();
+            for (PlacedNode child : sitePlan.getChildren(nodeId)) {
+                final NavigationNode node = getNode(child.nid, child.id, level, depth, linkAttribute);
+                if (node != null)
+                    collection.add(node);
+            }
+            return collection;
+        }
         StatementParam param = CHILD_STMT.newParam();
         param.setLong(0, nodeId);
 
-        IListIterable root = SqlHelper.select(ics, CHILD_STMT, param);
+        List<PlacedNode> children = new ArrayList<PlacedNode>();
+        for (Row row : SqlHelper.select(ics, CHILD_STMT, param)) {
+            children.add(new PlacedNode(row.getLong("nid"), assetTemplate.createAssetId(row.getString("otype"), row
+                    .getLong("oid"))));
+        }
+        // read the dates of the pages of this level at once
+        List<AssetId> ids = new ArrayList<AssetId>(children.size());
+        for (PlacedNode child : children) {
+            ids.add(child.id);
+        }
+        readDates(ids);
         List<NavigationNode> collection = new LinkedList<NavigationNode>();
-        for (Row row : root) {
-            final NavigationNode node = getNode(row, level, depth, linkAttribute);
+        for (PlacedNode child : children) {
+            final NavigationNode node = getNode(child.nid, child.id, level, depth, linkAttribute);
             if (node != null)
                 collection.add(node);
 
@@ -224,6 +550,356 @@ public class WraNavigationService extends AbstractNavigationService implements N
         return collection;
     }
 
+    /**
+     * The active page and its ancestors, read when first needed.
+     */
+    private final class ActivePath {
+        private final AssetId page;
+        private Set<AssetId> ids;
+
+        ActivePath(AssetId page) {
+            this.page = page;
+        }
+
+        boolean contains(AssetId pid) {
+            if (ids == null) {
+                ids = new HashSet<AssetId>();
+                ids.add(page);
+                final List<AssetId> ancestors = getPathToRoot(page);
+                if (ancestors != null) {
+                    ids.addAll(ancestors);
+                }
+            }
+            return ids.contains(pid);
+        }
+    }
+
+    /**
+     * Reads the children of a level of lazy nodes in one go. The active path
+     * is that of the tree the nodes belong to, taken when the loader was
+     * created.
+     */
+    private final class ChildLoader implements LazyNavigationNode.Loader {
+        private final int depth;
+        private final String linkAttribute;
+        private final ActivePath activePath;
+        /** the batch the lazy nodes being built are added to */
+        private LazyNavigationNode.Batch batch;
+
+        ChildLoader(int depth, String linkAttribute, ActivePath activePath) {
+            this.depth = depth;
+            this.linkAttribute = linkAttribute;
+            this.activePath = activePath;
+        }
+
+        public void loadChildren(List<LazyNavigationNode> parents) {
+            final List<Long> nids = new ArrayList<Long>(parents.size());
+            for (LazyNavigationNode parent : parents) {
+                nids.add(parent.getNid());
+            }
+            final Map<Long, List<NavigationNode>> children = load(nids, parents.get(0).getLevel() + 1);
+            for (LazyNavigationNode parent : parents) {
+                final List<NavigationNode> kids = children.get(parent.getNid());
+                if (kids != null) {
+                    for (NavigationNode kid : kids) {
+                        parent.addChild(kid);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds the child nodes of the SitePlanTree nodes, after reading the
+         * pages of the level in bulk.
+         * 
+         * @return the child nodes by parent node id
+         */
+        Map<Long, List<NavigationNode>> load(List<Long> nids, int level) {
+            final Map<Long, List<PlacedNode>> placed = readChildren(nids);
+            final List<AssetId> ids = new ArrayList<AssetId>();
+            for (List<PlacedNode> l : placed.values()) {
+                for (PlacedNode child : l) {
+                    ids.add(child.id);
+                }
+            }
+            prefetchAssets(Collections.singletonList(ids));
+
+            final Map<Long, List<NavigationNode>> result = new HashMap<Long, List<NavigationNode>>();
+            final ChildLoader previous = loading;
+            final LazyNavigationNode.Batch previousBatch = batch;
+            loading = this;
+            batch = new LazyNavigationNode.Batch(this);
+            try {
+                for (Long nid : nids) {
+                    final List<NavigationNode> collection = new LinkedList<NavigationNode>();
+                    for (PlacedNode child : placed.get(nid)) {
+                        final NavigationNode node = getNode(child.nid, child.id, level, depth, linkAttribute);
+                        if (node != null && node.getPage() != null)
+                            collection.add(node);
+                    }
+                    result.put(nid, collection);
+                }
+            } finally {
+                loading = previous;
+                batch = previousBatch;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads the placed children of the nodes, from the site plan if it is
+     * loaded or else with one query per {@link #IN_LIST_SIZE} nodes.
+     * 
+     * @return the children by parent node id, in rank order, with an entry
+     *         for each of the nodes
+     */
+    private Map<Long, List<PlacedNode>> readChildren(List<Long> nids) {
+        final Map<Long, List<PlacedNode>> result = new HashMap<Long, List<PlacedNode>>();
+        final List<Long> toRead = new ArrayList<Long>();
+        for (Long nid : nids) {
+            if (sitePlan != null && sitePlan.contains(nid)) {
+                result.put(nid, sitePlan.getChildren(nid));
+            } else {
+                result.put(nid, new ArrayList<PlacedNode>());
+                toRead.add(nid);
+            }
+        }
+        for (int i = 0; i < toRead.size(); i += IN_LIST_SIZE) {
+            final List<Long> chunk = toRead.subList(i, Math.min(i + IN_LIST_SIZE, toRead.size()));
+            final String sql = "SELECT otype,oid,nrank,nid,nparentid FROM SitePlanTree WHERE nparentid IN ("
+                    + StringUtils.join(chunk, ',') + ") AND ncode='Placed' ORDER BY nparentid,nrank";
+            for (Row row : SqlHelper.select(ics, "SitePlanTree", sql)) {
+                result.get(row.getLong("nparentid")).add(
+                        new PlacedNode(row.getLong("nid"), AssetIdUtils.createAssetId(row.getString("otype"),
+                                row.getLong("oid"))));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks the asset against the date, from the dates read before if
+     * possible. The validity itself is not remembered: the service is reused
+     * by all the pagelets of a request, and every check records the start and
+     * end date dependency on the pagelet being rendered. This is also done for
+     * an asset that is not valid, as the pagelet changes when it becomes
+     * valid.
+     */
+    private boolean isValid(AssetId id) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            // the tag does not filter when site preview is disabled
+            return true;
+        }
+        readDates(Collections.singletonList(id));
+        final Date[] d = dates.get(id);
+        if (d == null) {
+            return false;
+        }
+        final boolean valid = FilterAssetsByDate.isValidOnDate(ics, id, d[0], d[1], date);
+        if (!valid) {
+            FilterAssetsByDate.recordDependency(ics, id, d[0], d[1]);
+        }
+        if (dependencies != null) {
+            dependencies.add(NavigationCache.Dependency.dated(id, d[0], d[1]));
+        }
+        return valid;
+    }
+
+    /**
+     * @return true if the asset is found and its dates are within range, only
+     *         to decide what to read ahead, no dependency is recorded.
+     */
+    private boolean isLikelyValid(AssetId id) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            return true;
+        }
+        final Date[] d = dates.get(id);
+        return d != null && FilterAssetsByDate.isDateWithinRange(d[0], date, d[1]);
+    }
+
+    /**
+     * Reads the placed pages of the site with one query, if whole-tree mode is
+     * on and the site plan of the site is not loaded yet.
+     * 
+     * @param site the site name
+     */
+    private void loadSitePlan(String site) {
+        if (!wholeTree || StringUtils.isBlank(site) || (sitePlan != null && site.equals(sitePlan.site))) {
+            return;
+        }
+        StatementParam param = SITE_PLAN_STMT.newParam();
+        param.setString(0, site);
+        SitePlan plan = new SitePlan(site);
+        for (Row row : SqlHelper.select(ics, SITE_PLAN_STMT, param)) {
+            plan.add(row.getLong("nparentid"), new PlacedNode(row.getLong("nid"), assetTemplate.createAssetId(
+                    row.getString("otype"), row.getLong("oid"))));
+        }
+        sitePlan = plan;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loaded the site plan of " + site + " with " + plan.size() + " placed pages.");
+        }
+    }
+
+    /**
+     * Date-filters all the pages in the subtree below the node in one pass and
+     * reads them in bulk, one level at a time, followed by the assets that the
+     * GSTNavLink pages link to. The nodes are then built from the request
+     * asset cache.
+     */
+    private void prefetch(long nodeId, int level, int depth, String linkAttribute) {
+        List<List<AssetId>> levels = new ArrayList<List<AssetId>>();
+        List<Long> parents = Collections.singletonList(nodeId);
+        for (int l = level; !parents.isEmpty() && (l == level || depth < 0 || l <= depth); l++) {
+            List<AssetId> ids = new ArrayList<AssetId>();
+            List<Long> next = new ArrayList<Long>();
+            for (Long parent : parents) {
+                sitePlan.setPrefetched(parent);
+                for (PlacedNode child : sitePlan.getChildren(parent)) {
+                    ids.add(child.id);
+                    next.add(child.nid);
+                }
+            }
+            levels.add(ids);
+            parents = next;
+        }
+        prefetchAssets(levels);
+    }
+
+    /**
+     * Date-filters the pages in one pass and reads them in bulk, one level at
+     * a time, followed by the assets that the GSTNavLink pages link to.
+     * 
+     * @param levels the pages by level
+     */
+    protected void prefetchAssets(List<List<AssetId>> levels) {
+        List<AssetId> all = new ArrayList<AssetId>();
+        for (List<AssetId> ids : levels) {
+            all.addAll(ids);
+        }
+        readDates(all);
+
+        List<AssetId> linked = new ArrayList<AssetId>();
+        for (List<AssetId> ids : levels) {
+            List<AssetId> valid = new ArrayList<AssetId>(ids.size());
+            for (AssetId id : ids) {
+                if (isLikelyValid(id)) {
+                    valid.add(id);
+                }
+            }
+            if (valid.isEmpty()) {
+                continue;
+            }
+            for (AssetData data : AssetDataUtils.getAssetData(ics, valid)) {
+                if (NAVBAR_LINK.equals(AttributeDataUtils.asString(data.getAttributeData("subtype")))) {
+                    List<AssetId> assocs = data.getAssociatedAssets("-");
+                    if (assocs != null) {
+                        linked.addAll(dimensionFilter == null ? assocs : dimensionFilter.filterAssets(assocs));
+                    }
+                }
+            }
+        }
+        if (linked.isEmpty()) {
+            return;
+        }
+        readDates(linked);
+        List<AssetId> aliasIds = new ArrayList<AssetId>();
+        List<AssetId> wraIds = new ArrayList<AssetId>();
+        for (AssetId id : linked) {
+            if (isLikelyValid(id)) {
+                (isGstAlias(id) ? aliasIds : wraIds).add(id);
+            }
+        }
+        if (!aliasIds.isEmpty()) {
+            aliases.putAll(aliasDao.getAliases(aliasIds));
+            for (Alias alias : aliases.values()) {
+                if (alias.getTarget() != null) {
+                    wraIds.add(alias.getTarget());
+                }
+            }
+        }
+        AssetDataUtils.getAssetData(ics, wraIds);
+    }
+
+    /**
+     * Reads the dates of the assets that were not read before in bulk.
+     */
+    private void readDates(Collection<AssetId> ids) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            return;
+        }
+        Collection<AssetId> unread = new ArrayList<AssetId>();
+        for (AssetId id : ids) {
+            if (!dates.containsKey(id)) {
+                unread.add(id);
+            }
+        }
+        if (!unread.isEmpty()) {
+            final Map<AssetId, Date[]> read = FilterAssetsByDate.readDateColumns(ics, unread);
+            for (AssetId id : unread) {
+                dates.put(id, read.get(id));
+            }
+        }
+    }
+
+    /**
+     * The placed pages of a site, by parent node.
+     */
+    private static final class SitePlan {
+        private final String site;
+        private final Map<Long, List<PlacedNode>> children = new HashMap<Long, List<PlacedNode>>();
+        private final Set<Long> nodes = new HashSet<Long>();
+        private final Set<Long> prefetched = new HashSet<Long>();
+        private int size;
+
+        SitePlan(String site) {
+            this.site = site;
+        }
+
+        void add(long parent, PlacedNode node) {
+            List<PlacedNode> l = children.get(parent);
+            if (l == null) {
+                l = new ArrayList<PlacedNode>();
+                children.put(parent, l);
+            }
+            l.add(node);
+            nodes.add(parent);
+            nodes.add(node.nid);
+            size++;
+        }
+
+        boolean contains(long nid) {
+            return nodes.contains(nid);
+        }
+
+        List<PlacedNode> getChildren(long nid) {
+            List<PlacedNode> l = children.get(nid);
+            return l == null ? Collections.<PlacedNode> emptyList() : l;
+        }
+
+        boolean isPrefetched(long nid) {
+            return prefetched.contains(nid);
+        }
+
+        void setPrefetched(long nid) {
+            prefetched.add(nid);
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static final class PlacedNode {
+        private final long nid;
+        private final AssetId id;
+
+        PlacedNode(long nid, AssetId id) {
+            this.nid = nid;
+            this.id = id;
+        }
+    }
+
     /**
      * Builds up a URI for this asset, using the pathAttribute and the template
      * field of the asset
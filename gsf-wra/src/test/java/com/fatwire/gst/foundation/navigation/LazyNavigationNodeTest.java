@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @since Oct 16, 2026
+ */
+public class LazyNavigationNodeTest extends TestCase {
+
+    private final List<List<Long>> calls = new ArrayList<List<Long>>();
+
+    private final LazyNavigationNode.Loader loader = new LazyNavigationNode.Loader() {
+
+        public void loadChildren(List<LazyNavigationNode> parents) {
+            final List<Long> nids = new ArrayList<Long>();
+            final LazyNavigationNode.Batch next = new LazyNavigationNode.Batch(this);
+            for (LazyNavigationNode parent : parents) {
+                nids.add(parent.getNid());
+                parent.addChild(new LazyNavigationNode(parent.getNid() * 10, next));
+            }
+            calls.add(nids);
+        }
+    };
+
+    public void testLevelIsReadOnce() {
+        final LazyNavigationNode.Batch batch = new LazyNavigationNode.Batch(loader);
+        final LazyNavigationNode a = new LazyNavigationNode(1, batch);
+        final LazyNavigationNode b = new LazyNavigationNode(2, batch);
+        assertTrue(calls.isEmpty());
+
+        assertEquals(1, a.getChildren().size());
+        assertEquals(1, calls.size());
+        assertEquals(2, calls.get(0).size());
+        assertTrue(b.isLoaded());
+        assertEquals(1, b.getChildren().size());
+        assertEquals(1, calls.size());
+
+        final LazyNavigationNode a1 = (LazyNavigationNode) a.getChildren().get(0);
+        assertEquals(10L, a1.getNid());
+        a1.getChildren();
+        assertEquals(2, calls.size());
+        assertEquals(2, calls.get(1).size());
+    }
+}
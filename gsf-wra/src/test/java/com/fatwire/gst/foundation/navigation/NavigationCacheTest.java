@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * @since Oct 16, 2026
+ */
+public class NavigationCacheTest extends TestCase {
+
+    private final AssetId page = new AssetIdImpl("Page", 1L);
+    private final AssetId article = new AssetIdImpl("Article", 2L);
+    private final NavigationCache.Key key = new NavigationCache.Key("site", null, 2, "linktext", null, "live", 0);
+
+    private NavigationNode tree() {
+        NavigationNode root = new NavigationNode();
+        root.setPage(page);
+        root.setLinktext("Home");
+        NavigationNode child = new NavigationNode();
+        child.setPage(new AssetIdImpl("Page", 3L));
+        child.setId(article);
+        child.setLevel(1);
+        root.addChild(child);
+        return root;
+    }
+
+    public void testCopies() {
+        NavigationCache cache = new NavigationCache(10, 60000L);
+        NavigationNode root = tree();
+        List<NavigationCache.Dependency> none = Collections.emptyList();
+        cache.put(key, Collections.singletonList(root), none, Collections.singletonList(article));
+        root.setLinktext("changed");
+
+        List<NavigationNode> hit = cache.get(null, key);
+        assertEquals(1, hit.size());
+        assertEquals("Home", hit.get(0).getLinktext());
+        assertEquals(article, hit.get(0).getChildren().get(0).getId());
+        hit.get(0).setActive(true);
+        assertFalse(cache.get(null, key).get(0).isActive());
+        assertNull(cache.get(null, new NavigationCache.Key("site", null, 3, "linktext", null, "live", 0)));
+    }
+
+    public void testAssetChanged() {
+        NavigationCache cache = new NavigationCache(10, 60000L);
+        List<NavigationCache.Dependency> noDeps = Collections.emptyList();
+        List<AssetId> none = Collections.emptyList();
+        cache.put(key, Collections.singletonList(tree()), noDeps, Collections.singletonList(article));
+        cache.assetChanged(new AssetIdImpl("Article", 4L));
+        assertEquals(1, cache.size());
+        cache.assetChanged(article);
+        assertEquals(0, cache.size());
+
+        cache.put(key, Collections.singletonList(tree()), noDeps, none);
+        cache.assetChanged(new AssetIdImpl("Page", 5L));
+        assertEquals(0, cache.size());
+    }
+
+    public void testDependenciesAreWatched() {
+        NavigationCache cache = new NavigationCache(10, 60000L);
+        List<AssetId> none = Collections.emptyList();
+        AssetId upcoming = new AssetIdImpl("Article", 6L);
+        List<NavigationCache.Dependency> deps = Arrays.asList(NavigationCache.Dependency.logDep(article),
+                NavigationCache.Dependency.dated(upcoming, new Date(), null));
+        cache.put(key, Collections.singletonList(tree()), deps, none);
+        cache.assetChanged(upcoming);
+        assertEquals(0, cache.size());
+    }
+
+    public void testDependencyEquality() {
+        Date start = new Date();
+        assertEquals(NavigationCache.Dependency.dated(article, start, null),
+                NavigationCache.Dependency.dated(article, new Date(start.getTime()), null));
+        assertFalse(NavigationCache.Dependency.logDep(article).equals(
+                NavigationCache.Dependency.dated(article, null, null)));
+    }
+
+    public void testExpiry() {
+        NavigationCache cache = new NavigationCache(10, -1L);
+        List<NavigationCache.Dependency> noDeps = Collections.emptyList();
+        List<AssetId> none = Collections.emptyList();
+        cache.put(key, Collections.singletonList(tree()), noDeps, none);
+        assertNull(cache.get(null, key));
+    }
+}
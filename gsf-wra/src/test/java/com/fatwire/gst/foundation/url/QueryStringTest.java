@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.fatwire.cs.core.uri.Util;
+
+/**
+ * Compares {@link QueryString} with the map based parser it replaced, and
+ * times both on typical packedargs and disassembly query strings.
+ *
+ * @since Oct 16, 2026
+ */
+public class QueryStringTest extends TestCase {
+
+    private static final List<String> EMBEDDED = Arrays.asList("pagename", "childpagename", "virtual-webroot",
+            "url-path", "c", "cid");
+
+    private static final String[] QUERIES = {
+            "",
+            "a=b",
+            "a=b&c=d&a=e",
+            " a = b & c=d ",
+            "a=b=c&d",
+            "a&b=c",
+            "a=",
+            "a=b&",
+            "=b&c=",
+            "p=1234567890&c=Page&cid=1234&pagename=GST%2FDispatcher&rendermode=live",
+            "virtual-webroot=http%3A%2F%2Fwww.example.com%2F&url-path=news%2Farticle+1%C3%A9&x=%2B",
+            "virtual%2Dwebroot=x&url-path=y",
+            "_charset_=ISO-8859-1&q=caf%E9&c=Page",
+            "_CHARSET_=ISO-8859-1&q=caf%E9",
+            "q=%C3%A9t%C3%A9&cid=1&c=Page&p=2&empty=&blank=+" };
+
+    public void testParse() {
+        for (final String qry : QUERIES) {
+            assertMapEquals(qry, legacyParse(qry), QueryString.parse(qry, "UTF-8").toMap());
+        }
+        assertTrue(QueryString.parse(null, "UTF-8").toMap().isEmpty());
+    }
+
+    public void testGetValues() {
+        final QueryString qs = QueryString.parse(QUERIES[10], "UTF-8");
+        assertEquals("http://www.example.com/", qs.getValues("virtual-webroot")[0]);
+        assertEquals("news/article 1\u00e9", qs.getValues("url-path")[0]);
+        assertNull(qs.getValues("c"));
+        assertEquals("x", QueryString.parse(QUERIES[11], "UTF-8").getValues("virtual-webroot")[0]);
+        assertEquals("ISO-8859-1", QueryString.parse(QUERIES[12], "UTF-8").getEncoding());
+        assertEquals("caf\u00e9", QueryString.parse(QUERIES[12], "UTF-8").getValues("q")[0]);
+    }
+
+    public void testDuplicateCharset() {
+        try {
+            QueryString.parse("_charset_=UTF-8&_charset_=UTF-8", "UTF-8");
+            fail("duplicate _charset_ must be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testExclude() {
+        for (final String qry : QUERIES) {
+            final String legacy = legacyExclude(qry, EMBEDDED);
+            final String streamed = QueryString.parse(qry, "UTF-8").toString(EMBEDDED);
+            assertEquals(qry, legacy == null, streamed == null);
+            // the pairs may come out in a different order
+            assertMapEquals(qry, legacyParse(legacy), legacyParse(streamed));
+        }
+        assertEquals("p=1234567890&rendermode=live", QueryString.parse(QUERIES[9], "UTF-8").toString(EMBEDDED));
+    }
+
+    private static void assertMapEquals(final String msg, final Map<String, String[]> expected,
+            final Map<String, String[]> actual) {
+        assertEquals(msg, expected.keySet(), actual.keySet());
+        for (final String key : expected.keySet()) {
+            assertEquals(msg + " " + key, Arrays.asList(expected.get(key)), Arrays.asList(actual.get(key)));
+        }
+    }
+
+    /**
+     * The parser as it was before {@link QueryString}.
+     */
+    private static Map<String, String[]> legacyParse(final String qry) {
+        final Map<String, String[]> rawPairs = new HashMap<String, String[]>();
+        if (qry == null || qry.length() == 0) {
+            return rawPairs;
+        }
+        final int inlen = qry.length();
+        int iequal;
+        int iamper;
+        int startAt = 0;
+        boolean bDone = false;
+        while (!bDone) {
+            if ((iequal = qry.indexOf("=", startAt)) != -1) {
+                iamper = qry.indexOf("&", iequal);
+                final String n = qry.substring(startAt, iequal).trim();
+                iequal++;
+                if (iequal >= inlen) {
+                    break;
+                }
+                String v = iamper == -1 ? qry.substring(iequal) : qry.substring(iequal, iamper);
+                if (iamper != -1) {
+                    startAt = iamper + 1;
+                } else {
+                    bDone = true;
+                }
+                v = v.trim();
+                final String[] av = rawPairs.get(n);
+                if (av == null) {
+                    rawPairs.put(n, new String[] { v });
+                } else {
+                    final String[] newVal = new String[av.length + 1];
+                    System.arraycopy(av, 0, newVal, 0, av.length);
+                    newVal[av.length] = v;
+                    rawPairs.put(n, newVal);
+                }
+            } else {
+                break;
+            }
+        }
+        final String[] charset = rawPairs.get("_charset_") == null ? rawPairs.get("_CHARSET_") : rawPairs
+                .get("_charset_");
+        final String encoding = charset == null ? "UTF-8" : charset[0];
+        final Map<String, String[]> res = new HashMap<String, String[]>(rawPairs.size());
+        try {
+            for (final String rawKey : rawPairs.keySet()) {
+                final String[] val = rawPairs.get(rawKey);
+                for (int i = 0; i < val.length; i++) {
+                    val[i] = Util.decode(val[i], encoding);
+                }
+                res.put(Util.decode(rawKey, encoding), val);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e.toString());
+        }
+        return res;
+    }
+
+    /**
+     * The packedargs rewriting as it was before {@link QueryString}.
+     */
+    private static String legacyExclude(final String packedargs, final Collection<String> toExclude) {
+        final Map<String, String[]> oldPacked = legacyParse(packedargs);
+        final StringBuilder qryStr = new StringBuilder();
+        try {
+            for (final String key : oldPacked.keySet()) {
+                if (toExclude.contains(key)) {
+                    continue;
+                }
+                for (final String val : oldPacked.get(key)) {
+                    if (val != null && val.length() > 0) {
+                        if (qryStr.length() > 0) {
+                            qryStr.append('&');
+                        }
+                        qryStr.append(Util.encode(key, "UTF-8")).append('=').append(Util.encode(val, "UTF-8"));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e.toString());
+        }
+        return qryStr.length() > 0 ? qryStr.toString() : null;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+
+    public void testNoFalseNegatives() {
+        final BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("/section/article-" + i + ".html");
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("/section/article-" + i + ".html"));
+        }
+    }
+
+    public void testFalsePositiveRate() {
+        final BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("/section/article-" + i + ".html");
+        }
+        int positives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("/wp-admin/probe-" + i + ".php")) {
+                positives++;
+            }
+        }
+        assertTrue("false positive rate too high: " + positives, positives < 2000);
+        assertTrue(filter.expectedFpp(10000) < 0.02);
+    }
+
+    public void testEmpty() {
+        final BloomFilter filter = new BloomFilter(0, 0.01);
+        assertFalse(filter.mightContain(""));
+        assertFalse(filter.mightContain("/"));
+        filter.add("/");
+        assertTrue(filter.mightContain("/"));
+    }
+
+}
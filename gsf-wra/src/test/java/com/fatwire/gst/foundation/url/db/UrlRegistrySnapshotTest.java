@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+
+public class UrlRegistrySnapshotTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("urlregistry", ".snapshot");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testRoundTrip() throws IOException {
+        final List<VanityUrl> urls = new ArrayList<VanityUrl>();
+        for (int i = 0; i < 100; i++) {
+            final VanityUrl url = new VanityUrl();
+            url.setId(1000 - i);
+            url.setAssettype(i % 2 == 0 ? "Page" : "Article");
+            url.setAssetid(i);
+            url.setPath("/www/p" + i);
+            url.setOpt_vwebroot("http://www.example.com/");
+            url.setOpt_url_path("p" + i + "-\u00e9t\u00e9");
+            url.setOpt_depth(i % 3);
+            url.setOpt_site(i % 5 == 0 ? null : "Site");
+            url.setStartdate(i % 7 == 0 ? new Date(1000L * i) : null);
+            urls.add(url);
+        }
+        UrlRegistrySnapshot.write(file, urls, Collections.<VirtualWebroot> emptyList(), 12345L);
+
+        final UrlRegistrySnapshot snapshot = UrlRegistrySnapshot.read(file);
+        assertEquals(12345L, snapshot.getHighWaterMark());
+        assertEquals(100, snapshot.getUrlCount());
+        assertEquals(0, snapshot.getWebrootCount());
+        String previous = "";
+        for (final VanityUrl url : snapshot.getUrls()) {
+            assertTrue("sorted by url path", url.getOpt_url_path().compareTo(previous) > 0);
+            previous = url.getOpt_url_path();
+            final VanityUrl original = urls.get((int) url.getAssetid());
+            assertEquals(original.getId(), url.getId());
+            assertEquals(original.getAssettype(), url.getAssettype());
+            assertEquals(original.getPath(), url.getPath());
+            assertEquals(original.getOpt_url_path(), url.getOpt_url_path());
+            assertEquals(original.getOpt_depth(), url.getOpt_depth());
+            assertEquals(original.getOpt_site(), url.getOpt_site());
+            assertEquals(original.getStartdate(), url.getStartdate());
+            assertNull(url.getEnddate());
+        }
+    }
+
+    public void testNotASnapshot() throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        out.write("not a snapshot, but long enough for a header".getBytes("US-ASCII"));
+        out.close();
+        try {
+            UrlRegistrySnapshot.read(file);
+            fail("expected IOException");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+}
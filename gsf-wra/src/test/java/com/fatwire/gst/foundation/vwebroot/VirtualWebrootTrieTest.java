@@ -0,0 +1,56 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.vwebroot;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class VirtualWebrootTrieTest extends TestCase {
+
+    private final VirtualWebroot root = new VWebrootBeanImpl(1, "http://www.example.com/", "http://localhost/", "dev");
+    private final VirtualWebroot sports = new VWebrootBeanImpl(2, "http://www.example.com/sports/",
+            "http://localhost/sports/", "dev");
+    private final VirtualWebroot prod = new VWebrootBeanImpl(3, "http://www.example.com/", "http://www.example.com/",
+            "prod");
+
+    public void testLongestPrefixWins() {
+        Map<String, VirtualWebrootTrie> tries = VirtualWebrootTrie.build(Arrays.asList(root, sports, prod));
+        VirtualWebrootTrie dev = tries.get("dev");
+        assertEquals(2, dev.size());
+        assertSame(sports, dev.lookup("http://www.example.com/sports/football"));
+        assertSame(root, dev.lookup("http://www.example.com/news/today"));
+        assertSame(root, dev.lookup("http://www.example.com/sport"));
+        assertNull(dev.lookup("http://www.example.org/"));
+        assertNull(dev.lookup(null));
+    }
+
+    public void testPerEnvironment() {
+        Map<String, VirtualWebrootTrie> tries = VirtualWebrootTrie.build(Arrays.asList(root, sports, prod));
+        assertSame(prod, tries.get("prod").lookup("http://www.example.com/sports/football"));
+        assertNull(tries.get("test"));
+    }
+
+    public void testSameAsComparatorScan() {
+        VirtualWebroot other = new VWebrootBeanImpl(4, "http://www.example.com/", "http://127.0.0.1/", "dev");
+        VirtualWebrootTrie trie = VirtualWebrootTrie.newTrie(Arrays.asList(root, other));
+        // reverse natural order of the environment webroot puts 'localhost' first
+        assertSame(root, trie.lookup("http://www.example.com/a"));
+        assertEquals(1, trie.size());
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.wra.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import COM.FutureTense.Interfaces.IList;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.sql.AbstractIList;
+import com.fatwire.gst.foundation.navigation.LazyNavigationNode;
+import com.fatwire.gst.foundation.navigation.NavigationNode;
+import com.fatwire.gst.foundation.test.MockICS;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * Builds lazy trees through the service, with the SitePlanTree served by a
+ * mock and the pages not read.
+ *
+ * @since Oct 16, 2026
+ */
+public class WraNavigationServiceTest extends TestCase {
+
+    private static final Pattern PARENTS = Pattern.compile("nparentid IN \\(([0-9,]+)\\)");
+
+    /** the placed child nodes by parent node, the page id is the node id */
+    private final Map<Long, List<Long>> plan = new HashMap<Long, List<Long>>();
+
+    private int queries;
+
+    private final MockICS ics = new MockICS() {
+
+        @Override
+        public IList SQL(String table, String sql, String listname, int limit, boolean cache, StringBuffer errstr) {
+            queries++;
+            final Matcher m = PARENTS.matcher(sql);
+            assertTrue(sql, m.find());
+            final List<long[]> rows = new ArrayList<long[]>();
+            for (String parent : m.group(1).split(",")) {
+                final long p = Long.parseLong(parent);
+                final List<Long> children = plan.get(p);
+                if (children != null) {
+                    for (Long child : children) {
+                        rows.add(new long[] { child, p });
+                    }
+                }
+            }
+            return new PlacedList(rows);
+        }
+    };
+
+    private final class Service extends WraNavigationService {
+        private int pathReads;
+
+        Service() {
+            super(ics, null, null, null, null);
+        }
+
+        @Override
+        protected void readPage(NavigationNode node, AssetId pid, String linkAttribute) {
+            node.setPagename("page" + pid.getId());
+        }
+
+        @Override
+        protected void prefetchAssets(List<List<AssetId>> levels) {
+            // the pages are not read
+        }
+
+        @Override
+        protected List<AssetId> getPathToRoot(AssetId page) {
+            pathReads++;
+            return Arrays.<AssetId> asList(page(100), page(10));
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        plan.put(1L, Arrays.asList(10L, 11L));
+        plan.put(10L, Arrays.asList(100L, 101L));
+        plan.put(11L, Arrays.asList(110L));
+        plan.put(100L, Arrays.asList(1000L));
+    }
+
+    private static AssetId page(long id) {
+        return new AssetIdImpl("Page", id);
+    }
+
+    public void testStaysLazyAfterTheSettingsChange() {
+        final Service service = new Service();
+        service.setLazy(true);
+        final List<NavigationNode> top = new ArrayList<NavigationNode>(service.getNodeChildren(1L, 0, -1,
+                "linktext"));
+        // like the navigation tag does once the tree is built
+        service.setLazy(false);
+        assertEquals(1, queries);
+        assertEquals(2, top.size());
+
+        final List<NavigationNode> kids = top.get(0).getChildren();
+        assertEquals(2, queries);
+        assertEquals(2, kids.size());
+        assertTrue(kids.get(0) instanceof LazyNavigationNode);
+        assertFalse(((LazyNavigationNode) kids.get(0)).isLoaded());
+        // read with its sibling
+        assertEquals(1, top.get(1).getChildren().size());
+        assertEquals(2, queries);
+
+        assertEquals(1, kids.get(0).getChildren().size());
+        assertEquals(3, queries);
+        assertTrue(kids.get(0).getChildren().get(0) instanceof LazyNavigationNode);
+    }
+
+    public void testKeepsTheActivePathAfterTheSettingsChange() {
+        final Service service = new Service();
+        service.setLazy(true);
+        service.setActivePage(page(1000));
+        final List<NavigationNode> top = new ArrayList<NavigationNode>(service.getNodeChildren(1L, 0, -1,
+                "linktext"));
+        service.setLazy(false);
+        service.setActivePage(page(110));
+
+        assertTrue(top.get(0).isActive());
+        assertFalse(top.get(1).isActive());
+        final LazyNavigationNode active = (LazyNavigationNode) top.get(0);
+        assertTrue(active.isLoaded());
+        assertFalse(((LazyNavigationNode) top.get(1)).isLoaded());
+
+        final List<NavigationNode> kids = active.getChildren();
+        assertTrue(kids.get(0).isActive());
+        assertTrue(((LazyNavigationNode) kids.get(0)).isLoaded());
+        assertTrue(kids.get(0).getChildren().get(0).isActive());
+        assertFalse(kids.get(1).isActive());
+        assertFalse(((LazyNavigationNode) kids.get(1)).isLoaded());
+
+        // read later, still with the active path of the tree
+        final NavigationNode other = top.get(1).getChildren().get(0);
+        assertEquals(page(110), other.getPage());
+        assertFalse(other.isActive());
+        assertTrue(other instanceof LazyNavigationNode);
+        assertEquals(1, service.pathReads);
+        assertEquals(Collections.emptyList(), kids.get(1).getChildren());
+    }
+
+    /**
+     * SitePlanTree rows of placed pages.
+     */
+    private static final class PlacedList extends AbstractIList {
+        private static final String[] COLUMNS = { "otype", "oid", "nrank", "nid", "nparentid" };
+        private final List<long[]> rows;
+
+        PlacedList(List<long[]> rows) {
+            super("placed");
+            this.rows = rows;
+        }
+
+        public IList clone(String newname) {
+            return new PlacedList(rows);
+        }
+
+        public void flush() {
+        }
+
+        public int numColumns() {
+            return COLUMNS.length;
+        }
+
+        public String getColumnName(int i) throws ArrayIndexOutOfBoundsException {
+            return COLUMNS[i];
+        }
+
+        public int numRows() {
+            return rows.size();
+        }
+
+        public String getValue(String s) throws NoSuchFieldException {
+            final long[] row = rows.get(currentRow() - 1);
+            if ("otype".equalsIgnoreCase(s)) {
+                return "Page";
+            }
+            if ("oid".equalsIgnoreCase(s) || "nid".equalsIgnoreCase(s)) {
+                return Long.toString(row[0]);
+            }
+            if ("nrank".equalsIgnoreCase(s)) {
+                return Integer.toString(currentRow());
+            }
+            if ("nparentid".equalsIgnoreCase(s)) {
+                return Long.toString(row[1]);
+            }
+            throw new NoSuchFieldException(s);
+        }
+
+        public Object getObject(String s) throws NoSuchFieldException {
+            return getValue(s);
+        }
+
+        public byte[] getFileData(String s) throws IllegalArgumentException, NoSuchFieldException {
+            throw new IllegalArgumentException(s);
+        }
+
+        public String getFileString(String s) throws NoSuchFieldException {
+            throw new IllegalArgumentException(s);
+        }
+
+        public int numIndirectColumns() {
+            return 0;
+        }
+
+        public String getIndirectColumnName(int i) {
+            return null;
+        }
+
+        public boolean stringInList(String s) {
+            return false;
+        }
+    }
+}
@@ -23,21 +23,112 @@
     // GST/Foundation/RebuildUrlRegistry
     //
 %>
+<%@ page import="com.fatwire.gst.foundation.url.db.RebuildStatus" %>
+<%@ page import="com.fatwire.gst.foundation.url.db.UrlRegistryRebuilder" %>
+<%@ page import="com.fatwire.gst.foundation.url.db.UrlRegistry2" %>
+<%@ page import="com.fatwire.gst.foundation.url.db.UrlRegistryReconciler" %>
+<%@ page import="com.fatwire.gst.foundation.url.db.UrlRegistrySnapshotLoader" %>
+<%@ page import="com.fatwire.gst.foundation.url.db.VanityPathFilter" %>
 <cs:ftcs><gsf:root>
+<%
+    // only a POST changes state, a GET shows the status and the check results
+    boolean post = "POST".equalsIgnoreCase(request.getMethod());
+    String action = ics.GetVar("action");
+    if (("start".equals(action) || "resume".equals(action)) && post && !UrlRegistryRebuilder.isRunning()) {
+        int threads = 4;
+        String t = ics.GetVar("threads");
+        if (t != null && t.trim().matches("[0-9]{1,2}")) {
+            threads = Math.max(1, Math.min(16, Integer.parseInt(t.trim())));
+        }
+        new UrlRegistryRebuilder(ics, threads, UrlRegistryRebuilder.DEFAULT_CHUNK_SIZE).start("resume".equals(action));
+    }
+    UrlRegistryReconciler.Result reconciled = null;
+    if (("check".equals(action) || ("reconcile".equals(action) && post)) && !UrlRegistryRebuilder.isRunning()) {
+        reconciled = new UrlRegistryReconciler(ics).reconcile("check".equals(action));
+    }
+    java.io.File snapshotFile = UrlRegistrySnapshotLoader.getSnapshotFile(application);
+    String snapshotResult = null;
+    if ("snapshot".equals(action) && post && snapshotFile != null && ics.UserIsMember("xceladmin")) {
+        try {
+            int written = UrlRegistry2.lookup(ics).writeSnapshot(snapshotFile);
+            snapshotResult = "Wrote " + written + " entries to " + snapshotFile;
+        } catch (java.io.IOException e) {
+            snapshotResult = "Writing " + snapshotFile + " failed: " + e.getMessage();
+        }
+    }
+    RebuildStatus status = UrlRegistryRebuilder.getStatus();
+    VanityPathFilter.Stats filter = VanityPathFilter.getInstance().getStats();
+%>
     <html>
     <head>
         <title>GSF URL Registry Rebuild Tool</title>
         <link href="<%=ics.GetProperty("ft.cgipath")%>Xcelerate/data/css/en_US/common.css" rel="styleSheet" type="text/css">
         <link href="<%=ics.GetProperty("ft.cgipath")%>Xcelerate/data/css/en_US/content.css" rel="styleSheet" type="text/css">
+        <% if (status.getState() == RebuildStatus.State.RUNNING) { %><meta http-equiv="refresh" content="5;url=ContentServer?pagename=GST/Foundation/RebuildUrlRegistry"><% } %>
     </head>
     <body>
     <h1>GSF URL Registry Rebuild Tool</h1>
 
-    <h2>Rebuilding In progress...</h2>
-    <%
-        com.fatwire.gst.foundation.url.db.UrlRegistry2.lookup(ics).rebuild(true);
-    %>
-    <h2>Rebuild Completed.</h2>
+    <% if (snapshotResult != null) { %><p><%= snapshotResult %></p><% } %>
+    <% if (reconciled != null) { %>
+    <h2><%= "check".equals(action) ? "Differences found" : "Reconciliation completed" %></h2>
+    <table>
+        <tr><td>Assets checked</td><td><%= reconciled.getChecked() %></td></tr>
+        <tr><td>Entries <%= "check".equals(action) ? "missing" : "inserted" %></td><td><%= reconciled.getInserted() %></td></tr>
+        <tr><td>Entries <%= "check".equals(action) ? "out of date" : "updated" %></td><td><%= reconciled.getUpdated() %></td></tr>
+        <tr><td>Entries <%= "check".equals(action) ? "obsolete" : "deleted" %></td><td><%= reconciled.getDeleted() %></td></tr>
+    </table>
+    <% } %>
+    <h2>Rebuild <%= status.getState() %></h2>
+    <table>
+        <tr><td>Asset types</td><td><%= status.getTypesDone() %> of <%= status.getTypesTotal() %></td></tr>
+        <tr><td>Assets</td><td><%= status.getAssetsProcessed() %> of about <%= status.getAssetsTotal() %></td></tr>
+        <tr><td>Registry entries</td><td><%= status.getRowsAdded() %></td></tr>
+        <tr><td>Throughput</td><td><%= Math.round(status.getThroughput()) %> assets per second</td></tr>
+        <tr><td>Elapsed</td><td><%= status.getElapsed() / 1000 %> seconds</td></tr>
+        <tr><td>Remaining</td><td><%= status.getEta() < 0 ? "unknown" : (status.getEta() / 1000) + " seconds" %></td></tr>
+        <% if (status.getError() != null) { %><tr><td>Error</td><td><%= status.getError() %></td></tr><% } %>
+    </table>
+    <% if (VanityPathFilter.getInstance().isLoaded()) { %>
+    <h2>Unknown url filter</h2>
+    <table>
+        <tr><td>Url-paths</td><td><%= filter.getPaths() %> in <%= filter.getWebroots() %> virtual webroots</td></tr>
+        <tr><td>Lookups</td><td><%= filter.getLookups() %></td></tr>
+        <tr><td>Rejected by the filter</td><td><%= filter.getFilterNegatives() %></td></tr>
+        <tr><td>Rejected as recent misses</td><td><%= filter.getMissCacheHits() %> (<%= filter.getMisses() %> remembered)</td></tr>
+        <tr><td>False positives</td><td><%= filter.getFalsePositives() %></td></tr>
+        <tr><td>False positive rate</td><td><%= String.format("%.4f", filter.getFalsePositiveRate()) %> (expected <%= String.format("%.4f", filter.getExpectedFalsePositiveRate()) %>)</td></tr>
+        <tr><td>Memory used</td><td><%= filter.getMemoryUsed() / 1024 %> KB</td></tr>
+    </table>
+    <% } %>
+    <% if (!UrlRegistryRebuilder.isRunning()) { %>
+    <p><a href="ContentServer?pagename=GST/Foundation/RebuildUrlRegistry&action=check">Check the registry for differences</a></p>
+    <satellite:form satellite="false" method="post">
+        <input type="hidden" name="pagename" value="GST/Foundation/RebuildUrlRegistry" />
+        <input type="hidden" name="action" value="reconcile" />
+        <p><input type="submit" value="Reconcile the registry"> (only writes the entries that differ)</p>
+    </satellite:form>
+    <satellite:form satellite="false" method="post">
+        <input type="hidden" name="pagename" value="GST/Foundation/RebuildUrlRegistry" />
+        <input type="hidden" name="action" value="start" />
+        <p><input type="submit" value="Start a rebuild"> with <input type="text" name="threads" value="4" size="2"> threads (1 to 16)</p>
+    </satellite:form>
+    <% if (snapshotFile != null) { %>
+    <satellite:form satellite="false" method="post">
+        <input type="hidden" name="pagename" value="GST/Foundation/RebuildUrlRegistry" />
+        <input type="hidden" name="action" value="snapshot" />
+        <p><input type="submit" value="Write a snapshot"> to <%= snapshotFile %> for warming up new nodes</p>
+    </satellite:form>
+    <% } %>
+    <% if (status.getState() == RebuildStatus.State.FAILED) { %>
+    <satellite:form satellite="false" method="post">
+        <input type="hidden" name="pagename" value="GST/Foundation/RebuildUrlRegistry" />
+        <input type="hidden" name="action" value="resume" />
+        <input type="hidden" name="threads" value="4" />
+        <p><input type="submit" value="Resume the failed rebuild"></p>
+    </satellite:form>
+    <% } %>
+    <% } %>
     <satellite:link pagename="GST/Foundation/Dashboard" />
     <p>Return to <a href="${cs.referURL}">GSF Dashboard</a>.</p>
 